@@ -2,8 +2,6 @@ import static org.junit.Assert.fail;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -14,7 +12,13 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import dto.Alianza;
+import query.LeakDetector;
 import query.ParametrizedQuery;
+import query.ResultIterator;
+import query.cache.ResultCache;
+import query.cache.StatementCache;
+import query.metrics.QueryMetrics;
+import query.metrics.QueryStats;
 
 public class QueryTest {
 
@@ -40,13 +44,7 @@ public class QueryTest {
 	@Test
 	public void select() {
 		String query = "select * from alianza ali";
-		ParametrizedQuery<Alianza> parametrized = new ParametrizedQuery<Alianza>(Alianza.class, connection, query) {
-
-			@Override
-			protected Alianza mapper(ResultSet rs) throws SQLException {
-				return Alianza.mapper(rs);
-			}
-		};
+		ParametrizedQuery<Alianza> parametrized = ParametrizedQuery.forMapper(connection, query, Alianza.MAPPER);
 
 		List<Alianza> alianzas = new ArrayList<Alianza>();
 		try {
@@ -60,23 +58,150 @@ public class QueryTest {
 		}
 	}
 
+	@Test
+	public void selectWithBeanMapper() {
+		String query = "select * from alianza ali";
+		ParametrizedQuery<Alianza> parametrized = new ParametrizedQuery<Alianza>(Alianza.class, connection, query);
+
+		try {
+			for (Alianza alianza : parametrized.select()) {
+				org.junit.Assert.assertNotNull(alianza.getId());
+				System.out.println(alianza);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Failed to access DDBB");
+		}
+	}
+
+	@Test
+	public void selectWithStatementCache() {
+		String query = "select count(*) from alianza ali";
+		StatementCache cache = new StatementCache(10);
+		ParametrizedQuery<Long> parametrized = new ParametrizedQuery<Long>(Long.class, connection, query);
+		parametrized.setStatementCache(cache);
+
+		try {
+			parametrized.select();
+			parametrized.select();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Failed to access DDBB");
+		}
+		org.junit.Assert.assertEquals(1, cache.getMisses());
+		org.junit.Assert.assertEquals(1, cache.getHits());
+		org.junit.Assert.assertEquals(1, cache.size());
+		cache.clear();
+	}
+
+	@Test
+	public void selectWithResultCache() {
+		String query = "select count(*) from alianza ali";
+		ResultCache cache = new ResultCache(1024 * 1024);
+		ParametrizedQuery<Long> parametrized = new ParametrizedQuery<Long>(Long.class, connection, query);
+		parametrized.setResultCache(cache);
+
+		try {
+			List<Long> first = parametrized.select();
+			List<Long> second = parametrized.select();
+			org.junit.Assert.assertSame(first, second);
+			cache.invalidateTable("ALIANZA");
+			org.junit.Assert.assertNotSame(first, parametrized.select());
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Failed to access DDBB");
+		}
+		org.junit.Assert.assertEquals(2, cache.getMisses());
+		org.junit.Assert.assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void selectWithResultCacheSharedByMappers() {
+		String query = "select count(*) from alianza ali";
+		ResultCache cache = new ResultCache(1024 * 1024);
+		ParametrizedQuery<Long> counted = ParametrizedQuery.forMapper(connection, query, rs -> rs.getLong(1));
+		ParametrizedQuery<String> printed = ParametrizedQuery.forMapper(connection, query, rs -> rs.getString(1));
+		counted.setResultCache(cache);
+		printed.setResultCache(cache);
+
+		try {
+			Long count = counted.select().get(0);
+			String text = printed.select().get(0);
+			org.junit.Assert.assertEquals(count.toString(), text);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Failed to access DDBB");
+		}
+		org.junit.Assert.assertEquals(2, cache.getMisses());
+		org.junit.Assert.assertEquals(0, cache.getHits());
+		org.junit.Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void selectWithMetrics() {
+		String query = "select count(*) from alianza ali";
+		ParametrizedQuery<Long> parametrized = new ParametrizedQuery<Long>(Long.class, connection, query);
+		QueryStats stats = QueryMetrics.getDefault().statsFor(query);
+		long executions = stats.getExecutions();
+
+		try {
+			parametrized.select();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Failed to access DDBB");
+		}
+		org.junit.Assert.assertEquals(executions + 1, stats.getExecutions());
+		System.out.println(stats);
+	}
+
+	@Test
+	public void iterateReleasesStatements() {
+		String query = "select * from alianza ali";
+		ParametrizedQuery<Alianza> parametrized = ParametrizedQuery.forMapper(connection, query, Alianza.MAPPER);
+		LeakDetector.enable();
+		int open = LeakDetector.getOpenCount();
+
+		try (ResultIterator<Alianza> iterator = parametrized.iterate()) {
+			org.junit.Assert.assertEquals(open + 2, LeakDetector.getOpenCount());
+			if (iterator.hasNext()) {
+				System.out.println(iterator.next());
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Failed to access DDBB");
+		} finally {
+			LeakDetector.disable();
+		}
+		org.junit.Assert.assertEquals(open, LeakDetector.getOpenCount());
+	}
+
+	@Test
+	public void forEach() {
+		String query = "select * from alianza ali";
+		ParametrizedQuery<Alianza> parametrized = ParametrizedQuery.forMapper(connection, query, Alianza.MAPPER);
+		parametrized.setFetchSize(ParametrizedQuery.STREAMING_FETCH_SIZE);
+
+		try {
+			int count = parametrized.forEach(row -> System.out.println(row));
+			org.junit.Assert.assertEquals(parametrized.select().size(), count);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Failed to access DDBB");
+		}
+	}
+
 	@Test
 	public void insert() {
 		final Alianza ali = new Alianza();
 		ali.setId(3L);
-		ali.setNombre("Prueba insercin 2");
+		ali.setNombre("Prueba inserción 2");
 		ali.setFechaInsercion(new Date());
 
 		String query = "insert into alianza (id, nombre, fecha_insercion) values (?, ? ,?)";
-		ParametrizedQuery<Alianza> parametrized = new ParametrizedQuery<Alianza>(Alianza.class, connection, query) {
-			@Override
-			protected void addParametersToStatement(PreparedStatement statement) throws SQLException {
-				ali.addParametersToStatement(statement);
-			}
-		};
+		ParametrizedQuery<Alianza> parametrized = ParametrizedQuery.forBinder(connection, query, Alianza.BINDER);
 
 		try {
-			org.junit.Assert.assertEquals(1, parametrized.persist());
+			org.junit.Assert.assertEquals(1, parametrized.persistBean(ali));
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
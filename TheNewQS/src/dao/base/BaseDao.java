@@ -2,25 +2,49 @@ package dao.base;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+import javax.sql.DataSource;
+
+import query.CompiledQuery;
+import query.ConnectionBinding;
 import query.ParametrizedQuery;
+import query.ResultIterator;
+import query.RowCallback;
+import query.UncheckedSQLException;
+import query.async.QueryExecutors;
+import query.cache.ResultCache;
+import query.cache.StatementCache;
+import query.mapper.RowMapper;
+import query.pool.ConnectionPool;
+import query.pool.SingleConnectionDataSource;
 
 /**
- * Proporciona una estructura bsica a la capa DAO.
+ * Proporciona una estructura básica a la capa DAO.
  * 
  * <p>
- * Obliga a implementar {@link #findById(Object)}, {@link #insert(Object)},
- * {@link #update(Object)}, {@link #delete(Object)}, {@link #getTableName()} y
- * {@link #getTableAlias()}.
+ * Obliga a implementar {@link #doFindById(Object)}, {@link #doInsert(Object)},
+ * {@link #doUpdate(Object)}, {@link #doDelete(Object)}, {@link #getTableName()}
+ * y {@link #getTableAlias()}. Los métodos públicos equivalentes son finales
+ * para que ninguna subclase se salte la {@link EntityCache} opcional del DAO.
+ * {@link EntityDao} los implementa todos a partir de un {@link EntityMetadata}.
  * 
  * <p>
- * Proporciona los mtodos {@link #select(ParametrizedQuery)} y
+ * Proporciona los métodos {@link #select(ParametrizedQuery)} y
  * {@link BaseDao#persist(ParametrizedQuery)} para simplificar el acceso y
  * control de excepciones.
  * 
  * <p>
- * Proporciona los mtodos {@link #getTableAndAlias()} y
+ * Proporciona los métodos {@link #getTableAndAlias()} y
  * {@link #getFirstRecord(ParametrizedQuery)}.
  * 
  * @author fferezsa
@@ -32,6 +56,11 @@ import query.ParametrizedQuery;
 public abstract class BaseDao<T> {
 
 	protected Connection connection;
+	protected volatile DataSource dataSource;
+	protected StatementCache statementCache;
+	protected Executor executor;
+	protected EntityCache<Object, T> entityCache;
+	protected ResultCache resultCache;
 	protected static final String DELETE = "DELETE FROM ";
 	protected static final String SELECT_ALL = "SELECT * FROM ";
 	protected static final String INSERT_INTO = "INSERT INTO ";
@@ -49,6 +78,48 @@ public abstract class BaseDao<T> {
 	protected static final String CLOSE_PARENTHESIS = ")";
 	protected static final String COMA = ", ";
 	protected static final String OPEN_PARENTHESIS = "(";
+	protected static final String IN = " IN ";
+	protected static final String ORDER_BY = " ORDER BY ";
+	protected static final String LIMIT_TO_PARAMETER = " LIMIT ? ";
+
+	/**
+	 * Tamaños de las listas IN de {@link #findAllByIds(Collection)}. Cada
+	 * bloque se rellena hasta el siguiente tamaño para que solo existan estas
+	 * variantes de la consulta en la caché de sentencias.
+	 */
+	protected static final int[] IN_LIST_SIZES = { 1, 4, 16, 64, 256 };
+
+	private volatile CompiledQuery<T>[] findByIdsQueries;
+	private volatile CompiledQuery<T> firstPageQuery;
+	private volatile CompiledQuery<T> nextPageQuery;
+
+	/**
+	 * Las subclases deben asignar {@link #connection} o {@link #dataSource}.
+	 */
+	protected BaseDao() {
+	}
+
+	/**
+	 * Todas las operaciones se lanzan por la misma conexión.
+	 * 
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 */
+	protected BaseDao(final Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Cada operación toma prestada una conexión del {@link DataSource} y la
+	 * devuelve al terminar, lo que permite compartir el DAO entre hilos si el
+	 * DataSource es un pool como {@link ConnectionPool}.
+	 * 
+	 * @param dataSource
+	 *            Origen de las conexiones con la BBDD.
+	 */
+	protected BaseDao(final DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
 
 	/**
 	 * 
@@ -62,38 +133,620 @@ public abstract class BaseDao<T> {
 	 */
 	public abstract String getTableAlias();
 
-	public abstract T findById(T bean) throws DaoException;
+	/**
+	 * Busca el elemento por su identificador, sirviéndolo desde la
+	 * {@link EntityCache} si el DAO tiene una configurada.
+	 * 
+	 * @see #doFindById(Object)
+	 * @param bean
+	 *            Bean con el identificador a buscar.
+	 * @return Elemento encontrado, nulo si no existe.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final T findById(final T bean) throws DaoException {
+		if (entityCache == null) {
+			return doFindById(bean);
+		}
+		final Object key = idKey(getId(bean));
+		if (UnitOfWork.currentFor(this) != null) {
+			final T cached = entityCache.getOrMiss(key);
+			return cached != null ? cached : doFindById(bean);
+		}
+		return entityCache.get(key, () -> doFindById(bean));
+	}
 
-	public abstract int insert(T bean) throws DaoException;
+	/**
+	 * Lanza {@link #findById(Object)} en el executor del DAO sin bloquear al
+	 * llamante, de modo que varias búsquedas independientes se solapen.
+	 * 
+	 * @see #getExecutor()
+	 * @param bean
+	 *            Bean con el identificador a buscar.
+	 * @return Futuro con el resultado. Una {@link DaoException} llega envuelta
+	 *         en {@link java.util.concurrent.CompletionException}.
+	 */
+	public CompletableFuture<T> findByIdAsync(final T bean) {
+		return QueryExecutors.supply(() -> findById(bean), getExecutor());
+	}
 
-	public abstract int update(T bean) throws DaoException;
+	/**
+	 * Busca varios elementos por su identificador con consultas
+	 * <code>WHERE id IN (?, ...)</code> de hasta
+	 * 256 identificadores (ver {@link #IN_LIST_SIZES}), en lugar de una consulta
+	 * por elemento. Los identificadores que estén en la {@link EntityCache}
+	 * no se consultan, y los que no estaban cuentan como fallos y se guardan
+	 * en ella al leerlos, salvo dentro de una {@link UnitOfWork}.
+	 * 
+	 * <p>
+	 * Requiere que el DAO implemente {@link #getId(Object)},
+	 * {@link #getIdColumn()} y {@link #getRowMapper()}. Los identificadores
+	 * enteros se comparan por valor, de modo que pueden pasarse como Integer
+	 * aunque {@link #getId(Object)} devuelva Long o al revés.
+	 * 
+	 * @param ids
+	 *            Identificadores a buscar, se ignoran los repetidos.
+	 * @return Elementos encontrados por identificador, en el orden recibido.
+	 *         Los que no existen no aparecen.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public <K> Map<K, T> findAllByIds(final Collection<K> ids) throws DaoException {
+		final Collection<K> unique = new LinkedHashSet<K>(ids);
+		final Map<Object, T> found = new HashMap<Object, T>(unique.size() * 2);
+		final List<K> pending = new ArrayList<K>(unique.size());
+		final boolean cacheRows = entityCache != null && UnitOfWork.currentFor(this) == null;
+		for (final K id : unique) {
+			final T cached = entityCache != null ? entityCache.getOrMiss(idKey(id)) : null;
+			if (cached != null) {
+				found.put(idKey(id), cached);
+			} else {
+				pending.add(id);
+			}
+		}
+		final int max = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+		for (int from = 0; from < pending.size(); from += max) {
+			final List<K> chunk = pending.subList(from, Math.min(from + max, pending.size()));
+			final int bucket = bucketFor(chunk.size());
+			final Object[] params = new Object[IN_LIST_SIZES[bucket]];
+			for (int i = 0; i < params.length; i++) {
+				params[i] = chunk.get(Math.min(i, chunk.size() - 1));
+			}
+			for (final T row : select(findByIdsQuery(bucket), params)) {
+				final Object key = idKey(getId(row));
+				found.put(key, row);
+				if (cacheRows) {
+					entityCache.put(key, row);
+				}
+			}
+		}
+		final Map<K, T> result = new LinkedHashMap<K, T>(unique.size() * 2);
+		for (final K id : unique) {
+			final T row = found.get(idKey(id));
+			if (row != null) {
+				result.put(id, row);
+			}
+		}
+		return result;
+	}
 
-	public abstract int delete(T bean) throws DaoException;
+	/**
+	 * Lee una página de la tabla ordenada por {@link #getIdColumn()}: las
+	 * <b>limit</b> primeras filas cuyo identificador es mayor que
+	 * <b>afterKey</b>. Con un índice sobre la columna, como la clave primaria,
+	 * el coste es el mismo para cualquier página, a diferencia de un OFFSET.
+	 * 
+	 * <p>
+	 * Usa <code>LIMIT ?</code>, válido en MySQL y H2. Requiere que el DAO
+	 * implemente {@link #getIdColumn()} y {@link #getRowMapper()}; las filas
+	 * no pasan por la {@link EntityCache}.
+	 * 
+	 * @see #cursor(int)
+	 * @param afterKey
+	 *            Identificador de la última fila de la página anterior, null
+	 *            para la primera página.
+	 * @param limit
+	 *            Número máximo de filas.
+	 * @return Filas de la página, vacía si no quedan más.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public List<T> page(final Object afterKey, final int limit) throws DaoException {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Page size must be 1 or more");
+		}
+		if (afterKey == null) {
+			return select(pageQuery(true), limit);
+		}
+		return select(pageQuery(false), afterKey, limit);
+	}
 
 	/**
-	 * Ejecuta una consulta devolviendo nicamente el primero de los resultados
+	 * Cursor que recorre toda la tabla desde el principio en páginas de
+	 * <b>pageSize</b> filas.
+	 * 
+	 * @param pageSize
+	 *            Filas por página.
+	 * @return Cursor sin leer.
+	 */
+	public KeysetCursor<T> cursor(final int pageSize) {
+		return cursor(null, pageSize);
+	}
+
+	/**
+	 * Cursor que recorre la tabla a partir de un identificador, típicamente
+	 * el {@link KeysetCursor#getLastKey()} de un recorrido interrumpido.
+	 * 
+	 * @param afterKey
+	 *            Identificador a partir del cual leer, sin incluirlo. Null para
+	 *            empezar desde el principio.
+	 * @param pageSize
+	 *            Filas por página.
+	 * @return Cursor sin leer.
+	 */
+	public KeysetCursor<T> cursor(final Object afterKey, final int pageSize) {
+		return new KeysetCursor<T>(this, afterKey, pageSize);
+	}
+
+	/**
+	 * Recorre toda la tabla en páginas de <b>pageSize</b> filas entregando
+	 * las filas una a una. Cada página se lee con una conexión prestada que se
+	 * devuelve antes de procesarla, por lo que no se mantiene abierto ningún
+	 * cursor en BBDD durante el recorrido.
+	 * 
+	 * @param pageSize
+	 *            Filas por página.
+	 * @param callback
+	 *            Receptor de cada una de las filas.
+	 * @return Número de filas procesadas.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos o en el
+	 *             tratamiento de una fila.
+	 */
+	public long forEachInPages(final int pageSize, final RowCallback<T> callback) throws DaoException {
+		final KeysetCursor<T> cursor = cursor(pageSize);
+		while (cursor.hasNext()) {
+			for (final T row : cursor.nextPage()) {
+				try {
+					callback.process(row);
+				} catch (SQLException e) {
+					e.printStackTrace();
+					throw new DaoException(e, "Could not process row", row, cursor.getLastKey());
+				}
+			}
+		}
+		return cursor.getRows();
+	}
+
+	/**
+	 * Abre una {@link UnitOfWork} en el hilo actual sobre el origen de
+	 * conexiones del DAO, en la que participan también el resto de DAO
+	 * creados con el mismo {@link DataSource}.
+	 * 
+	 * @return Unidad de trabajo activa, debe cerrarse siempre.
+	 * @throws DaoException
+	 *             Si no se puede obtener la conexión.
+	 */
+	public UnitOfWork beginWork() throws DaoException {
+		return UnitOfWork.begin(getDataSource());
+	}
+
+	/**
+	 * Recorrido de toda la tabla en paralelo por rangos de identificadores.
+	 * 
+	 * @see ParallelScan
+	 * @return Recorrido con la configuración por defecto, que puede ajustarse
+	 *         antes de lanzarlo.
+	 */
+	public ParallelScan<T> parallelScan() {
+		return new ParallelScan<T>(this);
+	}
+
+	private CompiledQuery<T> pageQuery(final boolean first) {
+		CompiledQuery<T> compiled = first ? firstPageQuery : nextPageQuery;
+		if (compiled == null) {
+			final StringBuilder sb = new StringBuilder(getSelectFrom());
+			if (!first) {
+				sb.append(WHERE).append(getIdColumn()).append(GT_TO_PARAMETER);
+			}
+			sb.append(ORDER_BY).append(getIdColumn()).append(LIMIT_TO_PARAMETER);
+			compiled = new CompiledQuery<T>(sb.toString(), getRowMapper());
+			if (first) {
+				firstPageQuery = compiled;
+			} else {
+				nextPageQuery = compiled;
+			}
+		}
+		return compiled;
+	}
+
+	/**
+	 * Clave con la que se casan los identificadores pedidos con los leídos y
+	 * con la que se guardan en la {@link EntityCache}: los enteros se llevan a
+	 * Long para que Integer, Short y Byte coincidan.
+	 */
+	static Object idKey(final Object id) {
+		if (id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte) {
+			return ((Number) id).longValue();
+		}
+		return id;
+	}
+
+	private static int bucketFor(final int size) {
+		int bucket = 0;
+		while (IN_LIST_SIZES[bucket] < size) {
+			bucket++;
+		}
+		return bucket;
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompiledQuery<T> findByIdsQuery(final int bucket) {
+		CompiledQuery<T>[] queries = findByIdsQueries;
+		if (queries == null) {
+			queries = (CompiledQuery<T>[]) new CompiledQuery<?>[IN_LIST_SIZES.length];
+			findByIdsQueries = queries;
+		}
+		CompiledQuery<T> compiled = queries[bucket];
+		if (compiled == null) {
+			final StringBuilder sb = new StringBuilder(getSelectFrom());
+			sb.append(WHERE).append(getIdColumn()).append(IN).append(OPEN_PARENTHESIS);
+			for (int i = 0; i < IN_LIST_SIZES[bucket]; i++) {
+				sb.append(i == 0 ? "?" : ", ?");
+			}
+			sb.append(CLOSE_PARENTHESIS);
+			compiled = new CompiledQuery<T>(sb.toString(), getRowMapper());
+			queries[bucket] = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Inserta el elemento y, si el DAO tiene {@link EntityCache}, lo guarda en
+	 * ella.
+	 * 
+	 * @see #doInsert(Object)
+	 * @param bean
+	 *            Elemento a insertar.
+	 * @return Número de filas afectadas.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int insert(final T bean) throws DaoException {
+		final int result = doInsert(bean);
+		if (entityCache != null && result > 0 && UnitOfWork.currentFor(this) == null) {
+			entityCache.put(idKey(getId(bean)), bean);
+		}
+		return result;
+	}
+
+	/**
+	 * Actualiza el elemento y lo descarta de la {@link EntityCache}, incluso
+	 * si la actualización falla.
+	 * 
+	 * @see #doUpdate(Object)
+	 * @param bean
+	 *            Elemento a actualizar.
+	 * @return Número de filas afectadas.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int update(final T bean) throws DaoException {
+		try {
+			return doUpdate(bean);
+		} finally {
+			invalidate(bean);
+		}
+	}
+
+	/**
+	 * Borra el elemento y lo descarta de la {@link EntityCache}.
+	 * 
+	 * @see #doDelete(Object)
+	 * @param bean
+	 *            Elemento a borrar.
+	 * @return Número de filas afectadas.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int delete(final T bean) throws DaoException {
+		try {
+			return doDelete(bean);
+		} finally {
+			invalidate(bean);
+		}
+	}
+
+	/**
+	 * Inserta todos los elementos y, si el DAO tiene {@link EntityCache}, los
+	 * guarda en ella.
+	 * 
+	 * @see #doInsertAll(Collection)
+	 * @param beans
+	 *            Elementos a insertar.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int[] insertAll(final Collection<T> beans) throws DaoException {
+		final int[] result = doInsertAll(beans);
+		if (entityCache != null && UnitOfWork.currentFor(this) == null) {
+			int i = 0;
+			for (final T bean : beans) {
+				if (i < result.length && result[i++] != 0) {
+					entityCache.put(idKey(getId(bean)), bean);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Actualiza todos los elementos y los descarta de la {@link EntityCache}.
+	 * 
+	 * @see #doUpdateAll(Collection)
+	 * @param beans
+	 *            Elementos a actualizar.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int[] updateAll(final Collection<T> beans) throws DaoException {
+		try {
+			return doUpdateAll(beans);
+		} finally {
+			invalidateAll(beans);
+		}
+	}
+
+	/**
+	 * Borra todos los elementos y los descarta de la {@link EntityCache}.
+	 * 
+	 * @see #doDeleteAll(Collection)
+	 * @param beans
+	 *            Elementos a borrar.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int[] deleteAll(final Collection<T> beans) throws DaoException {
+		try {
+			return doDeleteAll(beans);
+		} finally {
+			invalidateAll(beans);
+		}
+	}
+
+	/**
+	 * Inserta el elemento o, si ya existe otro con su identificador, lo
+	 * actualiza, en una única sentencia y sin consultarlo antes. Lo descarta
+	 * de la {@link EntityCache}. Dentro de una {@link UnitOfWork} no se
+	 * aplaza: se lanza en el momento, tras las escrituras pendientes.
+	 * 
+	 * @see #doUpsert(Object)
+	 * @param bean
+	 *            Elemento a guardar.
+	 * @return Número de filas afectadas según el gestor; MySQL cuenta 2 si ha
+	 *         actualizado la fila.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int upsert(final T bean) throws DaoException {
+		try {
+			return doUpsert(bean);
+		} finally {
+			invalidate(bean);
+		}
+	}
+
+	/**
+	 * Inserta o actualiza todos los elementos, agrupándolos en sentencias de
+	 * varias filas si el DAO lo permite. Los descarta de la
+	 * {@link EntityCache}. Dentro de una {@link UnitOfWork} no se aplaza: se
+	 * lanza en el momento, tras las escrituras pendientes.
+	 * 
+	 * @see #doUpsertAll(Collection)
+	 * @param beans
+	 *            Elementos a guardar.
+	 * @return Número de filas afectadas por cada elemento,
+	 *         {@link Statement#SUCCESS_NO_INFO} si el gestor no lo indica.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public final int[] upsertAll(final Collection<T> beans) throws DaoException {
+		try {
+			return doUpsertAll(beans);
+		} finally {
+			invalidateAll(beans);
+		}
+	}
+
+	protected abstract T doFindById(T bean) throws DaoException;
+
+	protected abstract int doInsert(T bean) throws DaoException;
+
+	protected abstract int doUpdate(T bean) throws DaoException;
+
+	protected abstract int doDelete(T bean) throws DaoException;
+
+	/**
+	 * Inserta todos los elementos. Por defecto lanza un {@link #doInsert(Object)}
+	 * por elemento; las implementaciones deben sobreescribirlo apoyándose en
+	 * {@link #persistBatch(CompiledQuery, Collection)} para agruparlos en lotes
+	 * JDBC.
+	 * 
+	 * @param beans
+	 *            Elementos a insertar.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	protected int[] doInsertAll(final Collection<T> beans) throws DaoException {
+		final int[] result = new int[beans.size()];
+		int i = 0;
+		for (final T bean : beans) {
+			result[i++] = doInsert(bean);
+		}
+		return result;
+	}
+
+	/**
+	 * Actualiza todos los elementos.
+	 * 
+	 * @see #doInsertAll(Collection)
+	 * @param beans
+	 *            Elementos a actualizar.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	protected int[] doUpdateAll(final Collection<T> beans) throws DaoException {
+		final int[] result = new int[beans.size()];
+		int i = 0;
+		for (final T bean : beans) {
+			result[i++] = doUpdate(bean);
+		}
+		return result;
+	}
+
+	/**
+	 * Borra todos los elementos.
+	 * 
+	 * @see #doInsertAll(Collection)
+	 * @param beans
+	 *            Elementos a borrar.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	protected int[] doDeleteAll(final Collection<T> beans) throws DaoException {
+		final int[] result = new int[beans.size()];
+		int i = 0;
+		for (final T bean : beans) {
+			result[i++] = doDelete(bean);
+		}
+		return result;
+	}
+
+	/**
+	 * Inserta o actualiza el elemento en una única sentencia. Debe
+	 * sobreescribirse para usar {@link #upsert(Object)}; {@link EntityDao} lo
+	 * implementa según el {@link Dialect} del gestor.
+	 * 
+	 * @param bean
+	 *            Elemento a guardar.
+	 * @return Número de filas afectadas.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	protected int doUpsert(final T bean) throws DaoException {
+		throw new UnsupportedOperationException(String.format("%s does not support upserts", getClass().getName()));
+	}
+
+	/**
+	 * Inserta o actualiza todos los elementos. Por defecto lanza un
+	 * {@link #doUpsert(Object)} por elemento.
+	 * 
+	 * @param beans
+	 *            Elementos a guardar.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	protected int[] doUpsertAll(final Collection<T> beans) throws DaoException {
+		final int[] result = new int[beans.size()];
+		int i = 0;
+		for (final T bean : beans) {
+			result[i++] = doUpsert(bean);
+		}
+		return result;
+	}
+
+	/**
+	 * Columna con el identificador de la tabla. Debe sobreescribirse para
+	 * usar {@link #findAllByIds(Collection)} y {@link #page(Object, int)}.
+	 * 
+	 * @return Nombre de la columna.
+	 */
+	protected String getIdColumn() {
+		throw new UnsupportedOperationException(
+				String.format("%s does not declare its id column", getClass().getName()));
+	}
+
+	/**
+	 * Traducción de una fila completa de la tabla. Debe sobreescribirse para
+	 * usar {@link #findAllByIds(Collection)} y {@link #page(Object, int)}.
+	 * 
+	 * @return Mapper de filas de la tabla.
+	 */
+	protected RowMapper<T> getRowMapper() {
+		throw new UnsupportedOperationException(
+				String.format("%s does not declare its row mapper", getClass().getName()));
+	}
+
+	/**
+	 * Inicio de las consultas que leen filas completas de la tabla para
+	 * {@link #getRowMapper()}, sobre el que se añaden las condiciones.
+	 * 
+	 * @return "SELECT * FROM tabla alias" por defecto.
+	 */
+	protected String getSelectFrom() {
+		return SELECT_ALL.concat(getTableAndAlias());
+	}
+
+	/**
+	 * Identificador del elemento, usado como clave de la {@link EntityCache}.
+	 * Debe sobreescribirse para poder configurar una.
+	 * 
+	 * @param bean
+	 *            Elemento.
+	 * @return Identificador del elemento.
+	 */
+	public Object getId(final T bean) {
+		throw new UnsupportedOperationException(
+				String.format("%s does not expose entity ids", getClass().getName()));
+	}
+
+	private void invalidate(final T bean) {
+		if (entityCache != null) {
+			entityCache.invalidate(idKey(getId(bean)));
+		}
+	}
+
+	private void invalidateAll(final Collection<T> beans) {
+		if (entityCache != null) {
+			for (final T bean : beans) {
+				entityCache.invalidate(idKey(getId(bean)));
+			}
+		}
+	}
+
+	/**
+	 * Ejecuta una consulta devolviendo únicamente el primero de los resultados
 	 * si los hubiera, nulo en caso contrario.
 	 * 
 	 * @param parametrized
 	 *            Objeto ParametrizedQuery que ha sido preparado para lanzar una
 	 *            consulta.
-	 * @return Objeto correspondiente a la primera posicin del resultado de la
+	 * @return Objeto correspondiente a la primera posición del resultado de la
 	 *         consulta. Nulo si no hubiera resultado.
 	 * @throws DaoException
 	 *             Si ocurre cualquier problema en la consulta.
 	 */
 	public T getFirstRecord(ParametrizedQuery<T> parametrized) throws DaoException {
-		T result = null;
-		List<T> list = null;
 		try {
-			list = parametrized.select();
+			if (prepare(parametrized).getResultCache() != null) {
+				final List<T> list = parametrized.select();
+				return list.isEmpty() ? null : list.get(0);
+			}
+			try (ResultIterator<T> iterator = parametrized.iterate()) {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
 		} catch (SQLException e) {
 			throw new DaoException(e, "Error accesing DDBB.", parametrized);
+		} catch (UncheckedSQLException e) {
+			throw new DaoException(e.getCause(), "Error accesing DDBB.", parametrized);
 		}
-		if (list != null && list.size() >= 1) {
-			result = list.get(0);
-		}
-		return result;
 	}
 
 	/**
@@ -107,22 +760,58 @@ public abstract class BaseDao<T> {
 	}
 
 	/**
-	 * Trata de ejecutar una modificacin en BBDD para el objeto
+	 * Trata de ejecutar una modificación en BBDD para el objeto
 	 * {@link ParametrizedQuery} proporcionado.
 	 * 
+	 * <p>
+	 * Dentro de una {@link UnitOfWork} no se aplaza: se lanza en el momento
+	 * sobre su conexión, tras las escrituras pendientes, y el DAO queda
+	 * anotado para descartar sus cachés al terminar la transacción.
+	 * 
 	 * @param parametrized
 	 *            {@link ParametrizedQuery} que ha sido declarado con las
 	 *            opciones para un insert/update.
-	 * @return Nmero de filas afectadas por el cambio.
+	 * @return Número de filas afectadas por el cambio.
 	 * @throws DaoException
 	 *             Si ocurre un problema en el acceso a base de datos.
 	 */
 	public int persist(final ParametrizedQuery<T> parametrized) throws DaoException {
+		joinWork();
+		try {
+			return prepare(parametrized).persist();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not persist", parametrized);
+		} finally {
+			invalidateResults();
+		}
+	}
+
+	/**
+	 * Trata de ejecutar una modificación en BBDD por cada elemento de
+	 * <b>beans</b>, enviándolas en lotes JDBC. Dentro de una {@link UnitOfWork}
+	 * se comporta como {@link #persist(ParametrizedQuery)}.
+	 * 
+	 * @param parametrized
+	 *            {@link ParametrizedQuery} que ha sido declarado con las
+	 *            opciones para un insert/update y que sabe añadir los
+	 *            parámetros de cada elemento.
+	 * @param beans
+	 *            Elementos a persistir.
+	 * @return Número de filas afectadas por cada elemento.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public int[] persistBatch(final ParametrizedQuery<T> parametrized, final Collection<T> beans)
+			throws DaoException {
+		joinWork();
 		try {
-			return parametrized.persist();
+			return prepare(parametrized).persistBatch(beans);
 		} catch (SQLException e) {
 			e.printStackTrace();
 			throw new DaoException(e, "Could not persist", parametrized);
+		} finally {
+			invalidateResults();
 		}
 	}
 
@@ -141,11 +830,359 @@ public abstract class BaseDao<T> {
 	 */
 	public List<T> select(final ParametrizedQuery<T> parametrized) throws DaoException {
 		try {
-			return parametrized.select();
+			return prepare(parametrized).select();
 		} catch (SQLException e) {
 			e.printStackTrace();
 			throw new DaoException(e, "Could not read", parametrized);
 		}
 	}
 
+	/**
+	 * Recorre el resultado de la consulta fila a fila sin materializarlo,
+	 * pensado para lecturas masivas como {@link #SELECT_ALL}. Se respeta el
+	 * fetchSize configurado en el {@link ParametrizedQuery}.
+	 * 
+	 * @param parametrized
+	 *            {@link ParametrizedQuery} que ha sido declarado con las
+	 *            opciones necesarias para un select.
+	 * @param callback
+	 *            Receptor de cada una de las filas.
+	 * @return Número de filas procesadas.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public int forEach(final ParametrizedQuery<T> parametrized, final RowCallback<T> callback) throws DaoException {
+		try {
+			return prepare(parametrized).forEach(callback);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not read", parametrized);
+		}
+	}
+
+	/**
+	 * Ejecuta una {@link CompiledQuery} devolviendo únicamente la primera
+	 * fila, sin leer el resto del resultado.
+	 * 
+	 * @param compiled
+	 *            Consulta a lanzar.
+	 * @param params
+	 *            Valores de las variables bind.
+	 * @return Objeto correspondiente a la primera fila del resultado. Nulo si
+	 *         no hubiera resultado.
+	 * @throws DaoException
+	 *             Si ocurre cualquier problema en la consulta.
+	 */
+	public T selectFirst(final CompiledQuery<T> compiled, final Object... params) throws DaoException {
+		try {
+			final Connection borrowed = getConnection();
+			try {
+				return compiled.selectFirst(borrowed, statementCache(compiled), params);
+			} finally {
+				releaseConnection(borrowed);
+			}
+		} catch (SQLException e) {
+			throw new DaoException(e, "Error accesing DDBB.", compiled, params);
+		}
+	}
+
+	/**
+	 * Ejecuta una {@link CompiledQuery} y traduce todas las filas.
+	 * 
+	 * @param compiled
+	 *            Consulta a lanzar.
+	 * @param params
+	 *            Valores de las variables bind.
+	 * @return Listado del tipo parametrizado correspondiente al resultado de la
+	 *         consulta.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public List<T> select(final CompiledQuery<T> compiled, final Object... params) throws DaoException {
+		try {
+			final Connection borrowed = getConnection();
+			try {
+				return compiled.select(borrowed, statementCache(compiled), params);
+			} finally {
+				releaseConnection(borrowed);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not read", compiled, params);
+		}
+	}
+
+	/**
+	 * Ejecuta una modificación declarada como {@link CompiledQuery} con los
+	 * parámetros indicados.
+	 * 
+	 * @param compiled
+	 *            Modificación a lanzar.
+	 * @param params
+	 *            Valores de las variables bind.
+	 * @return Número de filas afectadas por el cambio,
+	 *         {@link Statement#SUCCESS_NO_INFO} si se ha encolado en una
+	 *         {@link UnitOfWork}.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public int persist(final CompiledQuery<T> compiled, final Object... params) throws DaoException {
+		final UnitOfWork work = UnitOfWork.currentFor(this);
+		if (work != null) {
+			work.defer(this, compiled, params);
+			return Statement.SUCCESS_NO_INFO;
+		}
+		try {
+			final Connection borrowed = getConnection();
+			try {
+				return compiled.persist(borrowed, statementCache(compiled), params);
+			} finally {
+				releaseConnection(borrowed);
+				invalidateResults();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not persist", compiled, params);
+		}
+	}
+
+	/**
+	 * Ejecuta una modificación declarada como {@link CompiledQuery} con los
+	 * parámetros que su binder extrae del bean.
+	 * 
+	 * @param compiled
+	 *            Modificación a lanzar.
+	 * @param bean
+	 *            Bean a persistir.
+	 * @return Número de filas afectadas por el cambio,
+	 *         {@link Statement#SUCCESS_NO_INFO} si se ha encolado en una
+	 *         {@link UnitOfWork}.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public int persistBean(final CompiledQuery<T> compiled, final T bean) throws DaoException {
+		final UnitOfWork work = UnitOfWork.currentFor(this);
+		if (work != null) {
+			work.defer(this, compiled, bean);
+			return Statement.SUCCESS_NO_INFO;
+		}
+		try {
+			final Connection borrowed = getConnection();
+			try {
+				return compiled.persistBean(borrowed, statementCache(compiled), bean);
+			} finally {
+				releaseConnection(borrowed);
+				invalidateResults();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not persist", compiled, bean);
+		}
+	}
+
+	/**
+	 * Ejecuta una modificación declarada como {@link CompiledQuery} por cada
+	 * bean, enviándolas en lotes JDBC.
+	 * 
+	 * @param compiled
+	 *            Modificación a lanzar.
+	 * @param beans
+	 *            Beans a persistir.
+	 * @return Número de filas afectadas por cada bean,
+	 *         {@link Statement#SUCCESS_NO_INFO} si se han encolado en una
+	 *         {@link UnitOfWork}.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public int[] persistBatch(final CompiledQuery<T> compiled, final Collection<T> beans) throws DaoException {
+		final UnitOfWork work = UnitOfWork.currentFor(this);
+		if (work != null) {
+			final int[] result = new int[beans.size()];
+			int i = 0;
+			for (final T bean : beans) {
+				work.defer(this, compiled, bean);
+				result[i++] = Statement.SUCCESS_NO_INFO;
+			}
+			return result;
+		}
+		try {
+			final Connection borrowed = getConnection();
+			try {
+				return compiled.persistBatch(borrowed, statementCache(compiled), beans);
+			} finally {
+				releaseConnection(borrowed);
+				invalidateResults();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not persist", compiled);
+		}
+	}
+
+	/**
+	 * Anota el DAO en la {@link UnitOfWork} activa, si participa en una, para
+	 * las escrituras que se lanzan en el momento en lugar de encolarse.
+	 */
+	final void joinWork() {
+		final UnitOfWork work = UnitOfWork.currentFor(this);
+		if (work != null) {
+			work.touch(this);
+		}
+	}
+
+	/**
+	 * Toma prestada una conexión para ejecutar una {@link CompiledQuery}.
+	 * 
+	 * @return Conexión que debe liberarse con
+	 *         {@link #releaseConnection(Connection)}.
+	 * @throws SQLException
+	 *             Si no se puede obtener la conexión.
+	 */
+	protected Connection getConnection() throws SQLException {
+		return ConnectionBinding.getConnection(getDataSource());
+	}
+
+	/**
+	 * Devuelve una conexión obtenida con {@link #getConnection()}.
+	 * 
+	 * @param borrowed
+	 *            Conexión prestada.
+	 * @throws SQLException
+	 *             Si falla la devolución.
+	 */
+	protected void releaseConnection(final Connection borrowed) throws SQLException {
+		borrowed.close();
+	}
+
+	/**
+	 * Descarta de la {@link ResultCache} del DAO los resultados que leen de
+	 * {@link #getTableName()}. Se invoca tras cada modificación lanzada a
+	 * través del DAO.
+	 */
+	protected void invalidateResults() {
+		if (resultCache != null) {
+			resultCache.invalidateTable(getTableName());
+		}
+	}
+
+	StatementCache statementCache(final CompiledQuery<?> compiled) {
+		return compiled.getStatementCache() != null ? compiled.getStatementCache() : statementCache;
+	}
+
+	/**
+	 * Traslada a la consulta la configuración común del DAO, como la caché de
+	 * sentencias, salvo que la consulta ya tuviera la suya propia.
+	 * 
+	 * @param parametrized
+	 *            Consulta que va a ejecutarse.
+	 * @return La misma consulta recibida.
+	 */
+	protected ParametrizedQuery<T> prepare(final ParametrizedQuery<T> parametrized) {
+		if (statementCache != null && parametrized.getStatementCache() == null) {
+			parametrized.setStatementCache(statementCache);
+		}
+		return parametrized;
+	}
+
+	/**
+	 * Origen de las conexiones con el que deben declararse las consultas del
+	 * DAO. Si el DAO se creó con una conexión, se expone como un
+	 * {@link DataSource} que siempre la devuelve a ella.
+	 * 
+	 * @return the dataSource
+	 */
+	public DataSource getDataSource() {
+		DataSource current = dataSource;
+		if (current == null && connection != null) {
+			synchronized (this) {
+				current = dataSource;
+				if (current == null) {
+					current = new SingleConnectionDataSource(connection);
+					dataSource = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @return Executor de las variantes asíncronas. Si no se ha configurado
+	 *         ninguno se usa {@link QueryExecutors#forDataSource(DataSource)},
+	 *         que limita las tareas simultáneas al tamaño del pool.
+	 */
+	public Executor getExecutor() {
+		return executor != null ? executor : QueryExecutors.forDataSource(getDataSource());
+	}
+
+	/**
+	 * @param executor
+	 *            the executor to set
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the statementCache
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	/**
+	 * Activa la reutilización de sentencias preparadas para todas las consultas
+	 * lanzadas a través de este DAO. Si el DAO usa un {@link ConnectionPool} la
+	 * caché se registra en él para que descarte las sentencias de las
+	 * conexiones que el pool cierre.
+	 * 
+	 * @param statementCache
+	 *            the statementCache to set
+	 */
+	public void setStatementCache(StatementCache statementCache) {
+		this.statementCache = statementCache;
+		if (statementCache != null && dataSource instanceof ConnectionPool) {
+			((ConnectionPool) dataSource).addStatementCache(statementCache);
+		}
+	}
+
+	/**
+	 * @return the entityCache
+	 */
+	public EntityCache<Object, T> getEntityCache() {
+		return entityCache;
+	}
+
+	/**
+	 * Activa la caché de entidades para {@link #findById(Object)}. Requiere que
+	 * el DAO implemente {@link #getId(Object)}. Solo ve las modificaciones
+	 * lanzadas a través de este DAO, por lo que no debe usarse con tablas que
+	 * se modifiquen por otras vías. Los identificadores enteros se guardan
+	 * como Long.
+	 * 
+	 * @param entityCache
+	 *            the entityCache to set
+	 */
+	public void setEntityCache(EntityCache<Object, T> entityCache) {
+		this.entityCache = entityCache;
+	}
+
+	/**
+	 * @return the resultCache
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Caché de resultados que el DAO invalida para su tabla en cada
+	 * modificación. Las consultas que quieran usarla deben activarla con
+	 * {@link ParametrizedQuery#setResultCache(ResultCache)}.
+	 * 
+	 * @param resultCache
+	 *            the resultCache to set
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
 }
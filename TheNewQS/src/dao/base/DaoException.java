@@ -89,7 +89,7 @@ public class DaoException extends Exception {
 	@Override
 	public String toString() {
 		return "DaoException [encapsulatedException=" + encapsulatedException + ", errorCode=" + errorCode + ", motive="
-				+ Arrays.toString(motive) + ", stack=" + Arrays.toString(stack) + "]";
+				+ Arrays.deepToString(motive) + ", stack=" + Arrays.toString(stack) + "]";
 	}
 
 }
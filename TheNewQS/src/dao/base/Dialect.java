@@ -0,0 +1,190 @@
+package dao.base;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Variantes de SQL según el gestor de BBDD, usadas por {@link EntityDao} para
+ * los insert de varias filas y los upsert.
+ *
+ * <p>
+ * {@link #detect(Connection)} elige {@link #MYSQL} para MySQL 8.0.19 o
+ * posterior, {@link #MARIADB} para MariaDB y versiones anteriores de MySQL, y
+ * {@link #STANDARD} para el resto de gestores.
+ *
+ * @author fferezsa
+ *
+ */
+public enum Dialect {
+
+	/**
+	 * MySQL 8.0.19 y posteriores:
+	 * <code>INSERT ... VALUES (...) AS new ON DUPLICATE KEY UPDATE col = new.col</code>,
+	 * con alias de fila en lugar de la función <code>VALUES(col)</code>,
+	 * obsoleta desde 8.0.20. El tamaño de cada sentencia está limitado por
+	 * <code>max_allowed_packet</code>.
+	 */
+	MYSQL(65535) {
+
+		@Override
+		String upsertRows(final String table, final List<String> columns, final int rows) {
+			return onDuplicateKey(insertRows(table, columns, rows) + " AS new", columns, "new.", "");
+		}
+	},
+
+	/**
+	 * MariaDB y MySQL anteriores a 8.0.19, que no admiten alias de fila:
+	 * <code>INSERT ... ON DUPLICATE KEY UPDATE col = VALUES(col)</code>. El
+	 * tamaño de cada sentencia está limitado por
+	 * <code>max_allowed_packet</code>.
+	 */
+	MARIADB(65535) {
+
+		@Override
+		String upsertRows(final String table, final List<String> columns, final int rows) {
+			return onDuplicateKey(insertRows(table, columns, rows), columns, "VALUES(", BaseDao.CLOSE_PARENTHESIS);
+		}
+	},
+
+	/**
+	 * SQL estándar: <code>MERGE INTO ... USING (VALUES ...)</code>, admitido
+	 * por H2, PostgreSQL 15 y Oracle 23 entre otros.
+	 */
+	STANDARD(2000) {
+
+		@Override
+		String upsertRows(final String table, final List<String> columns, final int rows) {
+			final String id = columns.get(0);
+			final StringBuilder sb = new StringBuilder("MERGE INTO ");
+			sb.append(table).append(" USING (VALUES ");
+			appendRows(sb, columns.size(), rows);
+			sb.append(") S(");
+			appendColumns(sb, columns, "");
+			sb.append(") ON (").append(table).append('.').append(id).append(" = S.").append(id).append(')');
+			if (columns.size() > 1) {
+				sb.append(" WHEN MATCHED THEN UPDATE SET ");
+				for (int i = 1; i < columns.size(); i++) {
+					if (i > 1) {
+						sb.append(BaseDao.COMA);
+					}
+					sb.append(columns.get(i)).append(" = S.").append(columns.get(i));
+				}
+			}
+			sb.append(" WHEN NOT MATCHED THEN INSERT (");
+			appendColumns(sb, columns, "");
+			sb.append(") VALUES (");
+			appendColumns(sb, columns, "S.");
+			sb.append(')');
+			return sb.toString();
+		}
+	};
+
+	private static final Pattern VERSION = Pattern.compile("(\\d+)\\.(\\d+)\\.(\\d+)");
+
+	private final int maxParameters;
+
+	private Dialect(final int maxParameters) {
+		this.maxParameters = maxParameters;
+	}
+
+	/**
+	 * Deduce el dialecto del gestor al que apunta la conexión.
+	 *
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @return {@link #MYSQL} para MySQL 8.0.19 o posterior, {@link #MARIADB}
+	 *         para MariaDB y MySQL anteriores, {@link #STANDARD} para el resto.
+	 * @throws SQLException
+	 *             Si no se pueden leer los metadatos de la conexión.
+	 */
+	public static Dialect detect(final Connection connection) throws SQLException {
+		final DatabaseMetaData metaData = connection.getMetaData();
+		final String product = metaData.getDatabaseProductName();
+		if (product == null || !product.contains("MySQL") && !product.contains("MariaDB")) {
+			return STANDARD;
+		}
+		final String version = metaData.getDatabaseProductVersion();
+		if (product.contains("MariaDB") || version == null || version.contains("MariaDB")) {
+			return MARIADB;
+		}
+		final Matcher matcher = VERSION.matcher(version);
+		if (!matcher.lookingAt()) {
+			return MARIADB;
+		}
+		final int major = Integer.parseInt(matcher.group(1));
+		final int minor = Integer.parseInt(matcher.group(2));
+		final int patch = Integer.parseInt(matcher.group(3));
+		return major > 8 || major == 8 && (minor > 0 || patch >= 19) ? MYSQL : MARIADB;
+	}
+
+	/**
+	 * @return Número máximo de variables bind por sentencia.
+	 */
+	public int getMaxParameters() {
+		return maxParameters;
+	}
+
+	/**
+	 * @return <code>INSERT INTO tabla(columnas) VALUES (?, ...), ...</code>
+	 *         con <b>rows</b> filas.
+	 */
+	String insertRows(final String table, final List<String> columns, final int rows) {
+		final StringBuilder sb = new StringBuilder(BaseDao.INSERT_INTO);
+		sb.append(table).append(BaseDao.OPEN_PARENTHESIS);
+		appendColumns(sb, columns, "");
+		sb.append(BaseDao.CLOSE_PARENTHESIS).append(BaseDao.VALUES);
+		appendRows(sb, columns.size(), rows);
+		return sb.toString();
+	}
+
+	/**
+	 * @return Sentencia que inserta <b>rows</b> filas, o actualiza las que ya
+	 *         existan con el identificador de la primera columna.
+	 */
+	abstract String upsertRows(String table, List<String> columns, int rows);
+
+	/**
+	 * @return La sentencia con
+	 *         <code>ON DUPLICATE KEY UPDATE col = prefijo col sufijo</code>
+	 *         para cada columna salvo el identificador.
+	 */
+	private static String onDuplicateKey(final String insert, final List<String> columns, final String prefix,
+			final String suffix) {
+		final StringBuilder sb = new StringBuilder(insert);
+		sb.append(" ON DUPLICATE KEY UPDATE ");
+		if (columns.size() == 1) {
+			sb.append(columns.get(0)).append(" = ").append(columns.get(0));
+		}
+		for (int i = 1; i < columns.size(); i++) {
+			if (i > 1) {
+				sb.append(BaseDao.COMA);
+			}
+			sb.append(columns.get(i)).append(" = ").append(prefix).append(columns.get(i)).append(suffix);
+		}
+		return sb.toString();
+	}
+
+	private static void appendColumns(final StringBuilder sb, final List<String> columns, final String prefix) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				sb.append(BaseDao.COMA);
+			}
+			sb.append(prefix).append(columns.get(i));
+		}
+	}
+
+	private static void appendRows(final StringBuilder sb, final int columns, final int rows) {
+		for (int row = 0; row < rows; row++) {
+			sb.append(row == 0 ? "(" : ", (");
+			for (int i = 0; i < columns; i++) {
+				sb.append(i == 0 ? "?" : ", ?");
+			}
+			sb.append(')');
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package dao.base;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Sentencias de upsert de cada {@link Dialect}.
+ */
+public class DialectTest {
+
+	private static final List<String> COLUMNS = Arrays.asList("id", "nombre", "fecha");
+
+	@Test
+	public void mysqlUsesRowAlias() {
+		assertEquals("INSERT INTO t(id, nombre, fecha) VALUES (?, ?, ?), (?, ?, ?) AS new"
+				+ " ON DUPLICATE KEY UPDATE nombre = new.nombre, fecha = new.fecha",
+				Dialect.MYSQL.upsertRows("t", COLUMNS, 2));
+	}
+
+	@Test
+	public void mariadbUsesValuesFunction() {
+		assertEquals("INSERT INTO t(id, nombre, fecha) VALUES (?, ?, ?)"
+				+ " ON DUPLICATE KEY UPDATE nombre = VALUES(nombre), fecha = VALUES(fecha)",
+				Dialect.MARIADB.upsertRows("t", COLUMNS, 1));
+	}
+
+	@Test
+	public void standardUsesMerge() {
+		assertEquals("MERGE INTO t USING (VALUES (?, ?, ?)) S(id, nombre, fecha) ON (t.id = S.id)"
+				+ " WHEN MATCHED THEN UPDATE SET nombre = S.nombre, fecha = S.fecha"
+				+ " WHEN NOT MATCHED THEN INSERT (id, nombre, fecha) VALUES (S.id, S.nombre, S.fecha)",
+				Dialect.STANDARD.upsertRows("t", COLUMNS, 1));
+	}
+
+}
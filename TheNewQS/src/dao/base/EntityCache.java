@@ -0,0 +1,394 @@
+package dao.base;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de entidades por identificador usada por
+ * {@link BaseDao#findById(Object)}.
+ *
+ * <p>
+ * Mantiene como máximo <b>maxSize</b> entidades, expulsando la usada hace más
+ * tiempo, y opcionalmente las descarta al superar <b>ttlMillis</b> desde que
+ * se cargaron. Si varios hilos piden a la vez una misma clave ausente solo uno
+ * de ellos la carga y el resto espera su resultado.
+ *
+ * <p>
+ * Las entidades se comparten entre todos los que las obtienen, por lo que
+ * deben tratarse como de solo lectura.
+ *
+ * @author fferezsa
+ *
+ * @param <K>
+ *            Tipo del identificador.
+ * @param <V>
+ *            Tipo de la entidad.
+ */
+public class EntityCache<K, V> {
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final LinkedHashMap<K, Cached<V>> entries;
+	private final ConcurrentMap<K, Load<V>> loading = new ConcurrentHashMap<K, Load<V>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong loadFailures = new AtomicLong();
+	private final AtomicLong loadNanos = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+
+	/**
+	 * Crea una caché sin caducidad.
+	 *
+	 * @param maxSize
+	 *            Número máximo de entidades.
+	 */
+	public EntityCache(final int maxSize) {
+		this(maxSize, 0);
+	}
+
+	/**
+	 * @param maxSize
+	 *            Número máximo de entidades.
+	 * @param ttlMillis
+	 *            Tiempo de vida de cada entidad desde que se carga, 0 para que
+	 *            no caduquen.
+	 */
+	public EntityCache(final int maxSize, final long ttlMillis) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be 1 or more");
+		}
+		if (ttlMillis < 0) {
+			throw new IllegalArgumentException("TTL must be 0 or more");
+		}
+		this.maxSize = maxSize;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.entries = new LinkedHashMap<K, Cached<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Cached<V>> eldest) {
+				if (size() > EntityCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Obtiene la entidad de la caché o la carga con <b>loader</b> si no está o
+	 * ha caducado. Los resultados nulos no se guardan.
+	 *
+	 * @param key
+	 *            Identificador de la entidad.
+	 * @param loader
+	 *            Carga de la entidad desde BBDD.
+	 * @return Entidad, null si no existe.
+	 * @throws DaoException
+	 *             Si falla la carga.
+	 */
+	public V get(final K key, final Loader<V> loader) throws DaoException {
+		final V cached = getIfPresent(key);
+		if (cached != null) {
+			return cached;
+		}
+		misses.incrementAndGet();
+		Load<V> current = loading.get(key);
+		if (current == null) {
+			final Load<V> created = new Load<V>();
+			created.task = new FutureTask<V>(() -> load(key, loader, created));
+			current = loading.putIfAbsent(key, created);
+			if (current == null) {
+				current = created;
+				try {
+					current.task.run();
+				} finally {
+					loading.remove(key, current);
+				}
+			}
+		}
+		try {
+			return current.task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DaoException(e, "Interrupted waiting for entity", key);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof DaoException) {
+				throw (DaoException) cause;
+			}
+			throw new DaoException((Exception) cause, "Could not load entity", key);
+		}
+	}
+
+	/**
+	 * @param key
+	 *            Identificador de la entidad.
+	 * @return Entidad si está en caché y no ha caducado, null en otro caso.
+	 */
+	public V getIfPresent(final K key) {
+		synchronized (entries) {
+			final Cached<V> entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (ttlNanos > 0 && System.nanoTime() - entry.loadedAt > ttlNanos) {
+				entries.remove(key);
+				expirations.incrementAndGet();
+				return null;
+			}
+			hits.incrementAndGet();
+			return entry.value;
+		}
+	}
+
+	/**
+	 * Como {@link #getIfPresent(Object)}, pero cuenta un fallo si la entidad
+	 * no está, para las búsquedas que la cargan por su cuenta.
+	 *
+	 * @param key
+	 *            Identificador de la entidad.
+	 * @return Entidad si está en caché y no ha caducado, null en otro caso.
+	 */
+	V getOrMiss(final K key) {
+		final V cached = getIfPresent(key);
+		if (cached == null) {
+			misses.incrementAndGet();
+		}
+		return cached;
+	}
+
+	/**
+	 * Guarda una entidad, típicamente recién insertada.
+	 *
+	 * @param key
+	 *            Identificador de la entidad.
+	 * @param value
+	 *            Entidad, si es null equivale a {@link #invalidate(Object)}.
+	 */
+	public void put(final K key, final V value) {
+		if (value == null) {
+			invalidate(key);
+			return;
+		}
+		synchronized (entries) {
+			entries.put(key, new Cached<V>(value));
+		}
+	}
+
+	/**
+	 * Descarta una entidad, típicamente modificada o borrada. Una carga de la
+	 * misma que estuviera en curso no llegará a guardarse, y quien la pida a
+	 * partir de ahora lanza una carga nueva en lugar de esperar a esa.
+	 *
+	 * @param key
+	 *            Identificador de la entidad.
+	 */
+	public void invalidate(final K key) {
+		synchronized (entries) {
+			final Load<V> current = loading.remove(key);
+			if (current != null) {
+				current.stale = true;
+			}
+			entries.remove(key);
+		}
+	}
+
+	/**
+	 * Descarta todas las entidades y las cargas en curso.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			for (final Load<V> current : loading.values()) {
+				current.stale = true;
+			}
+			loading.clear();
+			entries.clear();
+		}
+	}
+
+	private V load(final K key, final Loader<V> loader, final Load<V> current) throws DaoException {
+		final long start = System.nanoTime();
+		loads.incrementAndGet();
+		try {
+			final V value = loader.load();
+			if (value != null) {
+				synchronized (entries) {
+					if (!current.stale) {
+						entries.put(key, new Cached<V>(value));
+					}
+				}
+			}
+			return value;
+		} catch (DaoException e) {
+			loadFailures.incrementAndGet();
+			throw e;
+		} catch (RuntimeException e) {
+			loadFailures.incrementAndGet();
+			throw e;
+		} finally {
+			loadNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return Copia de las entidades vigentes, de la usada hace más tiempo a la
+	 *         más reciente, sin contar como accesos.
+	 */
+	public List<V> values() {
+		final long now = System.nanoTime();
+		synchronized (entries) {
+			final List<V> values = new ArrayList<V>(entries.size());
+			for (final Cached<V> entry : entries.values()) {
+				if (ttlNanos <= 0 || now - entry.loadedAt <= ttlNanos) {
+					values.add(entry.value);
+				}
+			}
+			return values;
+		}
+	}
+
+	/**
+	 * @return Número de entidades en caché.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return Número de peticiones servidas desde la caché.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Número de peticiones que no estaban en caché.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Proporción de peticiones servidas desde la caché, entre 0 y 1.
+	 */
+	public double getHitRatio() {
+		final long h = hits.get();
+		final long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * @return Número de cargas desde BBDD. Es menor que los fallos cuando se
+	 *         han agrupado peticiones simultáneas.
+	 */
+	public long getLoads() {
+		return loads.get();
+	}
+
+	/**
+	 * @return Número de cargas que han terminado con error.
+	 */
+	public long getLoadFailures() {
+		return loadFailures.get();
+	}
+
+	/**
+	 * @return Tiempo medio de carga, en microsegundos.
+	 */
+	public long getAverageLoadMicros() {
+		final long count = loads.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(loadNanos.get() / count);
+	}
+
+	/**
+	 * @return Número de entidades expulsadas por tamaño.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return Número de entidades descartadas por caducidad.
+	 */
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "EntityCache [maxSize=" + maxSize + ", size=" + size() + ", hits=" + hits + ", misses=" + misses
+				+ ", loads=" + loads + ", loadFailures=" + loadFailures + ", averageLoadMicros="
+				+ getAverageLoadMicros() + ", evictions=" + evictions + ", expirations=" + expirations + "]";
+	}
+
+	/**
+	 * Carga una entidad que no está en caché.
+	 *
+	 * @param <V>
+	 *            Tipo de la entidad.
+	 */
+	public interface Loader<V> {
+
+		V load() throws DaoException;
+
+	}
+
+	/**
+	 * Carga en curso de una clave. Se marca como obsoleta si la clave se
+	 * invalida antes de que termine.
+	 */
+	private static final class Load<V> {
+
+		private FutureTask<V> task;
+		private boolean stale;
+	}
+
+	/**
+	 * Entidad junto con el momento en que se cargó.
+	 */
+	private static final class Cached<V> {
+
+		private final V value;
+		private final long loadedAt;
+
+		private Cached(final V value) {
+			this.value = value;
+			this.loadedAt = System.nanoTime();
+		}
+	}
+
+}
@@ -0,0 +1,421 @@
+package dao.base;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import query.CompiledQuery;
+import query.mapper.RowMapper;
+import state.Snapshot;
+import state.SnapshotStore;
+
+/**
+ * Implementación completa de {@link BaseDao} a partir de un
+ * {@link EntityMetadata}. Las sentencias de búsqueda por identificador,
+ * inserción, actualización y borrado se generan una única vez por entidad, de
+ * modo que ninguna operación construye cadenas; basta con declarar la
+ * descripción de la entidad y los constructores:
+ *
+ * <pre>
+ * public class AlianzaDao extends EntityDao&lt;Alianza&gt; {
+ *
+ * 	public AlianzaDao(final DataSource dataSource) {
+ * 		super(dataSource, METADATA);
+ * 	}
+ * }
+ * </pre>
+ *
+ * <p>
+ * {@link #upsert(Object)} y {@link #upsertAll(Collection)} usan la sentencia
+ * del {@link Dialect} del gestor, que se detecta con la primera de ellas. Los
+ * upsert de varios elementos, y los insert si se activa
+ * {@link #setMultiRowInsert(boolean)}, se agrupan en sentencias
+ * <code>VALUES (...), (...)</code> de hasta {@link #getMaxRowsPerStatement()}
+ * filas sin superar {@link #getMaxPacketBytes()}, con un único viaje a BBDD
+ * por grupo. Para que solo existan unas pocas variantes de cada sentencia, el
+ * número de filas de cada grupo es siempre una potencia de dos. Dentro de una
+ * {@link UnitOfWork} no se aplazan: se lanzan tras las escrituras pendientes.
+ *
+ * <p>
+ * Las subclases pueden añadir sus propias consultas apoyándose en
+ * {@link #getSelectFrom()} y {@link #getRowMapper()}.
+ *
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo de la entidad.
+ */
+public class EntityDao<T> extends BaseDao<T> {
+
+	/**
+	 * Tamaño máximo de paquete de MySQL 5.7 por defecto, que se usa si no se
+	 * puede consultar.
+	 */
+	public static final long DEFAULT_PACKET_BYTES = 4L * 1024 * 1024;
+
+	private static final CompiledQuery<Long> MAX_ALLOWED_PACKET = new CompiledQuery<Long>(Long.class,
+			"SELECT @@max_allowed_packet");
+
+	protected final EntityMetadata<T> metadata;
+	private volatile Dialect dialect;
+	private volatile long maxPacketBytes;
+	private int maxRowsPerStatement = 512;
+	private boolean multiRowInsert;
+
+	/**
+	 * Todas las operaciones se lanzan por la misma conexión.
+	 *
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param metadata
+	 *            Descripción de la entidad.
+	 */
+	public EntityDao(final Connection connection, final EntityMetadata<T> metadata) {
+		super(connection);
+		this.metadata = metadata;
+		metadata.compiled();
+	}
+
+	/**
+	 * Cada operación toma prestada una conexión del {@link DataSource}.
+	 *
+	 * @param dataSource
+	 *            Origen de las conexiones con la BBDD.
+	 * @param metadata
+	 *            Descripción de la entidad.
+	 */
+	public EntityDao(final DataSource dataSource, final EntityMetadata<T> metadata) {
+		super(dataSource);
+		this.metadata = metadata;
+		metadata.compiled();
+	}
+
+	@Override
+	protected T doFindById(final T bean) throws DaoException {
+		return selectFirst(metadata.findByIdQuery(), metadata.getId(bean));
+	}
+
+	@Override
+	protected int doInsert(final T bean) throws DaoException {
+		return persistBean(metadata.insertQuery(), bean);
+	}
+
+	@Override
+	protected int[] doInsertAll(final Collection<T> beans) throws DaoException {
+		if (multiRowInsert) {
+			return persistRows(false, beans);
+		}
+		return persistBatch(metadata.insertQuery(), beans);
+	}
+
+	@Override
+	protected int doUpsert(final T bean) throws DaoException {
+		return persistRows(metadata.rowsQuery(getDialect(), true, 1), Collections.singletonList(bean));
+	}
+
+	@Override
+	protected int[] doUpsertAll(final Collection<T> beans) throws DaoException {
+		return persistRows(true, beans);
+	}
+
+	@Override
+	protected int doUpdate(final T bean) throws DaoException {
+		return persistBean(updateQuery(), bean);
+	}
+
+	@Override
+	protected int[] doUpdateAll(final Collection<T> beans) throws DaoException {
+		return persistBatch(updateQuery(), beans);
+	}
+
+	@Override
+	protected int doDelete(final T bean) throws DaoException {
+		return persistBean(metadata.deleteQuery(), bean);
+	}
+
+	@Override
+	protected int[] doDeleteAll(final Collection<T> beans) throws DaoException {
+		return persistBatch(metadata.deleteQuery(), beans);
+	}
+
+	/**
+	 * Lanza los elementos en grupos de varias filas. Cada grupo se cierra al
+	 * alcanzar el máximo de filas, de variables bind o de bytes, y se recorta
+	 * a la potencia de dos inferior; las filas sobrantes pasan al siguiente.
+	 * Dentro de una {@link UnitOfWork} los grupos se lanzan en el momento,
+	 * tras las escrituras pendientes, en lugar de encolarse.
+	 */
+	private int[] persistRows(final boolean upsert, final Collection<T> beans) throws DaoException {
+		final List<T> list = beans instanceof List ? (List<T>) beans : new ArrayList<T>(beans);
+		final int[] result = new int[list.size()];
+		if (list.isEmpty()) {
+			return result;
+		}
+		final Dialect current = getDialect();
+		final int columns = metadata.getColumnNames().size();
+		final int maxRows = Math.max(1, Math.min(maxRowsPerStatement, current.getMaxParameters() / columns));
+		final long maxBytes = getMaxPacketBytes() - 1024;
+		int from = 0;
+		while (from < list.size()) {
+			int count = 0;
+			long bytes = 0;
+			while (from + count < list.size() && count < maxRows) {
+				final long row = metadata.estimateBytes(list.get(from + count)) + 3L * columns;
+				if (count > 0 && bytes + row > maxBytes) {
+					break;
+				}
+				bytes += row;
+				count++;
+			}
+			final int rows = Integer.highestOneBit(count);
+			final int affected = persistRows(metadata.rowsQuery(current, upsert, rows),
+					list.subList(from, from + rows));
+			final boolean exact = affected == rows && !(upsert && current != Dialect.STANDARD);
+			Arrays.fill(result, from, from + rows, exact ? 1 : Statement.SUCCESS_NO_INFO);
+			from += rows;
+		}
+		return result;
+	}
+
+	private int persistRows(final CompiledQuery<List<T>> compiled, final List<T> rows) throws DaoException {
+		joinWork();
+		try {
+			final Connection borrowed = getConnection();
+			try {
+				return compiled.persistBean(borrowed, statementCache(compiled), rows);
+			} finally {
+				releaseConnection(borrowed);
+				invalidateResults();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not persist", compiled, rows.size());
+		}
+	}
+
+	private CompiledQuery<T> updateQuery() {
+		final CompiledQuery<T> update = metadata.updateQuery();
+		if (update == null) {
+			throw new UnsupportedOperationException(
+					String.format("%s has no columns to update", metadata.getTableName()));
+		}
+		return update;
+	}
+
+	@Override
+	public Object getId(final T bean) {
+		return metadata.getId(bean);
+	}
+
+	@Override
+	protected String getIdColumn() {
+		return metadata.getIdColumn();
+	}
+
+	@Override
+	protected RowMapper<T> getRowMapper() {
+		return metadata.getRowMapper();
+	}
+
+	@Override
+	protected String getSelectFrom() {
+		return metadata.getSelectFrom();
+	}
+
+	@Override
+	public String getTableName() {
+		return metadata.getTableName();
+	}
+
+	@Override
+	public String getTableAlias() {
+		return metadata.getTableAlias();
+	}
+
+	/**
+	 * Guarda las entidades de la {@link EntityCache} en <b>file</b> con
+	 * {@link SnapshotStore}, para recuperarlas con
+	 * {@link #loadCacheSnapshot(Path)} sin volver a consultarlas.
+	 * 
+	 * @param file
+	 *            Fichero de destino.
+	 * @return Número de entidades guardadas.
+	 * @throws DaoException
+	 *             Si falla la escritura.
+	 * @throws IllegalStateException
+	 *             Si el DAO no tiene caché.
+	 */
+	public int saveCacheSnapshot(final Path file) throws DaoException {
+		final EntityCache<Object, T> cache = requireEntityCache();
+		try {
+			return SnapshotStore.write(file, metadata, cache.values());
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not save cache snapshot", file);
+		}
+	}
+
+	/**
+	 * Carga en la {@link EntityCache} las entidades guardadas con
+	 * {@link #saveCacheSnapshot(Path)}, comprobando antes el checksum del
+	 * fichero.
+	 * 
+	 * @param file
+	 *            Fichero de origen.
+	 * @return Número de entidades cargadas.
+	 * @throws DaoException
+	 *             Si el fichero no puede leerse o está dañado.
+	 * @throws IllegalStateException
+	 *             Si el DAO no tiene caché.
+	 */
+	public int loadCacheSnapshot(final Path file) throws DaoException {
+		final EntityCache<Object, T> cache = requireEntityCache();
+		try (Snapshot snapshot = SnapshotStore.open(file)) {
+			final List<T> beans = snapshot.toList(metadata);
+			for (final T bean : beans) {
+				cache.put(idKey(metadata.getId(bean)), bean);
+			}
+			return beans.size();
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not load cache snapshot", file);
+		}
+	}
+
+	private EntityCache<Object, T> requireEntityCache() {
+		final EntityCache<Object, T> cache = getEntityCache();
+		if (cache == null) {
+			throw new IllegalStateException("No entity cache configured for " + getTableName());
+		}
+		return cache;
+	}
+
+	/**
+	 * @return Dialecto del gestor, que se detecta en la primera llamada si no
+	 *         se ha configurado.
+	 * @throws DaoException
+	 *             Si no se puede obtener la conexión para detectarlo.
+	 */
+	public Dialect getDialect() throws DaoException {
+		Dialect current = dialect;
+		if (current == null) {
+			try {
+				final Connection borrowed = getConnection();
+				try {
+					current = Dialect.detect(borrowed);
+				} finally {
+					releaseConnection(borrowed);
+				}
+			} catch (SQLException e) {
+				e.printStackTrace();
+				throw new DaoException(e, "Could not detect dialect", getTableName());
+			}
+			dialect = current;
+		}
+		return current;
+	}
+
+	/**
+	 * @param dialect
+	 *            the dialect to set
+	 */
+	public void setDialect(Dialect dialect) {
+		this.dialect = dialect;
+	}
+
+	/**
+	 * @return Tamaño máximo de cada sentencia de varias filas. En MySQL y
+	 *         MariaDB se lee <code>max_allowed_packet</code> la primera vez si
+	 *         no se ha configurado; en el resto {@link #DEFAULT_PACKET_BYTES}.
+	 * @throws DaoException
+	 *             Si no se puede obtener la conexión para consultarlo.
+	 */
+	public long getMaxPacketBytes() throws DaoException {
+		long current = maxPacketBytes;
+		if (current == 0) {
+			current = DEFAULT_PACKET_BYTES;
+			if (getDialect() != Dialect.STANDARD) {
+				try {
+					final Connection borrowed = getConnection();
+					try {
+						final Long allowed = MAX_ALLOWED_PACKET.selectFirst(borrowed);
+						if (allowed != null) {
+							current = allowed;
+						}
+					} finally {
+						releaseConnection(borrowed);
+					}
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+			maxPacketBytes = current;
+		}
+		return current;
+	}
+
+	/**
+	 * @param maxPacketBytes
+	 *            the maxPacketBytes to set
+	 */
+	public void setMaxPacketBytes(long maxPacketBytes) {
+		if (maxPacketBytes <= 1024) {
+			throw new IllegalArgumentException("Max packet bytes must be more than 1024");
+		}
+		this.maxPacketBytes = maxPacketBytes;
+	}
+
+	/**
+	 * @return the maxRowsPerStatement
+	 */
+	public int getMaxRowsPerStatement() {
+		return maxRowsPerStatement;
+	}
+
+	/**
+	 * @param maxRowsPerStatement
+	 *            Número máximo de filas de cada sentencia de varias filas.
+	 */
+	public void setMaxRowsPerStatement(int maxRowsPerStatement) {
+		if (maxRowsPerStatement <= 0) {
+			throw new IllegalArgumentException("Max rows per statement must be 1 or more");
+		}
+		this.maxRowsPerStatement = maxRowsPerStatement;
+	}
+
+	/**
+	 * @return the multiRowInsert
+	 */
+	public boolean isMultiRowInsert() {
+		return multiRowInsert;
+	}
+
+	/**
+	 * Hace que {@link #insertAll(Collection)} agrupe los elementos en
+	 * sentencias de varias filas en lugar de en lotes JDBC. Se lanzan de
+	 * inmediato también dentro de una {@link UnitOfWork}.
+	 * 
+	 * @param multiRowInsert
+	 *            the multiRowInsert to set
+	 */
+	public void setMultiRowInsert(boolean multiRowInsert) {
+		this.multiRowInsert = multiRowInsert;
+	}
+
+	/**
+	 * @return the metadata
+	 */
+	public EntityMetadata<T> getMetadata() {
+		return metadata;
+	}
+
+}
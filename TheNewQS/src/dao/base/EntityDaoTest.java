@@ -0,0 +1,221 @@
+package dao.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dao.impl.AlianzaDao;
+import dto.Alianza;
+
+/**
+ * Operaciones de {@link EntityDao} sobre H2 en memoria, que usa el
+ * {@link Dialect#STANDARD}.
+ */
+public class EntityDaoTest {
+
+	private Connection connection;
+	private EntityDao<Alianza> dao;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:entitydao");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table ALIANZA (ID bigint primary key, nombre varchar(40), fecha_insercion date)");
+		}
+		dao = new AlianzaDao(connection);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	private static Alianza alianza(final long id, final String nombre) {
+		final Alianza alianza = new Alianza();
+		alianza.setId(id);
+		alianza.setNombre(nombre);
+		alianza.setFechaInsercion(new Date());
+		return alianza;
+	}
+
+	@Test
+	public void upsertInsertsAndUpdatesWithMerge() throws DaoException {
+		assertSame(Dialect.STANDARD, dao.getDialect());
+		assertEquals(1, dao.upsert(alianza(1, "primera")));
+		assertEquals(1, dao.upsert(alianza(1, "cambiada")));
+		assertEquals("cambiada", dao.findById(alianza(1, null)).getNombre());
+	}
+
+	@Test
+	public void upsertAllGroupsRows() throws DaoException {
+		dao.insert(alianza(1, "a"));
+		final List<Alianza> alianzas = new ArrayList<Alianza>();
+		for (long id = 1; id <= 5; id++) {
+			alianzas.add(alianza(id, "upsert" + id));
+		}
+		dao.setMaxRowsPerStatement(4);
+		final int[] result = dao.upsertAll(alianzas);
+		assertEquals(5, result.length);
+		for (long id = 1; id <= 5; id++) {
+			assertEquals("upsert" + id, dao.findById(alianza(id, null)).getNombre());
+		}
+		assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ids());
+	}
+
+	@Test
+	public void fechaInsercionIsReadAsDate() throws DaoException {
+		final Alianza alianza = alianza(1, "a");
+		alianza.setFechaInsercion(java.sql.Date.valueOf("2024-05-17"));
+		dao.insert(alianza);
+		final Date read = dao.findById(alianza(1, null)).getFechaInsercion();
+		assertTrue(read instanceof java.sql.Date);
+		assertEquals("2024-05-17", read.toString());
+	}
+
+	@Test
+	public void findAllByIdsUsesAndFillsTheEntityCache() throws DaoException {
+		final EntityCache<Object, Alianza> cache = new EntityCache<Object, Alianza>(10);
+		dao.setEntityCache(cache);
+		final Alianza first = alianza(1, "a");
+		dao.insert(first);
+		dao.insertAll(Arrays.asList(alianza(2, "b"), alianza(3, "c")));
+		cache.clear();
+		dao.findById(alianza(1, null));
+		assertEquals(1, cache.getMisses());
+
+		final Map<Integer, Alianza> found = dao.findAllByIds(Arrays.asList(1, 2, 3, 4));
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(found.keySet()));
+		assertEquals(1, cache.getHits());
+		assertEquals(4, cache.getMisses());
+		assertEquals(3, cache.size());
+
+		assertSame(found.get(2), dao.findAllByIds(Arrays.asList(2L)).get(2L));
+		assertSame(found.get(3), dao.findById(alianza(3, null)));
+		assertEquals(3, cache.getHits());
+		assertEquals(4, cache.getMisses());
+	}
+
+	@Test
+	public void updateAndDeleteInvalidateTheEntityCache() throws DaoException {
+		final EntityCache<Object, Alianza> cache = new EntityCache<Object, Alianza>(10);
+		dao.setEntityCache(cache);
+		dao.insertAll(Arrays.asList(alianza(1, "a"), alianza(2, "b")));
+		assertEquals(2, cache.size());
+
+		dao.update(alianza(1, "cambiada"));
+		assertNull(cache.getIfPresent(1L));
+		assertEquals("cambiada", dao.findById(alianza(1, null)).getNombre());
+		dao.updateAll(Arrays.asList(alianza(1, "otra"), alianza(2, "otra")));
+		assertEquals(0, cache.size());
+
+		dao.findById(alianza(2, null));
+		dao.delete(alianza(2, null));
+		assertNull(cache.getIfPresent(2L));
+		assertNull(dao.findById(alianza(2, null)));
+	}
+
+	@Test
+	public void keysetCursorReadsEveryPage() throws DaoException {
+		final List<Alianza> alianzas = new ArrayList<Alianza>();
+		for (long id = 1; id <= 7; id++) {
+			alianzas.add(alianza(id * 10, "page" + id));
+		}
+		dao.insertAll(alianzas);
+		assertEquals(Arrays.asList(40L, 50L, 60L), idsOf(dao.page(30L, 3)));
+
+		final KeysetCursor<Alianza> cursor = dao.cursor(3);
+		final List<Long> read = new ArrayList<Long>();
+		while (cursor.hasNext()) {
+			read.addAll(idsOf(cursor.nextPage()));
+		}
+		assertEquals(Arrays.asList(10L, 20L, 30L, 40L, 50L, 60L, 70L), read);
+		assertEquals(3, cursor.getPages());
+		assertEquals(70L, cursor.getLastKey());
+		assertEquals(7, dao.forEachInPages(3, row -> assertTrue(row.getId() % 10 == 0)));
+	}
+
+	@Test
+	public void parallelScanReadsEveryRow() throws DaoException {
+		final List<Alianza> alianzas = new ArrayList<Alianza>();
+		for (long id = 1; id <= 50; id++) {
+			alianzas.add(alianza(id, "scan" + id));
+		}
+		dao.insertAll(alianzas);
+		final ParallelScan<Alianza> scan = dao.parallelScan();
+		scan.setPageSize(8);
+		scan.setOrdered(true);
+		final List<Long> read = new ArrayList<Long>();
+		assertEquals(50, scan.forEach(row -> read.add(row.getId())));
+		assertEquals(ids(), read);
+	}
+
+	@Test
+	public void cacheSnapshotRoundTrip() throws Exception {
+		final EntityCache<Object, Alianza> cache = new EntityCache<Object, Alianza>(10);
+		dao.setEntityCache(cache);
+		final Alianza alianza = alianza(7, "snapshot");
+		alianza.setFechaInsercion(java.sql.Date.valueOf("2024-05-17"));
+		cache.put(7L, alianza);
+		final Path file = Files.createTempFile("entitydao", ".qss");
+		try {
+			assertEquals(1, ((AlianzaDao) dao).saveCacheSnapshot(file));
+			final AlianzaDao restored = new AlianzaDao(connection);
+			restored.setEntityCache(new EntityCache<Object, Alianza>(10));
+			assertEquals(1, restored.loadCacheSnapshot(file));
+			final Alianza read = restored.getEntityCache().getIfPresent(7L);
+			assertEquals("snapshot", read.getNombre());
+			assertEquals(alianza.getFechaInsercion().getTime(), read.getFechaInsercion().getTime());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void unitOfWorkDefersAndRollsBack() throws DaoException {
+		try (UnitOfWork work = dao.beginWork()) {
+			dao.insert(alianza(1, "a"));
+			dao.insert(alianza(2, "b"));
+			assertEquals(2, work.getPendingCount());
+			assertEquals(Arrays.asList(1L, 2L), ids());
+			assertEquals(0, work.getPendingCount());
+		}
+		assertEquals(Arrays.<Long> asList(), ids());
+
+		try (UnitOfWork work = dao.beginWork()) {
+			dao.insertAll(Arrays.asList(alianza(1, "a"), alianza(2, "b")));
+			work.commit();
+			assertEquals(1, work.getBatches());
+		}
+		assertEquals(Arrays.asList(1L, 2L), ids());
+	}
+
+	private static List<Long> idsOf(final List<Alianza> alianzas) {
+		final List<Long> ids = new ArrayList<Long>();
+		for (final Alianza alianza : alianzas) {
+			ids.add(alianza.getId());
+		}
+		return ids;
+	}
+
+	private List<Long> ids() throws DaoException {
+		return idsOf(dao.page(null, 100));
+	}
+
+}
@@ -0,0 +1,538 @@
+package dao.base;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import query.CompiledQuery;
+import query.bind.TypeBinder;
+import query.bind.TypeBinders;
+import query.mapper.ColumnReader;
+import query.mapper.ColumnReaders;
+import query.mapper.RowMapper;
+
+/**
+ * Descripción de una entidad y su tabla: nombre, alias, columna
+ * identificadora y correspondencia entre columnas y propiedades. A partir de
+ * ella {@link EntityDao} genera las sentencias CRUD, el mapper y los binders,
+ * que se compilan una única vez por entidad y se comparten entre todos sus
+ * DAO.
+ *
+ * <p>
+ * Se declara normalmente como constante de la entidad o de su DAO:
+ *
+ * <pre>
+ * static final EntityMetadata&lt;Alianza&gt; METADATA = new EntityMetadata&lt;Alianza&gt;("ALIANZA", "ali", Alianza::new)
+ * 		.id(Alianza.ID, Long.class, Alianza::getId, Alianza::setId)
+ * 		.column(Alianza.NOMBRE, String.class, Alianza::getNombre, Alianza::setNombre);
+ * </pre>
+ *
+ * <p>
+ * Los tipos de cada columna se resuelven con {@link TypeBinders} y
+ * {@link ColumnReaders} al declararla, por lo que el mapper lee las columnas
+ * por posición sin buscar nombres en cada fila. Los enumerados se guardan por
+ * su nombre. Declarar una columna de un tipo sin traducción falla en ese
+ * momento con {@link IllegalArgumentException}. Una vez usada por un DAO ya
+ * no admite más columnas.
+ *
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo de la entidad.
+ */
+public final class EntityMetadata<T> {
+
+	private final String tableName;
+	private final String tableAlias;
+	private final Supplier<T> factory;
+	private final List<Column<T>> declared = new ArrayList<Column<T>>();
+	private Column<T> id;
+	private volatile Compiled<T> compiled;
+
+	/**
+	 * @param tableName
+	 *            Nombre de la tabla.
+	 * @param tableAlias
+	 *            Alias que se desea usar generalmente para las consultas.
+	 * @param factory
+	 *            Creación de una entidad vacía para cada fila leída.
+	 */
+	public EntityMetadata(final String tableName, final String tableAlias, final Supplier<T> factory) {
+		this.tableName = tableName;
+		this.tableAlias = tableAlias;
+		this.factory = factory;
+	}
+
+	/**
+	 * Declara la columna identificadora, que será siempre la primera.
+	 *
+	 * @param name
+	 *            Nombre de la columna.
+	 * @param type
+	 *            Tipo de la propiedad.
+	 * @param getter
+	 *            Lectura de la propiedad.
+	 * @param setter
+	 *            Escritura de la propiedad.
+	 * @return Esta misma descripción.
+	 * @throws IllegalArgumentException
+	 *             Si no hay traducción para el tipo.
+	 */
+	public <V> EntityMetadata<T> id(final String name, final Class<V> type, final Function<? super T, ? extends V> getter,
+			final BiConsumer<? super T, ? super V> setter) {
+		return id(name, type, getter, setter, binder(name, type), reader(name, type));
+	}
+
+	/**
+	 * Declara la columna identificadora con una traducción propia.
+	 *
+	 * @param name
+	 *            Nombre de la columna.
+	 * @param type
+	 *            Tipo de la propiedad.
+	 * @param getter
+	 *            Lectura de la propiedad.
+	 * @param setter
+	 *            Escritura de la propiedad.
+	 * @param binder
+	 *            Forma de añadir el valor a una sentencia.
+	 * @param reader
+	 *            Forma de leer el valor de una fila.
+	 * @return Esta misma descripción.
+	 */
+	public <V> EntityMetadata<T> id(final String name, final Class<V> type,
+			final Function<? super T, ? extends V> getter, final BiConsumer<? super T, ? super V> setter,
+			final TypeBinder<? super V> binder, final ColumnReader reader) {
+		checkOpen();
+		if (id != null) {
+			throw new IllegalStateException("Id column already declared: " + id.name);
+		}
+		id = new Column<T>(name, type, getter, setter, binder, reader);
+		return this;
+	}
+
+	/**
+	 * Declara una columna más, en el orden en que se insertan.
+	 *
+	 * @param name
+	 *            Nombre de la columna.
+	 * @param type
+	 *            Tipo de la propiedad.
+	 * @param getter
+	 *            Lectura de la propiedad.
+	 * @param setter
+	 *            Escritura de la propiedad.
+	 * @return Esta misma descripción.
+	 * @throws IllegalArgumentException
+	 *             Si no hay traducción para el tipo.
+	 */
+	public <V> EntityMetadata<T> column(final String name, final Class<V> type,
+			final Function<? super T, ? extends V> getter, final BiConsumer<? super T, ? super V> setter) {
+		return column(name, type, getter, setter, binder(name, type), reader(name, type));
+	}
+
+	/**
+	 * Declara una columna más con una traducción propia, por ejemplo para
+	 * guardar una fecha como DATE en lugar de TIMESTAMP.
+	 *
+	 * @param name
+	 *            Nombre de la columna.
+	 * @param type
+	 *            Tipo de la propiedad.
+	 * @param getter
+	 *            Lectura de la propiedad.
+	 * @param setter
+	 *            Escritura de la propiedad.
+	 * @param binder
+	 *            Forma de añadir el valor a una sentencia.
+	 * @param reader
+	 *            Forma de leer el valor de una fila.
+	 * @return Esta misma descripción.
+	 */
+	public <V> EntityMetadata<T> column(final String name, final Class<V> type,
+			final Function<? super T, ? extends V> getter, final BiConsumer<? super T, ? super V> setter,
+			final TypeBinder<? super V> binder, final ColumnReader reader) {
+		checkOpen();
+		declared.add(new Column<T>(name, type, getter, setter, binder, reader));
+		return this;
+	}
+
+	/**
+	 * @return the tableName
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * @return the tableAlias
+	 */
+	public String getTableAlias() {
+		return tableAlias;
+	}
+
+	/**
+	 * @return Nombre de la columna identificadora.
+	 */
+	public String getIdColumn() {
+		return compiled().columns[0].name;
+	}
+
+	/**
+	 * @return Nombres de todas las columnas, empezando por la identificadora.
+	 */
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(compiled().names);
+	}
+
+	/**
+	 * @param bean
+	 *            Entidad.
+	 * @return Valor de su identificador.
+	 */
+	public Object getId(final T bean) {
+		return compiled().columns[0].getter.apply(bean);
+	}
+
+	/**
+	 * @return Entidad nueva y vacía.
+	 */
+	public T newInstance() {
+		return factory.get();
+	}
+
+	/**
+	 * @param column
+	 *            Posición en {@link #getColumnNames()}, desde 0.
+	 * @return Tipo declarado de la propiedad de la columna.
+	 */
+	public Class<?> getType(final int column) {
+		return compiled().columns[column].type;
+	}
+
+	/**
+	 * @param bean
+	 *            Entidad.
+	 * @param column
+	 *            Posición en {@link #getColumnNames()}, desde 0.
+	 * @return Valor de la columna en la entidad.
+	 */
+	public Object getValue(final T bean, final int column) {
+		return compiled().columns[column].getter.apply(bean);
+	}
+
+	/**
+	 * @param bean
+	 *            Entidad.
+	 * @param column
+	 *            Posición en {@link #getColumnNames()}, desde 0.
+	 * @param value
+	 *            Valor de la columna, del tipo que espera su setter.
+	 */
+	public void setValue(final T bean, final int column, final Object value) {
+		compiled().columns[column].setter.accept(bean, value);
+	}
+
+	/**
+	 * @return Traducción de las filas leídas con {@link #getSelectFrom()}.
+	 */
+	public RowMapper<T> getRowMapper() {
+		return compiled().mapper;
+	}
+
+	/**
+	 * @return "SELECT columnas FROM tabla alias", con las columnas en el orden
+	 *         que espera {@link #getRowMapper()}.
+	 */
+	public String getSelectFrom() {
+		return compiled().selectFrom;
+	}
+
+	CompiledQuery<T> findByIdQuery() {
+		return compiled().findById;
+	}
+
+	CompiledQuery<T> insertQuery() {
+		return compiled().insert;
+	}
+
+	CompiledQuery<T> updateQuery() {
+		return compiled().update;
+	}
+
+	CompiledQuery<T> deleteQuery() {
+		return compiled().delete;
+	}
+
+	/**
+	 * Sentencia de varias filas a la vez, generada la primera vez que se pide
+	 * cada combinación de dialecto y número de filas. Su binder recibe la
+	 * lista con exactamente <b>rows</b> entidades.
+	 *
+	 * @param dialect
+	 *            Dialecto del gestor.
+	 * @param upsert
+	 *            Si es un upsert en lugar de un insert.
+	 * @param rows
+	 *            Número de filas.
+	 * @return Sentencia compartida.
+	 */
+	CompiledQuery<List<T>> rowsQuery(final Dialect dialect, final boolean upsert, final int rows) {
+		final Compiled<T> current = compiled();
+		final String key = (upsert ? dialect.name() : "INSERT") + rows;
+		CompiledQuery<List<T>> query = current.rowQueries.get(key);
+		if (query == null) {
+			final String sql = upsert ? dialect.upsertRows(tableName, current.names, rows)
+					: dialect.insertRows(tableName, current.names, rows);
+			final Column<T>[] columns = current.columns;
+			query = new CompiledQuery<List<T>>(sql, null, (statement, beans) -> {
+				int index = 1;
+				for (final T bean : beans) {
+					for (final Column<T> column : columns) {
+						column.bind(statement, index++, bean);
+					}
+				}
+			});
+			final CompiledQuery<List<T>> previous = current.rowQueries.putIfAbsent(key, query);
+			if (previous != null) {
+				query = previous;
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * Estimación del tamaño que ocupa una entidad en una sentencia de varias
+	 * filas, para no superar el tamaño máximo de paquete del gestor. Cuenta
+	 * los textos a 4 bytes por carácter para cubrir su escape.
+	 *
+	 * @param bean
+	 *            Entidad.
+	 * @return Bytes estimados, incluidos sus separadores.
+	 */
+	long estimateBytes(final T bean) {
+		final Column<T>[] columns = compiled().columns;
+		long bytes = 2;
+		for (final Column<T> column : columns) {
+			final Object value = column.getter.apply(bean);
+			if (value instanceof CharSequence) {
+				bytes += 4L * ((CharSequence) value).length() + 4;
+			} else if (value instanceof byte[]) {
+				bytes += 2L * ((byte[]) value).length + 4;
+			} else {
+				bytes += 32;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Genera las sentencias si aún no se ha hecho. A partir de ese momento la
+	 * descripción no admite cambios.
+	 *
+	 * @return Sentencias, mapper y binders de la entidad.
+	 */
+	Compiled<T> compiled() {
+		Compiled<T> result = compiled;
+		if (result == null) {
+			synchronized (this) {
+				result = compiled;
+				if (result == null) {
+					if (id == null) {
+						throw new IllegalStateException("No id column declared for " + tableName);
+					}
+					result = new Compiled<T>(this);
+					compiled = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private void checkOpen() {
+		if (compiled != null) {
+			throw new IllegalStateException("Metadata for " + tableName + " is already in use");
+		}
+	}
+
+	private TypeBinder<Object> binder(final String name, final Class<?> type) {
+		try {
+			return TypeBinders.lookup(type);
+		} catch (UnsupportedOperationException e) {
+			throw unsupported(name, type);
+		}
+	}
+
+	/**
+	 * Lector de los tipos de {@link ColumnReaders} y de los enumerados, que se
+	 * leen por su nombre como los escribe {@link TypeBinders}.
+	 */
+	private ColumnReader reader(final String name, final Class<?> type) {
+		if (type.isEnum()) {
+			final Map<String, Object> constants = new HashMap<String, Object>();
+			for (final Object constant : type.getEnumConstants()) {
+				constants.put(((Enum<?>) constant).name(), constant);
+			}
+			return (rs, column) -> {
+				final String value = rs.getString(column);
+				if (value == null) {
+					return null;
+				}
+				final Object constant = constants.get(value);
+				if (constant == null) {
+					throw new SQLException(String.format("No constant of %s named %s", type.getName(), value));
+				}
+				return constant;
+			};
+		}
+		final ColumnReader reader = ColumnReaders.forType(type);
+		if (reader == null) {
+			throw unsupported(name, type);
+		}
+		return reader;
+	}
+
+	private IllegalArgumentException unsupported(final String name, final Class<?> type) {
+		return new IllegalArgumentException(String.format(
+				"Unsupported type %s for column %s of %s, declare it with its own binder and reader", type.getName(),
+				name, tableName));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final List<String> names = new ArrayList<String>();
+		if (id != null) {
+			names.add(id.name);
+		}
+		for (final Column<T> column : declared) {
+			names.add(column.name);
+		}
+		return "EntityMetadata [tableName=" + tableName + ", tableAlias=" + tableAlias + ", columns=" + names + "]";
+	}
+
+	/**
+	 * Columna con su propiedad y su traducción ya resueltas.
+	 */
+	private static final class Column<T> {
+
+		private final String name;
+		private final Class<?> type;
+		private final Function<? super T, ?> getter;
+		private final BiConsumer<? super T, Object> setter;
+		private final TypeBinder<Object> binder;
+		private final ColumnReader reader;
+
+		@SuppressWarnings("unchecked")
+		private <V> Column(final String name, final Class<V> type, final Function<? super T, ? extends V> getter,
+				final BiConsumer<? super T, ? super V> setter, final TypeBinder<? super V> binder,
+				final ColumnReader reader) {
+			this.name = name;
+			this.type = type;
+			this.getter = getter;
+			this.setter = (BiConsumer<? super T, Object>) setter;
+			this.binder = (TypeBinder<Object>) binder;
+			this.reader = reader;
+		}
+
+		private void bind(final PreparedStatement statement, final int index, final T bean) throws SQLException {
+			final Object value = getter.apply(bean);
+			if (value == null) {
+				TypeBinders.NULL.bind(statement, index, null);
+			} else {
+				binder.bind(statement, index, value);
+			}
+		}
+	}
+
+	/**
+	 * Sentencias de la entidad, generadas una única vez.
+	 */
+	static final class Compiled<T> {
+
+		private final Column<T>[] columns;
+		private final List<String> names = new ArrayList<String>();
+		private final ConcurrentMap<String, CompiledQuery<List<T>>> rowQueries = new ConcurrentHashMap<String, CompiledQuery<List<T>>>();
+		private final String selectFrom;
+		private final RowMapper<T> mapper;
+		private final CompiledQuery<T> findById;
+		private final CompiledQuery<T> insert;
+		private final CompiledQuery<T> update;
+		private final CompiledQuery<T> delete;
+
+		@SuppressWarnings("unchecked")
+		private Compiled(final EntityMetadata<T> metadata) {
+			final List<Column<T>> all = new ArrayList<Column<T>>();
+			all.add(metadata.id);
+			all.addAll(metadata.declared);
+			this.columns = all.toArray((Column<T>[]) new Column<?>[all.size()]);
+			final Supplier<T> factory = metadata.factory;
+			final Column<T>[] columns = this.columns;
+
+			final StringBuilder list = new StringBuilder();
+			final StringBuilder marks = new StringBuilder();
+			final StringBuilder sets = new StringBuilder();
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					list.append(BaseDao.COMA);
+					marks.append(BaseDao.COMA);
+				}
+				list.append(columns[i].name);
+				names.add(columns[i].name);
+				marks.append('?');
+				if (i > 1) {
+					sets.append(BaseDao.COMA);
+				}
+				if (i > 0) {
+					sets.append(columns[i].name).append(BaseDao.EQUALS_TO_PARAMETER);
+				}
+			}
+			final String idClause = BaseDao.WHERE + columns[0].name + BaseDao.EQUALS_TO_PARAMETER;
+			this.selectFrom = "SELECT " + list + " FROM " + metadata.tableName + " " + metadata.tableAlias;
+
+			this.mapper = rs -> {
+				final T bean = factory.get();
+				for (int i = 0; i < columns.length; i++) {
+					columns[i].setter.accept(bean, columns[i].reader.read(rs, i + 1));
+				}
+				return bean;
+			};
+			this.findById = new CompiledQuery<T>(selectFrom + idClause, mapper);
+			this.insert = new CompiledQuery<T>(BaseDao.INSERT_INTO + metadata.tableName + BaseDao.OPEN_PARENTHESIS
+					+ list + BaseDao.CLOSE_PARENTHESIS + BaseDao.VALUES + BaseDao.OPEN_PARENTHESIS + marks
+					+ BaseDao.CLOSE_PARENTHESIS, null, (statement, bean) -> {
+						for (int i = 0; i < columns.length; i++) {
+							columns[i].bind(statement, i + 1, bean);
+						}
+					});
+			this.delete = new CompiledQuery<T>(BaseDao.DELETE + metadata.tableName + idClause, null,
+					(statement, bean) -> columns[0].bind(statement, 1, bean));
+			if (columns.length > 1) {
+				this.update = new CompiledQuery<T>(BaseDao.UPDATE + metadata.tableName + BaseDao.SET + sets + idClause,
+						null, (statement, bean) -> {
+							for (int i = 1; i < columns.length; i++) {
+								columns[i].bind(statement, i, bean);
+							}
+							columns[0].bind(statement, columns.length, bean);
+						});
+			} else {
+				this.update = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+package dao.base;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recorre una tabla completa en páginas de tamaño fijo ordenadas por su
+ * identificador, usando {@link BaseDao#page(Object, int)}. Cada página se pide
+ * a partir del último identificador leído, por lo que su coste no depende de
+ * cuántas filas se hayan recorrido ya, a diferencia de un OFFSET.
+ * 
+ * <p>
+ * Solo mantiene en memoria la página en curso. Las filas insertadas o
+ * borradas durante el recorrido aparecen o no según su identificador esté
+ * por delante o por detrás del último leído. El recorrido puede reanudarse
+ * más tarde creando otro cursor a partir de {@link #getLastKey()}.
+ * 
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo de la entidad.
+ */
+public class KeysetCursor<T> {
+
+	private final BaseDao<T> dao;
+	private final int pageSize;
+	private Object lastKey;
+	private boolean finished;
+	private long rows;
+	private long pages;
+
+	KeysetCursor(final BaseDao<T> dao, final Object afterKey, final int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be 1 or more");
+		}
+		this.dao = dao;
+		this.lastKey = afterKey;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return Si puede quedar alguna página por leer. Una vez devuelve false
+	 *         {@link #nextPage()} solo devuelve listas vacías.
+	 */
+	public boolean hasNext() {
+		return !finished;
+	}
+
+	/**
+	 * Lee la siguiente página. Una página con menos de <b>pageSize</b> filas
+	 * es la última, y se ahorra la consulta vacía del final.
+	 * 
+	 * @return Filas de la página, vacía si no quedan.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos.
+	 */
+	public List<T> nextPage() throws DaoException {
+		if (finished) {
+			return Collections.emptyList();
+		}
+		final List<T> page = dao.page(lastKey, pageSize);
+		if (page.size() < pageSize) {
+			finished = true;
+		}
+		if (!page.isEmpty()) {
+			lastKey = dao.getId(page.get(page.size() - 1));
+			rows += page.size();
+			pages++;
+		}
+		return page;
+	}
+
+	/**
+	 * @return Identificador de la última fila leída, null si todavía no se ha
+	 *         leído ninguna.
+	 */
+	public Object getLastKey() {
+		return lastKey;
+	}
+
+	/**
+	 * @return the pageSize
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @return Número de filas leídas.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return Número de páginas no vacías leídas.
+	 */
+	public long getPages() {
+		return pages;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "KeysetCursor [table=" + dao.getTableName() + ", pageSize=" + pageSize + ", lastKey=" + lastKey
+				+ ", rows=" + rows + ", pages=" + pages + ", finished=" + finished + "]";
+	}
+
+}
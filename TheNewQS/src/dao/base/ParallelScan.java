@@ -0,0 +1,353 @@
+package dao.base;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import query.CompiledQuery;
+import query.RowCallback;
+import query.UncheckedSQLException;
+import query.pool.ConnectionPool;
+
+/**
+ * Recorre una tabla completa en paralelo dividiéndola en rangos de
+ * identificadores, para los procesos masivos que hoy leen la tabla con un
+ * único select.
+ * 
+ * <p>
+ * Cada rango se lee por páginas de <b>pageSize</b> filas con
+ * <code>WHERE id &gt; ? AND id &lt;= ? ORDER BY id LIMIT ?</code>, y cada página
+ * toma prestada su propia conexión del {@link javax.sql.DataSource} del DAO y
+ * la devuelve antes de entregar las filas. La siguiente página de un rango no
+ * se pide hasta que se han consumido las anteriores, de modo que en memoria
+ * hay como mucho una página por hilo y nunca más conexiones en uso que hilos.
+ * 
+ * <p>
+ * Los rangos se reparten a partes iguales entre el mínimo y el máximo
+ * identificador, por lo que el identificador debe ser un número entero
+ * ({@link BaseDao#getId(Object)} debe devolver un {@link Number}). Requiere
+ * además que el DAO implemente {@link BaseDao#getIdColumn()} y
+ * {@link BaseDao#getRowMapper()}.
+ * 
+ * <p>
+ * Si el DAO se creó con una única conexión el recorrido es secuencial, ya que
+ * esa conexión no puede compartirse entre hilos.
+ * 
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo de la entidad.
+ */
+public class ParallelScan<T> {
+
+	private static final int DEFAULT_PAGE_SIZE = 1000;
+
+	private final BaseDao<T> dao;
+	private int parallelism;
+	private int partitions;
+	private int pageSize = DEFAULT_PAGE_SIZE;
+	private boolean ordered;
+	private volatile CompiledQuery<T> rangeQuery;
+
+	/**
+	 * Usa tantos hilos como procesadores, limitados al tamaño máximo del pool
+	 * si el DAO usa un {@link ConnectionPool}, y cuatro rangos por hilo.
+	 * 
+	 * @param dao
+	 *            DAO de la tabla a recorrer.
+	 */
+	public ParallelScan(final BaseDao<T> dao) {
+		this.dao = dao;
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (dao.dataSource instanceof ConnectionPool) {
+			threads = Math.min(threads, ((ConnectionPool) dao.dataSource).getMaxSize());
+		}
+		this.parallelism = isShareable() ? threads : 1;
+		this.partitions = parallelism * 4;
+	}
+
+	/**
+	 * Devuelve un {@link Stream} paralelo con todas las filas de la tabla. Las
+	 * páginas se leen a medida que el stream las consume, en los hilos del
+	 * {@link ForkJoinPool} en el que se ejecute la operación terminal. Los
+	 * errores de BBDD durante el recorrido se propagan como
+	 * {@link UncheckedDaoException}.
+	 * 
+	 * <p>
+	 * En modo ordenado el stream está ordenado por identificador y
+	 * {@link Stream#forEachOrdered(Consumer)} entrega las filas en ese orden, a
+	 * costa de retener las de los rangos que terminan antes que los
+	 * anteriores. En modo no ordenado no se garantiza ningún orden.
+	 * 
+	 * @return Stream con las filas de la tabla.
+	 * @throws DaoException
+	 *             Si no pueden obtenerse los límites de la tabla.
+	 */
+	public Stream<T> stream() throws DaoException {
+		final long[] bounds = bounds();
+		if (bounds == null) {
+			return Stream.empty();
+		}
+		final long minSplit = Math.max(pageSize, (bounds[1] - bounds[0]) / partitions);
+		return StreamSupport.stream(new RangeSpliterator(bounds[0] - 1, bounds[1], minSplit), isShareable());
+	}
+
+	/**
+	 * Entrega todas las filas de la tabla a <b>callback</b> usando
+	 * <b>parallelism</b> hilos propios, sin ocupar el
+	 * {@link ForkJoinPool#commonPool()}. En modo ordenado las filas llegan una
+	 * a una en orden de identificador; en modo no ordenado <b>callback</b> se
+	 * invoca desde varios hilos a la vez y debe ser thread-safe.
+	 * 
+	 * @param callback
+	 *            Receptor de cada una de las filas.
+	 * @return Número de filas procesadas.
+	 * @throws DaoException
+	 *             Si ocurre un problema en el acceso a base de datos o en el
+	 *             tratamiento de una fila.
+	 */
+	public long forEach(final RowCallback<T> callback) throws DaoException {
+		final Stream<T> rows = stream();
+		final LongAdder count = new LongAdder();
+		final Consumer<T> action = row -> {
+			try {
+				callback.process(row);
+			} catch (SQLException e) {
+				throw new UncheckedSQLException(e);
+			}
+			count.increment();
+		};
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.submit(() -> {
+				if (ordered) {
+					rows.forEachOrdered(action);
+				} else {
+					rows.forEach(action);
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DaoException(e, "Interrupted during parallel scan", dao.getTableName());
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof UncheckedDaoException) {
+				throw ((UncheckedDaoException) cause).getCause();
+			}
+			if (cause instanceof UncheckedSQLException) {
+				e.printStackTrace();
+				throw new DaoException(((UncheckedSQLException) cause).getCause(), "Could not process row",
+						dao.getTableName());
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new DaoException((Exception) cause, "Parallel scan failed", dao.getTableName());
+		} finally {
+			pool.shutdown();
+		}
+		return count.sum();
+	}
+
+	private boolean isShareable() {
+		return dao.connection == null;
+	}
+
+	private long[] bounds() throws DaoException {
+		final String idColumn = dao.getIdColumn();
+		final CompiledQuery<long[]> query = new CompiledQuery<long[]>(
+				"SELECT MIN(" + idColumn + "), MAX(" + idColumn + ") FROM " + dao.getTableName(),
+				rs -> {
+					final long min = rs.getLong(1);
+					return rs.wasNull() ? null : new long[] { min, rs.getLong(2) };
+				});
+		try {
+			final Connection borrowed = dao.getConnection();
+			try {
+				return query.selectFirst(borrowed, dao.statementCache, new Object[0]);
+			} finally {
+				dao.releaseConnection(borrowed);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not read id bounds", query);
+		}
+	}
+
+	private List<T> page(final long after, final long to) {
+		CompiledQuery<T> compiled = rangeQuery;
+		if (compiled == null) {
+			final String idColumn = dao.getIdColumn();
+			compiled = new CompiledQuery<T>(dao.getSelectFrom() + BaseDao.WHERE + idColumn
+					+ BaseDao.GT_TO_PARAMETER + BaseDao.AND + idColumn + BaseDao.LET_TO_PARAMETER + BaseDao.ORDER_BY
+					+ idColumn + BaseDao.LIMIT_TO_PARAMETER, dao.getRowMapper());
+			rangeQuery = compiled;
+		}
+		try {
+			return dao.select(compiled, after, to, pageSize);
+		} catch (DaoException e) {
+			throw new UncheckedDaoException(e);
+		}
+	}
+
+	/**
+	 * @return Número de hilos de {@link #forEach(RowCallback)}.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            Número de hilos de {@link #forEach(RowCallback)}, y por tanto
+	 *            de conexiones en uso a la vez.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be 1 or more");
+		}
+		this.parallelism = isShareable() ? parallelism : 1;
+	}
+
+	/**
+	 * @return the partitions
+	 */
+	public int getPartitions() {
+		return partitions;
+	}
+
+	/**
+	 * @param partitions
+	 *            Número máximo de rangos en que se divide la tabla. Más rangos
+	 *            reparten mejor la carga si los identificadores tienen huecos.
+	 */
+	public void setPartitions(int partitions) {
+		if (partitions <= 0) {
+			throw new IllegalArgumentException("Partitions must be 1 or more");
+		}
+		this.partitions = partitions;
+	}
+
+	/**
+	 * @return the pageSize
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @param pageSize
+	 *            Filas leídas por consulta en cada rango.
+	 */
+	public void setPageSize(int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be 1 or more");
+		}
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return the ordered
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * @param ordered
+	 *            Si las filas deben entregarse en orden de identificador.
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ParallelScan [table=" + dao.getTableName() + ", parallelism=" + parallelism + ", partitions="
+				+ partitions + ", pageSize=" + pageSize + ", ordered=" + ordered + "]";
+	}
+
+	/**
+	 * Filas con identificador en (<b>after</b>, <b>to</b>], leídas página a
+	 * página bajo demanda. Puede partirse en cualquier momento cediendo la
+	 * mitad superior del rango que aún no ha leído.
+	 */
+	private final class RangeSpliterator implements Spliterator<T> {
+
+		private final long minSplit;
+		private long after;
+		private long to;
+		private List<T> page = Collections.emptyList();
+		private int index;
+		private boolean exhausted;
+
+		private RangeSpliterator(final long after, final long to, final long minSplit) {
+			this.after = after;
+			this.to = to;
+			this.minSplit = minSplit;
+		}
+
+		@Override
+		public boolean tryAdvance(final Consumer<? super T> action) {
+			if (index == page.size()) {
+				if (exhausted || after >= to) {
+					return false;
+				}
+				page = page(after, to);
+				index = 0;
+				if (page.size() < pageSize) {
+					exhausted = true;
+				}
+				if (page.isEmpty()) {
+					return false;
+				}
+				after = ((Number) dao.getId(page.get(page.size() - 1))).longValue();
+			}
+			action.accept(page.get(index++));
+			return true;
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			if (exhausted || to - after < 2 * minSplit) {
+				return null;
+			}
+			final long mid = after + (to - after) / 2;
+			final RangeSpliterator prefix = new RangeSpliterator(after, mid, minSplit);
+			prefix.page = page;
+			prefix.index = index;
+			page = Collections.emptyList();
+			index = 0;
+			after = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return exhausted ? page.size() - index : to - after + page.size() - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return ordered ? ORDERED | DISTINCT | NONNULL : DISTINCT | NONNULL;
+		}
+
+	}
+
+}
@@ -0,0 +1,32 @@
+package dao.base;
+
+/**
+ * Envuelve una {@link DaoException} en los puntos en los que la interfaz
+ * implementada no permite lanzar excepciones comprobadas, como los
+ * {@link java.util.stream.Stream} de {@link ParallelScan}.
+ * 
+ * @author fferezsa
+ *
+ */
+public class UncheckedDaoException extends RuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3050718873634551410L;
+
+	public UncheckedDaoException(final DaoException cause) {
+		super(cause);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Throwable#getCause()
+	 */
+	@Override
+	public synchronized DaoException getCause() {
+		return (DaoException) super.getCause();
+	}
+
+}
@@ -0,0 +1,554 @@
+package dao.base;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import query.CompiledQuery;
+import query.ConnectionBinding;
+import query.pool.SingleConnectionDataSource;
+
+/**
+ * Agrupa las operaciones de los DAO de un mismo {@link DataSource} en una
+ * única transacción del hilo actual, de modo que el coste del commit se paga
+ * una vez por operación de negocio y no una vez por fila.
+ *
+ * <pre>
+ * try (UnitOfWork work = dao.beginWork()) {
+ * 	for (Alianza alianza : alianzas) {
+ * 		dao.insert(alianza);
+ * 	}
+ * 	work.commit();
+ * }
+ * </pre>
+ *
+ * <p>
+ * Mientras está activa, todas las consultas que toman conexión del
+ * DataSource en este hilo usan la misma conexión, con autocommit
+ * desactivado. Las modificaciones lanzadas con
+ * {@link BaseDao#persistBean(CompiledQuery, Object)},
+ * {@link BaseDao#persist(CompiledQuery, Object...)} y
+ * {@link BaseDao#persistBatch(CompiledQuery, java.util.Collection)}, que son
+ * las que usan insert, update y delete de los DAO, no se ejecutan en el
+ * momento: se encolan y se envían como lotes JDBC al hacer {@link #flush()},
+ * que se invoca en {@link #commit()} y antes de cualquier otra consulta sobre
+ * la conexión, para que las lecturas vean las escrituras pendientes. Esas
+ * modificaciones devuelven {@link java.sql.Statement#SUCCESS_NO_INFO} como
+ * número de filas.
+ *
+ * <p>
+ * Por defecto se agrupan en un lote las modificaciones consecutivas de la
+ * misma consulta, respetando el orden. Con {@link #setOrderWrites(boolean)}
+ * se agrupan todas las de la misma consulta en el orden de su primera
+ * aparición, lo que da lotes mayores pero solo es seguro si las escrituras no
+ * dependen unas de otras.
+ *
+ * <p>
+ * Al cerrarse sin {@link #commit()} se deshacen todos los cambios. No admite
+ * anidamiento; para deshacer parcialmente se usan
+ * {@link #setSavepoint(String)} y {@link #rollback(Savepoint)}.
+ *
+ * @author fferezsa
+ *
+ */
+public class UnitOfWork implements AutoCloseable {
+
+	private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<UnitOfWork>();
+
+	private final DataSource dataSource;
+	private final Connection connection;
+	private final boolean previousAutoCommit;
+	private final DataSource bound;
+	private final List<Write> pending = new ArrayList<Write>();
+	private final Set<BaseDao<?>> touched = Collections.newSetFromMap(new IdentityHashMap<BaseDao<?>, Boolean>());
+	private boolean orderWrites;
+	private boolean flushing;
+	private boolean failed;
+	private boolean finished;
+	private long flushedWrites;
+	private long batches;
+
+	private UnitOfWork(final DataSource dataSource, final Connection connection) throws SQLException {
+		this.dataSource = dataSource;
+		this.connection = connection;
+		this.previousAutoCommit = connection.getAutoCommit();
+		this.bound = new FlushingDataSource(new SingleConnectionDataSource(connection));
+		connection.setAutoCommit(false);
+	}
+
+	/**
+	 * Abre una unidad de trabajo en el hilo actual sobre una conexión de
+	 * <b>dataSource</b>.
+	 *
+	 * @param dataSource
+	 *            Origen de conexiones de los DAO que participan.
+	 * @return Unidad de trabajo activa, debe cerrarse siempre.
+	 * @throws DaoException
+	 *             Si no se puede obtener o preparar la conexión.
+	 * @throws IllegalStateException
+	 *             Si el hilo ya tiene una unidad de trabajo activa.
+	 */
+	public static UnitOfWork begin(final DataSource dataSource) throws DaoException {
+		if (CURRENT.get() != null) {
+			throw new IllegalStateException("A unit of work is already active in this thread");
+		}
+		final UnitOfWork work;
+		try {
+			final Connection connection = dataSource.getConnection();
+			try {
+				work = new UnitOfWork(dataSource, connection);
+			} catch (SQLException e) {
+				connection.close();
+				throw e;
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not begin unit of work", dataSource);
+		}
+		ConnectionBinding.bind(dataSource, work.bound);
+		CURRENT.set(work);
+		return work;
+	}
+
+	/**
+	 * @return Unidad de trabajo activa en el hilo actual, null si no hay.
+	 */
+	public static UnitOfWork current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return Unidad de trabajo activa en el hilo actual en la que participa
+	 *         <b>dao</b>, null si no hay.
+	 */
+	static UnitOfWork currentFor(final BaseDao<?> dao) {
+		final UnitOfWork work = CURRENT.get();
+		return work != null && work.dataSource == dao.getDataSource() ? work : null;
+	}
+
+	/**
+	 * Anota un DAO que ha escrito en la unidad de trabajo sin encolar la
+	 * modificación, para descartar sus cachés al terminar.
+	 */
+	void touch(final BaseDao<?> dao) {
+		checkActive();
+		touched.add(dao);
+	}
+
+	/**
+	 * Encola una modificación con los parámetros de un bean.
+	 */
+	<T> void defer(final BaseDao<T> dao, final CompiledQuery<T> compiled, final T bean) {
+		checkActive();
+		touched.add(dao);
+		pending.add(new Write(dao, compiled, bean, null));
+	}
+
+	/**
+	 * Encola una modificación con sus parámetros.
+	 */
+	<T> void defer(final BaseDao<T> dao, final CompiledQuery<T> compiled, final Object[] params) {
+		checkActive();
+		touched.add(dao);
+		pending.add(new Write(dao, compiled, null, params));
+	}
+
+	/**
+	 * Envía a la BBDD las modificaciones pendientes agrupadas en lotes, sin
+	 * confirmarlas. Si falla, la unidad de trabajo solo admite
+	 * {@link #rollback()} o {@link #close()}.
+	 *
+	 * @return Número de modificaciones enviadas.
+	 * @throws DaoException
+	 *             Si falla alguna de las modificaciones.
+	 */
+	public int flush() throws DaoException {
+		checkActive();
+		if (pending.isEmpty() || flushing) {
+			return 0;
+		}
+		final List<Write> writes = new ArrayList<Write>(pending);
+		pending.clear();
+		flushing = true;
+		try {
+			for (final List<Write> group : group(writes)) {
+				execute(group);
+				batches++;
+			}
+		} catch (SQLException e) {
+			failed = true;
+			e.printStackTrace();
+			throw new DaoException(e, "Could not flush unit of work", writes.size());
+		} catch (RuntimeException e) {
+			failed = true;
+			throw e;
+		} finally {
+			flushing = false;
+		}
+		flushedWrites += writes.size();
+		return writes.size();
+	}
+
+	/**
+	 * Envía las modificaciones pendientes y confirma la transacción. Después
+	 * la unidad de trabajo solo admite {@link #close()}.
+	 *
+	 * @throws DaoException
+	 *             Si falla el envío o la confirmación; en ese caso
+	 *             {@link #close()} deshace los cambios.
+	 */
+	public void commit() throws DaoException {
+		flush();
+		try {
+			connection.commit();
+		} catch (SQLException e) {
+			failed = true;
+			e.printStackTrace();
+			throw new DaoException(e, "Could not commit unit of work");
+		}
+		finished = true;
+		afterCompletion();
+	}
+
+	/**
+	 * Descarta las modificaciones pendientes y deshace la transacción. Después
+	 * la unidad de trabajo solo admite {@link #close()}.
+	 *
+	 * @throws DaoException
+	 *             Si falla la vuelta atrás.
+	 */
+	public void rollback() throws DaoException {
+		if (finished) {
+			throw new IllegalStateException("Unit of work already finished");
+		}
+		pending.clear();
+		finished = true;
+		try {
+			connection.rollback();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not roll back unit of work");
+		} finally {
+			afterCompletion();
+		}
+	}
+
+	/**
+	 * Envía las modificaciones pendientes y marca un punto al que poder volver
+	 * con {@link #rollback(Savepoint)}.
+	 *
+	 * @param name
+	 *            Nombre del punto.
+	 * @return Punto de restauración.
+	 * @throws DaoException
+	 *             Si falla el envío o la BBDD no admite savepoints.
+	 */
+	public Savepoint setSavepoint(final String name) throws DaoException {
+		flush();
+		try {
+			return connection.setSavepoint(name);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not set savepoint", name);
+		}
+	}
+
+	/**
+	 * Descarta las modificaciones pendientes y deshace las enviadas desde el
+	 * punto indicado. La unidad de trabajo sigue activa.
+	 *
+	 * @param savepoint
+	 *            Punto obtenido con {@link #setSavepoint(String)}.
+	 * @throws DaoException
+	 *             Si falla la vuelta atrás.
+	 */
+	public void rollback(final Savepoint savepoint) throws DaoException {
+		checkOpen();
+		pending.clear();
+		try {
+			connection.rollback(savepoint);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not roll back to savepoint", savepoint);
+		}
+		failed = false;
+		clearCaches();
+	}
+
+	/**
+	 * Libera un punto de restauración que ya no se necesita.
+	 *
+	 * @param savepoint
+	 *            Punto obtenido con {@link #setSavepoint(String)}.
+	 * @throws DaoException
+	 *             Si falla la liberación.
+	 */
+	public void releaseSavepoint(final Savepoint savepoint) throws DaoException {
+		checkOpen();
+		try {
+			connection.releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new DaoException(e, "Could not release savepoint", savepoint);
+		}
+	}
+
+	/**
+	 * Termina la unidad de trabajo: si no se ha confirmado deshace los
+	 * cambios, restaura el autocommit y devuelve la conexión.
+	 */
+	@Override
+	public void close() {
+		if (CURRENT.get() != this) {
+			return;
+		}
+		try {
+			if (!finished) {
+				rollback();
+			}
+		} catch (DaoException e) {
+			e.printStackTrace();
+		} finally {
+			CURRENT.remove();
+			ConnectionBinding.unbind(dataSource);
+			try {
+				connection.setAutoCommit(previousAutoCommit);
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (finished || CURRENT.get() != this) {
+			throw new IllegalStateException("Unit of work is not active");
+		}
+	}
+
+	private void checkActive() {
+		checkOpen();
+		if (failed && !flushing) {
+			throw new IllegalStateException("Unit of work failed and must be rolled back");
+		}
+	}
+
+	/**
+	 * Agrupa las escrituras de la misma consulta y el mismo tipo, consecutivas
+	 * o en el orden de su primera aparición según {@link #orderWrites}.
+	 */
+	private List<List<Write>> group(final List<Write> writes) {
+		if (orderWrites) {
+			final Map<Object, List<Write>> byShape = new LinkedHashMap<Object, List<Write>>();
+			for (final Write write : writes) {
+				final Object shape = write.params == null ? write.compiled : write;
+				List<Write> group = byShape.get(shape);
+				if (group == null) {
+					group = new ArrayList<Write>();
+					byShape.put(shape, group);
+				}
+				group.add(write);
+			}
+			return new ArrayList<List<Write>>(byShape.values());
+		}
+		final List<List<Write>> groups = new ArrayList<List<Write>>();
+		List<Write> group = null;
+		for (final Write write : writes) {
+			if (group == null || write.params != null || group.get(0).params != null
+					|| group.get(0).compiled != write.compiled) {
+				group = new ArrayList<Write>();
+				groups.add(group);
+			}
+			group.add(write);
+		}
+		return groups;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void execute(final List<Write> group) throws SQLException {
+		final Write first = group.get(0);
+		final BaseDao<Object> dao = (BaseDao<Object>) first.dao;
+		final CompiledQuery<Object> compiled = (CompiledQuery<Object>) first.compiled;
+		if (first.params != null) {
+			compiled.persist(connection, dao.statementCache(compiled), first.params);
+			return;
+		}
+		final List<Object> beans = new ArrayList<Object>(group.size());
+		for (final Write write : group) {
+			beans.add(write.bean);
+		}
+		compiled.persistBatch(connection, dao.statementCache(compiled), beans);
+	}
+
+	/**
+	 * Tras terminar la transacción descarta de las cachés de los DAO
+	 * afectados lo que pudiera haber cambiado, incluido lo que otros hilos
+	 * hayan cargado antes de la confirmación.
+	 */
+	private void afterCompletion() {
+		clearCaches();
+		touched.clear();
+	}
+
+	private void clearCaches() {
+		for (final BaseDao<?> dao : touched) {
+			dao.invalidateResults();
+			if (dao.getEntityCache() != null) {
+				dao.getEntityCache().clear();
+			}
+		}
+	}
+
+	/**
+	 * @return Número de modificaciones encoladas pendientes de enviar.
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * @return Número de modificaciones enviadas.
+	 */
+	public long getFlushedCount() {
+		return flushedWrites;
+	}
+
+	/**
+	 * @return Número de lotes enviados.
+	 */
+	public long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * @return the orderWrites
+	 */
+	public boolean isOrderWrites() {
+		return orderWrites;
+	}
+
+	/**
+	 * @param orderWrites
+	 *            Si deben agruparse todas las modificaciones de la misma
+	 *            consulta aunque no sean consecutivas.
+	 */
+	public void setOrderWrites(boolean orderWrites) {
+		this.orderWrites = orderWrites;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "UnitOfWork [pending=" + pending.size() + ", flushed=" + flushedWrites + ", batches=" + batches
+				+ ", orderWrites=" + orderWrites + ", finished=" + finished + ", failed=" + failed + "]";
+	}
+
+	/**
+	 * Modificación encolada: un bean o una lista de parámetros.
+	 */
+	private static final class Write {
+
+		private final BaseDao<?> dao;
+		private final CompiledQuery<?> compiled;
+		private final Object bean;
+		private final Object[] params;
+
+		private Write(final BaseDao<?> dao, final CompiledQuery<?> compiled, final Object bean,
+				final Object[] params) {
+			this.dao = dao;
+			this.compiled = compiled;
+			this.bean = bean;
+			this.params = params;
+		}
+	}
+
+	/**
+	 * Entrega la conexión de la unidad de trabajo, enviando antes las
+	 * modificaciones pendientes para que la consulta que la pide las vea.
+	 */
+	private final class FlushingDataSource implements DataSource {
+
+		private final SingleConnectionDataSource target;
+
+		private FlushingDataSource(final SingleConnectionDataSource target) {
+			this.target = target;
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			if (!pending.isEmpty() && !flushing) {
+				try {
+					flush();
+				} catch (DaoException e) {
+					final Exception cause = e.getEncapsulatedException();
+					if (cause instanceof SQLException) {
+						throw (SQLException) cause;
+					}
+					throw new SQLException("Could not flush unit of work", cause);
+				}
+			}
+			return target.getConnection();
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			throw new SQLFeatureNotSupportedException("The connection is already open");
+		}
+
+		@Override
+		public PrintWriter getLogWriter() throws SQLException {
+			return target.getLogWriter();
+		}
+
+		@Override
+		public void setLogWriter(PrintWriter out) throws SQLException {
+			target.setLogWriter(out);
+		}
+
+		@Override
+		public void setLoginTimeout(int seconds) throws SQLException {
+			target.setLoginTimeout(seconds);
+		}
+
+		@Override
+		public int getLoginTimeout() throws SQLException {
+			return target.getLoginTimeout();
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			return target.getParentLogger();
+		}
+
+		@Override
+		public <W> W unwrap(Class<W> iface) throws SQLException {
+			return target.unwrap(iface);
+		}
+
+		@Override
+		public boolean isWrapperFor(Class<?> iface) throws SQLException {
+			return target.isWrapperFor(iface);
+		}
+	}
+
+}
@@ -2,10 +2,17 @@ package dao.impl;
 
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.junit.Assert;
@@ -14,7 +21,14 @@ import org.junit.Test;
 
 import dao.base.BaseDao;
 import dao.base.DaoException;
+import dao.base.EntityCache;
+import dao.base.KeysetCursor;
+import dao.base.ParallelScan;
+import dao.base.UnitOfWork;
 import dto.Alianza;
+import query.metrics.NPlusOneDetector;
+import query.metrics.QueryMetrics;
+import query.pool.ConnectionPool;
 
 public class TestDao {
 
@@ -50,6 +64,143 @@ public class TestDao {
 		}
 	}
 
+	@Test
+	public void selectWithEntityCache() {
+		BaseDao<Alianza> dao = new AlianzaDao(connection);
+		EntityCache<Object, Alianza> cache = new EntityCache<Object, Alianza>(100);
+		dao.setEntityCache(cache);
+		Alianza ali = new Alianza();
+		ali.setId(4L);
+
+		try {
+			Alianza first = dao.findById(ali);
+			Alianza second = dao.findById(ali);
+			Assert.assertSame(first, second);
+			Assert.assertEquals(1, cache.getLoads());
+			System.out.println(cache);
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		}
+	}
+
+	@Test
+	public void selectAllByIds() {
+		BaseDao<Alianza> dao = new AlianzaDao(connection);
+		List<Long> ids = new ArrayList<Long>();
+		for (long id = 1; id <= 20; id++) {
+			ids.add(id);
+		}
+
+		try {
+			Map<Long, Alianza> found = dao.findAllByIds(ids);
+			for (Map.Entry<Long, Alianza> entry : found.entrySet()) {
+				Assert.assertEquals(entry.getKey(), entry.getValue().getId());
+			}
+			System.out.println(found.values());
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		}
+	}
+
+	@Test
+	public void selectInPages() {
+		BaseDao<Alianza> dao = new AlianzaDao(connection);
+		KeysetCursor<Alianza> cursor = dao.cursor(5);
+
+		try {
+			Long previous = null;
+			while (cursor.hasNext()) {
+				for (Alianza ali : cursor.nextPage()) {
+					Assert.assertTrue(previous == null || ali.getId() > previous);
+					previous = ali.getId();
+				}
+			}
+			System.out.println(cursor);
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		}
+	}
+
+	@Test
+	public void selectInLoopIsReported() {
+		BaseDao<Alianza> dao = new AlianzaDao(connection);
+		NPlusOneDetector detector = new NPlusOneDetector(3);
+		QueryMetrics.getDefault().addListener(detector);
+
+		try (NPlusOneDetector.Scope scope = detector.begin()) {
+			for (long id = 1; id <= 5; id++) {
+				Alianza ali = new Alianza();
+				ali.setId(id);
+				dao.findById(ali);
+			}
+			Assert.assertEquals(1, scope.getViolations().size());
+			Assert.assertEquals(5, scope.getViolations().get(0).getCount());
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		} finally {
+			QueryMetrics.getDefault().removeListener(detector);
+		}
+	}
+
+	@Test
+	public void selectWithPool() {
+		Properties connectionProps = new Properties();
+		connectionProps.put("user", userName);
+		connectionProps.put("password", password);
+		ConnectionPool pool = null;
+		try {
+			pool = new ConnectionPool("jdbc:mysql://localhost:3306/castillos", connectionProps, 1, 4);
+			BaseDao<Alianza> dao = new AlianzaDao(pool);
+			Alianza ali = new Alianza();
+			ali.setId(4L);
+			System.out.println(dao.findById(ali));
+			Assert.assertEquals(0, pool.getActive());
+			Assert.assertEquals(1, pool.getBorrowed());
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Could not connect to DDBB.");
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		} finally {
+			if (pool != null) {
+				pool.close();
+			}
+		}
+	}
+
+	@Test
+	public void selectInParallel() {
+		Properties connectionProps = new Properties();
+		connectionProps.put("user", userName);
+		connectionProps.put("password", password);
+		ConnectionPool pool = null;
+		try {
+			pool = new ConnectionPool("jdbc:mysql://localhost:3306/castillos", connectionProps, 1, 4);
+			BaseDao<Alianza> dao = new AlianzaDao(pool);
+			ParallelScan<Alianza> scan = dao.parallelScan();
+			scan.setPageSize(10);
+			long rows = scan.forEach(ali -> Assert.assertNotNull(ali.getId()));
+			Assert.assertEquals(rows, dao.parallelScan().stream().count());
+			Assert.assertEquals(0, pool.getActive());
+			System.out.println(scan + " " + rows);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Could not connect to DDBB.");
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		} finally {
+			if (pool != null) {
+				pool.close();
+			}
+		}
+	}
+
 	@Test
 	public void insert() {
 		BaseDao<Alianza> dao = new AlianzaDao(connection);
@@ -67,6 +218,28 @@ public class TestDao {
 		Assert.assertEquals(1, count);
 	}
 
+	@Test
+	public void insertAll() {
+		BaseDao<Alianza> dao = new AlianzaDao(connection);
+		List<Alianza> alianzas = new ArrayList<Alianza>();
+		for (long id = 100; id < 110; id++) {
+			Alianza ali = new Alianza();
+			ali.setId(id);
+			ali.setNombre("insertAllDao" + id);
+			ali.setFechaInsercion(new Date());
+			alianzas.add(ali);
+		}
+		int[] counts = null;
+		try {
+			counts = dao.insertAll(alianzas);
+			dao.deleteAll(alianzas);
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		}
+		Assert.assertEquals(alianzas.size(), counts.length);
+	}
+
 	@Test
 	public void update() {
 		BaseDao<Alianza> dao = new AlianzaDao(connection);
@@ -100,4 +273,85 @@ public class TestDao {
 		}
 		Assert.assertEquals(1, count);
 	}
+
+	@Test
+	public void insertAllInUnitOfWork() {
+		BaseDao<Alianza> dao = new AlianzaDao(connection);
+		List<Alianza> alianzas = new ArrayList<Alianza>();
+		for (long id = 200; id < 210; id++) {
+			Alianza ali = new Alianza();
+			ali.setId(id);
+			ali.setNombre("unitOfWork" + id);
+			ali.setFechaInsercion(new Date());
+			alianzas.add(ali);
+		}
+		try (UnitOfWork work = dao.beginWork()) {
+			for (Alianza ali : alianzas) {
+				dao.insert(ali);
+			}
+			Assert.assertEquals(alianzas.size(), work.getPendingCount());
+			work.rollback();
+			Assert.assertEquals(0, work.getPendingCount());
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		}
+		try {
+			Assert.assertNull(dao.findById(alianzas.get(0)));
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		}
+	}
+
+	@Test
+	public void upsertAll() {
+		BaseDao<Alianza> dao = new AlianzaDao(connection);
+		List<Alianza> alianzas = new ArrayList<Alianza>();
+		for (long id = 300; id < 310; id++) {
+			Alianza ali = new Alianza();
+			ali.setId(id);
+			ali.setNombre("upsertAllDao" + id);
+			ali.setFechaInsercion(new Date());
+			alianzas.add(ali);
+		}
+		try {
+			dao.upsertAll(alianzas);
+			alianzas.get(0).setNombre("upsertDao");
+			dao.upsert(alianzas.get(0));
+			Assert.assertEquals("upsertDao", dao.findById(alianzas.get(0)).getNombre());
+			Assert.assertEquals(alianzas.size(), dao.findAllByIds(Arrays.asList(300L, 301L, 302L, 303L, 304L, 305L,
+					306L, 307L, 308L, 309L)).size());
+			dao.deleteAll(alianzas);
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		}
+	}
+
+	@Test
+	public void cacheSnapshot() throws IOException {
+		AlianzaDao dao = new AlianzaDao(connection);
+		dao.setEntityCache(new EntityCache<Object, Alianza>(100));
+		for (long id = 400; id < 410; id++) {
+			Alianza ali = new Alianza();
+			ali.setId(id);
+			ali.setNombre("cacheSnapshotDao" + id);
+			ali.setFechaInsercion(new Date());
+			dao.getEntityCache().put(id, ali);
+		}
+		Path file = Files.createTempFile("cacheSnapshot", ".qss");
+		try {
+			Assert.assertEquals(10, dao.saveCacheSnapshot(file));
+			AlianzaDao restored = new AlianzaDao(connection);
+			restored.setEntityCache(new EntityCache<Object, Alianza>(100));
+			Assert.assertEquals(10, restored.loadCacheSnapshot(file));
+			Assert.assertEquals("cacheSnapshotDao405", restored.getEntityCache().getIfPresent(405L).getNombre());
+		} catch (DaoException e) {
+			e.printStackTrace();
+			fail("ERROR");
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
 }
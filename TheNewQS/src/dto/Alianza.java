@@ -5,12 +5,46 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 
-public class Alianza {
+import query.Persistable;
+import query.bind.ParameterBinder;
+import query.mapper.RowMapper;
+
+public class Alianza implements Persistable {
 
 	public static final String FECHA_INSERCION = "fecha_insercion";
 	public static final String NOMBRE = "nombre";
 	public static final String ID = "ID";
 
+	/**
+	 * Traducción de una fila completa de la tabla, compartida por todas las
+	 * consultas. Las posiciones de las columnas se buscan una vez por
+	 * {@link ResultSet} y cada fila se lee por índice.
+	 */
+	public static final RowMapper<Alianza> MAPPER = new RowMapper<Alianza>() {
+
+		private volatile Columns last;
+
+		@Override
+		public Alianza map(final ResultSet rs) throws SQLException {
+			Columns columns = last;
+			if (columns == null || columns.resultSet != rs) {
+				columns = new Columns(rs);
+				last = columns;
+			}
+			final Alianza alianza = new Alianza();
+			alianza.setId(rs.getLong(columns.id));
+			alianza.setNombre(rs.getString(columns.nombre));
+			alianza.setFechaInsercion(rs.getDate(columns.fechaInsercion));
+			return alianza;
+		}
+	};
+
+	/**
+	 * Parámetros de un insert con las columnas id, nombre y fecha_insercion.
+	 */
+	public static final ParameterBinder<Alianza> BINDER = (statement, bean) -> bean
+			.addParametersToStatement(statement);
+
 	private Long id;
 	private String nombre;
 	private Date fechaInsercion;
@@ -78,6 +112,25 @@ public class Alianza {
 		return alianza;
 	}
 
+	/**
+	 * Posiciones de las columnas de la tabla en un {@link ResultSet}.
+	 */
+	private static final class Columns {
+
+		private final ResultSet resultSet;
+		private final int id;
+		private final int nombre;
+		private final int fechaInsercion;
+
+		private Columns(final ResultSet resultSet) throws SQLException {
+			this.resultSet = resultSet;
+			this.id = resultSet.findColumn(ID);
+			this.nombre = resultSet.findColumn(NOMBRE);
+			this.fechaInsercion = resultSet.findColumn(FECHA_INSERCION);
+		}
+	}
+
+	@Override
 	public void addParametersToStatement(PreparedStatement statement) throws SQLException {
 		int cont = 1;
 		statement.setLong(cont++, id);
@@ -0,0 +1,52 @@
+package dto;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.ParametrizedQuery;
+
+/**
+ * {@link Alianza#MAPPER} sobre consultas con las columnas en distinto orden.
+ */
+public class AlianzaTest {
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:alianza");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table ALIANZA (ID bigint primary key, nombre varchar(40), fecha_insercion date)");
+			statement.execute("insert into ALIANZA values (1, 'a', DATE '2024-05-17'), (2, 'b', DATE '2024-05-18')");
+		}
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	private List<String> select(final String query) throws SQLException {
+		final List<Alianza> alianzas = ParametrizedQuery.forMapper(connection, query, Alianza.MAPPER).select();
+		return Arrays.asList(alianzas.get(0).toString(), alianzas.get(1).toString());
+	}
+
+	@Test
+	public void columnsAreFoundOncePerResultSet() throws SQLException {
+		final List<String> expected = Arrays.asList("Alianza [id=1, nombre=a, fechaInsercion=2024-05-17]",
+				"Alianza [id=2, nombre=b, fechaInsercion=2024-05-18]");
+		assertEquals(expected, select("select * from ALIANZA order by ID"));
+		assertEquals(expected, select("select fecha_insercion, nombre, ID from ALIANZA order by ID"));
+	}
+
+}
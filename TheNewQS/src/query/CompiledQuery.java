@@ -0,0 +1,630 @@
+package query;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
+
+import javax.sql.DataSource;
+
+import query.async.QueryExecutors;
+import query.bind.BinderCache;
+import query.bind.ParameterBinder;
+import query.cache.StatementCache;
+import query.columnar.ColumnarResult;
+import query.export.ResultExporter;
+import query.mapper.RowMapper;
+import query.mapper.RowMappers;
+import state.SnapshotStore;
+
+/**
+ * Definición inmutable de una consulta: texto sql, mapper del resultado y,
+ * opcionalmente, binder de los parámetros de un bean.
+ *
+ * <p>
+ * A diferencia de {@link ParametrizedQuery} no guarda ningún estado de la
+ * ejecución, por lo que puede declararse como <code>static final</code> en un
+ * DAO y lanzarse a la vez desde varios hilos con distintos parámetros. Cada
+ * ejecución recibe la conexión, o el {@link DataSource} del que tomarla
+ * prestada.
+ *
+ * <p>
+ * {@link ParametrizedQuery} delega aquí todas sus ejecuciones, de modo que la
+ * preparación, las métricas y la liberación de sentencias están en un único
+ * sitio.
+ *
+ * <pre>
+ * static final CompiledQuery&lt;Alianza&gt; FIND_BY_ID = new CompiledQuery&lt;Alianza&gt;(
+ * 		"SELECT * FROM ALIANZA ali WHERE ID = ?", Alianza.MAPPER);
+ * ...
+ * Alianza alianza = FIND_BY_ID.selectFirst(dataSource, 4L);
+ * </pre>
+ *
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo parametrizado.
+ */
+public final class CompiledQuery<T> {
+
+	private final String query;
+	private final RowMapper<T> mapper;
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+
+	private final ParameterBinder<? super T> binder;
+	private final ParameterBinder<Object[]> paramsBinder;
+	private final StatementCache statementCache;
+	private final int fetchSize;
+	private final int batchSize;
+
+	/**
+	 * Crea una consulta cuyo resultado se traduce con el mapper por defecto de
+	 * la clase, ver {@link RowMappers#forClass(Class)}.
+	 *
+	 * @param clazz
+	 *            Clase resultante de cada fila, pe: Long.class
+	 * @param query
+	 *            Consulta sql, admite variables bind con el formato '?'.
+	 */
+	public CompiledQuery(final Class<T> clazz, final String query) {
+		this(query, RowMappers.forClass(clazz), null);
+	}
+
+	/**
+	 * Crea una consulta con un mapper propio.
+	 *
+	 * @param query
+	 *            Consulta sql, admite variables bind con el formato '?'.
+	 * @param mapper
+	 *            Traducción de cada fila del resultado.
+	 */
+	public CompiledQuery(final String query, final RowMapper<T> mapper) {
+		this(query, mapper, null);
+	}
+
+	/**
+	 * Crea una consulta con un mapper y un binder propios. El binder se usa en
+	 * {@link #persistBean(Connection, Object)} y
+	 * {@link #persistBatch(Connection, Collection)}.
+	 *
+	 * @param query
+	 *            Consulta sql, admite variables bind con el formato '?'.
+	 * @param mapper
+	 *            Traducción de cada fila del resultado, puede ser null si la
+	 *            consulta es una modificación.
+	 * @param binder
+	 *            Forma de añadir a la sentencia los parámetros de un bean.
+	 */
+	public CompiledQuery(final String query, final RowMapper<T> mapper, final ParameterBinder<? super T> binder) {
+		this(query, mapper, binder, new BinderCache(), null, 0, ParametrizedQuery.DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Crea una consulta con una forma propia de añadir los parámetros
+	 * posicionales, que {@link ParametrizedQuery} usa para respetar
+	 * {@link ParametrizedQuery#addParametersToStatement(PreparedStatement)}.
+	 */
+	CompiledQuery(final String query, final RowMapper<T> mapper, final ParameterBinder<? super T> binder,
+			final ParameterBinder<Object[]> paramsBinder, final StatementCache statementCache, final int fetchSize,
+			final int batchSize) {
+		if (query == null || query.isEmpty()) {
+			throw new IllegalArgumentException("A query has not been specified");
+		}
+		this.query = query;
+		this.mapper = mapper;
+		this.binder = binder;
+		this.paramsBinder = paramsBinder;
+		this.statementCache = statementCache;
+		this.fetchSize = fetchSize;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param cache
+	 *            Caché de sentencias que se usará por defecto, puede ser null.
+	 * @return Copia de esta consulta con la caché indicada.
+	 */
+	public CompiledQuery<T> withStatementCache(final StatementCache cache) {
+		return new CompiledQuery<T>(query, mapper, binder, paramsBinder, cache, fetchSize, batchSize);
+	}
+
+	/**
+	 * @param size
+	 *            FetchSize que se aplicará a cada ejecución, 0 para el valor
+	 *            por defecto del driver; admite
+	 *            {@link ParametrizedQuery#STREAMING_FETCH_SIZE}.
+	 * @return Copia de esta consulta con el fetchSize indicado.
+	 */
+	public CompiledQuery<T> withFetchSize(final int size) {
+		return new CompiledQuery<T>(query, mapper, binder, paramsBinder, statementCache,
+				Statements.checkFetchSize(size), batchSize);
+	}
+
+	/**
+	 * @param size
+	 *            Número máximo de filas por cada envío de
+	 *            {@link #persistBatch(Connection, Collection)}.
+	 * @return Copia de esta consulta con el tamaño de lote indicado.
+	 */
+	public CompiledQuery<T> withBatchSize(final int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Batch size must be 1 or more");
+		}
+		return new CompiledQuery<T>(query, mapper, binder, paramsBinder, statementCache, fetchSize, size);
+	}
+
+	/**
+	 * Ejecuta la consulta tomando prestada una conexión del DataSource.
+	 *
+	 * @see #select(Connection, StatementCache, Object[])
+	 */
+	public List<T> select(final DataSource dataSource, final Object... params) throws SQLException {
+		try (Connection connection = ConnectionBinding.getConnection(dataSource)) {
+			return select(connection, statementCache, params);
+		}
+	}
+
+	/**
+	 * Ejecuta la consulta sobre la conexión.
+	 *
+	 * @see #select(Connection, StatementCache, Object[])
+	 */
+	public List<T> select(final Connection connection, final Object... params) throws SQLException {
+		return select(connection, statementCache, params);
+	}
+
+	/**
+	 * Ejecuta la consulta y traduce todas las filas del resultado.
+	 *
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param cache
+	 *            Caché de sentencias a usar en esta ejecución, puede ser null.
+	 * @param params
+	 *            Valores de las variables bind en el orden en que aparecen.
+	 * @return Lista de resultados, puede tener longitud 0.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 */
+	public List<T> select(final Connection connection, final StatementCache cache, final Object[] params)
+			throws SQLException {
+		checkMapper();
+		return query(connection, cache, params, resultSet -> {
+			final List<T> result = new ArrayList<T>();
+			while (resultSet.next()) {
+				result.add(mapper.map(resultSet));
+			}
+			return result;
+		}, List::size);
+	}
+
+	/**
+	 * Lanza la consulta sin bloquear al llamante, tomando prestada una conexión
+	 * del DataSource, en el executor de
+	 * {@link QueryExecutors#forDataSource(DataSource)}.
+	 *
+	 * @see #select(Connection, StatementCache, Object[])
+	 * @return Futuro con la lista de resultados. Los errores de BBDD llegan
+	 *         envueltos en {@link java.util.concurrent.CompletionException}.
+	 */
+	public CompletableFuture<List<T>> selectAsync(final DataSource dataSource, final Object... params) {
+		return QueryExecutors.supply(() -> select(dataSource, params), QueryExecutors.forDataSource(dataSource));
+	}
+
+	/**
+	 * Lanza la consulta sin bloquear al llamante.
+	 *
+	 * @see #selectAsync(DataSource, Object...)
+	 * @return Futuro con la primera fila del resultado, null si no hay
+	 *         ninguna.
+	 */
+	public CompletableFuture<T> selectFirstAsync(final DataSource dataSource, final Object... params) {
+		return QueryExecutors.supply(() -> selectFirst(dataSource, params), QueryExecutors.forDataSource(dataSource));
+	}
+
+	/**
+	 * Ejecuta la consulta tomando prestada una conexión del DataSource.
+	 *
+	 * @see #selectFirst(Connection, StatementCache, Object[])
+	 */
+	public T selectFirst(final DataSource dataSource, final Object... params) throws SQLException {
+		try (Connection connection = ConnectionBinding.getConnection(dataSource)) {
+			return selectFirst(connection, statementCache, params);
+		}
+	}
+
+	/**
+	 * Ejecuta la consulta sobre la conexión.
+	 *
+	 * @see #selectFirst(Connection, StatementCache, Object[])
+	 */
+	public T selectFirst(final Connection connection, final Object... params) throws SQLException {
+		return selectFirst(connection, statementCache, params);
+	}
+
+	/**
+	 * Ejecuta la consulta y traduce únicamente la primera fila, sin leer el
+	 * resto del resultado.
+	 *
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param cache
+	 *            Caché de sentencias a usar en esta ejecución, puede ser null.
+	 * @param params
+	 *            Valores de las variables bind en el orden en que aparecen.
+	 * @return Primera fila del resultado, null si no hay ninguna.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 */
+	public T selectFirst(final Connection connection, final StatementCache cache, final Object[] params)
+			throws SQLException {
+		checkMapper();
+		return query(connection, cache, params, resultSet -> resultSet.next() ? mapper.map(resultSet) : null,
+				result -> result != null ? 1 : 0);
+	}
+
+	/**
+	 * Ejecuta la consulta y devuelve la primera columna de cada fila como
+	 * <code>long</code>, sin aplicar el mapper.
+	 *
+	 * @see ParametrizedQuery#selectLongs()
+	 */
+	long[] selectLongs(final Connection connection, final Object[] params) throws SQLException {
+		return query(connection, statementCache, params, resultSet -> {
+			long[] result = new long[initialCapacity()];
+			int size = 0;
+			while (resultSet.next()) {
+				if (size == result.length) {
+					result = Arrays.copyOf(result, size << 1);
+				}
+				result[size++] = resultSet.getLong(1);
+			}
+			return size == result.length ? result : Arrays.copyOf(result, size);
+		}, result -> result.length);
+	}
+
+	/**
+	 * Ejecuta la consulta y devuelve la primera columna de cada fila como
+	 * <code>int</code>, sin aplicar el mapper.
+	 *
+	 * @see ParametrizedQuery#selectInts()
+	 */
+	int[] selectInts(final Connection connection, final Object[] params) throws SQLException {
+		return query(connection, statementCache, params, resultSet -> {
+			int[] result = new int[initialCapacity()];
+			int size = 0;
+			while (resultSet.next()) {
+				if (size == result.length) {
+					result = Arrays.copyOf(result, size << 1);
+				}
+				result[size++] = resultSet.getInt(1);
+			}
+			return size == result.length ? result : Arrays.copyOf(result, size);
+		}, result -> result.length);
+	}
+
+	/**
+	 * Ejecuta la consulta guardando el resultado por columnas.
+	 *
+	 * @see ParametrizedQuery#selectColumnar(boolean)
+	 */
+	ColumnarResult selectColumnar(final Connection connection, final Object[] params, final boolean offHeap)
+			throws SQLException {
+		return query(connection, statementCache, params,
+				resultSet -> ColumnarResult.read(resultSet, offHeap, fetchSize > 0 ? initialCapacity() : 0),
+				ColumnarResult::size);
+	}
+
+	/**
+	 * Ejecuta la consulta volcando el resultado a <b>file</b>.
+	 *
+	 * @see ParametrizedQuery#export(Path, ResultExporter)
+	 */
+	long export(final Connection connection, final Object[] params, final Path file, final ResultExporter exporter)
+			throws SQLException, IOException {
+		return query(connection, statementCache, params, resultSet -> exporter.export(resultSet, file),
+				Long::longValue);
+	}
+
+	/**
+	 * Ejecuta la consulta guardando el resultado en <b>file</b> con
+	 * {@link SnapshotStore}.
+	 *
+	 * @see ParametrizedQuery#snapshot(Path)
+	 */
+	int snapshot(final Connection connection, final Object[] params, final Path file)
+			throws SQLException, IOException {
+		return query(connection, statementCache, params, resultSet -> SnapshotStore.write(file, resultSet),
+				Integer::longValue);
+	}
+
+	/**
+	 * Ejecución común a todas las lecturas: prepara la sentencia, añade los
+	 * parámetros, lee el resultado con <b>reader</b> anotando en las métricas
+	 * las <b>rows</b> filas del valor devuelto, y libera la sentencia pase lo
+	 * que pase.
+	 */
+	private <R, E extends Exception> R query(final Connection connection, final StatementCache cache,
+			final Object[] params, final ResultReader<R, E> reader, final ToLongFunction<? super R> rows)
+			throws SQLException, E {
+		final Execution execution = Execution.start(query, params);
+		final PreparedStatement statement = execution.prepare(connection, query, cache);
+		try {
+			statement.setFetchSize(fetchSize);
+			paramsBinder.bind(statement, params);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				execution.executed();
+				final R result = reader.read(resultSet);
+				execution.finish(rows.applyAsLong(result));
+				return result;
+			}
+		} catch (Exception e) {
+			execution.failed(e);
+			throw e;
+		} finally {
+			Statements.release(connection, query, statement, cache);
+		}
+	}
+
+	/**
+	 * @return Capacidad inicial de los arrays de resultado: el fetchSize,
+	 *         limitado para no reservar de golpe memoria que quizá no se use.
+	 */
+	private int initialCapacity() {
+		return fetchSize > 0 ? Math.min(fetchSize, MAX_INITIAL_CAPACITY) : 16;
+	}
+
+	/**
+	 * Ejecuta la modificación tomando prestada una conexión del DataSource.
+	 *
+	 * @see #persist(Connection, StatementCache, Object[])
+	 */
+	public int persist(final DataSource dataSource, final Object... params) throws SQLException {
+		try (Connection connection = ConnectionBinding.getConnection(dataSource)) {
+			return persist(connection, statementCache, params);
+		}
+	}
+
+	/**
+	 * Lanza la modificación sin bloquear al llamante.
+	 *
+	 * @see #selectAsync(DataSource, Object...)
+	 * @return Futuro con el número de filas modificadas.
+	 */
+	public CompletableFuture<Integer> persistAsync(final DataSource dataSource, final Object... params) {
+		return QueryExecutors.supply(() -> persist(dataSource, params), QueryExecutors.forDataSource(dataSource));
+	}
+
+	/**
+	 * Ejecuta la modificación sobre la conexión.
+	 *
+	 * @see #persist(Connection, StatementCache, Object[])
+	 */
+	public int persist(final Connection connection, final Object... params) throws SQLException {
+		return persist(connection, statementCache, params);
+	}
+
+	/**
+	 * Ejecuta la modificación con los parámetros indicados.
+	 *
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param cache
+	 *            Caché de sentencias a usar en esta ejecución, puede ser null.
+	 * @param params
+	 *            Valores de las variables bind en el orden en que aparecen.
+	 * @return Número de filas modificadas.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 */
+	public int persist(final Connection connection, final StatementCache cache, final Object[] params)
+			throws SQLException {
+		return update(connection, cache, Execution.start(query, params), paramsBinder, params);
+	}
+
+	/**
+	 * Ejecuta la modificación sobre la conexión.
+	 *
+	 * @see #persistBean(Connection, StatementCache, Object)
+	 */
+	public int persistBean(final Connection connection, final T bean) throws SQLException {
+		return persistBean(connection, statementCache, bean);
+	}
+
+	/**
+	 * Ejecuta la modificación con los parámetros que el binder extrae del
+	 * bean.
+	 *
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param cache
+	 *            Caché de sentencias a usar en esta ejecución, puede ser null.
+	 * @param bean
+	 *            Bean del que se extraen los parámetros.
+	 * @return Número de filas modificadas.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws UnsupportedOperationException
+	 *             Si la consulta no tiene binder.
+	 */
+	public int persistBean(final Connection connection, final StatementCache cache, final T bean)
+			throws SQLException {
+		checkBinder();
+		return update(connection, cache, Execution.forBean(query, bean), binder, bean);
+	}
+
+	/**
+	 * Ejecución común a las modificaciones de una única vez.
+	 */
+	private <P> int update(final Connection connection, final StatementCache cache, final Execution execution,
+			final ParameterBinder<? super P> parameters, final P value) throws SQLException {
+		final PreparedStatement statement = execution.prepare(connection, query, cache);
+		try {
+			parameters.bind(statement, value);
+			final int count = statement.executeUpdate();
+			execution.executed();
+			execution.finish(count);
+			return count;
+		} catch (SQLException | RuntimeException e) {
+			execution.failed(e);
+			throw e;
+		} finally {
+			Statements.release(connection, query, statement, cache);
+		}
+	}
+
+	/**
+	 * Ejecuta el lote sobre la conexión.
+	 *
+	 * @see #persistBatch(Connection, StatementCache, Collection)
+	 */
+	public int[] persistBatch(final Connection connection, final Collection<? extends T> beans)
+			throws SQLException {
+		return persistBatch(connection, statementCache, beans);
+	}
+
+	/**
+	 * Ejecuta la modificación una vez por cada bean, agrupándolas en lotes JDBC.
+	 *
+	 * @see ParametrizedQuery#persistBatch(Collection)
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param cache
+	 *            Caché de sentencias a usar en esta ejecución, puede ser null.
+	 * @param beans
+	 *            Beans de los que se extraen los parámetros.
+	 * @return Número de filas modificadas por cada bean.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws UnsupportedOperationException
+	 *             Si la consulta no tiene binder.
+	 */
+	public int[] persistBatch(final Connection connection, final StatementCache cache,
+			final Collection<? extends T> beans) throws SQLException {
+		checkBinder();
+		final int[] result = new int[beans.size()];
+		if (result.length == 0) {
+			return result;
+		}
+		final Execution execution = Execution.start(query, null);
+		final PreparedStatement statement = execution.prepare(connection, query, cache);
+		try {
+			int pending = 0;
+			int done = 0;
+			for (final T bean : beans) {
+				binder.bind(statement, bean);
+				statement.addBatch();
+				if (++pending == batchSize) {
+					done = copyCounts(statement.executeBatch(), result, done);
+					pending = 0;
+				}
+			}
+			if (pending > 0) {
+				copyCounts(statement.executeBatch(), result, done);
+			}
+			execution.executed();
+			execution.finish(result.length);
+			return result;
+		} catch (SQLException e) {
+			execution.failed(e);
+			Statements.clearBatch(statement, e);
+			throw e;
+		} catch (RuntimeException e) {
+			execution.failed(e);
+			throw e;
+		} finally {
+			Statements.release(connection, query, statement, cache);
+		}
+	}
+
+	private void checkMapper() {
+		if (mapper == null) {
+			throw new UnsupportedOperationException(String.format("No mapper declared for query: %s", query));
+		}
+	}
+
+	private void checkBinder() {
+		if (binder == null) {
+			throw new UnsupportedOperationException(String.format("No binder declared for query: %s", query));
+		}
+	}
+
+	/**
+	 * Lectura del resultado de una ejecución.
+	 *
+	 * @param <R>
+	 *            Valor que se obtiene del resultado.
+	 * @param <E>
+	 *            Excepción que puede lanzar además de {@link SQLException}.
+	 */
+	private interface ResultReader<R, E extends Exception> {
+
+		R read(ResultSet resultSet) throws SQLException, E;
+	}
+
+	private static int copyCounts(final int[] counts, final int[] result, final int offset) {
+		System.arraycopy(counts, 0, result, offset, Math.min(counts.length, result.length - offset));
+		return offset + counts.length;
+	}
+
+	/**
+	 * @return the query
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return the mapper
+	 */
+	public RowMapper<T> getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * @return the binder
+	 */
+	public ParameterBinder<? super T> getBinder() {
+		return binder;
+	}
+
+	/**
+	 * @return the statementCache
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	/**
+	 * @return the fetchSize
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @return the batchSize
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CompiledQuery [query=" + query + ", fetchSize=" + fetchSize + ", batchSize=" + batchSize + "]";
+	}
+
+}
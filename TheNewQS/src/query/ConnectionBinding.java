@@ -0,0 +1,110 @@
+package query;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * Asocia al hilo actual un {@link DataSource} alternativo para un
+ * {@link DataSource} dado, de modo que todas las consultas que tomen conexión
+ * de este último usen la de una transacción en curso, como
+ * {@link dao.base.UnitOfWork}.
+ *
+ * <p>
+ * La respetan {@link ParametrizedQuery} y {@link CompiledQuery} creadas con un
+ * DataSource y los DAO. Las ejecuciones asíncronas corren en otro hilo y por
+ * tanto no la ven.
+ *
+ * @author fferezsa
+ *
+ */
+public final class ConnectionBinding {
+
+	private static final ThreadLocal<Binding> CURRENT = new ThreadLocal<Binding>();
+
+	private ConnectionBinding() {
+	}
+
+	/**
+	 * Hace que en el hilo actual las conexiones de <b>source</b> se obtengan
+	 * de <b>target</b>, que normalmente entrega siempre la misma conexión sin
+	 * permitir cerrarla.
+	 *
+	 * @param source
+	 *            Origen de conexiones con el que se declaran las consultas.
+	 * @param target
+	 *            Origen que lo sustituye.
+	 * @throws IllegalStateException
+	 *             Si el hilo ya tiene una asociación.
+	 */
+	public static void bind(final DataSource source, final DataSource target) {
+		if (CURRENT.get() != null) {
+			throw new IllegalStateException("A connection is already bound to this thread");
+		}
+		CURRENT.set(new Binding(source, target));
+	}
+
+	/**
+	 * Elimina la asociación del hilo actual si es la de <b>source</b>.
+	 *
+	 * @param source
+	 *            Origen de conexiones asociado con
+	 *            {@link #bind(DataSource, DataSource)}.
+	 */
+	public static void unbind(final DataSource source) {
+		final Binding binding = CURRENT.get();
+		if (binding != null && binding.source == source) {
+			CURRENT.remove();
+		}
+	}
+
+	/**
+	 * @param source
+	 *            Origen de conexiones.
+	 * @return Si el hilo actual tiene una asociación para <b>source</b>.
+	 */
+	public static boolean isBound(final DataSource source) {
+		final Binding binding = CURRENT.get();
+		return binding != null && binding.source == source;
+	}
+
+	/**
+	 * @return Si el hilo actual tiene alguna asociación, es decir, si hay una
+	 *         transacción en curso cuyas escrituras aún no se han confirmado.
+	 */
+	public static boolean isActive() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * Obtiene una conexión de <b>source</b>, o de su sustituto si el hilo
+	 * actual tiene una asociación para él. Debe cerrarse igualmente al
+	 * terminar.
+	 *
+	 * @param source
+	 *            Origen de conexiones.
+	 * @return Conexión a usar.
+	 * @throws SQLException
+	 *             Si no se puede obtener la conexión.
+	 */
+	public static Connection getConnection(final DataSource source) throws SQLException {
+		final Binding binding = CURRENT.get();
+		if (binding != null && binding.source == source) {
+			return binding.target.getConnection();
+		}
+		return source.getConnection();
+	}
+
+	private static final class Binding {
+
+		private final DataSource source;
+		private final DataSource target;
+
+		private Binding(final DataSource source, final DataSource target) {
+			this.source = source;
+			this.target = target;
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import query.cache.StatementCache;
+import query.metrics.QueryMetrics;
+
+/**
+ * Cronómetro de una ejecución para {@link QueryMetrics}: marca el final de la
+ * preparación, de la ejecución y del recorrido del resultado. Si las métricas
+ * están desactivadas y no hay listeners se usa una instancia compartida que no
+ * mide nada.
+ * 
+ * @author fferezsa
+ *
+ */
+final class Execution {
+
+	private static final Execution DISABLED = new Execution(null, null, null, null);
+
+	private final QueryMetrics metrics;
+	private final String sql;
+	private final Object[] params;
+	private final Object bean;
+	private final long start;
+	private long prepared;
+	private long executed;
+
+	private Execution(final QueryMetrics metrics, final String sql, final Object[] params, final Object bean) {
+		this.metrics = metrics;
+		this.sql = sql;
+		this.params = params;
+		this.bean = bean;
+		this.start = metrics != null ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Empieza a medir una ejecución.
+	 */
+	static Execution start(final String sql, final Object[] params) {
+		final QueryMetrics metrics = QueryMetrics.getDefault();
+		return metrics.isRecording() ? new Execution(metrics, sql, params, null) : DISABLED;
+	}
+
+	/**
+	 * Empieza a medir una ejecución cuyos parámetros se extraen de un bean,
+	 * que se notificará como único parámetro.
+	 */
+	static Execution forBean(final String sql, final Object bean) {
+		final QueryMetrics metrics = QueryMetrics.getDefault();
+		return metrics.isRecording() ? new Execution(metrics, sql, null, bean) : DISABLED;
+	}
+
+	/**
+	 * Obtiene la sentencia con {@link Statements#prepare} anotando el tiempo
+	 * empleado, o el error si falla. El sql se recibe siempre del llamante: la
+	 * instancia compartida sin métricas no lo conoce.
+	 */
+	PreparedStatement prepare(final Connection connection, final String sql, final StatementCache cache)
+			throws SQLException {
+		try {
+			final PreparedStatement statement = Statements.prepare(connection, sql, cache);
+			prepared();
+			return statement;
+		} catch (SQLException | RuntimeException e) {
+			failed(e);
+			throw e;
+		}
+	}
+
+	void prepared() {
+		if (metrics != null) {
+			prepared = System.nanoTime();
+		}
+	}
+
+	void executed() {
+		if (metrics != null) {
+			executed = System.nanoTime();
+		}
+	}
+
+	void finish(final long rows) {
+		record(rows, null);
+	}
+
+	void failed(final Exception error) {
+		record(0, error);
+	}
+
+	private void record(final long rows, final Exception error) {
+		if (metrics == null) {
+			return;
+		}
+		final long end = System.nanoTime();
+		final long preparedAt = prepared != 0 ? prepared : end;
+		final long executedAt = executed != 0 ? executed : end;
+		final Object[] notified = params == null && bean != null ? new Object[] { bean } : params;
+		metrics.record(sql, notified, preparedAt - start, executedAt - preparedAt, end - executedAt, rows, error);
+	}
+
+}
@@ -0,0 +1,65 @@
+package query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.cache.StatementCache;
+import query.metrics.QueryMetrics;
+
+/**
+ * Ejecuciones con las métricas desactivadas y sin listeners, que comparten la
+ * instancia de {@link Execution} que no mide nada.
+ */
+public class ExecutionTest {
+
+	private Connection connection;
+	private boolean enabled;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:execution");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table t (id bigint primary key, name varchar(20))");
+			statement.execute("insert into t values (1, 'a'), (2, 'b')");
+		}
+		enabled = QueryMetrics.getDefault().isEnabled();
+		QueryMetrics.getDefault().setEnabled(false);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		QueryMetrics.getDefault().setEnabled(enabled);
+		connection.close();
+	}
+
+	@Test
+	public void parametrizedQueryRunsWithMetricsDisabled() throws SQLException {
+		final ParametrizedQuery<Long> query = new ParametrizedQuery<Long>(Long.class, connection,
+				"select id from t order by id");
+		assertEquals(Arrays.asList(1L, 2L), query.select());
+		assertArrayEquals(new long[] { 1L, 2L }, query.selectLongs());
+		assertEquals(1, new ParametrizedQuery<Long>(Long.class, connection).persist("update t set name = ? where id = ?",
+				"c", 2L));
+	}
+
+	@Test
+	public void compiledQueryRunsWithMetricsDisabled() throws SQLException {
+		final CompiledQuery<String> query = new CompiledQuery<String>(String.class, "select name from t where id = ?")
+				.withStatementCache(new StatementCache(4));
+		final List<String> names = query.select(connection, 1L);
+		assertEquals(Arrays.asList("a"), names);
+		assertEquals("b", query.selectFirst(connection, 2L));
+	}
+
+}
@@ -0,0 +1,386 @@
+package query;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Seguimiento de las sentencias y {@link ResultIterator} abiertos por
+ * {@link ParametrizedQuery} y {@link CompiledQuery}, para detectar los que
+ * nunca se cierran en aplicaciones que mantienen las conexiones abiertas
+ * durante días.
+ *
+ * <p>
+ * Con {@link #enable()} se guarda la pila de creación de cada recurso. Los
+ * {@link ResultIterator} que el recolector descarta sin haberse cerrado se
+ * registran en el log <code>query.leaks</code> con esa pila, y su sentencia y
+ * conexión se liberan en ese momento. {@link #report(long)} registra además
+ * los recursos que siguen abiertos pasado un tiempo.
+ *
+ * <p>
+ * Con {@link #setMaxOpenStatements(int)} se limita el número de sentencias en
+ * uso a la vez por conexión física, atravesando con
+ * {@link Connection#unwrap(Class)} los proxies de los pools: al superarlo la
+ * ejecución falla con una {@link SQLException} en lugar de acumular cursores
+ * en el servidor. Las
+ * sentencias en reposo de una {@link query.cache.StatementCache} no cuentan,
+ * ya que la caché tiene su propio límite.
+ *
+ * <p>
+ * Puede activarse sin tocar código arrancando con
+ * <code>-Dquery.leaks.enabled=true</code> y
+ * <code>-Dquery.leaks.maxOpenStatements=50</code>. Desactivado solo cuesta una
+ * lectura por ejecución.
+ *
+ * @author fferezsa
+ *
+ */
+public final class LeakDetector {
+
+	static final String STATEMENT = "statement";
+	static final String STREAM = "stream";
+
+	private static final Logger LOGGER = Logger.getLogger("query.leaks");
+
+	private static volatile boolean enabled = Boolean.getBoolean("query.leaks.enabled");
+	private static volatile int maxOpenStatements = Integer.getInteger("query.leaks.maxOpenStatements", 0);
+
+	private static final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+	private static final ReferenceQueue<Object> collectedConnections = new ReferenceQueue<Object>();
+	private static final Set<Handle> open = ConcurrentHashMap.newKeySet();
+	private static final ConcurrentMap<Ref, Handle> byStatement = new ConcurrentHashMap<Ref, Handle>();
+	private static final ConcurrentMap<Ref, Counter> statementsByConnection = new ConcurrentHashMap<Ref, Counter>();
+	private static final AtomicLong leaks = new AtomicLong();
+
+	private LeakDetector() {
+	}
+
+	/**
+	 * Activa el registro de la pila de creación y la detección de recursos no
+	 * cerrados. Solo afecta a los recursos abiertos a partir de ese momento.
+	 */
+	public static void enable() {
+		enabled = true;
+	}
+
+	/**
+	 * Desactiva la detección. Los recursos ya seguidos se siguen liberando
+	 * normalmente.
+	 */
+	public static void disable() {
+		enabled = false;
+	}
+
+	/**
+	 * @return Si la detección está activa.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return Número máximo de sentencias en uso a la vez por conexión, 0 si
+	 *         no hay límite.
+	 */
+	public static int getMaxOpenStatements() {
+		return maxOpenStatements;
+	}
+
+	/**
+	 * @param max
+	 *            Número máximo de sentencias en uso a la vez por conexión, 0
+	 *            para no limitarlo.
+	 */
+	public static void setMaxOpenStatements(final int max) {
+		if (max < 0) {
+			throw new IllegalArgumentException("Max open statements must be 0 or more");
+		}
+		maxOpenStatements = max;
+	}
+
+	/**
+	 * @return Número de recursos seguidos que siguen abiertos.
+	 */
+	public static int getOpenCount() {
+		return open.size();
+	}
+
+	/**
+	 * @return Número de recursos descartados por el recolector sin haberse
+	 *         cerrado.
+	 */
+	public static long getLeakCount() {
+		return leaks.get();
+	}
+
+	/**
+	 * Registra en el log <code>query.leaks</code> los recursos que llevan
+	 * abiertos al menos <b>olderThanMillis</b>, con su pila de creación si se
+	 * abrieron con la detección activa.
+	 *
+	 * @param olderThanMillis
+	 *            Antigüedad mínima de los recursos a registrar.
+	 * @return Número de recursos registrados.
+	 */
+	public static int report(final long olderThanMillis) {
+		expunge();
+		final long now = System.currentTimeMillis();
+		int count = 0;
+		for (final Handle handle : open) {
+			final long age = now - handle.openedAt;
+			if (age >= olderThanMillis) {
+				count++;
+				LOGGER.log(Level.WARNING, "Open " + handle.kind + " for " + age + " ms: " + handle.sql, handle.origin);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Descripción de los recursos abiertos, para depuración.
+	 *
+	 * @return Tipo y consulta de cada recurso abierto.
+	 */
+	public static List<String> describeOpen() {
+		final List<String> result = new ArrayList<String>();
+		for (final Handle handle : open) {
+			result.add(handle.kind + ": " + handle.sql);
+		}
+		return result;
+	}
+
+	/**
+	 * Empieza a seguir una sentencia antes de prepararla, comprobando el
+	 * límite de la conexión.
+	 *
+	 * @return Recurso a completar con {@link Handle#attach(Object, Runnable)},
+	 *         null si no hay nada que seguir.
+	 * @throws SQLException
+	 *             Si la conexión ya tiene el máximo de sentencias en uso.
+	 */
+	static Handle reserveStatement(final Connection connection, final String sql) throws SQLException {
+		final int max = maxOpenStatements;
+		if (!enabled && max == 0) {
+			return null;
+		}
+		expunge();
+		final Counter counter = statementsByConnection.compute(new Ref(physical(connection), collectedConnections),
+				(key, current) -> {
+					final Counter updated = current != null ? current : new Counter(key);
+					updated.count++;
+					return updated;
+				});
+		final Handle handle = new Handle(STATEMENT, sql, counter);
+		if (max > 0 && counter.count > max) {
+			handle.close();
+			final SQLException e = new SQLException(
+					"Too many open statements on connection (" + max + "), possible leak: " + sql);
+			final Handle oldest = oldestStatement(counter);
+			if (oldest != null && oldest.origin != null) {
+				e.initCause(oldest.origin);
+			}
+			throw e;
+		}
+		return handle;
+	}
+
+	/**
+	 * Empieza a seguir un {@link ResultIterator}.
+	 *
+	 * @return Recurso a completar con {@link Handle#attach(Object, Runnable)},
+	 *         null si la detección está desactivada.
+	 */
+	static Handle reserveStream(final String sql) {
+		if (!enabled) {
+			return null;
+		}
+		expunge();
+		return new Handle(STREAM, sql, null);
+	}
+
+	/**
+	 * Deja de seguir una sentencia que vuelve a la caché o se cierra.
+	 */
+	static void releaseStatement(final Object statement) {
+		if (byStatement.isEmpty()) {
+			return;
+		}
+		final Handle handle = byStatement.get(new Ref(statement, (Handle) null));
+		if (handle != null) {
+			handle.close();
+		}
+	}
+
+	/**
+	 * Conexión física tras los proxies de un pool, o la propia conexión si no
+	 * envuelve a ninguna.
+	 */
+	private static Object physical(final Connection connection) {
+		try {
+			final Connection unwrapped = connection.unwrap(Connection.class);
+			return unwrapped != null ? unwrapped : connection;
+		} catch (SQLException | RuntimeException e) {
+			return connection;
+		}
+	}
+
+	private static Handle oldestStatement(final Counter connection) {
+		Handle oldest = null;
+		for (final Handle handle : open) {
+			if (handle.connection == connection) {
+				if (oldest == null || handle.openedAt < oldest.openedAt) {
+					oldest = handle;
+				}
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * Procesa los recursos que el recolector ha descartado sin cerrar.
+	 */
+	private static void expunge() {
+		Ref ref;
+		while ((ref = (Ref) collectedConnections.poll()) != null) {
+			statementsByConnection.remove(ref);
+		}
+		while ((ref = (Ref) collected.poll()) != null) {
+			final Handle handle = ref.handle;
+			if (handle != null && handle.close()) {
+				leaks.incrementAndGet();
+				LOGGER.log(Level.WARNING, "Unclosed " + handle.kind + " was garbage collected: " + handle.sql,
+						handle.origin);
+				if (handle.cleanup != null) {
+					try {
+						handle.cleanup.run();
+					} catch (RuntimeException e) {
+						LOGGER.log(Level.WARNING, "Could not release garbage collected " + handle.kind + ": " + handle.sql,
+								e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recurso seguido. Se cierra una única vez, ya sea por el código que lo
+	 * abrió o al detectar que se ha perdido.
+	 */
+	static final class Handle {
+
+		private final String kind;
+		private final String sql;
+		private final Counter connection;
+		private final Throwable origin;
+		private final long openedAt = System.currentTimeMillis();
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private Ref owner;
+		private Runnable cleanup;
+
+		private Handle(final String kind, final String sql, final Counter connection) {
+			this.kind = kind;
+			this.sql = sql;
+			this.connection = connection;
+			this.origin = enabled ? new Throwable("Opened here") : null;
+		}
+
+		/**
+		 * Asocia el recurso a su objeto. Si el objeto se descarta sin cerrar
+		 * el recurso se ejecuta <b>cleanup</b>, que no debe referenciarlo.
+		 */
+		void attach(final Object resource, final Runnable cleanup) {
+			this.cleanup = cleanup;
+			this.owner = new Ref(resource, this);
+			open.add(this);
+			if (kind == STATEMENT) {
+				byStatement.put(owner, this);
+			}
+		}
+
+		/**
+		 * @return Si esta llamada lo ha cerrado.
+		 */
+		boolean close() {
+			if (!closed.compareAndSet(false, true)) {
+				return false;
+			}
+			open.remove(this);
+			if (owner != null && kind == STATEMENT) {
+				byStatement.remove(owner, this);
+			}
+			if (connection != null) {
+				statementsByConnection.computeIfPresent(connection.key,
+						(key, current) -> --current.count > 0 ? current : null);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Sentencias en uso de una conexión. Guarda la clave con la que está en el
+	 * mapa, que sigue encontrándose por identidad aunque la conexión ya se
+	 * haya recolectado. Solo se modifica dentro de las operaciones atómicas
+	 * del mapa.
+	 */
+	private static final class Counter {
+
+		private final Ref key;
+		private volatile int count;
+
+		private Counter(final Ref key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Referencia débil comparada por identidad, para no impedir que se
+	 * recolecten las conexiones, sentencias e iteradores seguidos.
+	 */
+	private static final class Ref extends WeakReference<Object> {
+
+		private final int hash;
+		private final Handle handle;
+
+		private Ref(final Object referent, final Handle handle) {
+			this(referent, handle, handle != null ? collected : null);
+		}
+
+		private Ref(final Object referent, final ReferenceQueue<Object> queue) {
+			this(referent, null, queue);
+		}
+
+		private Ref(final Object referent, final Handle handle, final ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+			this.handle = handle;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Ref)) {
+				return false;
+			}
+			final Object referent = get();
+			return referent != null && referent == ((Ref) obj).get();
+		}
+	}
+
+}
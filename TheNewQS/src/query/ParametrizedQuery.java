@@ -1,30 +1,52 @@
 package query;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javax.sql.DataSource;
+
+import query.async.QueryExecutors;
+import query.bind.BinderCache;
+import query.bind.ParameterBinder;
+import query.cache.ResultCache;
+import query.cache.StatementCache;
+import query.columnar.ColumnarResult;
+import query.export.ResultExporter;
+import query.mapper.BeanMapper;
+import query.mapper.RowMapper;
+import query.mapper.RowMappers;
+import state.SnapshotStore;
 
 /**
  * 
- * Crea un objeto que lanzar una o varias consultas a base de datos a travs de
- * la conexin proporcionada.
+ * Crea un objeto que lanzará una o varias consultas a base de datos a través de
+ * la conexión proporcionada.
  * {@link #ParametrizedQuery(Class, Connection, String, Object...)}.
  * 
  * <p>
- * Debe ser parametrizado en la declaracin con el tipo de dato que se desea
- * obtener tras la consulta {@link #select()} o modificacin {@link #persist()}.
+ * Debe ser parametrizado en la declaración con el tipo de dato que se desea
+ * obtener tras la consulta {@link #select()} o modificación {@link #persist()}.
  * 
  * <p>
- * En caso de que el tipo parametrizado sea propio de negocio, se deben
- * sobreescribir los mtodos {@link #mapper(ResultSet)} y
- * {@link #addParametersToStatement(PreparedStatement)} con el fin de proveer
- * una traduccin Bean-BBDD. Un consejo es preparar este mtodo en la clase Bean
- * y acceder a l estticamente.
+ * En caso de que el tipo parametrizado sea propio de negocio, el resultado se
+ * traduce automáticamente con {@link BeanMapper}. Si se necesita otra
+ * traducción Bean-BBDD se debe crear la consulta con
+ * {@link #forMapper(Connection, String, RowMapper, Object...)} o
+ * {@link #forBinder(Connection, String, ParameterBinder)}, pasando un
+ * {@link RowMapper} o un {@link ParameterBinder} preparado como constante en
+ * la clase Bean y compartido por todas las consultas. Sobreescribir
+ * {@link #mapper(ResultSet)} y
+ * {@link #addParametersToStatement(PreparedStatement)} en una subclase anónima
+ * sigue siendo posible, pero crea una clase por cada punto de llamada.
  * 
  * @author fferezsa
  *
@@ -34,30 +56,54 @@ import java.util.List;
  */
 public class ParametrizedQuery<T> {
 
+	/**
+	 * Valor de fetchSize que activa en el driver de MySQL la lectura fila a
+	 * fila del resultado. Mientras dure el recorrido no puede lanzarse ninguna
+	 * otra consulta por la misma conexión.
+	 */
+	public static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+	/**
+	 * Número de filas que se envían por defecto en cada
+	 * {@link PreparedStatement#executeBatch()}.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
 	private final Class<T> parametrizedClass;
 	transient private final Connection connection;
+	transient private final DataSource dataSource;
 	private String query;
 	private Object[] params;
 	private int fetchSize;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private StatementCache statementCache;
+	private ResultCache resultCache;
+	private long resultTtlMillis;
+	private Executor executor;
+	private final BinderCache binderCache = new BinderCache();
+	private CompiledQuery<T> compiled;
+	private RowMapper<T> rowMapper;
+	private Object mapperKey;
+	private ParameterBinder<? super T> binder;
 
 	/**
 	 * Crea una ParametrizedQuery con una clase parametrizada.
 	 * 
 	 * <p>
 	 * Si la clase es propia del negocio debe declararse anonimamente y
-	 * sobreescribir los mtodos {@link #mapper(ResultSet)} y
+	 * sobreescribir los métodos {@link #mapper(ResultSet)} y
 	 * {@link #addParametersToStatement(PreparedStatement)}.
 	 * 
 	 * <p>
-	 * Se pueden usar los mtodos {@link #select()} y
+	 * Se pueden usar los métodos {@link #select()} y
 	 * {@link #select(String, Object...)} para lanzar una consulta y obtener una
 	 * lista List<T> con el tipo parametrizado.
 	 * 
 	 * 
 	 * @param clazz
-	 *            Clase con la que se parametriza el mtodo, pe: Integer.class
+	 *            Clase con la que se parametriza el método, pe: Integer.class
 	 * @param connection
-	 *            Conexin con la BBDD.
+	 *            Conexión con la BBDD.
 	 * @param query
 	 *            Consulta que debe lanzarse.
 	 * @param params
@@ -68,34 +114,167 @@ public class ParametrizedQuery<T> {
 			final Object... params) {
 		this.parametrizedClass = clazz;
 		this.connection = connection;
+		this.dataSource = null;
+		this.query = query;
+		this.params = params;
+		this.rowMapper = RowMappers.forClass(clazz);
+		this.mapperKey = clazz;
+	}
+
+	/**
+	 * Crea una ParametrizedQuery que en cada ejecución toma prestada una
+	 * conexión del {@link DataSource} y la devuelve al terminar, de modo que
+	 * el mismo objeto puede lanzarse contra un pool de conexiones.
+	 * 
+	 * @see #ParametrizedQuery(Class, Connection, String, Object...)
+	 * @param clazz
+	 *            Clase con la que se parametriza el método, pe: Integer.class
+	 * @param dataSource
+	 *            Origen de las conexiones con la BBDD.
+	 * @param query
+	 *            Consulta que debe lanzarse.
+	 * @param params
+	 *            Listado de valores para variables bind que deben incorporarse
+	 *            a la consulta.
+	 */
+	public ParametrizedQuery(final Class<T> clazz, final DataSource dataSource, final String query,
+			final Object... params) {
+		this.parametrizedClass = clazz;
+		this.connection = null;
+		this.dataSource = dataSource;
 		this.query = query;
 		this.params = params;
+		this.rowMapper = RowMappers.forClass(clazz);
+		this.mapperKey = clazz;
 	}
 
 	/**
 	 * Crea una ParametrizedQuery con una clase parametrizada. Si la clase es
-	 * propia del negocio debe declararse anonimamente y sobreescribir el mtodo
+	 * propia del negocio debe declararse anonimamente y sobreescribir el método
 	 * {@link #mapper(ResultSet)}.
 	 * 
 	 * <p>
-	 * Se pueden usar los mtodos {@link #select()} y
-	 * {@link #select(String, Object...)} para lanzar la ejecucin de la quey y
+	 * Se pueden usar los métodos {@link #select()} y
+	 * {@link #select(String, Object...)} para lanzar la ejecución de la quey y
 	 * obtener una lista List<T> con el tipo parametrizado.
 	 * 
 	 * @param clazz
-	 *            Clase con la que se parametriza el mtodo, pe: Integer.class
+	 *            Clase con la que se parametriza el método, pe: Integer.class
 	 * @param connection
-	 *            Conexin con la BBDD.
+	 *            Conexión con la BBDD.
 	 */
 	public ParametrizedQuery(final Class<T> clazz, final Connection connection) {
 		this.parametrizedClass = clazz;
 		this.connection = connection;
+		this.dataSource = null;
+		this.rowMapper = RowMappers.forClass(clazz);
+		this.mapperKey = clazz;
+	}
+
+	/**
+	 * Crea una ParametrizedQuery sin consulta que toma prestada una conexión
+	 * del {@link DataSource} en cada ejecución.
+	 * 
+	 * @see #ParametrizedQuery(Class, DataSource, String, Object...)
+	 * @param clazz
+	 *            Clase con la que se parametriza el método, pe: Integer.class
+	 * @param dataSource
+	 *            Origen de las conexiones con la BBDD.
+	 */
+	public ParametrizedQuery(final Class<T> clazz, final DataSource dataSource) {
+		this.parametrizedClass = clazz;
+		this.connection = null;
+		this.dataSource = dataSource;
+		this.rowMapper = RowMappers.forClass(clazz);
+		this.mapperKey = clazz;
+	}
+
+	private ParametrizedQuery(final Connection connection, final DataSource dataSource, final String query,
+			final RowMapper<T> rowMapper, final ParameterBinder<? super T> binder, final Object[] params) {
+		this.parametrizedClass = null;
+		this.connection = connection;
+		this.dataSource = dataSource;
+		this.query = query;
+		this.params = params;
+		this.rowMapper = rowMapper != null ? rowMapper : rs -> {
+			throw new UnsupportedOperationException("Query has been created without a mapper");
+		};
+		this.mapperKey = this.rowMapper;
+		this.binder = binder;
 	}
 
 	/**
-	 * Implementa un mapper genrico de las clases tpicas. En caso de que la
-	 * consulta devuelva ms de una columna se <b>debe sobreescribir</b> en la
-	 * declaracin.
+	 * Crea una consulta que traduce cada fila con <b>mapper</b>, sin necesidad
+	 * de declarar una subclase anónima. El mapper debería ser una constante,
+	 * como {@link dto.Alianza#MAPPER}, para compartirlo entre consultas.
+	 * 
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param query
+	 *            Consulta que debe lanzarse.
+	 * @param mapper
+	 *            Traducción de cada fila del resultado.
+	 * @param params
+	 *            Listado de valores para variables bind que deben incorporarse
+	 *            a la consulta.
+	 * @return Consulta lista para lanzarse.
+	 */
+	public static <T> ParametrizedQuery<T> forMapper(final Connection connection, final String query,
+			final RowMapper<T> mapper, final Object... params) {
+		checkMapper(mapper);
+		return new ParametrizedQuery<T>(connection, null, query, mapper, null, params);
+	}
+
+	/**
+	 * Crea una consulta que traduce cada fila con <b>mapper</b> y toma
+	 * prestada una conexión del {@link DataSource} en cada ejecución.
+	 * 
+	 * @see #forMapper(Connection, String, RowMapper, Object...)
+	 */
+	public static <T> ParametrizedQuery<T> forMapper(final DataSource dataSource, final String query,
+			final RowMapper<T> mapper, final Object... params) {
+		checkMapper(mapper);
+		return new ParametrizedQuery<T>(null, dataSource, query, mapper, null, params);
+	}
+
+	/**
+	 * Crea una modificación que obtiene sus parámetros de un bean con
+	 * <b>binder</b>, para lanzarla con {@link #persistBean(Object)} o
+	 * {@link #persistBatch(Collection)}.
+	 * 
+	 * @param connection
+	 *            Conexión con la BBDD.
+	 * @param query
+	 *            Modificación que debe lanzarse.
+	 * @param binder
+	 *            Forma de añadir a la sentencia los parámetros de un bean.
+	 * @return Modificación lista para lanzarse.
+	 */
+	public static <T> ParametrizedQuery<T> forBinder(final Connection connection, final String query,
+			final ParameterBinder<? super T> binder) {
+		return new ParametrizedQuery<T>(connection, null, query, null, binder, null);
+	}
+
+	/**
+	 * Crea una modificación que obtiene sus parámetros de un bean con
+	 * <b>binder</b> y toma prestada una conexión del {@link DataSource} en
+	 * cada ejecución.
+	 * 
+	 * @see #forBinder(Connection, String, ParameterBinder)
+	 */
+	public static <T> ParametrizedQuery<T> forBinder(final DataSource dataSource, final String query,
+			final ParameterBinder<? super T> binder) {
+		return new ParametrizedQuery<T>(null, dataSource, query, null, binder, null);
+	}
+
+	/**
+	 * Implementa un mapper genérico de las clases típicas, leyendo la primera
+	 * columna con el mapper de {@link RowMappers} elegido al crear el objeto.
+	 * Los tipos envoltorio devuelven null si la columna es nula. Para cualquier
+	 * otra clase se usa el {@link BeanMapper} de la clase, que asigna cada
+	 * columna a la propiedad del mismo nombre. Si se ha indicado un
+	 * {@link RowMapper} con {@link #setMapper(RowMapper)} o
+	 * {@link #forMapper(Connection, String, RowMapper, Object...)} se usa ese.
 	 * 
 	 * @param rs
 	 *            Solamente para recuperar valores, no debe alterarse de ninguna
@@ -105,46 +284,35 @@ public class ParametrizedQuery<T> {
 	 * @throws SQLException
 	 *             Si el ResultSet devuelve un error.
 	 * @throws UnsupportedOperationException
-	 *             Si la clase parametrizada no es vlida y debe sobreescribirse
-	 *             el mtodo.
+	 *             Si la clase parametrizada no es válida y debe sobreescribirse
+	 *             el método, típicamente por no tener constructor público sin
+	 *             argumentos.
 	 */
-	@SuppressWarnings("unchecked")
 	protected T mapper(ResultSet rs) throws SQLException {
-		if (parametrizedClass.equals(Integer.class)) {
-			return (T) (Integer) rs.getInt(1);
-		} else if (parametrizedClass.equals(Long.class)) {
-			return (T) (Long) rs.getLong(1);
-		} else if (parametrizedClass.equals(String.class)) {
-			return (T) (String) rs.getString(1);
-		} else if (parametrizedClass.equals(java.sql.Date.class)) {
-			return (T) (java.sql.Date) rs.getDate(1);
-		} else if (parametrizedClass.equals(java.util.Date.class)) {
-			return (T) (java.util.Date) rs.getDate(1);
-		}
-		throw new UnsupportedOperationException(String.format("Not yet implemented for class: %s", parametrizedClass));
+		return rowMapper.map(rs);
 	}
 
 	/**
-	 * Ejecuta una consulta <b>query</b> utilizando los parmetros <b>param</b>
-	 * que pueden estar vacos o ser null.
+	 * Ejecuta una consulta <b>query</b> utilizando los parámetros <b>param</b>
+	 * que pueden estar vacíos o ser null.
 	 * 
 	 * <p>
-	 * El nmero de variables en la consulta y el nmero de parmetros debe ser
+	 * El número de variables en la consulta y el número de parámetros debe ser
 	 * el mismo.
 	 * 
 	 * @param query
 	 *            Consulta sql, admite variables bind con el formato '?'.
 	 * @param params
-	 *            Lista de valores que tendrn las variables bind en el orden
+	 *            Lista de valores que tendrán las variables bind en el orden
 	 *            que aparecen. La forma de unir estos valores a las variables
 	 *            se puede sobreescribir en
 	 *            {@link #addParametersToStatement(PreparedStatement)}.
 	 * @return Lista de resultados, puede tener longitud 0, del tipo que se ha
 	 *         parametrizado al crear el objeto ParametrizedQuery.
 	 * @throws SQLException
-	 *             Si ocurre algn error con la BBDD.
+	 *             Si ocurre algún error con la BBDD.
 	 * @throws IllegalArgumentException
-	 *             Si la consulta es nula o est vaca.
+	 *             Si la consulta es nula o está vacía.
 	 */
 	public List<T> select(String query, Object... params) throws SQLException {
 		this.query = query;
@@ -153,45 +321,256 @@ public class ParametrizedQuery<T> {
 	}
 
 	/**
-	 * Ejecuta la consulta que se ha pasado en el constructor o en el mtodo
-	 * {@link #setQuery()} con los parmetros que existan.
+	 * Ejecuta la consulta que se ha pasado en el constructor o en el método
+	 * {@link #setQuery()} con los parámetros que existan.
+	 * 
+	 * <p>
+	 * Si se ha configurado una {@link ResultCache} el resultado se sirve desde
+	 * ella mientras no caduque ni se modifiquen las tablas consultadas, y la
+	 * lista devuelta es inmodificable. Mientras el hilo tenga una conexión
+	 * asociada con {@link ConnectionBinding}, como dentro de una
+	 * {@link dao.base.UnitOfWork}, la caché no se lee ni se rellena para no
+	 * publicar filas sin confirmar.
 	 * 
 	 * @see {@link #select(String, Object...)}
 	 * @return Lista de resultados, puede tener longitud 0, del tipo que se ha
 	 *         parametrizado al crear el objeto ParametrizedQuery.
 	 * @throws SQLException
-	 *             Si ocurre algn error con la BBDD.
+	 *             Si ocurre algún error con la BBDD.
 	 * @throws IllegalArgumentException
-	 *             Si la consulta es nula o est vaca, tpicamente haber usado
+	 *             Si la consulta es nula o está vacía, típicamente haber usado
 	 *             el constructor {@link #ParametrizedQuery(Class, Connection)} sin
-	 *             hacer posteriormente uso del mtodo {@link #setQuery()}.
+	 *             hacer posteriormente uso del método {@link #setQuery()}.
 	 */
 	public List<T> select() throws SQLException {
 		checkArguments();
-		final ResultSet resultSet = doExecute();
-		return getResult(resultSet);
+		if (resultCache != null && !ConnectionBinding.isActive()) {
+			return resultCache.get(query, params, cacheMapperKey(), resultTtlMillis, this::doSelect);
+		}
+		return doSelect();
 	}
 
 	/**
-	 * Ejecuta una modificacin <b>query</b> utilizando los parmetros <b>param</b>
-	 * que pueden estar vacos o ser null.
+	 * Identidad de la traducción de filas para la {@link ResultCache}: la
+	 * subclase si puede redefinir {@link #mapper(ResultSet)}, la clase
+	 * parametrizada con la traducción por defecto o el propio mapper.
+	 */
+	private Object cacheMapperKey() {
+		return getClass() != ParametrizedQuery.class ? getClass() : mapperKey;
+	}
+
+	private List<T> doSelect() throws SQLException {
+		return execute((compiled, connection) -> compiled.select(connection, params));
+	}
+
+	/**
+	 * Ejecuta la consulta y devuelve la primera columna de cada fila como
+	 * <code>long</code>, sin crear un objeto por fila. Pensado para listados
+	 * de identificadores; no se aplica {@link #mapper(ResultSet)} y los nulos
+	 * se leen como 0.
+	 * 
+	 * @see #select()
+	 * @return Valores de la primera columna en el orden del resultado.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public long[] selectLongs() throws SQLException {
+		checkArguments();
+		return execute((compiled, connection) -> compiled.selectLongs(connection, params));
+	}
+
+	/**
+	 * Ejecuta la consulta y devuelve la primera columna de cada fila como
+	 * <code>int</code>, sin crear un objeto por fila.
+	 * 
+	 * @see #selectLongs()
+	 * @return Valores de la primera columna en el orden del resultado.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public int[] selectInts() throws SQLException {
+		checkArguments();
+		return execute((compiled, connection) -> compiled.selectInts(connection, params));
+	}
+
+	/**
+	 * Ejecuta la consulta guardando el resultado por columnas en arrays de
+	 * primitivos, sin crear un objeto por fila ni aplicar
+	 * {@link #mapper(ResultSet)}. Pensado para informes y agregaciones sobre
+	 * muchas filas.
+	 * 
+	 * @see ColumnarResult
+	 * @return Resultado por columnas, en el heap.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public ColumnarResult selectColumnar() throws SQLException {
+		return selectColumnar(false);
+	}
+
+	/**
+	 * Ejecuta la consulta guardando el resultado por columnas.
+	 * 
+	 * @see #selectColumnar()
+	 * @param offHeap
+	 *            Si los valores primitivos se guardan en buffers directos
+	 *            fuera del heap.
+	 * @return Resultado por columnas.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public ColumnarResult selectColumnar(final boolean offHeap) throws SQLException {
+		checkArguments();
+		return execute((compiled, connection) -> compiled.selectColumnar(connection, params, offHeap));
+	}
+
+	/**
+	 * Ejecuta la consulta volcando el resultado a <b>file</b> con
+	 * <b>exporter</b> según se lee, sin construir objetos por fila. Con un
+	 * fetchSize de {@link #STREAMING_FETCH_SIZE} la memoria usada se limita
+	 * al buffer del exportador sea cual sea el tamaño del resultado.
+	 * 
+	 * @param file
+	 *            Fichero de destino, que se crea o se sustituye.
+	 * @param exporter
+	 *            Exportador con el formato y las opciones del fichero.
+	 * @return Número de filas escritas.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IOException
+	 *             Si falla la escritura del fichero.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public long export(final Path file, final ResultExporter exporter) throws SQLException, IOException {
+		checkArguments();
+		return execute((compiled, connection) -> compiled.export(connection, params, file, exporter));
+	}
+
+	/**
+	 * Ejecuta la consulta guardando el resultado en <b>file</b> con
+	 * {@link SnapshotStore}, de donde puede recuperarse proyectándolo en
+	 * memoria en lugar de repetir la consulta.
+	 * 
+	 * @param file
+	 *            Fichero de destino, que se sustituye al terminar.
+	 * @return Número de filas guardadas.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IOException
+	 *             Si falla la escritura del fichero.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public int snapshot(final Path file) throws SQLException, IOException {
+		checkArguments();
+		return execute((compiled, connection) -> compiled.snapshot(connection, params, file));
+	}
+
+	/**
+	 * Ejecuta la consulta y devuelve un iterador que traduce cada fila con
+	 * {@link #mapper(ResultSet)} a medida que se recorre, sin acumular el
+	 * resultado en memoria. Se aplica el fetchSize configurado, incluido
+	 * {@link #STREAMING_FETCH_SIZE}.
 	 * 
 	 * <p>
-	 * El nmero de variables en la consulta y el nmero de parmetros debe ser
+	 * El iterador libera el {@link ResultSet} y la sentencia al agotarse; si
+	 * se abandona antes debe cerrarse con {@link ResultIterator#close()}.
+	 * 
+	 * @return Iterador sobre el resultado de la consulta.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public ResultIterator<T> iterate() throws SQLException {
+		checkArguments();
+		final String sql = query;
+		final Execution execution = Execution.start(sql, params);
+		final Connection connection = acquireConnection();
+		final PreparedStatement statement = prepareStatement(connection, sql, execution);
+		try {
+			final ResultSet resultSet = doExecute(statement);
+			execution.executed();
+			return new ResultIterator<T>(this, connection, sql, statement, resultSet, execution);
+		} catch (SQLException e) {
+			execution.failed(e);
+			releaseStatement(connection, sql, statement);
+			throw e;
+		} catch (RuntimeException e) {
+			execution.failed(e);
+			releaseStatement(connection, sql, statement);
+			throw e;
+		}
+	}
+
+	/**
+	 * Ejecuta la consulta entregando cada fila a <b>callback</b> según se lee,
+	 * de modo que la memoria usada no depende del número de filas. El
+	 * {@link ResultSet} y la sentencia se liberan siempre al terminar.
+	 * 
+	 * @see #iterate()
+	 * @param callback
+	 *            Receptor de las filas.
+	 * @return Número de filas procesadas.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD o en el callback.
+	 */
+	public int forEach(final RowCallback<T> callback) throws SQLException {
+		int count = 0;
+		try (ResultIterator<T> iterator = iterate()) {
+			while (iterator.hasNext()) {
+				callback.process(iterator.next());
+				count++;
+			}
+		} catch (UncheckedSQLException e) {
+			throw e.getCause();
+		}
+		return count;
+	}
+
+	/**
+	 * Lanza {@link #select()} en el executor configurado sin bloquear al
+	 * llamante. Conviene crear el objeto con un {@link DataSource} para que
+	 * cada ejecución use su propia conexión, y no modificarlo hasta que el
+	 * futuro termine.
+	 * 
+	 * @see #setExecutor(Executor)
+	 * @return Futuro con la lista de resultados. Los errores de BBDD llegan
+	 *         envueltos en {@link java.util.concurrent.CompletionException}.
+	 */
+	public CompletableFuture<List<T>> selectAsync() {
+		return QueryExecutors.supply(this::select, getExecutor());
+	}
+
+	/**
+	 * Ejecuta una modificación <b>query</b> utilizando los parámetros <b>param</b>
+	 * que pueden estar vacíos o ser null.
+	 * 
+	 * <p>
+	 * El número de variables en la consulta y el número de parámetros debe ser
 	 * el mismo.
 	 * 
 	 * @param query
 	 *            Consulta sql, admite variables bind con el formato '?'.
 	 * @param params
-	 *            Lista de valores que tendrn las variables bind en el orden
+	 *            Lista de valores que tendrán las variables bind en el orden
 	 *            que aparecen. La forma de unir estos valores a las variables
 	 *            se puede sobreescribir en
 	 *            {@link #addParametersToStatement(PreparedStatement)}.
-	 * @return Nmero de filas modificadas.
+	 * @return Número de filas modificadas.
 	 * @throws SQLException
-	 *             Si ocurre algn error con la BBDD.
+	 *             Si ocurre algún error con la BBDD.
 	 * @throws IllegalArgumentException
-	 *             Si la consulta es nula o est vaca.
+	 *             Si la consulta es nula o está vacía.
 	 */
 	public int persist(String query, Object... params) throws SQLException {
 		this.query = query;
@@ -199,23 +578,119 @@ public class ParametrizedQuery<T> {
 		return persist();
 	}
 	/**
-	 * Ejecuta la modificacin que se ha pasado en el constructor o en el mtodo
-	 * {@link #setQuery()} con los parmetros que existan.
+	 * Ejecuta la modificación que se ha pasado en el constructor o en el método
+	 * {@link #setQuery()} con los parámetros que existan.
 	 * 
 	 * @see {@link #persist(String, Object...)}
-	 * @return Nmero de filas modificadas.
+	 * @return Número de filas modificadas.
 	 * @throws SQLException
-	 *             Si ocurre algn error con la BBDD.
+	 *             Si ocurre algún error con la BBDD.
 	 * @throws IllegalArgumentException
-	 *             Si la consulta es nula o est vaca, tpicamente haber usado
+	 *             Si la consulta es nula o está vacía, típicamente haber usado
 	 *             el constructor {@link #ParametrizedQuery(Class, Connection)} sin
-	 *             hacer posteriormente uso del mtodo {@link #setQuery()}.
+	 *             hacer posteriormente uso del método {@link #setQuery()}.
 	 */
 	public int persist() throws SQLException {
 		checkArguments();
-		final PreparedStatement statement = connection.prepareStatement(query);
-		addParametersToStatement(statement);
-		return statement.executeUpdate();
+		try {
+			return execute((compiled, connection) -> compiled.persist(connection, params));
+		} finally {
+			invalidateResults();
+		}
+	}
+
+	/**
+	 * Ejecuta la modificación una única vez con los parámetros de <b>bean</b>,
+	 * añadidos con {@link #addParametersToStatement(PreparedStatement, Object)}.
+	 * 
+	 * @see #forBinder(Connection, String, ParameterBinder)
+	 * @param bean
+	 *            Elemento a persistir.
+	 * @return Número de filas modificadas.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public int persistBean(final T bean) throws SQLException {
+		checkArguments();
+		try {
+			return execute((compiled, connection) -> compiled.persistBean(connection, bean));
+		} finally {
+			invalidateResults();
+		}
+	}
+
+	/**
+	 * Ejecuta la modificación una vez por cada elemento de <b>beans</b>
+	 * agrupándolas en lotes JDBC de {@link #getBatchSize()} filas, de modo que
+	 * cada lote supone un único viaje a la BBDD. Los parámetros de cada
+	 * elemento se añaden con
+	 * {@link #addParametersToStatement(PreparedStatement, Object)}.
+	 * 
+	 * <p>
+	 * Si la conexión de MySQL se abre con
+	 * <code>rewriteBatchedStatements=true</code> el driver reescribe cada lote
+	 * de inserts como un único INSERT multi-fila; en ese caso el número de
+	 * filas de cada posición puede ser {@link java.sql.Statement#SUCCESS_NO_INFO}.
+	 * 
+	 * @param beans
+	 *            Elementos a persistir, puede estar vacío.
+	 * @return Número de filas modificadas por cada elemento, en el mismo orden
+	 *         en que se han recorrido.
+	 * @throws SQLException
+	 *             Si ocurre algún error con la BBDD.
+	 * @throws IllegalArgumentException
+	 *             Si la consulta es nula o está vacía.
+	 */
+	public int[] persistBatch(final Collection<T> beans) throws SQLException {
+		checkArguments();
+		if (beans.isEmpty()) {
+			return new int[0];
+		}
+		try {
+			return execute((compiled, connection) -> compiled.persistBatch(connection, beans));
+		} finally {
+			invalidateResults();
+		}
+	}
+
+	/**
+	 * Añade a la sentencia los parámetros de un elemento de un lote lanzado con
+	 * {@link #persistBatch(Collection)} o {@link #persistBean(Object)}. Usa el
+	 * {@link ParameterBinder} de la consulta si tiene uno y si no delega en el
+	 * propio bean si implementa {@link Persistable}.
+	 * 
+	 * @param statement
+	 *            Objeto al que se le deben añadir los parámetros uno a uno.
+	 * @param bean
+	 *            Elemento del lote que se está persistiendo.
+	 * @throws SQLException
+	 *             Si ocurre algún error con BBDD.
+	 * @throws UnsupportedOperationException
+	 *             Si no hay binder, el bean no es {@link Persistable} y no se
+	 *             ha sobreescrito el método.
+	 */
+	protected void addParametersToStatement(final PreparedStatement statement, final T bean) throws SQLException {
+		if (binder != null) {
+			binder.bind(statement, bean);
+		} else if (bean instanceof Persistable) {
+			((Persistable) bean).addParametersToStatement(statement);
+		} else {
+			throw new UnsupportedOperationException(
+					String.format("Not yet implemented for class: %s", bean.getClass()));
+		}
+	}
+
+	/**
+	 * Lanza {@link #persist()} en el executor configurado sin bloquear al
+	 * llamante.
+	 * 
+	 * @see #selectAsync()
+	 * @return Futuro con el número de filas modificadas.
+	 */
+	public CompletableFuture<Integer> persistAsync() {
+		return QueryExecutors.supply(this::persist, getExecutor());
 	}
 
 	/**
@@ -223,43 +698,111 @@ public class ParametrizedQuery<T> {
 	 * sea propio de negocio.
 	 * 
 	 * @param statement
-	 *            Objeto al que se le deben aadir los parmetros uno a uno que
+	 *            Objeto al que se le deben añadir los parámetros uno a uno que
 	 *            vengan de la query.
 	 * @throws SQLException
-	 *             Si ocurre algn error con BBDD.
+	 *             Si ocurre algún error con BBDD.
 	 */
 	protected void addParametersToStatement(final PreparedStatement statement) throws SQLException {
-		int i = 1;
-		if (params != null) {
-			for (Object o : params) {
-				if (o instanceof String) {
-					statement.setString(i++, (String) o);
-				} else if (o instanceof Integer) {
-					statement.setInt(i++, (Integer) o);
-				} else if (o instanceof Long) {
-					statement.setLong(i++, (Long) o);
-				} else if (o instanceof java.sql.Date) {
-					statement.setDate(i++, (Date) o);
-				} else {
-					throw new UnsupportedOperationException(
-							String.format("Not yet implemented for class: %s", o.getClass()));
-				}
-			}
-		}
+		binderCache.bind(statement, params);
 	}
 
-	private ResultSet doExecute() throws SQLException {
-		final PreparedStatement statement = connection.prepareStatement(query);
+	private ResultSet doExecute(final PreparedStatement statement) throws SQLException {
+		statement.setFetchSize(fetchSize);
 		addParametersToStatement(statement);
 		return statement.executeQuery();
 	}
 
-	private List<T> getResult(final ResultSet resultSet) throws SQLException {
-		final List<T> result = new ArrayList<T>();
-		while (resultSet.next()) {
-			result.add(mapper(resultSet));
+	/**
+	 * Lanza <b>call</b> con la {@link CompiledQuery} de la configuración actual
+	 * y la conexión de la ejecución, que se libera al terminar.
+	 */
+	private <R, E extends Exception> R execute(final Call<T, R, E> call) throws SQLException, E {
+		final CompiledQuery<T> current = compiled();
+		final Connection borrowed = acquireConnection();
+		try {
+			return call.call(current, borrowed);
+		} finally {
+			releaseConnection(borrowed);
+		}
+	}
+
+	/**
+	 * {@link CompiledQuery} equivalente a la configuración actual, que se
+	 * vuelve a crear solo si ha cambiado la consulta, la caché de sentencias,
+	 * el fetchSize o el tamaño de lote. Traduce las filas con
+	 * {@link #mapper(ResultSet)} y añade los parámetros con
+	 * {@link #addParametersToStatement(PreparedStatement)} y
+	 * {@link #addParametersToStatement(PreparedStatement, Object)}, de modo
+	 * que las subclases que los sobreescriben siguen funcionando.
+	 */
+	private CompiledQuery<T> compiled() {
+		CompiledQuery<T> current = compiled;
+		if (current == null || !current.getQuery().equals(query) || current.getStatementCache() != statementCache
+				|| current.getFetchSize() != fetchSize || current.getBatchSize() != batchSize) {
+			current = new CompiledQuery<T>(query, this::mapper, this::addParametersToStatement,
+					(statement, ignored) -> addParametersToStatement(statement), statementCache, fetchSize,
+					batchSize);
+			compiled = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Obtiene la conexión con la que se lanza cada ejecución: la proporcionada
+	 * en el constructor o una prestada por el {@link DataSource}, o la de la
+	 * transacción asociada al hilo con {@link ConnectionBinding}.
+	 */
+	private Connection acquireConnection() throws SQLException {
+		return connection != null ? connection : ConnectionBinding.getConnection(dataSource);
+	}
+
+	/**
+	 * Devuelve al {@link DataSource} la conexión prestada. La conexión
+	 * proporcionada en el constructor nunca se cierra.
+	 */
+	private void releaseConnection(final Connection borrowed) {
+		if (borrowed != connection) {
+			try {
+				borrowed.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Obtiene la sentencia de la caché si se ha configurado una, o la prepara
+	 * directamente sobre la conexión en caso contrario, anotando el tiempo en
+	 * las métricas. Si falla se libera la conexión.
+	 */
+	private PreparedStatement prepareStatement(final Connection connection, final String sql,
+			final Execution execution) throws SQLException {
+		try {
+			return execution.prepare(connection, sql, statementCache);
+		} catch (SQLException e) {
+			releaseConnection(connection);
+			throw e;
+		}
+	}
+
+	/**
+	 * Devuelve la sentencia a la caché para que pueda reutilizarse en la
+	 * siguiente ejecución de la misma consulta, o la cierra si no hay caché, y
+	 * libera la conexión.
+	 */
+	void releaseStatement(final Connection connection, final String sql, final PreparedStatement statement) {
+		try {
+			Statements.release(connection, sql, statement, statementCache);
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
+	private void invalidateResults() {
+		if (resultCache != null) {
+			resultCache.invalidateTablesOf(query);
 		}
-		return result;
 	}
 
 	public String getQuery() {
@@ -278,6 +821,40 @@ public class ParametrizedQuery<T> {
 		this.params = params;
 	}
 
+	/**
+	 * @return Traducción de cada fila del resultado.
+	 */
+	public RowMapper<T> getMapper() {
+		return rowMapper;
+	}
+
+	/**
+	 * @param mapper
+	 *            Traducción de cada fila del resultado, en lugar de la elegida
+	 *            por la clase parametrizada.
+	 */
+	public void setMapper(RowMapper<T> mapper) {
+		checkMapper(mapper);
+		this.rowMapper = mapper;
+		this.mapperKey = mapper;
+	}
+
+	/**
+	 * @return the binder
+	 */
+	public ParameterBinder<? super T> getBinder() {
+		return binder;
+	}
+
+	/**
+	 * @param binder
+	 *            Forma de añadir a la sentencia los parámetros de un bean en
+	 *            {@link #persistBean(Object)} y {@link #persistBatch(Collection)}.
+	 */
+	public void setBinder(ParameterBinder<? super T> binder) {
+		this.binder = binder;
+	}
+
 	/**
 	 * @return the fetchSize
 	 */
@@ -286,15 +863,114 @@ public class ParametrizedQuery<T> {
 	}
 
 	/**
+	 * Número de filas que el driver debe traer en cada viaje a la BBDD, 0 para
+	 * su valor por defecto. Admite {@link #STREAMING_FETCH_SIZE} para el modo
+	 * fila a fila de MySQL.
 	 * 
 	 * @param fetchSize
 	 *            the fetchSize to set
 	 */
 	public void setFetchSize(int fetchSize) {
-		if (fetchSize <= 0) {
-			throw new IllegalArgumentException("Fetch size must be 1 or more");
+		this.fetchSize = Statements.checkFetchSize(fetchSize);
+	}
+
+	/**
+	 * @return the batchSize
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * 
+	 * @param batchSize
+	 *            Número máximo de filas por cada envío de
+	 *            {@link #persistBatch(Collection)}.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be 1 or more");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return Executor de las variantes asíncronas. Si no se ha configurado
+	 *         ninguno se usa {@link QueryExecutors#forDataSource(DataSource)},
+	 *         o {@link QueryExecutors#forConnection(Connection)} si la consulta
+	 *         se creó con una conexión, que lanza sus ejecuciones de una en
+	 *         una.
+	 */
+	public Executor getExecutor() {
+		if (executor != null) {
+			return executor;
+		}
+		return connection != null ? QueryExecutors.forConnection(connection) : QueryExecutors.forDataSource(dataSource);
+	}
+
+	/**
+	 * @param executor
+	 *            the executor to set
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the statementCache
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	/**
+	 * Activa la reutilización de sentencias preparadas entre ejecuciones. Con
+	 * null se vuelve a preparar la sentencia en cada ejecución.
+	 * 
+	 * @param statementCache
+	 *            the statementCache to set
+	 */
+	public void setStatementCache(StatementCache statementCache) {
+		this.statementCache = statementCache;
+	}
+
+	/**
+	 * @return the resultCache
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Activa la caché de resultados para {@link #select()}. Solo debe usarse en
+	 * consultas de solo lectura sobre datos que cambian poco. Las
+	 * modificaciones lanzadas con {@link #persist()} sobre este objeto
+	 * invalidan los resultados de las tablas afectadas.
+	 * 
+	 * @param resultCache
+	 *            the resultCache to set
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @return the resultTtlMillis
+	 */
+	public long getResultTtlMillis() {
+		return resultTtlMillis;
+	}
+
+	/**
+	 * @param resultTtlMillis
+	 *            Tiempo de vida en la {@link ResultCache} de los resultados de
+	 *            esta consulta, 0 para usar el de la caché.
+	 */
+	public void setResultTtlMillis(long resultTtlMillis) {
+		if (resultTtlMillis < 0) {
+			throw new IllegalArgumentException("TTL must be 0 or more");
 		}
-		this.fetchSize = fetchSize;
+		this.resultTtlMillis = resultTtlMillis;
 	}
 
 	/**
@@ -305,6 +981,19 @@ public class ParametrizedQuery<T> {
 			throw new IllegalArgumentException("A query has not been specified");
 	}
 
+	private static void checkMapper(final RowMapper<?> mapper) {
+		if (mapper == null)
+			throw new IllegalArgumentException("A mapper has not been specified");
+	}
+
+	/**
+	 * Ejecución delegada en la {@link CompiledQuery} de la consulta.
+	 */
+	private interface Call<T, R, E extends Exception> {
+
+		R call(CompiledQuery<T> compiled, Connection connection) throws SQLException, E;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -0,0 +1,104 @@
+package query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.cache.StatementCache;
+import query.columnar.ColumnarResult;
+import state.Snapshot;
+import state.SnapshotStore;
+
+/**
+ * Ejecuciones de {@link ParametrizedQuery}, que delega en su
+ * {@link CompiledQuery}, incluidas las subclases que sobreescriben el mapper o
+ * la forma de añadir parámetros.
+ */
+public class ParametrizedQueryTest {
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:parametrized");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table t (id int primary key, name varchar(20))");
+			statement.execute("insert into t values (1, 'a'), (2, 'b'), (3, 'c')");
+		}
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Test
+	public void overriddenMapperAndParametersAreUsed() throws SQLException {
+		final ParametrizedQuery<String> query = new ParametrizedQuery<String>(String.class, connection,
+				"select name from t where id > ? order by id") {
+
+			@Override
+			protected String mapper(final ResultSet rs) throws SQLException {
+				return rs.getString(1).toUpperCase();
+			}
+
+			@Override
+			protected void addParametersToStatement(final PreparedStatement statement) throws SQLException {
+				statement.setInt(1, 1);
+			}
+		};
+		assertEquals(Arrays.asList("B", "C"), query.select());
+	}
+
+	@Test
+	public void primitiveAndColumnarReads() throws SQLException {
+		final ParametrizedQuery<Integer> query = new ParametrizedQuery<Integer>(Integer.class, connection,
+				"select id from t where id <= ? order by id", 2);
+		query.setStatementCache(new StatementCache(4));
+		query.setFetchSize(1);
+		assertArrayEquals(new int[] { 1, 2 }, query.selectInts());
+		assertArrayEquals(new long[] { 1L, 2L }, query.selectLongs());
+		try (ColumnarResult result = query.selectColumnar()) {
+			assertEquals(2, result.size());
+			assertEquals(2, result.getInt(1, 1));
+		}
+	}
+
+	@Test
+	public void persistBatchAndSnapshot() throws Exception {
+		final ParametrizedQuery<String> insert = ParametrizedQuery.forBinder(connection,
+				"insert into t (id, name) values (?, ?)", (statement, name) -> {
+					statement.setInt(1, 10 + name.length());
+					statement.setString(2, name);
+				});
+		insert.setBatchSize(2);
+		assertArrayEquals(new int[] { 1, 1, 1 }, insert.persistBatch(Arrays.asList("x", "xx", "xxx")));
+		assertArrayEquals(new int[0], insert.persistBatch(Arrays.<String> asList()));
+
+		final Path file = Files.createTempFile("parametrized", ".qss");
+		try {
+			final ParametrizedQuery<Object> query = new ParametrizedQuery<Object>(Object.class, connection,
+					"select id, name from t where id >= ? order by id", 10);
+			assertEquals(3, query.snapshot(file));
+			try (Snapshot snapshot = SnapshotStore.open(file)) {
+				assertEquals("xxx", snapshot.record(2).getString("NAME"));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package query;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Bean de negocio capaz de añadir sus propios valores a una sentencia de
+ * inserción. Es el mecanismo por defecto que usa
+ * {@link ParametrizedQuery#persistBatch(java.util.Collection)} para cada uno de
+ * los elementos del lote.
+ * 
+ * @author fferezsa
+ *
+ */
+public interface Persistable {
+
+	/**
+	 * @param statement
+	 *            Sentencia a la que se deben añadir los parámetros uno a uno en
+	 *            el orden en que aparecen en la consulta.
+	 * @throws SQLException
+	 *             Si ocurre algún error con BBDD.
+	 */
+	void addParametersToStatement(PreparedStatement statement) throws SQLException;
+
+}
@@ -0,0 +1,136 @@
+package query;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Recorre el resultado de una consulta fila a fila a medida que el driver las
+ * entrega, sin materializarlo en una lista. Se obtiene con
+ * {@link ParametrizedQuery#iterate()}.
+ * 
+ * <p>
+ * El {@link ResultSet} y la sentencia se liberan al agotar el iterador o al
+ * invocar {@link #close()}, por lo que debe cerrarse siempre si se abandona el
+ * recorrido antes de tiempo, preferiblemente con try-with-resources. Los
+ * errores de BBDD se propagan como {@link UncheckedSQLException}. Con el
+ * {@link LeakDetector} activo, un iterador descartado sin cerrar se registra
+ * junto con la pila en la que se creó.
+ * 
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo parametrizado de la consulta.
+ */
+public class ResultIterator<T> implements Iterator<T>, Closeable {
+
+	private final ParametrizedQuery<T> parametrized;
+	private final Connection connection;
+	private final String query;
+	private final PreparedStatement statement;
+	private final ResultSet resultSet;
+	private final Execution execution;
+	private final LeakDetector.Handle leak;
+	private int rows;
+	private boolean fetched;
+	private boolean hasNext;
+	private boolean closed;
+
+	ResultIterator(final ParametrizedQuery<T> parametrized, final Connection connection, final String query,
+			final PreparedStatement statement, final ResultSet resultSet, final Execution execution) {
+		this.parametrized = parametrized;
+		this.connection = connection;
+		this.query = query;
+		this.statement = statement;
+		this.resultSet = resultSet;
+		this.execution = execution;
+		this.leak = LeakDetector.reserveStream(query);
+		if (leak != null) {
+			leak.attach(this, () -> {
+				closeQuietly(resultSet);
+				parametrized.releaseStatement(connection, query, statement);
+			});
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (!fetched) {
+			try {
+				hasNext = resultSet.next();
+			} catch (SQLException e) {
+				execution.failed(e);
+				closed = true;
+				release();
+				throw new UncheckedSQLException(e);
+			}
+			fetched = true;
+			if (!hasNext) {
+				close();
+			}
+		}
+		return hasNext;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		fetched = false;
+		try {
+			final T row = parametrized.mapper(resultSet);
+			rows++;
+			return row;
+		} catch (SQLException e) {
+			execution.failed(e);
+			closed = true;
+			release();
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Results are read only");
+	}
+
+	/**
+	 * Cierra el {@link ResultSet} y libera la sentencia y la conexión. Puede
+	 * invocarse varias veces. El tiempo de recorrido anotado en las métricas
+	 * incluye el que el llamante dedique a cada fila.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		execution.finish(rows);
+		release();
+	}
+
+	private void release() {
+		if (leak != null) {
+			leak.close();
+		}
+		closeQuietly(resultSet);
+		parametrized.releaseStatement(connection, query, statement);
+	}
+
+	private static void closeQuietly(final ResultSet resultSet) {
+		try {
+			resultSet.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package query;
+
+import java.sql.SQLException;
+
+/**
+ * Recibe una a una las filas de una consulta lanzada con
+ * {@link ParametrizedQuery#forEach(RowCallback)}, sin que el resultado llegue a
+ * acumularse en memoria.
+ * 
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo parametrizado de la consulta.
+ */
+@FunctionalInterface
+public interface RowCallback<T> {
+
+	/**
+	 * @param row
+	 *            Fila ya traducida por el mapper de la consulta.
+	 * @throws SQLException
+	 *             Si el tratamiento de la fila necesita acceder a BBDD y falla.
+	 */
+	void process(T row) throws SQLException;
+
+}
@@ -0,0 +1,87 @@
+package query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import query.cache.StatementCache;
+
+/**
+ * Preparación y liberación de sentencias común a {@link ParametrizedQuery} y
+ * {@link CompiledQuery}.
+ * 
+ * @author fferezsa
+ *
+ */
+final class Statements {
+
+	private Statements() {
+	}
+
+	/**
+	 * Obtiene la sentencia de la caché si se proporciona una, o la prepara
+	 * directamente sobre la conexión en caso contrario. La sentencia queda en
+	 * uso para el {@link LeakDetector} hasta que se libera con
+	 * {@link #release(Connection, String, PreparedStatement, StatementCache)}.
+	 */
+	static PreparedStatement prepare(final Connection connection, final String sql, final StatementCache cache)
+			throws SQLException {
+		final LeakDetector.Handle handle = LeakDetector.reserveStatement(connection, sql);
+		final PreparedStatement statement;
+		try {
+			statement = cache != null ? cache.acquire(connection, sql) : connection.prepareStatement(sql);
+		} catch (SQLException | RuntimeException e) {
+			if (handle != null) {
+				handle.close();
+			}
+			throw e;
+		}
+		if (handle != null) {
+			handle.attach(statement, null);
+		}
+		return statement;
+	}
+
+	/**
+	 * Devuelve la sentencia a la caché o la cierra si no hay caché.
+	 */
+	static void release(final Connection connection, final String sql, final PreparedStatement statement,
+			final StatementCache cache) {
+		try {
+			if (cache != null) {
+				cache.release(connection, sql, statement);
+			} else {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			LeakDetector.releaseStatement(statement);
+		}
+	}
+
+	/**
+	 * Descarta el lote pendiente de una sentencia que ha fallado. Si esto
+	 * también falla, el error se añade como suprimido a <b>failure</b> para
+	 * no ocultar el original.
+	 */
+	static void clearBatch(final PreparedStatement statement, final SQLException failure) {
+		try {
+			statement.clearBatch();
+		} catch (SQLException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Valida un fetchSize: 0 para el valor por defecto del driver, un número
+	 * positivo de filas o {@link ParametrizedQuery#STREAMING_FETCH_SIZE}.
+	 */
+	static int checkFetchSize(final int fetchSize) {
+		if (fetchSize < 0 && fetchSize != ParametrizedQuery.STREAMING_FETCH_SIZE) {
+			throw new IllegalArgumentException("Fetch size must be 0 or more");
+		}
+		return fetchSize;
+	}
+
+}
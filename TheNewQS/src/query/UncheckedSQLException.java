@@ -0,0 +1,34 @@
+package query;
+
+import java.sql.SQLException;
+
+/**
+ * Envuelve una {@link SQLException} en los puntos en los que la interfaz
+ * implementada no permite lanzar excepciones comprobadas, como
+ * {@link java.util.Iterator}.
+ * 
+ * @author fferezsa
+ *
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 2915376014392846102L;
+
+	public UncheckedSQLException(final SQLException cause) {
+		super(cause);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Throwable#getCause()
+	 */
+	@Override
+	public synchronized SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+
+}
@@ -0,0 +1,131 @@
+package query.async;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecuta tareas en otro {@link Executor} sin superar un número máximo de
+ * tareas simultáneas. Las que exceden el límite esperan en cola sin bloquear
+ * al hilo que las envía y se lanzan según terminan las anteriores.
+ * 
+ * <p>
+ * Pensado para no enviar a un pool de conexiones más consultas a la vez de
+ * las que puede atender, ver {@link QueryExecutors#forPool(query.pool.ConnectionPool)}.
+ * 
+ * @author fferezsa
+ *
+ */
+public class LimitedExecutor implements Executor {
+
+	private final Executor delegate;
+	private final int limit;
+	private final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicInteger running = new AtomicInteger();
+	private final ThreadLocal<Boolean> draining = new ThreadLocal<Boolean>();
+
+	/**
+	 * @param delegate
+	 *            Executor en el que se lanzan realmente las tareas.
+	 * @param limit
+	 *            Máximo de tareas en ejecución a la vez.
+	 */
+	public LimitedExecutor(final Executor delegate, final int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Concurrency limit must be 1 or more");
+		}
+		this.delegate = delegate;
+		this.limit = limit;
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		queue.offer(command);
+		drain();
+	}
+
+	/**
+	 * Lanza tareas de la cola mientras quede hueco. Si el delegado ejecuta la
+	 * tarea en el mismo hilo, la llamada que hace al terminar vuelve sin hacer
+	 * nada y es este mismo bucle el que continúa, en lugar de anidar una
+	 * llamada por cada tarea encolada.
+	 */
+	private void drain() {
+		if (draining.get() != null) {
+			return;
+		}
+		draining.set(Boolean.TRUE);
+		try {
+			drainLoop();
+		} finally {
+			draining.remove();
+		}
+	}
+
+	private void drainLoop() {
+		while (!queue.isEmpty()) {
+			final int current = running.get();
+			if (current >= limit) {
+				return;
+			}
+			if (!running.compareAndSet(current, current + 1)) {
+				continue;
+			}
+			final Runnable next = queue.poll();
+			if (next == null) {
+				running.decrementAndGet();
+				continue;
+			}
+			try {
+				delegate.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							next.run();
+						} finally {
+							running.decrementAndGet();
+							drain();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				running.decrementAndGet();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @return Tareas en ejecución.
+	 */
+	public int getRunning() {
+		return running.get();
+	}
+
+	/**
+	 * @return Tareas esperando a que quede hueco.
+	 */
+	public int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LimitedExecutor [limit=" + limit + ", running=" + running + ", queued=" + getQueued() + "]";
+	}
+
+}
@@ -0,0 +1,213 @@
+package query.async;
+
+import java.sql.Connection;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import query.pool.ConnectionPool;
+import query.pool.SingleConnectionDataSource;
+
+/**
+ * Executors usados por las variantes asíncronas de las consultas.
+ * 
+ * <p>
+ * Por defecto se usa un hilo virtual por tarea si la JVM los soporta (Java 21
+ * o superior) y, si no, un pool de hilos daemon que crece según la demanda.
+ * Puede sustituirse con {@link #setDefaultExecutor(Executor)}.
+ * 
+ * <p>
+ * Las consultas de un mismo DataSource nunca se lanzan todas a la vez: se
+ * limitan al tamaño máximo si es un {@link ConnectionPool}, a una si es un
+ * {@link SingleConnectionDataSource} y a {@link #getDefaultLimit()} en otro
+ * caso. Las de una misma {@link Connection}, que no admite varias sentencias
+ * a la vez desde distintos hilos, se lanzan de una en una.
+ * 
+ * @author fferezsa
+ *
+ */
+public final class QueryExecutors {
+
+	private static volatile Executor defaultExecutor;
+	private static volatile int defaultLimit = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+	private static final Map<DataSource, LimitedExecutor> executors = new WeakHashMap<DataSource, LimitedExecutor>();
+	private static final Map<Connection, LimitedExecutor> connectionExecutors = new WeakHashMap<Connection, LimitedExecutor>();
+
+	/**
+	 * Delegado que resuelve el executor por defecto en cada tarea, para que
+	 * los executors limitados ya creados respeten un
+	 * {@link #setDefaultExecutor(Executor)} posterior.
+	 */
+	private static final Executor DEFAULT = new Executor() {
+
+		@Override
+		public void execute(Runnable command) {
+			getDefaultExecutor().execute(command);
+		}
+	};
+
+	private QueryExecutors() {
+	}
+
+	/**
+	 * @return Executor por defecto para las consultas asíncronas.
+	 */
+	public static Executor getDefaultExecutor() {
+		Executor executor = defaultExecutor;
+		if (executor == null) {
+			synchronized (QueryExecutors.class) {
+				executor = defaultExecutor;
+				if (executor == null) {
+					executor = createDefault();
+					defaultExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * @param executor
+	 *            Executor que se usará por defecto en las consultas
+	 *            asíncronas. Con null se vuelve al de por defecto.
+	 */
+	public static void setDefaultExecutor(final Executor executor) {
+		defaultExecutor = executor;
+	}
+
+	/**
+	 * @return Máximo de consultas simultáneas para los DataSource que no son
+	 *         un pool ni una conexión única.
+	 */
+	public static int getDefaultLimit() {
+		return defaultLimit;
+	}
+
+	/**
+	 * @param limit
+	 *            Máximo de consultas simultáneas para los DataSource que no
+	 *            son un pool ni una conexión única. Solo afecta a los
+	 *            executors creados a partir de ese momento.
+	 */
+	public static void setDefaultLimit(final int limit) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("Concurrency limit must be 1 or more");
+		}
+		defaultLimit = limit;
+	}
+
+	/**
+	 * Obtiene un executor sobre el de por defecto que nunca lanza más consultas
+	 * a la vez que conexiones tiene el pool. Se comparte entre todos los que
+	 * lo piden para el mismo pool.
+	 * 
+	 * @param pool
+	 *            Pool de conexiones.
+	 * @return Executor limitado al tamaño máximo del pool.
+	 */
+	public static LimitedExecutor forPool(final ConnectionPool pool) {
+		return limited(executors, pool, pool.getMaxSize());
+	}
+
+	/**
+	 * @param dataSource
+	 *            Origen de las conexiones de las consultas.
+	 * @return Executor sobre el de por defecto, compartido por todas las
+	 *         consultas del DataSource y limitado según su tipo. Un
+	 *         {@link SingleConnectionDataSource} comparte el de su conexión,
+	 *         ver {@link #forConnection(Connection)}.
+	 * @throws IllegalArgumentException
+	 *             Si el DataSource es null.
+	 */
+	public static Executor forDataSource(final DataSource dataSource) {
+		if (dataSource == null) {
+			throw new IllegalArgumentException("A data source has not been specified");
+		}
+		if (dataSource instanceof ConnectionPool) {
+			return forPool((ConnectionPool) dataSource);
+		}
+		if (dataSource instanceof SingleConnectionDataSource) {
+			return forConnection(((SingleConnectionDataSource) dataSource).getTargetConnection());
+		}
+		return limited(executors, dataSource, defaultLimit);
+	}
+
+	/**
+	 * Obtiene un executor sobre el de por defecto que lanza de una en una las
+	 * consultas de <b>connection</b>, ya que una conexión JDBC no puede
+	 * usarse desde varios hilos a la vez. Se comparte entre todos los que lo
+	 * piden para la misma conexión.
+	 * 
+	 * @param connection
+	 *            Conexión de las consultas.
+	 * @return Executor limitado a una tarea simultánea.
+	 */
+	public static LimitedExecutor forConnection(final Connection connection) {
+		if (connection == null) {
+			throw new IllegalArgumentException("A connection has not been specified");
+		}
+		return limited(connectionExecutors, connection, 1);
+	}
+
+	private static <K> LimitedExecutor limited(final Map<K, LimitedExecutor> executors, final K key,
+			final int limit) {
+		synchronized (executors) {
+			LimitedExecutor executor = executors.get(key);
+			if (executor == null) {
+				executor = new LimitedExecutor(DEFAULT, limit);
+				executors.put(key, executor);
+			}
+			return executor;
+		}
+	}
+
+	/**
+	 * Lanza una tarea que puede fallar con una excepción comprobada, como
+	 * SQLException o DaoException. La excepción llega al futuro envuelta en
+	 * {@link CompletionException}.
+	 * 
+	 * @param task
+	 *            Tarea a ejecutar.
+	 * @param executor
+	 *            Executor en el que se lanza.
+	 * @return Futuro con el resultado de la tarea.
+	 */
+	public static <R> CompletableFuture<R> supply(final Callable<R> task, final Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.call();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	private static Executor createDefault() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			final AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "query-async-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+}
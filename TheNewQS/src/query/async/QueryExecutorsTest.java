@@ -0,0 +1,49 @@
+package query.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import query.ParametrizedQuery;
+import query.pool.SingleConnectionDataSource;
+
+/**
+ * Límites de {@link QueryExecutors} para las consultas lanzadas sobre una
+ * única conexión.
+ */
+public class QueryExecutorsTest {
+
+	@Test
+	public void connectionQueriesRunOneAtATime() throws SQLException {
+		try (Connection first = DriverManager.getConnection("jdbc:h2:mem:executors1");
+				Connection second = DriverManager.getConnection("jdbc:h2:mem:executors2")) {
+			final LimitedExecutor executor = QueryExecutors.forConnection(first);
+			assertEquals(1, executor.getLimit());
+			assertSame(executor, QueryExecutors.forConnection(first));
+			assertSame(executor, QueryExecutors.forDataSource(new SingleConnectionDataSource(first)));
+			assertNotSame(executor, QueryExecutors.forConnection(second));
+
+			final ParametrizedQuery<Long> query = new ParametrizedQuery<Long>(Long.class, first, "select 1");
+			assertSame(executor, query.getExecutor());
+			final List<CompletableFuture<List<Long>>> futures = new ArrayList<CompletableFuture<List<Long>>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(query.selectAsync());
+				assertTrue(executor.getRunning() <= 1);
+			}
+			for (final CompletableFuture<List<Long>> future : futures) {
+				assertEquals(1L, future.join().get(0).longValue());
+			}
+		}
+	}
+
+}
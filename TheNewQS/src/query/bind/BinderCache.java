@@ -0,0 +1,77 @@
+package query.bind;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Añade un array de parámetros a una sentencia con los {@link TypeBinder} de
+ * {@link TypeBinders}, guardando los resueltos en la última ejecución mientras
+ * las clases de los parámetros no cambien. Puede compartirse entre hilos.
+ * 
+ * @author fferezsa
+ *
+ */
+public final class BinderCache implements ParameterBinder<Object[]> {
+
+	private volatile Shape last;
+
+	/**
+	 * @param statement
+	 *            Sentencia a la que se añaden los parámetros.
+	 * @param params
+	 *            Valores de las variables bind en el orden en que aparecen,
+	 *            puede ser null.
+	 * @throws SQLException
+	 *             Si ocurre algún error con BBDD.
+	 */
+	@Override
+	public void bind(final PreparedStatement statement, final Object[] params) throws SQLException {
+		if (params == null) {
+			return;
+		}
+		final TypeBinder<Object>[] binders = resolve(params);
+		for (int i = 0; i < binders.length; i++) {
+			binders[i].bind(statement, i + 1, params[i]);
+		}
+	}
+
+	private TypeBinder<Object>[] resolve(final Object[] params) {
+		final Shape shape = last;
+		if (shape != null && shape.matches(params)) {
+			return shape.binders;
+		}
+		final Shape resolved = new Shape(params);
+		last = resolved;
+		return resolved.binders;
+	}
+
+	/**
+	 * Clases de los parámetros junto con sus binders.
+	 */
+	private static final class Shape {
+
+		private final Class<?>[] classes;
+		private final TypeBinder<Object>[] binders;
+
+		private Shape(final Object[] params) {
+			this.classes = new Class<?>[params.length];
+			for (int i = 0; i < params.length; i++) {
+				classes[i] = params[i] == null ? null : params[i].getClass();
+			}
+			this.binders = TypeBinders.resolve(params);
+		}
+
+		private boolean matches(final Object[] params) {
+			if (classes.length != params.length) {
+				return false;
+			}
+			for (int i = 0; i < classes.length; i++) {
+				if (classes[i] != (params[i] == null ? null : params[i].getClass())) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
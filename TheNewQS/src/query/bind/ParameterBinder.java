@@ -0,0 +1,30 @@
+package query.bind;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Añade a una sentencia todas las variables bind a partir de un único valor,
+ * típicamente un bean de negocio. Las implementaciones deben ser inmutables
+ * para poder compartirse entre consultas e hilos.
+ * 
+ * @author fferezsa
+ *
+ * @param <P>
+ *            Tipo del valor del que se extraen los parámetros.
+ */
+@FunctionalInterface
+public interface ParameterBinder<P> {
+
+	/**
+	 * @param statement
+	 *            Sentencia a la que se deben añadir los parámetros uno a uno en
+	 *            el orden en que aparecen en la consulta.
+	 * @param value
+	 *            Valor del que se extraen los parámetros.
+	 * @throws SQLException
+	 *             Si ocurre algún error con BBDD.
+	 */
+	void bind(PreparedStatement statement, P value) throws SQLException;
+
+}
@@ -0,0 +1,31 @@
+package query.bind;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Añade a una sentencia un valor de un tipo concreto. Las implementaciones se
+ * registran en {@link TypeBinders} y deben ser inmutables, ya que se comparten
+ * entre todas las consultas.
+ * 
+ * @author fferezsa
+ *
+ * @param <V>
+ *            Tipo del valor que sabe añadir.
+ */
+@FunctionalInterface
+public interface TypeBinder<V> {
+
+	/**
+	 * @param statement
+	 *            Sentencia a la que se añade el valor.
+	 * @param index
+	 *            Posición de la variable bind, empezando en 1.
+	 * @param value
+	 *            Valor a añadir. Solo el binder de nulos lo recibe nulo.
+	 * @throws SQLException
+	 *             Si ocurre algún error con BBDD.
+	 */
+	void bind(PreparedStatement statement, int index, V value) throws SQLException;
+
+}
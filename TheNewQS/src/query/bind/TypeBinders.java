@@ -0,0 +1,266 @@
+package query.bind;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registro de {@link TypeBinder} indexado por clase.
+ * 
+ * <p>
+ * La resolución de la clase de cada parámetro se hace una sola vez: si no hay
+ * un binder registrado para la clase exacta se busca en sus superclases e
+ * interfaces y el resultado queda guardado para las siguientes consultas. El
+ * valor null se añade siempre con {@link PreparedStatement#setNull(int, int)}.
+ * 
+ * <p>
+ * Se pueden registrar binders propios con
+ * {@link #register(Class, TypeBinder)}, que tienen prioridad sobre los
+ * incluidos por defecto.
+ * 
+ * @author fferezsa
+ *
+ */
+public final class TypeBinders {
+
+	/**
+	 * Binder que se aplica a los parámetros nulos.
+	 */
+	public static final TypeBinder<Object> NULL = new TypeBinder<Object>() {
+
+		@Override
+		public void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+			statement.setNull(index, Types.NULL);
+		}
+	};
+
+	private static final ConcurrentMap<Class<?>, TypeBinder<?>> registered = new ConcurrentHashMap<Class<?>, TypeBinder<?>>();
+	private static final ConcurrentMap<Class<?>, TypeBinder<?>> resolved = new ConcurrentHashMap<Class<?>, TypeBinder<?>>();
+
+	static {
+		register(String.class, new TypeBinder<String>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, String value) throws SQLException {
+				statement.setString(index, value);
+			}
+		});
+		register(Integer.class, new TypeBinder<Integer>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Integer value) throws SQLException {
+				statement.setInt(index, value);
+			}
+		});
+		register(Long.class, new TypeBinder<Long>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Long value) throws SQLException {
+				statement.setLong(index, value);
+			}
+		});
+		register(Short.class, new TypeBinder<Short>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Short value) throws SQLException {
+				statement.setShort(index, value);
+			}
+		});
+		register(Byte.class, new TypeBinder<Byte>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Byte value) throws SQLException {
+				statement.setByte(index, value);
+			}
+		});
+		register(Double.class, new TypeBinder<Double>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Double value) throws SQLException {
+				statement.setDouble(index, value);
+			}
+		});
+		register(Float.class, new TypeBinder<Float>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Float value) throws SQLException {
+				statement.setFloat(index, value);
+			}
+		});
+		register(Boolean.class, new TypeBinder<Boolean>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Boolean value) throws SQLException {
+				statement.setBoolean(index, value);
+			}
+		});
+		register(Character.class, new TypeBinder<Character>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Character value) throws SQLException {
+				statement.setString(index, value.toString());
+			}
+		});
+		register(BigDecimal.class, new TypeBinder<BigDecimal>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, BigDecimal value) throws SQLException {
+				statement.setBigDecimal(index, value);
+			}
+		});
+		register(BigInteger.class, new TypeBinder<BigInteger>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, BigInteger value) throws SQLException {
+				statement.setBigDecimal(index, new BigDecimal(value));
+			}
+		});
+		register(java.sql.Date.class, new TypeBinder<java.sql.Date>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, java.sql.Date value) throws SQLException {
+				statement.setDate(index, value);
+			}
+		});
+		register(Time.class, new TypeBinder<Time>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Time value) throws SQLException {
+				statement.setTime(index, value);
+			}
+		});
+		register(Timestamp.class, new TypeBinder<Timestamp>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Timestamp value) throws SQLException {
+				statement.setTimestamp(index, value);
+			}
+		});
+		register(java.util.Date.class, new TypeBinder<java.util.Date>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, java.util.Date value) throws SQLException {
+				statement.setTimestamp(index, new Timestamp(value.getTime()));
+			}
+		});
+		register(LocalDate.class, new TypeBinder<LocalDate>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, LocalDate value) throws SQLException {
+				statement.setDate(index, java.sql.Date.valueOf(value));
+			}
+		});
+		register(LocalTime.class, new TypeBinder<LocalTime>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, LocalTime value) throws SQLException {
+				statement.setTime(index, Time.valueOf(value));
+			}
+		});
+		register(LocalDateTime.class, new TypeBinder<LocalDateTime>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, LocalDateTime value) throws SQLException {
+				statement.setTimestamp(index, Timestamp.valueOf(value));
+			}
+		});
+		register(byte[].class, new TypeBinder<byte[]>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, byte[] value) throws SQLException {
+				statement.setBytes(index, value);
+			}
+		});
+		registered.put(Enum.class, new TypeBinder<Enum<?>>() {
+
+			@Override
+			public void bind(PreparedStatement statement, int index, Enum<?> value) throws SQLException {
+				statement.setString(index, value.name());
+			}
+		});
+	}
+
+	private TypeBinders() {
+	}
+
+	/**
+	 * Registra un binder para una clase y todas sus subclases que no tengan uno
+	 * propio. Sustituye al que hubiera para esa misma clase.
+	 * 
+	 * @param clazz
+	 *            Clase de los valores.
+	 * @param binder
+	 *            Binder que los añade a la sentencia.
+	 */
+	public static <V> void register(final Class<V> clazz, final TypeBinder<? super V> binder) {
+		registered.put(clazz, binder);
+		resolved.clear();
+	}
+
+	/**
+	 * Obtiene el binder de una clase.
+	 * 
+	 * @param clazz
+	 *            Clase del valor, null para el valor nulo.
+	 * @return Binder a aplicar.
+	 * @throws UnsupportedOperationException
+	 *             Si no hay ningún binder aplicable a la clase.
+	 */
+	@SuppressWarnings("unchecked")
+	public static TypeBinder<Object> lookup(final Class<?> clazz) {
+		if (clazz == null) {
+			return NULL;
+		}
+		TypeBinder<?> binder = resolved.get(clazz);
+		if (binder == null) {
+			binder = find(clazz);
+			if (binder == null) {
+				throw new UnsupportedOperationException(String.format("Not yet implemented for class: %s", clazz));
+			}
+			resolved.put(clazz, binder);
+		}
+		return (TypeBinder<Object>) binder;
+	}
+
+	/**
+	 * Obtiene los binders que corresponden a cada uno de los parámetros.
+	 * 
+	 * @param params
+	 *            Valores de las variables bind.
+	 * @return Array paralelo a <b>params</b> con el binder de cada valor.
+	 */
+	@SuppressWarnings("unchecked")
+	public static TypeBinder<Object>[] resolve(final Object[] params) {
+		final TypeBinder<Object>[] binders = (TypeBinder<Object>[]) new TypeBinder<?>[params.length];
+		for (int i = 0; i < params.length; i++) {
+			binders[i] = lookup(params[i] == null ? null : params[i].getClass());
+		}
+		return binders;
+	}
+
+	private static TypeBinder<?> find(final Class<?> clazz) {
+		for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+			final TypeBinder<?> binder = registered.get(current);
+			if (binder != null) {
+				return binder;
+			}
+			for (final Class<?> iface : current.getInterfaces()) {
+				final TypeBinder<?> byInterface = registered.get(iface);
+				if (byInterface != null) {
+					return byInterface;
+				}
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,571 @@
+package query.cache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caché de resultados de consultas de solo lectura indexada por el texto
+ * normalizado de la consulta, sus parámetros y la identidad de la traducción
+ * de filas, de modo que dos consultas iguales con distinto mapper no
+ * comparten resultado.
+ *
+ * <p>
+ * El tamaño se acota por memoria estimada: cada resultado pesa según el
+ * {@link Weigher} configurado y al superar <b>maxWeight</b> se expulsan los
+ * usados hace más tiempo. Cada entrada caduca según el tiempo de vida con el
+ * que se guardó.
+ *
+ * <p>
+ * Cada entrada recuerda las tablas que aparecen en el FROM y los JOIN de su
+ * consulta, de modo que {@link #invalidateTable(String)} descarta todo lo que
+ * dependa de una tabla modificada. Los DAO lo hacen automáticamente al
+ * persistir sobre su tabla. Las modificaciones hechas por otras vías no se
+ * detectan, por lo que solo debe usarse para datos de referencia o con un
+ * tiempo de vida corto.
+ *
+ * <p>
+ * Los resultados se guardan y se devuelven como listas inmodificables, de
+ * modo que un acierto devuelve siempre la misma instancia sin copiarla.
+ *
+ * @author fferezsa
+ *
+ */
+public class ResultCache {
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern FROM_CLAUSE = Pattern.compile(
+			"\\bFROM\\s+([^(].*?)(?=\\bWHERE\\b|\\bGROUP\\b|\\bORDER\\b|\\bHAVING\\b|\\bLIMIT\\b|\\bUNION\\b"
+					+ "|\\bJOIN\\b|\\bINNER\\b|\\bLEFT\\b|\\bRIGHT\\b|\\bFULL\\b|\\bCROSS\\b|\\bNATURAL\\b|\\bFOR\\b|\\)|$)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern JOIN_TABLE = Pattern.compile("\\b(?:JOIN|UPDATE|INTO)\\s+([\\w.`\"]+)",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Map<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<Class<?>, Field[]>();
+
+	/**
+	 * Estimador por defecto: pesa la primera fila y la multiplica por el
+	 * número de filas.
+	 */
+	public static final Weigher DEFAULT_WEIGHER = new Weigher() {
+
+		@Override
+		public long weigh(List<?> rows) {
+			if (rows.isEmpty()) {
+				return 64;
+			}
+			return 64 + 8L * rows.size() + estimate(rows.get(0)) * rows.size();
+		}
+	};
+
+	private final long maxWeight;
+	private final LinkedHashMap<Key, Cached> entries = new LinkedHashMap<Key, Cached>(16, 0.75f, true);
+	private final Map<String, Set<Key>> byTable = new HashMap<String, Set<Key>>();
+	private long weight;
+	private long generation;
+	private long defaultTtlMillis;
+	private Weigher weigher = DEFAULT_WEIGHER;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Crea una caché sin caducidad por defecto.
+	 *
+	 * @param maxWeight
+	 *            Memoria máxima estimada, en bytes, de todos los resultados.
+	 */
+	public ResultCache(final long maxWeight) {
+		this(maxWeight, 0);
+	}
+
+	/**
+	 * @param maxWeight
+	 *            Memoria máxima estimada, en bytes, de todos los resultados.
+	 * @param defaultTtlMillis
+	 *            Tiempo de vida de los resultados guardados sin uno propio, 0
+	 *            para que no caduquen.
+	 */
+	public ResultCache(final long maxWeight, final long defaultTtlMillis) {
+		if (maxWeight <= 0) {
+			throw new IllegalArgumentException("Cache weight must be 1 or more");
+		}
+		if (defaultTtlMillis < 0) {
+			throw new IllegalArgumentException("TTL must be 0 or more");
+		}
+		this.maxWeight = maxWeight;
+		this.defaultTtlMillis = defaultTtlMillis;
+	}
+
+	/**
+	 * Devuelve el resultado guardado para la consulta o lo obtiene con
+	 * <b>loader</b> y lo guarda. Si alguna tabla de la consulta se invalida
+	 * mientras se carga, el resultado se devuelve pero no se guarda.
+	 *
+	 * @param query
+	 *            Consulta sql.
+	 * @param params
+	 *            Valores de las variables bind, puede ser null.
+	 * @param mapper
+	 *            Identidad de la traducción de las filas, típicamente el
+	 *            mapper o la clase del resultado. Se compara por identidad.
+	 * @param ttlMillis
+	 *            Tiempo de vida del resultado, 0 para usar el de la caché.
+	 * @param loader
+	 *            Ejecución de la consulta contra la BBDD.
+	 * @return Lista inmodificable con el resultado.
+	 * @throws SQLException
+	 *             Si falla la ejecución de la consulta.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> get(final String query, final Object[] params, final Object mapper, final long ttlMillis,
+			final Loader<T> loader) throws SQLException {
+		final Key key = new Key(normalize(query), params, mapper);
+		final long loadGeneration;
+		synchronized (entries) {
+			final Cached cached = entries.get(key);
+			if (cached != null) {
+				if (cached.expiresAt == 0 || System.nanoTime() - cached.expiresAt < 0) {
+					hits.incrementAndGet();
+					return (List<T>) cached.rows;
+				}
+				remove(key);
+				expirations.incrementAndGet();
+			}
+			loadGeneration = generation;
+		}
+		misses.incrementAndGet();
+		final List<T> rows = Collections.unmodifiableList(loader.load());
+		final long rowsWeight = weigher.weigh(rows);
+		if (rowsWeight > maxWeight) {
+			return rows;
+		}
+		final long ttl = ttlMillis > 0 ? ttlMillis : defaultTtlMillis;
+		final long expiresAt = ttl > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl) | 1 : 0;
+		final Key stored = new Key(key.query, params == null ? null : params.clone(), mapper);
+		final Set<String> tables = tablesOf(stored.query);
+		synchronized (entries) {
+			if (loadGeneration == generation) {
+				remove(stored);
+				entries.put(stored, new Cached(rows, rowsWeight, expiresAt, tables));
+				weight += rowsWeight;
+				for (final String table : tables) {
+					Set<Key> keys = byTable.get(table);
+					if (keys == null) {
+						keys = new HashSet<Key>();
+						byTable.put(table, keys);
+					}
+					keys.add(stored);
+				}
+				evict();
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Descarta todos los resultados de consultas que leen de la tabla.
+	 *
+	 * @param table
+	 *            Nombre de la tabla, con o sin esquema.
+	 */
+	public void invalidateTable(final String table) {
+		final String name = normalizeTable(table);
+		synchronized (entries) {
+			generation++;
+			final Set<Key> keys = byTable.remove(name);
+			if (keys != null) {
+				for (final Key key : new ArrayList<Key>(keys)) {
+					remove(key);
+				}
+			}
+		}
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Descarta los resultados de las tablas que modifica una sentencia
+	 * INSERT, UPDATE o DELETE, y los de las que lee si tiene subconsultas.
+	 *
+	 * @param statement
+	 *            Sentencia de modificación.
+	 */
+	public void invalidateTablesOf(final String statement) {
+		for (final String table : tablesOf(normalize(statement))) {
+			invalidateTable(table);
+		}
+	}
+
+	/**
+	 * Descarta todos los resultados.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			generation++;
+			entries.clear();
+			byTable.clear();
+			weight = 0;
+		}
+	}
+
+	private void remove(final Key key) {
+		final Cached removed = entries.remove(key);
+		if (removed != null) {
+			weight -= removed.weight;
+			for (final String table : removed.tables) {
+				final Set<Key> keys = byTable.get(table);
+				if (keys != null) {
+					keys.remove(key);
+					if (keys.isEmpty()) {
+						byTable.remove(table);
+					}
+				}
+			}
+		}
+	}
+
+	private void evict() {
+		while (weight > maxWeight && !entries.isEmpty()) {
+			remove(entries.keySet().iterator().next());
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static Set<String> tablesOf(final String query) {
+		final Set<String> tables = new HashSet<String>();
+		final Matcher from = FROM_CLAUSE.matcher(query);
+		while (from.find()) {
+			for (final String item : from.group(1).split(",")) {
+				final String trimmed = item.trim();
+				if (!trimmed.isEmpty() && !trimmed.startsWith("(")) {
+					tables.add(normalizeTable(WHITESPACE.split(trimmed)[0]));
+				}
+			}
+		}
+		final Matcher join = JOIN_TABLE.matcher(query);
+		while (join.find()) {
+			tables.add(normalizeTable(join.group(1)));
+		}
+		return tables;
+	}
+
+	/**
+	 * Reduce cada secuencia de espacios, tabuladores y saltos de línea fuera
+	 * de los literales entre comillas simples a un único espacio. El contenido
+	 * de los literales se conserva tal cual, de modo que <b>'x  y'</b> y
+	 * <b>'x y'</b> no comparten clave. Si la consulta ya está normalizada se
+	 * devuelve la misma instancia, para no crear objetos en cada acierto.
+	 */
+	private static String normalize(final String query) {
+		final int length = query.length();
+		StringBuilder normalized = null;
+		boolean quoted = false;
+		boolean space = true;
+		for (int i = 0; i < length; i++) {
+			final char c = query.charAt(i);
+			if (!quoted && Character.isWhitespace(c)) {
+				if (normalized == null && (space || c != ' ' || i + 1 == length
+						|| Character.isWhitespace(query.charAt(i + 1)))) {
+					normalized = new StringBuilder(length).append(query, 0, i);
+				}
+				if (normalized != null && !space) {
+					normalized.append(' ');
+				}
+				space = true;
+				continue;
+			}
+			if (c == '\'') {
+				quoted = !quoted;
+			}
+			if (normalized != null) {
+				normalized.append(c);
+			}
+			space = false;
+		}
+		if (normalized == null) {
+			return query;
+		}
+		final int last = normalized.length() - 1;
+		if (last >= 0 && normalized.charAt(last) == ' ') {
+			normalized.setLength(last);
+		}
+		return normalized.toString();
+	}
+
+	private static String normalizeTable(final String table) {
+		String name = table.replace("`", "").replace("\"", "");
+		final int dot = name.lastIndexOf('.');
+		if (dot >= 0) {
+			name = name.substring(dot + 1);
+		}
+		return name.toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Estimación aproximada del tamaño en memoria de un objeto: los tipos
+	 * básicos por su representación y los beans por sus atributos, sin
+	 * recorrer más allá del primer nivel.
+	 *
+	 * @param row
+	 *            Objeto a estimar.
+	 * @return Bytes estimados.
+	 */
+	public static long estimate(final Object row) {
+		if (row == null) {
+			return 0;
+		}
+		final long basic = estimateBasic(row);
+		if (basic >= 0) {
+			return basic;
+		}
+		long size = 16;
+		for (final Field field : fieldsOf(row.getClass())) {
+			size += 8;
+			try {
+				final Object value = field.get(row);
+				if (value != null && !field.getType().isPrimitive()) {
+					final long nested = estimateBasic(value);
+					size += nested >= 0 ? nested : 16;
+				}
+			} catch (IllegalAccessException e) {
+				size += 16;
+			}
+		}
+		return size;
+	}
+
+	private static long estimateBasic(final Object value) {
+		if (value instanceof CharSequence) {
+			return 40 + 2L * ((CharSequence) value).length();
+		} else if (value instanceof byte[]) {
+			return 16 + ((byte[]) value).length;
+		} else if (value instanceof Number || value instanceof Boolean || value instanceof Character
+				|| value instanceof Enum) {
+			return 16;
+		} else if (value instanceof java.util.Date || value instanceof java.time.temporal.Temporal) {
+			return 32;
+		}
+		return -1;
+	}
+
+	private static Field[] fieldsOf(final Class<?> clazz) {
+		Field[] fields = FIELDS.get(clazz);
+		if (fields == null) {
+			final List<Field> found = new ArrayList<Field>();
+			for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (final Field field : c.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers())) {
+						try {
+							field.setAccessible(true);
+							found.add(field);
+						} catch (RuntimeException e) {
+							// Inaccesible: no se tiene en cuenta.
+						}
+					}
+				}
+			}
+			fields = found.toArray(new Field[found.size()]);
+			FIELDS.put(clazz, fields);
+		}
+		return fields;
+	}
+
+	/**
+	 * @return Número de resultados en caché.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return Memoria estimada, en bytes, de los resultados en caché.
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	/**
+	 * @return the maxWeight
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @return the defaultTtlMillis
+	 */
+	public long getDefaultTtlMillis() {
+		return defaultTtlMillis;
+	}
+
+	/**
+	 * @param defaultTtlMillis
+	 *            the defaultTtlMillis to set
+	 */
+	public void setDefaultTtlMillis(long defaultTtlMillis) {
+		if (defaultTtlMillis < 0) {
+			throw new IllegalArgumentException("TTL must be 0 or more");
+		}
+		this.defaultTtlMillis = defaultTtlMillis;
+	}
+
+	/**
+	 * @return the weigher
+	 */
+	public Weigher getWeigher() {
+		return weigher;
+	}
+
+	/**
+	 * @param weigher
+	 *            Estimador del tamaño de cada resultado.
+	 */
+	public void setWeigher(Weigher weigher) {
+		this.weigher = weigher != null ? weigher : DEFAULT_WEIGHER;
+	}
+
+	/**
+	 * @return Número de consultas servidas desde la caché.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Número de consultas lanzadas contra la BBDD.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Número de resultados expulsados por memoria.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return Número de resultados descartados por caducidad.
+	 */
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	/**
+	 * @return Número de invalidaciones de tabla recibidas.
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ResultCache [maxWeight=" + maxWeight + ", weight=" + getWeight() + ", size=" + size() + ", hits="
+				+ hits + ", misses=" + misses + ", evictions=" + evictions + ", expirations=" + expirations
+				+ ", invalidations=" + invalidations + "]";
+	}
+
+	/**
+	 * Ejecuta la consulta cuando el resultado no está en caché.
+	 *
+	 * @param <T>
+	 *            Tipo de cada fila.
+	 */
+	public interface Loader<T> {
+
+		List<T> load() throws SQLException;
+
+	}
+
+	/**
+	 * Estima la memoria que ocupa un resultado.
+	 */
+	public interface Weigher {
+
+		long weigh(List<?> rows);
+
+	}
+
+	/**
+	 * Consulta normalizada junto con sus parámetros y su mapper.
+	 */
+	private static final class Key {
+
+		private final String query;
+		private final Object[] params;
+		private final Object mapper;
+		private final int hash;
+
+		private Key(final String query, final Object[] params, final Object mapper) {
+			this.query = query;
+			this.params = params;
+			this.mapper = mapper;
+			this.hash = 31 * (31 * query.hashCode() + Arrays.deepHashCode(params)) + System.identityHashCode(mapper);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return hash == other.hash && mapper == other.mapper && query.equals(other.query)
+					&& Arrays.deepEquals(params, other.params);
+		}
+	}
+
+	/**
+	 * Resultado guardado.
+	 */
+	private static final class Cached {
+
+		private final List<?> rows;
+		private final long weight;
+		private final long expiresAt;
+		private final Set<String> tables;
+
+		private Cached(final List<?> rows, final long weight, final long expiresAt, final Set<String> tables) {
+			this.rows = rows;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+			this.tables = tables;
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package query.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.ParametrizedQuery;
+
+/**
+ * Claves e invalidación de {@link ResultCache} con consultas reales sobre H2
+ * en memoria.
+ */
+public class ResultCacheTest {
+
+	private Connection connection;
+	private ResultCache cache;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:resultcache");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table t (id int primary key, name varchar(20))");
+			statement.execute("insert into t values (1, 'x y'), (2, 'x  y')");
+		}
+		cache = new ResultCache(1024 * 1024);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	private List<Integer> select(final String sql) throws SQLException {
+		final ParametrizedQuery<Integer> query = new ParametrizedQuery<Integer>(Integer.class, connection, sql);
+		query.setResultCache(cache);
+		return query.select();
+	}
+
+	@Test
+	public void whitespaceInsideLiteralsIsPartOfTheKey() throws SQLException {
+		assertEquals(Arrays.asList(1), select("select id from t where name = 'x y'"));
+		assertEquals(Arrays.asList(2), select("select id from t where name = 'x  y'"));
+		assertEquals(2, cache.size());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void whitespaceOutsideLiteralsIsCollapsed() throws SQLException {
+		final List<Integer> first = select("select id from t where name = 'x  y'");
+		assertSame(first, select("  select id\n\tfrom t  where name = 'x  y' "));
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void persistInvalidatesTheTable() throws SQLException {
+		assertEquals(Arrays.asList(1), select("select id from t where name = 'x y'"));
+		final ParametrizedQuery<Integer> update = new ParametrizedQuery<Integer>(Integer.class, connection);
+		update.setResultCache(cache);
+		assertEquals(1, update.persist("update t set name = ? where id = ?", "z", 1));
+		assertEquals(0, cache.size());
+		assertEquals(Arrays.<Integer> asList(), select("select id from t where name = 'x y'"));
+	}
+
+}
@@ -0,0 +1,263 @@
+package query.cache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché LRU acotada de {@link PreparedStatement} indexada por conexión y texto
+ * de la consulta.
+ *
+ * <p>
+ * Funciona en modo préstamo: {@link #acquire(Connection, String)} retira la
+ * sentencia de la caché (o la prepara si no existe) y
+ * {@link #release(Connection, String, PreparedStatement)} la devuelve para su
+ * reutilización. De este modo dos ejecuciones anidadas de la misma consulta
+ * sobre la misma conexión nunca comparten sentencia.
+ *
+ * <p>
+ * La conexión se identifica por {@link Connection#unwrap(Class)}, de modo que
+ * los distintos objetos con los que un pool presta la misma conexión física
+ * comparten sentencias.
+ *
+ * <p>
+ * Las sentencias expulsadas por tamaño o invalidadas se cierran. Con MySQL
+ * conviene abrir la conexión con <code>useServerPrepStmts=true</code> para
+ * que la reutilización evite también el parseo en el servidor.
+ *
+ * @author fferezsa
+ *
+ */
+public class StatementCache {
+
+	private final int maxSize;
+	private final LinkedHashMap<Key, PreparedStatement> statements;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Crea una caché que mantendrá como máximo <b>maxSize</b> sentencias
+	 * abiertas entre todas las conexiones.
+	 *
+	 * @param maxSize
+	 *            Número máximo de sentencias en reposo.
+	 * @throws IllegalArgumentException
+	 *             Si el tamaño es menor que 1.
+	 */
+	public StatementCache(final int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be 1 or more");
+		}
+		this.maxSize = maxSize;
+		this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<Key, PreparedStatement> eldest) {
+				if (size() > StatementCache.this.maxSize) {
+					evictions.incrementAndGet();
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Obtiene una sentencia preparada para la consulta. Si no hay ninguna en
+	 * reposo para la conexión se prepara una nueva.
+	 *
+	 * @param connection
+	 *            Conexión sobre la que se ejecutará la sentencia.
+	 * @param query
+	 *            Consulta sql.
+	 * @return Sentencia lista para recibir parámetros.
+	 * @throws SQLException
+	 *             Si ocurre algún error al preparar la sentencia.
+	 */
+	public PreparedStatement acquire(final Connection connection, final String query) throws SQLException {
+		final PreparedStatement statement;
+		synchronized (statements) {
+			statement = statements.remove(new Key(identity(connection), query));
+		}
+		if (statement != null && !statement.isClosed()) {
+			statement.clearParameters();
+			hits.incrementAndGet();
+			return statement;
+		}
+		misses.incrementAndGet();
+		return connection.prepareStatement(query);
+	}
+
+	/**
+	 * Devuelve a la caché una sentencia obtenida con
+	 * {@link #acquire(Connection, String)}. Si ya hubiera otra en reposo para la
+	 * misma conexión y consulta, la devuelta se cierra.
+	 *
+	 * @param connection
+	 *            Conexión con la que se obtuvo la sentencia.
+	 * @param query
+	 *            Consulta sql.
+	 * @param statement
+	 *            Sentencia a devolver.
+	 */
+	public void release(final Connection connection, final String query, final PreparedStatement statement) {
+		if (statement == null) {
+			return;
+		}
+		final Key key = new Key(identity(connection), query);
+		final boolean duplicated;
+		synchronized (statements) {
+			duplicated = statements.containsKey(key);
+			if (!duplicated) {
+				statements.put(key, statement);
+			}
+		}
+		if (duplicated) {
+			closeQuietly(statement);
+		}
+	}
+
+	/**
+	 * Cierra y elimina todas las sentencias en reposo de una conexión. Debe
+	 * invocarse antes de cerrar la conexión.
+	 *
+	 * @param connection
+	 *            Conexión cuyas sentencias se descartan.
+	 */
+	public void invalidate(final Connection connection) {
+		final Connection identity = identity(connection);
+		synchronized (statements) {
+			final Iterator<Map.Entry<Key, PreparedStatement>> it = statements.entrySet().iterator();
+			while (it.hasNext()) {
+				final Map.Entry<Key, PreparedStatement> entry = it.next();
+				if (entry.getKey().connection == identity) {
+					closeQuietly(entry.getValue());
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cierra y elimina todas las sentencias en reposo.
+	 */
+	public void clear() {
+		synchronized (statements) {
+			for (final PreparedStatement statement : statements.values()) {
+				closeQuietly(statement);
+			}
+			statements.clear();
+		}
+	}
+
+	/**
+	 * @return Número de sentencias en reposo.
+	 */
+	public int size() {
+		synchronized (statements) {
+			return statements.size();
+		}
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return Número de veces que se ha reutilizado una sentencia.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Número de veces que ha sido necesario preparar una sentencia.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Número de sentencias cerradas por exceder el tamaño máximo.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return Conexión física tras <b>connection</b>, o ella misma si no
+	 *         envuelve a ninguna.
+	 */
+	private static Connection identity(final Connection connection) {
+		try {
+			final Connection unwrapped = connection.unwrap(Connection.class);
+			return unwrapped != null ? unwrapped : connection;
+		} catch (SQLException e) {
+			return connection;
+		}
+	}
+
+	private static void closeQuietly(final PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "StatementCache [maxSize=" + maxSize + ", size=" + size() + ", hits=" + hits + ", misses=" + misses
+				+ ", evictions=" + evictions + "]";
+	}
+
+	/**
+	 * Clave compuesta por la identidad de la conexión y el texto de la
+	 * consulta.
+	 */
+	private static final class Key {
+
+		private final Connection connection;
+		private final String query;
+
+		private Key(final Connection connection, final String query) {
+			this.connection = connection;
+			this.query = query;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(connection) + query.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return connection == other.connection && query.equals(other.query);
+		}
+	}
+
+}
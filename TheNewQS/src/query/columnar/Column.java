@@ -0,0 +1,123 @@
+package query.columnar;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Almacenamiento de una columna de {@link ColumnarResult}. Los nulos se
+ * marcan en un mapa de bits que solo se crea al aparecer el primero.
+ *
+ * @author fferezsa
+ *
+ */
+abstract class Column {
+
+	final String name;
+	final int sqlType;
+	private long[] nulls;
+
+	Column(final String name, final int sqlType) {
+		this.name = name;
+		this.sqlType = sqlType;
+	}
+
+	abstract ColumnType getType();
+
+	/**
+	 * Lee el valor de la fila actual del {@link ResultSet} en la posición
+	 * <b>row</b>, que siempre cabe en la capacidad reservada.
+	 */
+	abstract void read(ResultSet rs, int column, int row) throws SQLException;
+
+	/**
+	 * Cambia la capacidad a <b>capacity</b> filas conservando las leídas.
+	 */
+	abstract void grow(int capacity);
+
+	/**
+	 * @return Bytes ocupados por los valores, sin contar los nulos.
+	 */
+	abstract long valueBytes();
+
+	/**
+	 * @return Si los valores están fuera del heap.
+	 */
+	boolean isOffHeap() {
+		return false;
+	}
+
+	/**
+	 * Suelta el almacenamiento para que pueda liberarse antes de que se
+	 * descarte el resultado.
+	 */
+	abstract void release();
+
+	abstract Object getObject(int row);
+
+	long getLong(final int row) {
+		throw unsupported("long");
+	}
+
+	int getInt(final int row) {
+		return (int) getLong(row);
+	}
+
+	double getDouble(final int row) {
+		return getLong(row);
+	}
+
+	String getString(final int row) {
+		final Object value = getObject(row);
+		return value != null ? value.toString() : null;
+	}
+
+	boolean isNull(final int row) {
+		return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	final void setNull(final int row) {
+		if (nulls == null) {
+			nulls = new long[Math.max(1, (row >>> 6) + 1) * 2];
+		} else if ((row >>> 6) >= nulls.length) {
+			nulls = Arrays.copyOf(nulls, Math.max(nulls.length * 2, (row >>> 6) + 1));
+		}
+		nulls[row >>> 6] |= 1L << row;
+	}
+
+	final long nullBytes() {
+		return nulls != null ? 8L * nulls.length : 0;
+	}
+
+	final UnsupportedOperationException unsupported(final String kind) {
+		return new UnsupportedOperationException(
+				String.format("Column %s of type %s cannot be read as %s", name, getType(), kind));
+	}
+
+	/**
+	 * Reserva <b>bytes</b> fuera del heap, en el orden de bytes nativo.
+	 */
+	static ByteBuffer allocateDirect(final long bytes) {
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Off-heap column too large: " + bytes + " bytes");
+		}
+		return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Copia <b>old</b> en un buffer directo de <b>bytes</b>, que puede ser
+	 * menor para ajustarlo al tamaño final.
+	 */
+	static ByteBuffer growDirect(final ByteBuffer old, final long bytes) {
+		final ByteBuffer grown = allocateDirect(bytes);
+		final ByteBuffer source = old.duplicate();
+		source.clear();
+		source.limit((int) Math.min(source.capacity(), bytes));
+		grown.put(source);
+		grown.clear();
+		return grown;
+	}
+
+}
@@ -0,0 +1,46 @@
+package query.columnar;
+
+/**
+ * Forma en que {@link ColumnarResult} guarda cada columna, deducida del tipo
+ * JDBC de la columna.
+ *
+ * @author fferezsa
+ *
+ */
+public enum ColumnType {
+
+	/**
+	 * BIGINT, INTEGER sin signo y DECIMAL sin decimales de hasta 18 dígitos,
+	 * en un <code>long[]</code>.
+	 */
+	LONG,
+
+	/**
+	 * INTEGER, SMALLINT, TINYINT, BIT y BOOLEAN, en un <code>int[]</code>.
+	 */
+	INT,
+
+	/**
+	 * DOUBLE, FLOAT, REAL y el resto de DECIMAL, en un <code>double[]</code>.
+	 */
+	DOUBLE,
+
+	/**
+	 * DATE, TIME y TIMESTAMP, como milisegundos desde 1970 en un
+	 * <code>long[]</code>.
+	 */
+	DATE,
+
+	/**
+	 * Textos, codificados con un diccionario mientras tengan pocos valores
+	 * distintos.
+	 */
+	STRING,
+
+	/**
+	 * Cualquier otro tipo, tal y como lo devuelve
+	 * {@link java.sql.ResultSet#getObject(int)}.
+	 */
+	OBJECT
+
+}
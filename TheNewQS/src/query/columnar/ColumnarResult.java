@@ -0,0 +1,459 @@
+package query.columnar;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import query.RowCallback;
+
+/**
+ * Resultado de una consulta guardado por columnas en arrays de primitivos, sin
+ * crear un objeto por fila. Pensado para informes y agregaciones sobre
+ * muchas filas, donde una {@link List} de beans multiplica la memoria y el
+ * trabajo del recolector.
+ *
+ * <p>
+ * Cada columna se guarda según su tipo JDBC (ver {@link ColumnType}): números
+ * en <code>long[]</code>, <code>int[]</code> o <code>double[]</code>, fechas
+ * como milisegundos en <code>long[]</code> y textos codificados con un
+ * diccionario mientras no superen {@link #MAX_DICTIONARY_SIZE} valores
+ * distintos. Con <b>offHeap</b> los valores primitivos se guardan en buffers
+ * directos fuera del heap, que se liberan al descartar el resultado o antes
+ * con {@link #close()}.
+ *
+ * <p>
+ * Las filas se numeran desde 0 y las columnas desde 1, como en JDBC. Las
+ * filas pueden recorrerse con una única {@link RowView} reutilizable:
+ *
+ * <pre>
+ * ColumnarResult result = query.selectColumnar();
+ * RowView row = result.view();
+ * while (row.next()) {
+ * 	total += row.getLong(1);
+ * }
+ * </pre>
+ *
+ * No es seguro modificarlo desde varios hilos, pero sí leerlo una vez
+ * construido.
+ *
+ * @author fferezsa
+ *
+ */
+public final class ColumnarResult implements AutoCloseable {
+
+	/**
+	 * Número máximo de valores distintos de una columna de texto para
+	 * guardarla con diccionario.
+	 */
+	public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private Column[] columns;
+	private final int size;
+	private final boolean offHeap;
+
+	private ColumnarResult(final Column[] columns, final int size, final boolean offHeap) {
+		this.columns = columns;
+		this.size = size;
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * Lee todas las filas restantes del {@link ResultSet}, sin cerrarlo.
+	 *
+	 * @param rs
+	 *            Resultado a leer.
+	 * @param offHeap
+	 *            Si los valores primitivos se guardan fuera del heap.
+	 * @param initialCapacity
+	 *            Filas reservadas inicialmente, típicamente el fetchSize; la
+	 *            capacidad se duplica según se necesita y se ajusta al final
+	 *            si sobra más de una cuarta parte.
+	 * @return Resultado por columnas.
+	 * @throws SQLException
+	 *             Si ocurre algún error leyendo el resultado.
+	 */
+	public static ColumnarResult read(final ResultSet rs, final boolean offHeap, final int initialCapacity)
+			throws SQLException {
+		final ResultSetMetaData meta = rs.getMetaData();
+		final int count = meta.getColumnCount();
+		int capacity = initialCapacity > 0 ? initialCapacity : DEFAULT_CAPACITY;
+		final Column[] columns = new Column[count];
+		for (int i = 0; i < count; i++) {
+			columns[i] = create(meta, i + 1, capacity, offHeap);
+		}
+		int size = 0;
+		while (rs.next()) {
+			if (size == capacity) {
+				capacity = capacity > Integer.MAX_VALUE >> 1 ? Integer.MAX_VALUE - 8 : capacity << 1;
+				for (final Column column : columns) {
+					column.grow(capacity);
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				columns[i].read(rs, i + 1, size);
+			}
+			size++;
+		}
+		if (capacity - size > capacity >> 2) {
+			for (final Column column : columns) {
+				column.grow(size);
+			}
+		}
+		return new ColumnarResult(columns, size, offHeap);
+	}
+
+	/**
+	 * Elige el almacenamiento de una columna a partir de su tipo JDBC.
+	 */
+	private static Column create(final ResultSetMetaData meta, final int column, final int capacity,
+			final boolean offHeap) throws SQLException {
+		final String name = meta.getColumnLabel(column);
+		final int sqlType = meta.getColumnType(column);
+		switch (sqlType) {
+		case Types.BIGINT:
+			return new LongColumn(name, sqlType, false, capacity, offHeap);
+		case Types.INTEGER:
+			if (!meta.isSigned(column)) {
+				return new LongColumn(name, sqlType, false, capacity, offHeap);
+			}
+			return new IntColumn(name, sqlType, capacity, offHeap);
+		case Types.SMALLINT:
+		case Types.TINYINT:
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return new IntColumn(name, sqlType, capacity, offHeap);
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			final int precision = meta.getPrecision(column);
+			if (meta.getScale(column) == 0 && precision > 0 && precision <= 18) {
+				return new LongColumn(name, sqlType, false, capacity, offHeap);
+			}
+			return new DoubleColumn(name, sqlType, capacity, offHeap);
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+			return new DoubleColumn(name, sqlType, capacity, offHeap);
+		case Types.DATE:
+		case Types.TIME:
+		case Types.TIMESTAMP:
+		case Types.TIME_WITH_TIMEZONE:
+		case Types.TIMESTAMP_WITH_TIMEZONE:
+			return new LongColumn(name, sqlType, true, capacity, offHeap);
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return new StringColumn(name, sqlType, capacity, offHeap, MAX_DICTIONARY_SIZE);
+		default:
+			return new ObjectColumn(name, sqlType, capacity);
+		}
+	}
+
+	/**
+	 * @return Número de filas.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Número de columnas.
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * @param column
+	 *            Columna, desde 1.
+	 * @return Nombre o alias de la columna.
+	 */
+	public String getColumnName(final int column) {
+		return columns[column - 1].name;
+	}
+
+	/**
+	 * @param column
+	 *            Columna, desde 1.
+	 * @return Forma en que se guarda la columna.
+	 */
+	public ColumnType getColumnType(final int column) {
+		return columns[column - 1].getType();
+	}
+
+	/**
+	 * @param name
+	 *            Nombre o alias de la columna, sin distinguir mayúsculas.
+	 * @return Posición de la columna, desde 1.
+	 * @throws IllegalArgumentException
+	 *             Si no hay ninguna columna con ese nombre.
+	 */
+	public int findColumn(final String name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].name.equalsIgnoreCase(name)) {
+				return i + 1;
+			}
+		}
+		throw new IllegalArgumentException("No column named " + name);
+	}
+
+	/**
+	 * @return Si el valor de la celda es nulo.
+	 */
+	public boolean isNull(final int row, final int column) {
+		return columns[column - 1].isNull(checkRow(row));
+	}
+
+	/**
+	 * @return Valor numérico de la celda, 0 si es nulo. Las fechas se
+	 *         devuelven como milisegundos desde 1970.
+	 */
+	public long getLong(final int row, final int column) {
+		return columns[column - 1].getLong(checkRow(row));
+	}
+
+	/**
+	 * @return Valor numérico de la celda, 0 si es nulo.
+	 */
+	public int getInt(final int row, final int column) {
+		return columns[column - 1].getInt(checkRow(row));
+	}
+
+	/**
+	 * @return Valor numérico de la celda, 0 si es nulo.
+	 */
+	public double getDouble(final int row, final int column) {
+		return columns[column - 1].getDouble(checkRow(row));
+	}
+
+	/**
+	 * @return Texto de la celda. Los textos repetidos de una columna con
+	 *         diccionario son la misma instancia.
+	 */
+	public String getString(final int row, final int column) {
+		return columns[column - 1].getString(checkRow(row));
+	}
+
+	/**
+	 * @return Valor de la celda como objeto, creado en cada llamada para las
+	 *         columnas primitivas: {@link Long}, {@link Integer},
+	 *         {@link Double} o {@link java.sql.Date}, {@link java.sql.Time} y
+	 *         {@link java.sql.Timestamp} según el tipo JDBC.
+	 */
+	public Object getObject(final int row, final int column) {
+		return columns[column - 1].getObject(checkRow(row));
+	}
+
+	/**
+	 * @return Vista sobre las filas, situada antes de la primera.
+	 */
+	public RowView view() {
+		return new RowView(this);
+	}
+
+	/**
+	 * Recorre todas las filas con una única {@link RowView}, que no debe
+	 * guardarse fuera de <b>callback</b>.
+	 *
+	 * @param callback
+	 *            Receptor de cada fila.
+	 * @return Número de filas recorridas.
+	 * @throws SQLException
+	 *             Si falla el tratamiento de una fila.
+	 */
+	public int forEach(final RowCallback<RowView> callback) throws SQLException {
+		final RowView view = view();
+		while (view.next()) {
+			callback.process(view);
+		}
+		return size;
+	}
+
+	/**
+	 * @return Suma de los valores no nulos de una columna entera o de fechas.
+	 */
+	public long sumLong(final int column) {
+		final Column values = columns[column - 1];
+		long sum = 0;
+		for (int row = 0; row < size; row++) {
+			sum += values.getLong(row);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return Suma de los valores no nulos de una columna numérica.
+	 */
+	public double sum(final int column) {
+		final Column values = columns[column - 1];
+		if (values.getType() != ColumnType.DOUBLE) {
+			return sumLong(column);
+		}
+		double sum = 0;
+		for (int row = 0; row < size; row++) {
+			sum += values.getDouble(row);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return Media de los valores no nulos de una columna numérica, NaN si
+	 *         no hay ninguno.
+	 */
+	public double average(final int column) {
+		final int count = countNonNull(column);
+		return count == 0 ? Double.NaN : sum(column) / count;
+	}
+
+	/**
+	 * @return Menor valor no nulo de una columna numérica, NaN si no hay
+	 *         ninguno.
+	 */
+	public double min(final int column) {
+		final Column values = columns[column - 1];
+		double min = Double.NaN;
+		for (int row = 0; row < size; row++) {
+			if (!values.isNull(row)) {
+				final double value = values.getDouble(row);
+				if (!(value >= min)) {
+					min = value;
+				}
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * @return Mayor valor no nulo de una columna numérica, NaN si no hay
+	 *         ninguno.
+	 */
+	public double max(final int column) {
+		final Column values = columns[column - 1];
+		double max = Double.NaN;
+		for (int row = 0; row < size; row++) {
+			if (!values.isNull(row)) {
+				final double value = values.getDouble(row);
+				if (!(value <= max)) {
+					max = value;
+				}
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return Número de valores no nulos de la columna.
+	 */
+	public int countNonNull(final int column) {
+		final Column values = columns[column - 1];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (!values.isNull(row)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Cuenta las apariciones de cada valor no nulo de la columna. En las
+	 * columnas de texto con diccionario se cuenta sobre los códigos, sin
+	 * comparar textos.
+	 *
+	 * @return Número de filas por valor, en orden de primera aparición.
+	 */
+	public Map<Object, Integer> countByValue(final int column) {
+		final Column values = columns[column - 1];
+		final Map<Object, Integer> result = new LinkedHashMap<Object, Integer>();
+		if (values instanceof StringColumn && ((StringColumn) values).isDictionaryEncoded()) {
+			final StringColumn strings = (StringColumn) values;
+			final List<String> dictionary = strings.getDictionary();
+			final int[] counts = new int[dictionary.size()];
+			for (int row = 0; row < size; row++) {
+				final int code = strings.getCode(row);
+				if (code >= 0) {
+					counts[code]++;
+				}
+			}
+			for (int code = 0; code < counts.length; code++) {
+				if (counts[code] > 0) {
+					result.put(dictionary.get(code), counts[code]);
+				}
+			}
+			return result;
+		}
+		for (int row = 0; row < size; row++) {
+			final Object value = values.getObject(row);
+			if (value != null) {
+				result.merge(value, 1, Integer::sum);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Memoria aproximada ocupada por el resultado, dentro y fuera del
+	 *         heap.
+	 */
+	public long getMemoryBytes() {
+		long bytes = 0;
+		for (final Column column : columns) {
+			bytes += column.valueBytes() + column.nullBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return Si los valores primitivos se guardan fuera del heap.
+	 */
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	/**
+	 * Suelta todas las columnas para que su memoria, incluida la de fuera del
+	 * heap, pueda liberarse aunque se siga referenciando el resultado. Después
+	 * no puede leerse.
+	 */
+	@Override
+	public void close() {
+		for (final Column column : columns) {
+			column.release();
+		}
+		columns = new Column[0];
+	}
+
+	private int checkRow(final int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+		return row;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("ColumnarResult [size=").append(size).append(", offHeap=")
+				.append(offHeap).append(", columns=[");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(columns[i].name).append(':').append(columns[i].getType());
+		}
+		return sb.append("]]").toString();
+	}
+
+}
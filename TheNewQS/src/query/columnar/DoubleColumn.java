@@ -0,0 +1,86 @@
+package query.columnar;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Columna de decimales en un <code>double[]</code> o en un buffer directo.
+ *
+ * @author fferezsa
+ *
+ */
+final class DoubleColumn extends Column {
+
+	private double[] values;
+	private ByteBuffer buffer;
+
+	DoubleColumn(final String name, final int sqlType, final int capacity, final boolean offHeap) {
+		super(name, sqlType);
+		if (offHeap) {
+			buffer = allocateDirect(8L * capacity);
+		} else {
+			values = new double[capacity];
+		}
+	}
+
+	@Override
+	ColumnType getType() {
+		return ColumnType.DOUBLE;
+	}
+
+	@Override
+	void read(final ResultSet rs, final int column, final int row) throws SQLException {
+		final double value = rs.getDouble(column);
+		if (rs.wasNull()) {
+			setNull(row);
+		}
+		if (buffer != null) {
+			buffer.putDouble(row << 3, value);
+		} else {
+			values[row] = value;
+		}
+	}
+
+	@Override
+	void grow(final int capacity) {
+		if (buffer != null) {
+			buffer = growDirect(buffer, 8L * capacity);
+		} else {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	@Override
+	double getDouble(final int row) {
+		return buffer != null ? buffer.getDouble(row << 3) : values[row];
+	}
+
+	@Override
+	long getLong(final int row) {
+		return (long) getDouble(row);
+	}
+
+	@Override
+	Object getObject(final int row) {
+		return isNull(row) ? null : getDouble(row);
+	}
+
+	@Override
+	long valueBytes() {
+		return buffer != null ? buffer.capacity() : 8L * values.length;
+	}
+
+	@Override
+	boolean isOffHeap() {
+		return buffer != null;
+	}
+
+	@Override
+	void release() {
+		values = null;
+		buffer = null;
+	}
+
+}
@@ -0,0 +1,86 @@
+package query.columnar;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Columna de enteros en un <code>int[]</code> o en un buffer directo.
+ *
+ * @author fferezsa
+ *
+ */
+final class IntColumn extends Column {
+
+	private int[] values;
+	private ByteBuffer buffer;
+
+	IntColumn(final String name, final int sqlType, final int capacity, final boolean offHeap) {
+		super(name, sqlType);
+		if (offHeap) {
+			buffer = allocateDirect(4L * capacity);
+		} else {
+			values = new int[capacity];
+		}
+	}
+
+	@Override
+	ColumnType getType() {
+		return ColumnType.INT;
+	}
+
+	@Override
+	void read(final ResultSet rs, final int column, final int row) throws SQLException {
+		final int value = rs.getInt(column);
+		if (rs.wasNull()) {
+			setNull(row);
+		}
+		if (buffer != null) {
+			buffer.putInt(row << 2, value);
+		} else {
+			values[row] = value;
+		}
+	}
+
+	@Override
+	void grow(final int capacity) {
+		if (buffer != null) {
+			buffer = growDirect(buffer, 4L * capacity);
+		} else {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	@Override
+	int getInt(final int row) {
+		return buffer != null ? buffer.getInt(row << 2) : values[row];
+	}
+
+	@Override
+	long getLong(final int row) {
+		return getInt(row);
+	}
+
+	@Override
+	Object getObject(final int row) {
+		return isNull(row) ? null : getInt(row);
+	}
+
+	@Override
+	long valueBytes() {
+		return buffer != null ? buffer.capacity() : 4L * values.length;
+	}
+
+	@Override
+	boolean isOffHeap() {
+		return buffer != null;
+	}
+
+	@Override
+	void release() {
+		values = null;
+		buffer = null;
+	}
+
+}
@@ -0,0 +1,108 @@
+package query.columnar;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Columna de enteros largos, o de fechas como milisegundos desde 1970, en un
+ * <code>long[]</code> o en un buffer directo.
+ *
+ * @author fferezsa
+ *
+ */
+final class LongColumn extends Column {
+
+	private final boolean temporal;
+	private long[] values;
+	private ByteBuffer buffer;
+
+	LongColumn(final String name, final int sqlType, final boolean temporal, final int capacity,
+			final boolean offHeap) {
+		super(name, sqlType);
+		this.temporal = temporal;
+		if (offHeap) {
+			buffer = allocateDirect(8L * capacity);
+		} else {
+			values = new long[capacity];
+		}
+	}
+
+	@Override
+	ColumnType getType() {
+		return temporal ? ColumnType.DATE : ColumnType.LONG;
+	}
+
+	@Override
+	void read(final ResultSet rs, final int column, final int row) throws SQLException {
+		final long value;
+		if (!temporal) {
+			value = rs.getLong(column);
+			if (rs.wasNull()) {
+				setNull(row);
+			}
+		} else {
+			final java.util.Date date = sqlType == Types.DATE ? rs.getDate(column)
+					: sqlType == Types.TIME ? rs.getTime(column) : rs.getTimestamp(column);
+			if (date == null) {
+				setNull(row);
+				value = 0;
+			} else {
+				value = date.getTime();
+			}
+		}
+		if (buffer != null) {
+			buffer.putLong(row << 3, value);
+		} else {
+			values[row] = value;
+		}
+	}
+
+	@Override
+	void grow(final int capacity) {
+		if (buffer != null) {
+			buffer = growDirect(buffer, 8L * capacity);
+		} else {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	@Override
+	long getLong(final int row) {
+		return buffer != null ? buffer.getLong(row << 3) : values[row];
+	}
+
+	@Override
+	Object getObject(final int row) {
+		if (isNull(row)) {
+			return null;
+		}
+		final long value = getLong(row);
+		if (!temporal) {
+			return value;
+		}
+		return sqlType == Types.DATE ? new java.sql.Date(value)
+				: sqlType == Types.TIME ? new Time(value) : new Timestamp(value);
+	}
+
+	@Override
+	long valueBytes() {
+		return buffer != null ? buffer.capacity() : 8L * values.length;
+	}
+
+	@Override
+	boolean isOffHeap() {
+		return buffer != null;
+	}
+
+	@Override
+	void release() {
+		values = null;
+		buffer = null;
+	}
+
+}
@@ -0,0 +1,76 @@
+package query.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Columna de un tipo sin representación primitiva, guardada tal y como la
+ * devuelve el driver.
+ *
+ * @author fferezsa
+ *
+ */
+final class ObjectColumn extends Column {
+
+	private Object[] values;
+
+	ObjectColumn(final String name, final int sqlType, final int capacity) {
+		super(name, sqlType);
+		values = new Object[capacity];
+	}
+
+	@Override
+	ColumnType getType() {
+		return ColumnType.OBJECT;
+	}
+
+	@Override
+	void read(final ResultSet rs, final int column, final int row) throws SQLException {
+		values[row] = rs.getObject(column);
+	}
+
+	@Override
+	void grow(final int capacity) {
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	@Override
+	Object getObject(final int row) {
+		return values[row];
+	}
+
+	@Override
+	long getLong(final int row) {
+		final Object value = values[row];
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		throw unsupported("long");
+	}
+
+	@Override
+	double getDouble(final int row) {
+		final Object value = values[row];
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		}
+		throw unsupported("double");
+	}
+
+	@Override
+	boolean isNull(final int row) {
+		return values[row] == null;
+	}
+
+	@Override
+	long valueBytes() {
+		return 8L * values.length;
+	}
+
+	@Override
+	void release() {
+		values = null;
+	}
+
+}
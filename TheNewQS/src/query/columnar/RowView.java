@@ -0,0 +1,117 @@
+package query.columnar;
+
+/**
+ * Vista sobre una fila de un {@link ColumnarResult} que se desplaza sin crear
+ * objetos, de modo que recorrer un resultado completo solo necesita una.
+ * Las columnas se numeran desde 1 y también pueden pedirse por nombre, lo
+ * que cuesta una búsqueda lineal por llamada.
+ *
+ * @author fferezsa
+ *
+ */
+public final class RowView {
+
+	private final ColumnarResult result;
+	private int row = -1;
+
+	RowView(final ColumnarResult result) {
+		this.result = result;
+	}
+
+	/**
+	 * Avanza a la siguiente fila.
+	 *
+	 * @return Si existe.
+	 */
+	public boolean next() {
+		if (row + 1 >= result.size()) {
+			row = result.size();
+			return false;
+		}
+		row++;
+		return true;
+	}
+
+	/**
+	 * @return Fila actual, desde 0.
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Sitúa la vista en una fila concreta.
+	 *
+	 * @param row
+	 *            Fila, desde 0.
+	 * @return Esta misma vista.
+	 */
+	public RowView setRow(final int row) {
+		if (row < 0 || row >= result.size()) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + result.size());
+		}
+		this.row = row;
+		return this;
+	}
+
+	public boolean isNull(final int column) {
+		return result.isNull(row, column);
+	}
+
+	public long getLong(final int column) {
+		return result.getLong(row, column);
+	}
+
+	public long getLong(final String column) {
+		return result.getLong(row, result.findColumn(column));
+	}
+
+	public int getInt(final int column) {
+		return result.getInt(row, column);
+	}
+
+	public int getInt(final String column) {
+		return result.getInt(row, result.findColumn(column));
+	}
+
+	public double getDouble(final int column) {
+		return result.getDouble(row, column);
+	}
+
+	public double getDouble(final String column) {
+		return result.getDouble(row, result.findColumn(column));
+	}
+
+	public String getString(final int column) {
+		return result.getString(row, column);
+	}
+
+	public String getString(final String column) {
+		return result.getString(row, result.findColumn(column));
+	}
+
+	public Object getObject(final int column) {
+		return result.getObject(row, column);
+	}
+
+	public Object getObject(final String column) {
+		return result.getObject(row, result.findColumn(column));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("RowView [row=").append(row);
+		if (row >= 0 && row < result.size()) {
+			for (int column = 1; column <= result.getColumnCount(); column++) {
+				sb.append(", ").append(result.getColumnName(column)).append('=').append(getObject(column));
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+}
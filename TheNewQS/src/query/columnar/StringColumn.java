@@ -0,0 +1,196 @@
+package query.columnar;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columna de textos. Cada valor distinto se guarda una única vez en un
+ * diccionario y las filas guardan su código en un <code>int[]</code> o en un
+ * buffer directo, con -1 para los nulos. Si se supera el tamaño máximo del
+ * diccionario, o más de la mitad de los valores son distintos, la columna pasa
+ * a guardar los textos directamente.
+ *
+ * @author fferezsa
+ *
+ */
+final class StringColumn extends Column {
+
+	/**
+	 * Filas leídas antes de abandonar el diccionario si más de la mitad de los
+	 * valores son distintos.
+	 */
+	private static final int CARDINALITY_SAMPLE = 256;
+
+	private final int maxDictionarySize;
+	private List<String> dictionary = new ArrayList<String>();
+	private Map<String, Integer> codes = new HashMap<String, Integer>();
+	private int[] values;
+	private ByteBuffer buffer;
+	private String[] plain;
+
+	StringColumn(final String name, final int sqlType, final int capacity, final boolean offHeap,
+			final int maxDictionarySize) {
+		super(name, sqlType);
+		this.maxDictionarySize = maxDictionarySize;
+		if (offHeap) {
+			buffer = allocateDirect(4L * capacity);
+		} else {
+			values = new int[capacity];
+		}
+	}
+
+	@Override
+	ColumnType getType() {
+		return ColumnType.STRING;
+	}
+
+	@Override
+	void read(final ResultSet rs, final int column, final int row) throws SQLException {
+		final String value = rs.getString(column);
+		if (plain != null) {
+			plain[row] = value;
+			return;
+		}
+		int code = -1;
+		if (value != null) {
+			final Integer known = codes.get(value);
+			if (known != null) {
+				code = known;
+			} else if (dictionary.size() < maxDictionarySize
+					&& (row < CARDINALITY_SAMPLE || dictionary.size() <= row >> 1)) {
+				code = dictionary.size();
+				dictionary.add(value);
+				codes.put(value, code);
+			} else {
+				toPlain(row);
+				plain[row] = value;
+				return;
+			}
+		}
+		if (buffer != null) {
+			buffer.putInt(row << 2, code);
+		} else {
+			values[row] = code;
+		}
+	}
+
+	/**
+	 * Abandona el diccionario decodificando las <b>rows</b> filas ya leídas.
+	 */
+	private void toPlain(final int rows) {
+		final int capacity = buffer != null ? buffer.capacity() >> 2 : values.length;
+		final String[] decoded = new String[capacity];
+		for (int row = 0; row < rows; row++) {
+			final int code = getCode(row);
+			decoded[row] = code >= 0 ? dictionary.get(code) : null;
+		}
+		plain = decoded;
+		values = null;
+		buffer = null;
+		dictionary = null;
+		codes = null;
+	}
+
+	@Override
+	void grow(final int capacity) {
+		if (plain != null) {
+			plain = Arrays.copyOf(plain, capacity);
+		} else if (buffer != null) {
+			buffer = growDirect(buffer, 4L * capacity);
+		} else {
+			values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	/**
+	 * @return Código de la fila en el diccionario, -1 si es nula.
+	 */
+	int getCode(final int row) {
+		if (plain != null) {
+			throw new IllegalStateException("Column " + name + " is not dictionary encoded");
+		}
+		return buffer != null ? buffer.getInt(row << 2) : values[row];
+	}
+
+	/**
+	 * @return Si la columna sigue codificada con diccionario.
+	 */
+	boolean isDictionaryEncoded() {
+		return plain == null;
+	}
+
+	/**
+	 * @return Valores distintos de la columna, indexados por código.
+	 */
+	List<String> getDictionary() {
+		return dictionary;
+	}
+
+	@Override
+	String getString(final int row) {
+		if (plain != null) {
+			return plain[row];
+		}
+		final int code = getCode(row);
+		return code >= 0 ? dictionary.get(code) : null;
+	}
+
+	@Override
+	Object getObject(final int row) {
+		return getString(row);
+	}
+
+	@Override
+	long getLong(final int row) {
+		throw unsupported("long");
+	}
+
+	@Override
+	double getDouble(final int row) {
+		throw unsupported("double");
+	}
+
+	@Override
+	boolean isNull(final int row) {
+		return plain != null ? plain[row] == null : getCode(row) < 0;
+	}
+
+	@Override
+	long valueBytes() {
+		if (plain != null) {
+			long bytes = 8L * plain.length;
+			for (final String value : plain) {
+				if (value != null) {
+					bytes += 40 + 2L * value.length();
+				}
+			}
+			return bytes;
+		}
+		long bytes = buffer != null ? buffer.capacity() : 4L * values.length;
+		for (final String value : dictionary) {
+			bytes += 40 + 2L * value.length();
+		}
+		return bytes;
+	}
+
+	@Override
+	boolean isOffHeap() {
+		return buffer != null;
+	}
+
+	@Override
+	void release() {
+		values = null;
+		buffer = null;
+		plain = null;
+		dictionary = null;
+		codes = null;
+	}
+
+}
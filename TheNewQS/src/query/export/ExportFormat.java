@@ -0,0 +1,35 @@
+package query.export;
+
+/**
+ * Formatos de fichero de {@link ResultExporter}.
+ *
+ * @author fferezsa
+ *
+ */
+public enum ExportFormat {
+
+	/**
+	 * Texto UTF-8 separado por comas (o el separador configurado), con
+	 * comillas dobles solo en los valores que las necesitan y fin de línea
+	 * <code>\n</code>. Fechas en ISO-8601.
+	 */
+	CSV,
+
+	/**
+	 * Binario compacto big-endian, pensado para recargarse sin conversiones:
+	 *
+	 * <pre>
+	 * cabecera: "QSX1", nº de columnas (short) y por columna tipo (byte) y nombre (texto)
+	 * fila:     longitud de la fila (int), mapa de nulos (1 bit por columna) y valores no nulos
+	 * fin:      -1 (int) y nº de filas (long)
+	 * </pre>
+	 *
+	 * Los valores se escriben según el tipo de columna: LONG, DOUBLE y fechas
+	 * (milisegundos desde 1970) en 8 bytes, INT en 4, BOOLEAN en 1 y el
+	 * resto, incluidos DECIMAL, como longitud en varint seguida de los bytes
+	 * (UTF-8 para los textos). La longitud de cada fila permite saltarla sin
+	 * decodificarla.
+	 */
+	BINARY
+
+}
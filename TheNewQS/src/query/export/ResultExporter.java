@@ -0,0 +1,767 @@
+package query.export;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Vuelca un {@link ResultSet} a fichero según se lee, sin materializar las
+ * filas ni construir un String por fila. Cada valor se codifica directamente
+ * en un {@link ByteBuffer} que se escribe en el {@link FileChannel} al
+ * llenarse, de modo que la memoria usada es la del buffer sea cual sea el
+ * número de filas. Las únicas excepciones son los DOUBLE en CSV y los DECIMAL
+ * en ambos formatos, que pasan por <code>Double.toString</code> y
+ * <code>BigDecimal.toPlainString</code> para conservar su representación
+ * exacta, con un String temporal por valor.
+ *
+ * <p>
+ * Sin compresión el buffer es directo y se escribe en el canal sin copias
+ * intermedias. Con {@link #setCompressed(boolean)} la salida pasa por
+ * {@link GZIPOutputStream}, y el buffer es de heap porque el compresor de
+ * Java 8 solo admite arrays.
+ *
+ * <p>
+ * El buffer se reutiliza entre exportaciones, por lo que una instancia no
+ * debe usarse desde varios hilos a la vez. Normalmente se lanza con
+ * {@link query.ParametrizedQuery#export(Path, ResultExporter)}.
+ *
+ * @author fferezsa
+ *
+ */
+public class ResultExporter {
+
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	public static final byte TYPE_LONG = 1;
+	public static final byte TYPE_INT = 2;
+	public static final byte TYPE_DOUBLE = 3;
+	public static final byte TYPE_DECIMAL = 4;
+	public static final byte TYPE_DATE = 5;
+	public static final byte TYPE_TIME = 6;
+	public static final byte TYPE_TIMESTAMP = 7;
+	public static final byte TYPE_STRING = 8;
+	public static final byte TYPE_BOOLEAN = 9;
+	public static final byte TYPE_BYTES = 10;
+
+	static final byte[] MAGIC = { 'Q', 'S', 'X', '1' };
+	private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	private final ExportFormat format;
+	private boolean compressed;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private char separator = ',';
+	private boolean header = true;
+	private String nullValue = "";
+	private ByteBuffer buffer;
+	private final byte[] digits = new byte[20];
+
+	/**
+	 * @param format
+	 *            Formato del fichero.
+	 */
+	public ResultExporter(final ExportFormat format) {
+		this.format = format;
+	}
+
+	/**
+	 * Vuelca las filas restantes de <b>rs</b> a <b>file</b>, que se crea o se
+	 * sustituye. No cierra el {@link ResultSet}.
+	 *
+	 * @param rs
+	 *            Resultado a volcar.
+	 * @param file
+	 *            Fichero de destino.
+	 * @return Número de filas escritas.
+	 * @throws SQLException
+	 *             Si falla la lectura del resultado.
+	 * @throws IOException
+	 *             Si falla la escritura.
+	 */
+	public long export(final ResultSet rs, final Path file) throws SQLException, IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			return export(rs, channel);
+		}
+	}
+
+	/**
+	 * Vuelca las filas restantes de <b>rs</b> a <b>channel</b>, sin cerrar
+	 * ninguno de los dos.
+	 *
+	 * @param rs
+	 *            Resultado a volcar.
+	 * @param channel
+	 *            Canal de destino.
+	 * @return Número de filas escritas.
+	 * @throws SQLException
+	 *             Si falla la lectura del resultado.
+	 * @throws IOException
+	 *             Si falla la escritura.
+	 */
+	public long export(final ResultSet rs, final WritableByteChannel channel) throws SQLException, IOException {
+		final ResultSetMetaData meta = rs.getMetaData();
+		final int count = meta.getColumnCount();
+		final byte[] types = new byte[count];
+		for (int i = 0; i < count; i++) {
+			types[i] = typeOf(meta, i + 1);
+		}
+		final Sink sink = compressed ? new GzipSink(channel, bufferSize) : new ChannelSink(channel);
+		ByteBuffer out = buffer(compressed);
+		out.clear();
+		try {
+			writeHeader(out, meta, types);
+		} catch (BufferOverflowException e) {
+			out = retry(out, sink, 0, target -> writeHeader(target, meta, types));
+		}
+		long rows = 0;
+		while (rs.next()) {
+			final int start = out.position();
+			try {
+				writeRow(out, rs, types);
+			} catch (BufferOverflowException e) {
+				out = retry(out, sink, start, target -> writeRow(target, rs, types));
+			}
+			rows++;
+		}
+		if (format == ExportFormat.BINARY) {
+			if (out.remaining() < 12) {
+				sink.write(out);
+			}
+			out.putInt(-1).putLong(rows);
+		}
+		sink.write(out);
+		sink.finish();
+		return rows;
+	}
+
+	/**
+	 * Vuelve a escribir la cabecera o una fila que no cabía tras vaciar el
+	 * buffer, o en un buffer del doble de tamaño si no cabe en uno vacío.
+	 */
+	private ByteBuffer retry(ByteBuffer out, final Sink sink, final int start, final Encoding encoding)
+			throws SQLException, IOException {
+		out.position(start);
+		sink.write(out);
+		while (true) {
+			try {
+				encoding.write(out);
+				return out;
+			} catch (BufferOverflowException e) {
+				out = allocate(out.capacity() * 2, compressed);
+				buffer = out;
+			}
+		}
+	}
+
+	private void writeHeader(final ByteBuffer out, final ResultSetMetaData meta, final byte[] types)
+			throws SQLException {
+		if (format == ExportFormat.BINARY) {
+			if (types.length > 0xFFFF) {
+				throw new SQLException("Too many columns for the binary format: " + types.length);
+			}
+			out.put(MAGIC).putShort((short) types.length);
+			for (int i = 0; i < types.length; i++) {
+				out.put(types[i]);
+				putBinaryString(out, meta.getColumnLabel(i + 1));
+			}
+		} else if (header) {
+			for (int i = 0; i < types.length; i++) {
+				if (i > 0) {
+					putChar(out, separator);
+				}
+				putCsvString(out, meta.getColumnLabel(i + 1));
+			}
+			out.put((byte) '\n');
+		}
+	}
+
+	private void writeRow(final ByteBuffer out, final ResultSet rs, final byte[] types) throws SQLException {
+		if (format == ExportFormat.BINARY) {
+			writeBinaryRow(out, rs, types);
+		} else {
+			writeCsvRow(out, rs, types);
+		}
+	}
+
+	private void writeCsvRow(final ByteBuffer out, final ResultSet rs, final byte[] types) throws SQLException {
+		for (int i = 0; i < types.length; i++) {
+			if (i > 0) {
+				putChar(out, separator);
+			}
+			final int column = i + 1;
+			switch (types[i]) {
+			case TYPE_LONG:
+				final long longValue = rs.getLong(column);
+				if (rs.wasNull()) {
+					putAscii(out, nullValue);
+				} else {
+					putLong(out, longValue);
+				}
+				break;
+			case TYPE_INT:
+				final int intValue = rs.getInt(column);
+				if (rs.wasNull()) {
+					putAscii(out, nullValue);
+				} else {
+					putLong(out, intValue);
+				}
+				break;
+			case TYPE_DOUBLE:
+				final double doubleValue = rs.getDouble(column);
+				putAscii(out, rs.wasNull() ? nullValue : Double.toString(doubleValue));
+				break;
+			case TYPE_DECIMAL:
+				final BigDecimal decimal = rs.getBigDecimal(column);
+				putAscii(out, decimal == null ? nullValue : decimal.toPlainString());
+				break;
+			case TYPE_BOOLEAN:
+				final boolean booleanValue = rs.getBoolean(column);
+				putAscii(out, rs.wasNull() ? nullValue : booleanValue ? "true" : "false");
+				break;
+			case TYPE_DATE:
+				final java.sql.Date date = rs.getDate(column);
+				if (date == null) {
+					putAscii(out, nullValue);
+				} else {
+					final LocalDate local = date.toLocalDate();
+					putDate(out, local.getYear(), local.getMonthValue(), local.getDayOfMonth());
+				}
+				break;
+			case TYPE_TIME:
+				final Time time = rs.getTime(column);
+				if (time == null) {
+					putAscii(out, nullValue);
+				} else {
+					putTime(out, time.toLocalTime().toSecondOfDay(), 0);
+				}
+				break;
+			case TYPE_TIMESTAMP:
+				final Timestamp timestamp = rs.getTimestamp(column);
+				if (timestamp == null) {
+					putAscii(out, nullValue);
+				} else {
+					final LocalDateTime local = timestamp.toLocalDateTime();
+					putDate(out, local.getYear(), local.getMonthValue(), local.getDayOfMonth());
+					out.put((byte) ' ');
+					putTime(out, local.toLocalTime().toSecondOfDay(), local.getNano() / 1000000);
+				}
+				break;
+			case TYPE_BYTES:
+				final byte[] bytes = rs.getBytes(column);
+				if (bytes == null) {
+					putAscii(out, nullValue);
+				} else {
+					putBase64(out, bytes);
+				}
+				break;
+			default:
+				final String text = rs.getString(column);
+				if (text == null) {
+					putAscii(out, nullValue);
+				} else {
+					putCsvString(out, text);
+				}
+			}
+		}
+		out.put((byte) '\n');
+	}
+
+	private void writeBinaryRow(final ByteBuffer out, final ResultSet rs, final byte[] types) throws SQLException {
+		final int start = out.position();
+		out.putInt(0);
+		final int nulls = out.position();
+		final int nullBytes = (types.length + 7) >> 3;
+		for (int i = 0; i < nullBytes; i++) {
+			out.put((byte) 0);
+		}
+		for (int i = 0; i < types.length; i++) {
+			final int column = i + 1;
+			boolean isNull = false;
+			switch (types[i]) {
+			case TYPE_LONG:
+				final long longValue = rs.getLong(column);
+				if (!(isNull = rs.wasNull())) {
+					out.putLong(longValue);
+				}
+				break;
+			case TYPE_INT:
+				final int intValue = rs.getInt(column);
+				if (!(isNull = rs.wasNull())) {
+					out.putInt(intValue);
+				}
+				break;
+			case TYPE_DOUBLE:
+				final double doubleValue = rs.getDouble(column);
+				if (!(isNull = rs.wasNull())) {
+					out.putDouble(doubleValue);
+				}
+				break;
+			case TYPE_BOOLEAN:
+				final boolean booleanValue = rs.getBoolean(column);
+				if (!(isNull = rs.wasNull())) {
+					out.put((byte) (booleanValue ? 1 : 0));
+				}
+				break;
+			case TYPE_DATE:
+			case TYPE_TIME:
+			case TYPE_TIMESTAMP:
+				final java.util.Date date = types[i] == TYPE_DATE ? rs.getDate(column)
+						: types[i] == TYPE_TIME ? rs.getTime(column) : rs.getTimestamp(column);
+				if (!(isNull = date == null)) {
+					out.putLong(date.getTime());
+				}
+				break;
+			case TYPE_BYTES:
+				final byte[] bytes = rs.getBytes(column);
+				if (!(isNull = bytes == null)) {
+					putVarint(out, bytes.length);
+					out.put(bytes);
+				}
+				break;
+			case TYPE_DECIMAL:
+				final BigDecimal decimal = rs.getBigDecimal(column);
+				if (!(isNull = decimal == null)) {
+					putBinaryString(out, decimal.toPlainString());
+				}
+				break;
+			default:
+				final String text = rs.getString(column);
+				if (!(isNull = text == null)) {
+					putBinaryString(out, text);
+				}
+			}
+			if (isNull) {
+				final int index = nulls + (i >> 3);
+				out.put(index, (byte) (out.get(index) | (1 << (i & 7))));
+			}
+		}
+		out.putInt(start, out.position() - nulls);
+	}
+
+	/**
+	 * Tipo con el que se escribe cada columna, según su tipo JDBC.
+	 */
+	static byte typeOf(final ResultSetMetaData meta, final int column) throws SQLException {
+		switch (meta.getColumnType(column)) {
+		case Types.BIGINT:
+			return TYPE_LONG;
+		case Types.INTEGER:
+			return meta.isSigned(column) ? TYPE_INT : TYPE_LONG;
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return TYPE_INT;
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return TYPE_BOOLEAN;
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+			return TYPE_DOUBLE;
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return TYPE_DECIMAL;
+		case Types.DATE:
+			return TYPE_DATE;
+		case Types.TIME:
+		case Types.TIME_WITH_TIMEZONE:
+			return TYPE_TIME;
+		case Types.TIMESTAMP:
+		case Types.TIMESTAMP_WITH_TIMEZONE:
+			return TYPE_TIMESTAMP;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			return TYPE_BYTES;
+		default:
+			return TYPE_STRING;
+		}
+	}
+
+	private void putChar(final ByteBuffer out, final char c) {
+		if (c < 0x80) {
+			out.put((byte) c);
+		} else {
+			putUtf8(out, String.valueOf(c));
+		}
+	}
+
+	/**
+	 * Escribe un texto que se sabe que no necesita comillas.
+	 */
+	private static void putAscii(final ByteBuffer out, final String text) {
+		for (int i = 0; i < text.length(); i++) {
+			out.put((byte) text.charAt(i));
+		}
+	}
+
+	/**
+	 * Escribe un valor de texto CSV, entre comillas y con las comillas
+	 * duplicadas solo si contiene el separador, comillas o saltos de línea.
+	 */
+	private void putCsvString(final ByteBuffer out, final String text) {
+		boolean quote = false;
+		for (int i = 0; i < text.length() && !quote; i++) {
+			final char c = text.charAt(i);
+			quote = c == separator || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			putUtf8(out, text);
+			return;
+		}
+		out.put((byte) '"');
+		int from = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '"') {
+				putUtf8(out, text.subSequence(from, i + 1));
+				out.put((byte) '"');
+				from = i + 1;
+			}
+		}
+		putUtf8(out, text.subSequence(from, text.length()));
+		out.put((byte) '"');
+	}
+
+	private static void putBinaryString(final ByteBuffer out, final String text) {
+		putVarint(out, utf8Length(text));
+		putUtf8(out, text);
+	}
+
+	/**
+	 * Codifica en UTF-8 sin pasar por un array intermedio.
+	 */
+	static void putUtf8(final ByteBuffer out, final CharSequence text) {
+		final int length = text.length();
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (c < 0x80) {
+				out.put((byte) c);
+			} else if (c < 0x800) {
+				out.put((byte) (0xC0 | (c >> 6)));
+				out.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				out.put((byte) (0xF0 | (codePoint >> 18)));
+				out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				out.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				out.put((byte) '?');
+			} else {
+				out.put((byte) (0xE0 | (c >> 12)));
+				out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				out.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * @return Bytes que ocupa el texto en UTF-8 según {@link #putUtf8}.
+	 */
+	static int utf8Length(final CharSequence text) {
+		final int length = text.length();
+		int bytes = 0;
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (c < 0x80) {
+				bytes++;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				bytes += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				bytes++;
+			} else {
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+
+	static void putVarint(final ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	/**
+	 * Escribe el número en decimal sin crear un String.
+	 */
+	private void putLong(final ByteBuffer out, final long value) {
+		if (value == Long.MIN_VALUE) {
+			putAscii(out, Long.toString(value));
+			return;
+		}
+		long remaining = Math.abs(value);
+		int position = digits.length;
+		do {
+			digits[--position] = (byte) ('0' + remaining % 10);
+			remaining /= 10;
+		} while (remaining != 0);
+		if (value < 0) {
+			digits[--position] = '-';
+		}
+		out.put(digits, position, digits.length - position);
+	}
+
+	/**
+	 * Escribe la fecha como {@link LocalDate#toString()}: los años de más de
+	 * cuatro cifras llevan signo +, y los anteriores al año 0 signo -.
+	 */
+	private static void putDate(final ByteBuffer out, final int year, final int month, final int day) {
+		if (year > 9999) {
+			out.put((byte) '+');
+		} else if (year < 0) {
+			out.put((byte) '-');
+		}
+		putDigits(out, Math.abs(year), 4);
+		out.put((byte) '-');
+		putDigits(out, month, 2);
+		out.put((byte) '-');
+		putDigits(out, day, 2);
+	}
+
+	private static void putTime(final ByteBuffer out, final int secondOfDay, final int millis) {
+		putDigits(out, secondOfDay / 3600, 2);
+		out.put((byte) ':');
+		putDigits(out, secondOfDay / 60 % 60, 2);
+		out.put((byte) ':');
+		putDigits(out, secondOfDay % 60, 2);
+		if (millis != 0) {
+			out.put((byte) '.');
+			putDigits(out, millis, 3);
+		}
+	}
+
+	/**
+	 * Escribe un número no negativo con al menos <b>width</b> cifras,
+	 * rellenando con ceros a la izquierda.
+	 */
+	private static void putDigits(final ByteBuffer out, final int value, final int width) {
+		int divisor = 1;
+		for (int i = 1; i < width || value / divisor >= 10; i++) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			out.put((byte) ('0' + value / divisor % 10));
+		}
+	}
+
+	/**
+	 * Codifica en Base64 estándar, con relleno, sin pasar por un String.
+	 */
+	private static void putBase64(final ByteBuffer out, final byte[] bytes) {
+		int i = 0;
+		for (; i + 3 <= bytes.length; i += 3) {
+			final int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+			out.put(BASE64[bits >>> 18]).put(BASE64[(bits >>> 12) & 0x3F]).put(BASE64[(bits >>> 6) & 0x3F])
+					.put(BASE64[bits & 0x3F]);
+		}
+		final int left = bytes.length - i;
+		if (left > 0) {
+			final int bits = (bytes[i] & 0xFF) << 16 | (left == 2 ? (bytes[i + 1] & 0xFF) << 8 : 0);
+			out.put(BASE64[bits >>> 18]).put(BASE64[(bits >>> 12) & 0x3F]);
+			out.put(left == 2 ? BASE64[(bits >>> 6) & 0x3F] : (byte) '=').put((byte) '=');
+		}
+	}
+
+	/**
+	 * @return El buffer reutilizable, creado de nuevo si cambia su tipo o
+	 *         tamaño.
+	 */
+	private ByteBuffer buffer(final boolean heap) {
+		if (buffer == null || buffer.isDirect() == heap || buffer.capacity() < bufferSize) {
+			buffer = allocate(bufferSize, heap);
+		}
+		return buffer;
+	}
+
+	private static ByteBuffer allocate(final int size, final boolean heap) {
+		return heap ? ByteBuffer.allocate(size) : ByteBuffer.allocateDirect(size);
+	}
+
+	/**
+	 * Escritura de la cabecera o de una fila en el buffer.
+	 */
+	private interface Encoding {
+
+		void write(ByteBuffer out) throws SQLException;
+
+	}
+
+	/**
+	 * Destino de los bytes del buffer.
+	 */
+	private interface Sink {
+
+		/**
+		 * Escribe el contenido del buffer hasta su posición y lo deja vacío.
+		 */
+		void write(ByteBuffer out) throws IOException;
+
+		void finish() throws IOException;
+	}
+
+	private static final class ChannelSink implements Sink {
+
+		private final WritableByteChannel channel;
+
+		private ChannelSink(final WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void write(final ByteBuffer out) throws IOException {
+			out.flip();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			out.clear();
+		}
+
+		@Override
+		public void finish() {
+		}
+	}
+
+	private static final class GzipSink implements Sink {
+
+		private final GZIPOutputStream gzip;
+
+		private GzipSink(final WritableByteChannel channel, final int bufferSize) throws IOException {
+			this.gzip = new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize);
+		}
+
+		@Override
+		public void write(final ByteBuffer out) throws IOException {
+			gzip.write(out.array(), out.arrayOffset(), out.position());
+			out.clear();
+		}
+
+		@Override
+		public void finish() throws IOException {
+			gzip.finish();
+		}
+	}
+
+	/**
+	 * @return the format
+	 */
+	public ExportFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the compressed
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @param compressed
+	 *            Si el fichero se comprime con gzip.
+	 */
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
+	/**
+	 * @return the bufferSize
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @param bufferSize
+	 *            Tamaño del buffer reutilizable. Se amplía automáticamente si
+	 *            una fila no cabe.
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize < 64) {
+			throw new IllegalArgumentException("Buffer size must be 64 or more");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @return the separator
+	 */
+	public char getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * @param separator
+	 *            Separador de campos CSV.
+	 */
+	public void setSeparator(char separator) {
+		this.separator = separator;
+	}
+
+	/**
+	 * @return the header
+	 */
+	public boolean isHeader() {
+		return header;
+	}
+
+	/**
+	 * @param header
+	 *            Si el CSV empieza con una línea con los nombres de columna.
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * @return the nullValue
+	 */
+	public String getNullValue() {
+		return nullValue;
+	}
+
+	/**
+	 * @param nullValue
+	 *            Texto ASCII que representa los nulos en el CSV, vacío por
+	 *            defecto.
+	 */
+	public void setNullValue(String nullValue) {
+		this.nullValue = nullValue;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ResultExporter [format=" + format + ", compressed=" + compressed + ", bufferSize=" + bufferSize
+				+ "]";
+	}
+
+}
@@ -0,0 +1,65 @@
+package query.export;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Exportación a fichero de {@link ResultExporter} sobre H2 en memoria.
+ */
+public class ResultExporterTest {
+
+	private Connection connection;
+	private Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		connection = DriverManager.getConnection("jdbc:h2:mem:exporter");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table t (id int primary key, name varchar(20), alta date)");
+			statement.execute("insert into t values (1, 'a,b', DATE '2024-05-17'), (2, null, null)");
+		}
+		file = Files.createTempFile("exporter", ".csv");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+		connection.close();
+	}
+
+	@Test
+	public void csvQuotesOnlyWhatNeedsIt() throws Exception {
+		final ResultExporter exporter = new ResultExporter(ExportFormat.CSV);
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("select id, name, alta from t order by id")) {
+			assertEquals(2, exporter.export(rs, file));
+		}
+		assertEquals("ID,NAME,ALTA\n1,\"a,b\",2024-05-17\n2,,\n",
+				new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void binaryEndsWithTheRowCount() throws Exception {
+		final ResultExporter exporter = new ResultExporter(ExportFormat.BINARY);
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("select id, name, alta from t order by id")) {
+			assertEquals(2, exporter.export(rs, file));
+		}
+		final byte[] bytes = Files.readAllBytes(file);
+		assertEquals("QSX1", new String(bytes, 0, 4, StandardCharsets.US_ASCII));
+		assertEquals(2L, ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong());
+	}
+
+}
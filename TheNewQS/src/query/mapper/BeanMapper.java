@@ -0,0 +1,277 @@
+package query.mapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Traduce filas a beans sin necesidad de escribir un mapper a mano.
+ *
+ * <p>
+ * Las columnas se asocian a las propiedades del bean comparando sus nombres
+ * sin distinguir mayúsculas ni guiones bajos, de modo que la columna
+ * <code>fecha_insercion</code> se asigna con <code>setFechaInsercion</code>.
+ * Si no hay setter se asigna directamente el atributo.
+ *
+ * <p>
+ * La asociación se resuelve a partir del {@link ResultSetMetaData} una sola
+ * vez por cada combinación de columnas y queda guardada como un plan de
+ * posiciones, lectores y {@link MethodHandle}; cada fila se lee por índice de
+ * columna y sin reflexión.
+ *
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Clase del bean.
+ */
+public class BeanMapper<T> implements RowMapper<T> {
+
+	private static final ConcurrentMap<Class<?>, BeanMapper<?>> mappers = new ConcurrentHashMap<Class<?>, BeanMapper<?>>();
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final Class<T> beanClass;
+	private final MethodHandle constructor;
+	private final Map<String, Property> properties;
+	private final ConcurrentMap<String, Plan> plans = new ConcurrentHashMap<String, Plan>();
+	private volatile Current current;
+
+	/**
+	 * Obtiene el mapper compartido de una clase, creándolo la primera vez.
+	 *
+	 * @param beanClass
+	 *            Clase del bean.
+	 * @return Mapper de la clase.
+	 * @throws IllegalArgumentException
+	 *             Si la clase no tiene un constructor público sin argumentos.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> BeanMapper<T> forClass(final Class<T> beanClass) {
+		BeanMapper<?> mapper = mappers.get(beanClass);
+		if (mapper == null) {
+			mapper = new BeanMapper<T>(beanClass);
+			final BeanMapper<?> previous = mappers.putIfAbsent(beanClass, mapper);
+			if (previous != null) {
+				mapper = previous;
+			}
+		}
+		return (BeanMapper<T>) mapper;
+	}
+
+	/**
+	 * @param beanClass
+	 *            Clase del bean.
+	 * @throws IllegalArgumentException
+	 *             Si la clase no tiene un constructor público sin argumentos.
+	 */
+	public BeanMapper(final Class<T> beanClass) {
+		this.beanClass = beanClass;
+		final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			this.constructor = lookup.findConstructor(beanClass, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(Object.class));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(String.format("No public default constructor for class: %s", beanClass),
+					e);
+		}
+		this.properties = introspect(beanClass, lookup);
+	}
+
+	/**
+	 * Crea un bean con los valores de la fila actual del ResultSet.
+	 *
+	 * @param rs
+	 *            Solamente para recuperar valores, no debe alterarse de ninguna
+	 *            manera.
+	 * @return Bean con las propiedades que coinciden con las columnas
+	 *         asignadas.
+	 * @throws SQLException
+	 *             Si el ResultSet devuelve un error.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T map(final ResultSet rs) throws SQLException {
+		Current last = current;
+		if (last == null || last.resultSet != rs) {
+			last = new Current(rs, planFor(rs.getMetaData()));
+			current = last;
+		}
+		final Plan plan = last.plan;
+		try {
+			final Object bean = constructor.invokeExact();
+			for (int i = 0; i < plan.columns.length; i++) {
+				plan.setters[i].invokeExact(bean, plan.readers[i].read(rs, plan.columns[i]));
+			}
+			return (T) bean;
+		} catch (SQLException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the beanClass
+	 */
+	public Class<T> getBeanClass() {
+		return beanClass;
+	}
+
+	private Plan planFor(final ResultSetMetaData metaData) throws SQLException {
+		final int count = metaData.getColumnCount();
+		final String[] labels = new String[count];
+		final StringBuilder signature = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			labels[i] = normalize(metaData.getColumnLabel(i + 1));
+			signature.append(labels[i]).append(',');
+		}
+		final String key = signature.toString();
+		Plan plan = plans.get(key);
+		if (plan == null) {
+			plan = buildPlan(labels);
+			plans.putIfAbsent(key, plan);
+		}
+		return plan;
+	}
+
+	private Plan buildPlan(final String[] labels) {
+		int matched = 0;
+		final Property[] byColumn = new Property[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			byColumn[i] = properties.get(labels[i]);
+			if (byColumn[i] != null) {
+				matched++;
+			}
+		}
+		final int[] columns = new int[matched];
+		final ColumnReader[] readers = new ColumnReader[matched];
+		final MethodHandle[] setters = new MethodHandle[matched];
+		int j = 0;
+		for (int i = 0; i < labels.length; i++) {
+			final Property property = byColumn[i];
+			if (property != null) {
+				final ColumnReader reader = ColumnReaders.forType(property.type);
+				if (reader == null) {
+					throw new UnsupportedOperationException(
+							String.format("Not yet implemented for class: %s", property.type));
+				}
+				columns[j] = i + 1;
+				readers[j] = reader;
+				setters[j] = property.setter;
+				j++;
+			}
+		}
+		return new Plan(columns, readers, setters);
+	}
+
+	private static Map<String, Property> introspect(final Class<?> beanClass, final MethodHandles.Lookup lookup) {
+		final Map<String, Property> result = new HashMap<String, Property>();
+		for (Class<?> current = beanClass; current != null && current != Object.class; current = current
+				.getSuperclass()) {
+			for (final Field field : current.getDeclaredFields()) {
+				final int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+					continue;
+				}
+				final String name = normalize(field.getName());
+				if (!result.containsKey(name)) {
+					try {
+						field.setAccessible(true);
+						result.put(name, new Property(field.getType(), lookup.unreflectSetter(field).asType(SETTER_TYPE)));
+					} catch (ReflectiveOperationException e) {
+						// Sin acceso al atributo: solo podrá asignarse mediante setter.
+					} catch (SecurityException e) {
+						// Sin acceso al atributo: solo podrá asignarse mediante setter.
+					}
+				}
+			}
+		}
+		for (final Method method : beanClass.getMethods()) {
+			if (method.getName().startsWith("set") && method.getParameterTypes().length == 1
+					&& !Modifier.isStatic(method.getModifiers())) {
+				try {
+					result.put(normalize(method.getName().substring(3)), new Property(method.getParameterTypes()[0],
+							lookup.unreflect(method).asType(SETTER_TYPE)));
+				} catch (IllegalAccessException e) {
+					throw new IllegalArgumentException(String.format("Could not access setter: %s", method), e);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static String normalize(final String name) {
+		return name.replace("_", "").toLowerCase(Locale.ROOT);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BeanMapper [beanClass=" + beanClass + ", properties=" + properties.keySet() + ", plans="
+				+ plans.size() + "]";
+	}
+
+	/**
+	 * Tipo y forma de asignar una propiedad del bean.
+	 */
+	private static final class Property {
+
+		private final Class<?> type;
+		private final MethodHandle setter;
+
+		private Property(final Class<?> type, final MethodHandle setter) {
+			this.type = type;
+			this.setter = setter;
+		}
+	}
+
+	/**
+	 * Posiciones de columna con su lector y su setter, en paralelo.
+	 */
+	private static final class Plan {
+
+		private final int[] columns;
+		private final ColumnReader[] readers;
+		private final MethodHandle[] setters;
+
+		private Plan(final int[] columns, final ColumnReader[] readers, final MethodHandle[] setters) {
+			this.columns = columns;
+			this.readers = readers;
+			this.setters = setters;
+		}
+	}
+
+	/**
+	 * Último ResultSet recorrido y su plan, para no consultar los metadatos
+	 * en cada fila.
+	 */
+	private static final class Current {
+
+		private final ResultSet resultSet;
+		private final Plan plan;
+
+		private Current(final ResultSet resultSet, final Plan plan) {
+			this.resultSet = resultSet;
+			this.plan = plan;
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package query.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Lee de una posición del {@link ResultSet} un valor de un tipo concreto. Se
+ * obtiene de {@link ColumnReaders#forType(Class)} una única vez y después se
+ * aplica fila a fila sin volver a comprobar el tipo.
+ * 
+ * @author fferezsa
+ *
+ */
+@FunctionalInterface
+public interface ColumnReader {
+
+	/**
+	 * @param rs
+	 *            Solamente para recuperar valores, no debe alterarse de ninguna
+	 *            manera.
+	 * @param column
+	 *            Posición de la columna, empezando en 1.
+	 * @return Valor leído, null si la columna es nula y el tipo lo admite.
+	 * @throws SQLException
+	 *             Si el ResultSet devuelve un error.
+	 */
+	Object read(ResultSet rs, int column) throws SQLException;
+
+}
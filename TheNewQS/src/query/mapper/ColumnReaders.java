@@ -0,0 +1,238 @@
+package query.mapper;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lectores de columna para los tipos habituales. Los tipos envoltorio
+ * devuelven null cuando la columna es nula; los primitivos devuelven el valor
+ * por defecto del driver.
+ * 
+ * @author fferezsa
+ *
+ */
+public final class ColumnReaders {
+
+	private static final Map<Class<?>, ColumnReader> readers = new HashMap<Class<?>, ColumnReader>();
+
+	static {
+		readers.put(Long.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final long value = rs.getLong(column);
+				return rs.wasNull() ? null : value;
+			}
+		});
+		readers.put(long.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getLong(column);
+			}
+		});
+		readers.put(Integer.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final int value = rs.getInt(column);
+				return rs.wasNull() ? null : value;
+			}
+		});
+		readers.put(int.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getInt(column);
+			}
+		});
+		readers.put(Short.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final short value = rs.getShort(column);
+				return rs.wasNull() ? null : value;
+			}
+		});
+		readers.put(short.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getShort(column);
+			}
+		});
+		readers.put(Byte.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final byte value = rs.getByte(column);
+				return rs.wasNull() ? null : value;
+			}
+		});
+		readers.put(byte.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getByte(column);
+			}
+		});
+		readers.put(Character.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final String value = rs.getString(column);
+				return value == null || value.isEmpty() ? null : value.charAt(0);
+			}
+		});
+		readers.put(char.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final String value = rs.getString(column);
+				return value == null || value.isEmpty() ? '\0' : value.charAt(0);
+			}
+		});
+		readers.put(Double.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final double value = rs.getDouble(column);
+				return rs.wasNull() ? null : value;
+			}
+		});
+		readers.put(double.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getDouble(column);
+			}
+		});
+		readers.put(Float.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final float value = rs.getFloat(column);
+				return rs.wasNull() ? null : value;
+			}
+		});
+		readers.put(float.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getFloat(column);
+			}
+		});
+		readers.put(Boolean.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final boolean value = rs.getBoolean(column);
+				return rs.wasNull() ? null : value;
+			}
+		});
+		readers.put(boolean.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getBoolean(column);
+			}
+		});
+		readers.put(String.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getString(column);
+			}
+		});
+		readers.put(BigDecimal.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getBigDecimal(column);
+			}
+		});
+		readers.put(BigInteger.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final BigDecimal value = rs.getBigDecimal(column);
+				return value == null ? null : value.toBigInteger();
+			}
+		});
+		readers.put(java.sql.Date.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getDate(column);
+			}
+		});
+		readers.put(java.sql.Time.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getTime(column);
+			}
+		});
+		// java.util.Date lleva hora: getDate la truncaría al día
+		final ColumnReader timestampReader = new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getTimestamp(column);
+			}
+		};
+		readers.put(java.sql.Timestamp.class, timestampReader);
+		readers.put(java.util.Date.class, timestampReader);
+		readers.put(LocalDate.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final java.sql.Date value = rs.getDate(column);
+				return value == null ? null : value.toLocalDate();
+			}
+		});
+		readers.put(LocalTime.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final java.sql.Time value = rs.getTime(column);
+				return value == null ? null : value.toLocalTime();
+			}
+		});
+		readers.put(LocalDateTime.class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				final java.sql.Timestamp value = rs.getTimestamp(column);
+				return value == null ? null : value.toLocalDateTime();
+			}
+		});
+		readers.put(byte[].class, new ColumnReader() {
+
+			@Override
+			public Object read(ResultSet rs, int column) throws SQLException {
+				return rs.getBytes(column);
+			}
+		});
+	}
+
+	private ColumnReaders() {
+	}
+
+	/**
+	 * @param clazz
+	 *            Tipo del valor que se desea leer.
+	 * @return Lector para ese tipo, null si no hay ninguno.
+	 */
+	public static ColumnReader forType(final Class<?> clazz) {
+		return readers.get(clazz);
+	}
+
+}
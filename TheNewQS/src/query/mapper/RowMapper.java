@@ -0,0 +1,29 @@
+package query.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Traduce la fila actual de un {@link ResultSet} a un objeto. Las
+ * implementaciones deben ser inmutables para poder compartirse entre
+ * consultas e hilos.
+ * 
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo del objeto resultante.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+	/**
+	 * @param rs
+	 *            Solamente para recuperar valores, no debe alterarse de ninguna
+	 *            manera.
+	 * @return Objeto con los valores de la fila actual.
+	 * @throws SQLException
+	 *             Si el ResultSet devuelve un error.
+	 */
+	T map(ResultSet rs) throws SQLException;
+
+}
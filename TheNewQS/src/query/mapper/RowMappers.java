@@ -0,0 +1,62 @@
+package query.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Mappers por defecto de una clase: los tipos simples se leen de la primera
+ * columna con su {@link ColumnReader} y el resto con {@link BeanMapper}.
+ * 
+ * @author fferezsa
+ *
+ */
+public final class RowMappers {
+
+	private RowMappers() {
+	}
+
+	/**
+	 * @param clazz
+	 *            Clase resultante de cada fila.
+	 * @return Mapper por defecto de la clase. Si la clase no puede traducirse,
+	 *         el mapper lanza {@link UnsupportedOperationException} al usarse.
+	 */
+	public static <T> RowMapper<T> forClass(final Class<T> clazz) {
+		final ColumnReader reader = ColumnReaders.forType(clazz);
+		if (reader != null) {
+			return scalar(reader);
+		}
+		try {
+			return BeanMapper.forClass(clazz);
+		} catch (IllegalArgumentException e) {
+			return unsupported(clazz);
+		}
+	}
+
+	/**
+	 * @param reader
+	 *            Lector del tipo de la primera columna.
+	 * @return Mapper que devuelve el valor de la primera columna.
+	 */
+	public static <T> RowMapper<T> scalar(final ColumnReader reader) {
+		return new RowMapper<T>() {
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public T map(ResultSet rs) throws SQLException {
+				return (T) reader.read(rs, 1);
+			}
+		};
+	}
+
+	private static <T> RowMapper<T> unsupported(final Class<T> clazz) {
+		return new RowMapper<T>() {
+
+			@Override
+			public T map(ResultSet rs) throws SQLException {
+				throw new UnsupportedOperationException(String.format("Not yet implemented for class: %s", clazz));
+			}
+		};
+	}
+
+}
@@ -0,0 +1,124 @@
+package query.metrics;
+
+/**
+ * Modo diagnóstico: activa a la vez el {@link SlowQueryLog} y el
+ * {@link NPlusOneDetector} sobre {@link QueryMetrics#getDefault()}.
+ *
+ * <p>
+ * Puede activarse sin tocar código arrancando con
+ * <code>-Dquery.diagnostics.slowMillis=200</code>, que instala el
+ * {@link SlowQueryLog}, y/o <code>-Dquery.diagnostics.nPlusOne=10</code>, que
+ * instala el {@link NPlusOneDetector}. Toman efecto al llamar por primera vez
+ * a {@link #begin()} o {@link #isEnabled()}. Ambos funcionan aunque las
+ * estadísticas de {@link QueryMetrics} estén desactivadas.
+ *
+ * <pre>
+ * try (NPlusOneDetector.Scope scope = Diagnostics.begin()) {
+ * 	for (Alianza alianza : alianzas) {
+ * 		dao.findById(alianza);
+ * 	}
+ * }
+ * </pre>
+ *
+ * @author fferezsa
+ *
+ */
+public final class Diagnostics {
+
+	private static SlowQueryLog slowQueryLog;
+	private static NPlusOneDetector detector;
+
+	static {
+		final Long slowMillis = Long.getLong("query.diagnostics.slowMillis");
+		final Integer nPlusOne = Integer.getInteger("query.diagnostics.nPlusOne");
+		if (slowMillis != null) {
+			enableSlowQueryLog(slowMillis);
+		}
+		if (nPlusOne != null) {
+			enableNPlusOneDetector(nPlusOne);
+		}
+	}
+
+	private Diagnostics() {
+	}
+
+	/**
+	 * Activa el modo diagnóstico, sustituyendo la configuración anterior.
+	 *
+	 * @param slowMillis
+	 *            Umbral del {@link SlowQueryLog}.
+	 * @param nPlusOneThreshold
+	 *            Umbral del {@link NPlusOneDetector}.
+	 */
+	public static synchronized void enable(final long slowMillis, final int nPlusOneThreshold) {
+		enableSlowQueryLog(slowMillis);
+		enableNPlusOneDetector(nPlusOneThreshold);
+	}
+
+	/**
+	 * Instala solo el {@link SlowQueryLog}, sustituyendo al anterior.
+	 *
+	 * @param slowMillis
+	 *            Umbral del {@link SlowQueryLog}.
+	 */
+	public static synchronized void enableSlowQueryLog(final long slowMillis) {
+		final SlowQueryLog created = new SlowQueryLog(slowMillis);
+		if (slowQueryLog != null) {
+			QueryMetrics.getDefault().removeListener(slowQueryLog);
+		}
+		slowQueryLog = created;
+		QueryMetrics.getDefault().addListener(created);
+	}
+
+	/**
+	 * Instala solo el {@link NPlusOneDetector}, sustituyendo al anterior.
+	 *
+	 * @param nPlusOneThreshold
+	 *            Umbral del {@link NPlusOneDetector}.
+	 */
+	public static synchronized void enableNPlusOneDetector(final int nPlusOneThreshold) {
+		final NPlusOneDetector created = new NPlusOneDetector(nPlusOneThreshold);
+		if (detector != null) {
+			QueryMetrics.getDefault().removeListener(detector);
+		}
+		detector = created;
+		QueryMetrics.getDefault().addListener(created);
+	}
+
+	/**
+	 * Desactiva el modo diagnóstico.
+	 */
+	public static synchronized void disable() {
+		if (slowQueryLog != null) {
+			QueryMetrics.getDefault().removeListener(slowQueryLog);
+			slowQueryLog = null;
+		}
+		if (detector != null) {
+			QueryMetrics.getDefault().removeListener(detector);
+			detector = null;
+		}
+	}
+
+	/**
+	 * @return Si alguna de las dos herramientas está instalada.
+	 */
+	public static synchronized boolean isEnabled() {
+		return slowQueryLog != null || detector != null;
+	}
+
+	/**
+	 * Abre una unidad de trabajo del {@link NPlusOneDetector} en el hilo
+	 * actual.
+	 *
+	 * @return Ámbito a cerrar al terminar, null si el {@link NPlusOneDetector}
+	 *         no está instalado (try-with-resources lo admite).
+	 */
+	public static NPlusOneDetector.Scope begin() {
+		final NPlusOneDetector current;
+		synchronized (Diagnostics.class) {
+			current = detector;
+		}
+		return current != null ? current.begin() : null;
+	}
+
+}
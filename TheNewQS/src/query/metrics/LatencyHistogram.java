@@ -0,0 +1,143 @@
+package query.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias log-lineal al estilo HdrHistogram: cada potencia de
+ * dos se divide en {@value #SUB_BUCKETS} intervalos iguales, lo que da un error
+ * relativo máximo del 6% con un número fijo de contadores. Registrar un valor
+ * no crea objetos y puede hacerse desde varios hilos sin bloqueo.
+ *
+ * <p>
+ * Los valores se registran en nanosegundos y se acotan a 2^36 ns (unos 68
+ * segundos).
+ *
+ * @author fferezsa
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int MAX_EXPONENT = 36;
+	private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos
+	 *            Latencia en nanosegundos. Los negativos se ignoran.
+	 */
+	public void record(final long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+		final long value = Math.min(nanos, MAX_VALUE);
+		counts.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @return Número de valores registrados.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return Media en nanosegundos, 0 si no hay valores.
+	 */
+	public long getMean() {
+		final long n = count.sum();
+		return n == 0 ? 0 : sum.sum() / n;
+	}
+
+	/**
+	 * @return Máximo registrado en nanosegundos.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            Percentil entre 0 y 100.
+	 * @return Valor en nanosegundos por debajo del cual está el porcentaje
+	 *         indicado de los registros, con la precisión del histograma.
+	 */
+	public long getPercentile(final double percentile) {
+		final long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		final long target = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Pone todos los contadores a cero. Los valores registrados durante el
+	 * reinicio pueden perderse.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	static int indexOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int shift = exponent - SUB_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	static long highestOf(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		final long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LatencyHistogram [count=" + getCount() + ", meanMicros=" + micros(getMean()) + ", p50Micros="
+				+ micros(getPercentile(50)) + ", p99Micros=" + micros(getPercentile(99)) + ", maxMicros="
+				+ micros(getMax()) + "]";
+	}
+
+	static long micros(final long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+}
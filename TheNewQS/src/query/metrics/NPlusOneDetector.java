@@ -0,0 +1,217 @@
+package query.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Detecta el patrón N+1: la misma forma de consulta lanzada muchas veces
+ * dentro de una misma unidad de trabajo, típicamente un bucle que llama a
+ * <code>findById</code> por cada elemento.
+ *
+ * <p>
+ * La unidad de trabajo es un {@link Scope} ligado al hilo que se abre con
+ * {@link #begin()} y se cierra al terminar, preferiblemente con
+ * try-with-resources. Cuando una forma supera el umbral se guarda la pila de
+ * llamadas de esa ejecución, sin los marcos de la librería, y al cerrar el
+ * ámbito se escribe un aviso en el log <code>query.nplusone</code> por cada
+ * forma infractora. Fuera de un ámbito solo se paga la lectura del
+ * ThreadLocal.
+ *
+ * @author fferezsa
+ *
+ */
+public class NPlusOneDetector implements QueryListener {
+
+	private static final Logger LOGGER = Logger.getLogger("query.nplusone");
+	private static final int CALL_SITE_FRAMES = 5;
+	private static final String[] LIBRARY_PACKAGES = { "query.", "dao.base.", "java.", "javax.", "sun.", "jdk." };
+
+	private final int threshold;
+	private final ThreadLocal<Scope> current = new ThreadLocal<Scope>();
+
+	/**
+	 * @param threshold
+	 *            Número de ejecuciones de una misma forma dentro de un ámbito a
+	 *            partir del cual se considera N+1.
+	 */
+	public NPlusOneDetector(final int threshold) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("Threshold must be 1 or more");
+		}
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Abre un ámbito en el hilo actual. Los ámbitos pueden anidarse; al cerrar
+	 * uno interior sus ejecuciones se suman al que lo contiene.
+	 *
+	 * @return Ámbito que debe cerrarse en el mismo hilo.
+	 */
+	public Scope begin() {
+		final Scope scope = new Scope(current.get());
+		current.set(scope);
+		return scope;
+	}
+
+	@Override
+	public void onQuery(final String sql, final Object[] params, final long prepareNanos, final long executeNanos,
+			final long mappingNanos, final long rows, final Exception error) {
+		final Scope scope = current.get();
+		if (scope != null) {
+			scope.count(sql);
+		}
+	}
+
+	/**
+	 * @return the threshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	private static List<StackTraceElement> callSite() {
+		final List<StackTraceElement> frames = new ArrayList<StackTraceElement>(CALL_SITE_FRAMES);
+		for (final StackTraceElement frame : new Throwable().getStackTrace()) {
+			if (!isLibrary(frame.getClassName())) {
+				frames.add(frame);
+				if (frames.size() == CALL_SITE_FRAMES) {
+					break;
+				}
+			}
+		}
+		return frames;
+	}
+
+	private static boolean isLibrary(final String className) {
+		for (final String prefix : LIBRARY_PACKAGES) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Unidad de trabajo en la que se cuentan las ejecuciones por forma.
+	 */
+	public final class Scope implements AutoCloseable {
+
+		private final Scope parent;
+		private final Map<String, Violation> byShape = new HashMap<String, Violation>();
+		private final Map<String, Violation> bySql = new HashMap<String, Violation>();
+		private final List<Violation> violations = new ArrayList<Violation>();
+		private boolean closed;
+
+		private Scope(final Scope parent) {
+			this.parent = parent;
+		}
+
+		private void count(final String sql) {
+			Violation counter = bySql.get(sql);
+			if (counter == null) {
+				final QueryMetrics metrics = QueryMetrics.getDefault();
+				counter = counter(metrics.isEnabled() ? metrics.statsFor(sql).getShape() : QueryMetrics.shape(sql));
+				bySql.put(sql, counter);
+			}
+			add(counter, 1, null);
+		}
+
+		private Violation counter(final String shape) {
+			Violation counter = byShape.get(shape);
+			if (counter == null) {
+				counter = new Violation(shape);
+				byShape.put(shape, counter);
+			}
+			return counter;
+		}
+
+		private void add(final Violation counter, final int executions, final List<StackTraceElement> site) {
+			final boolean exceeded = counter.count > threshold;
+			counter.count += executions;
+			if (!exceeded && counter.count > threshold) {
+				counter.callSite = site != null ? site : callSite();
+				violations.add(counter);
+			}
+		}
+
+		/**
+		 * @return Formas que han superado el umbral hasta el momento.
+		 */
+		public List<Violation> getViolations() {
+			return Collections.unmodifiableList(violations);
+		}
+
+		/**
+		 * Cierra el ámbito, restaura el anterior y registra las infracciones.
+		 */
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (parent != null) {
+				current.set(parent);
+				for (final Violation inner : byShape.values()) {
+					parent.add(parent.counter(inner.shape), inner.count, inner.callSite);
+				}
+			} else {
+				current.remove();
+			}
+			for (final Violation violation : violations) {
+				LOGGER.warning(violation.toString());
+			}
+		}
+	}
+
+	/**
+	 * Forma de consulta que ha superado el umbral dentro de un ámbito.
+	 */
+	public static final class Violation {
+
+		private final String shape;
+		private int count;
+		private List<StackTraceElement> callSite;
+
+		private Violation(final String shape) {
+			this.shape = shape;
+		}
+
+		/**
+		 * @return Forma de la consulta.
+		 */
+		public String getShape() {
+			return shape;
+		}
+
+		/**
+		 * @return Ejecuciones dentro del ámbito.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return Marcos de la pila, fuera de la librería, de la ejecución que
+		 *         superó el umbral.
+		 */
+		public List<StackTraceElement> getCallSite() {
+			return callSite;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Possible N+1: " + count + " executions of [" + shape + "] at " + callSite;
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package query.metrics;
+
+/**
+ * Recibe cada ejecución instrumentada por {@link QueryMetrics}. Se invoca de
+ * forma síncrona en el hilo que lanzó la consulta, por lo que debe ser rápido
+ * y no lanzar excepciones.
+ *
+ * @author fferezsa
+ *
+ */
+public interface QueryListener {
+
+	/**
+	 * @param sql
+	 *            Consulta tal como se ha ejecutado.
+	 * @param params
+	 *            Valores de las variables bind, puede ser null. No debe
+	 *            modificarse ni conservarse.
+	 * @param prepareNanos
+	 *            Tiempo en obtener la sentencia preparada.
+	 * @param executeNanos
+	 *            Tiempo en añadir los parámetros y ejecutar la sentencia.
+	 * @param mappingNanos
+	 *            Tiempo en recorrer y traducir el resultado.
+	 * @param rows
+	 *            Filas leídas o modificadas.
+	 * @param error
+	 *            Error producido, null si la ejecución terminó bien.
+	 */
+	void onQuery(String sql, Object[] params, long prepareNanos, long executeNanos, long mappingNanos, long rows,
+			Exception error);
+
+}
@@ -0,0 +1,328 @@
+package query.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registro de métricas de ejecución de {@link query.ParametrizedQuery} y
+ * {@link query.CompiledQuery}.
+ *
+ * <p>
+ * Cada ejecución se asigna a la forma de su consulta, que es el texto con los
+ * espacios normalizados y los literales y listas IN sustituidos por
+ * <code>?</code>, y acumula en sus {@link QueryStats} los tiempos de
+ * preparación, ejecución y traducción, las filas y los errores. Además se
+ * notifica a los {@link QueryListener} registrados.
+ *
+ * <p>
+ * Está activo salvo que se arranque con
+ * <code>-Dquery.metrics.enabled=false</code>. Cada ejecución cuesta unas pocas lecturas de
+ * {@link System#nanoTime()}, una búsqueda en un mapa concurrente por el texto
+ * de la consulta y varios incrementos atómicos, sin crear objetos salvo la
+ * primera vez que aparece cada consulta. Con {@link #registerMBeans()} el
+ * registro y cada forma se publican en JMX bajo el dominio
+ * <code>query.metrics</code>.
+ *
+ * @author fferezsa
+ *
+ */
+public final class QueryMetrics implements QueryMetricsMXBean {
+
+	/**
+	 * Forma a la que se asignan las consultas nuevas cuando se alcanza
+	 * {@link #getMaxShapes()}.
+	 */
+	public static final String OVERFLOW_SHAPE = "<other>";
+
+	private static final String DOMAIN = "query.metrics";
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+	private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+	private static final QueryMetrics DEFAULT = new QueryMetrics();
+
+	private final ConcurrentMap<String, QueryStats> byShape = new ConcurrentHashMap<String, QueryStats>();
+	private final ConcurrentMap<String, QueryStats> bySql = new ConcurrentHashMap<String, QueryStats>();
+	private final List<QueryListener> listeners = new CopyOnWriteArrayList<QueryListener>();
+	private volatile boolean enabled = Boolean.parseBoolean(System.getProperty("query.metrics.enabled", "true"));
+	private volatile MBeanServer server;
+	private int maxShapes = 1000;
+
+	/**
+	 * @return Registro usado por todas las consultas.
+	 */
+	public static QueryMetrics getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Anota una ejecución y avisa a los listeners. Los listeners reciben la
+	 * ejecución aunque las estadísticas estén desactivadas.
+	 *
+	 * @param sql
+	 *            Consulta ejecutada.
+	 * @param params
+	 *            Valores de las variables bind, puede ser null.
+	 * @param prepareNanos
+	 *            Tiempo en obtener la sentencia.
+	 * @param executeNanos
+	 *            Tiempo en añadir parámetros y ejecutar.
+	 * @param mappingNanos
+	 *            Tiempo en recorrer el resultado.
+	 * @param rows
+	 *            Filas leídas o modificadas.
+	 * @param error
+	 *            Error producido, null si no lo hubo.
+	 */
+	public void record(final String sql, final Object[] params, final long prepareNanos, final long executeNanos,
+			final long mappingNanos, final long rows, final Exception error) {
+		for (final QueryListener listener : listeners) {
+			try {
+				listener.onQuery(sql, params, prepareNanos, executeNanos, mappingNanos, rows, error);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		if (enabled) {
+			statsFor(sql).record(prepareNanos, executeNanos, mappingNanos, rows, error != null);
+		}
+	}
+
+	/**
+	 * @param sql
+	 *            Consulta.
+	 * @return Estadísticas de la forma de la consulta, creándolas si no
+	 *         existen.
+	 */
+	public QueryStats statsFor(final String sql) {
+		QueryStats stats = bySql.get(sql);
+		if (stats == null) {
+			final String shape = shape(sql);
+			stats = byShape.get(shape);
+			if (stats == null) {
+				if (byShape.size() >= maxShapes) {
+					stats = shapeStats(OVERFLOW_SHAPE);
+				} else {
+					stats = shapeStats(shape);
+				}
+			}
+			if (bySql.size() < maxShapes * 4) {
+				bySql.putIfAbsent(sql, stats);
+			}
+		}
+		return stats;
+	}
+
+	private QueryStats shapeStats(final String shape) {
+		final QueryStats created = new QueryStats(shape);
+		final QueryStats previous = byShape.putIfAbsent(shape, created);
+		if (previous != null) {
+			return previous;
+		}
+		final MBeanServer current = server;
+		if (current != null) {
+			register(current, created, statsName(shape));
+		}
+		return created;
+	}
+
+	/**
+	 * Normaliza una consulta a su forma: espacios colapsados, literales de
+	 * texto y números sustituidos por <code>?</code> y listas de variables
+	 * como <code>(?, ?, ?)</code> reducidas a <code>(?...)</code>.
+	 *
+	 * @param sql
+	 *            Consulta.
+	 * @return Forma de la consulta.
+	 */
+	public static String shape(final String sql) {
+		String shape = WHITESPACE.matcher(sql).replaceAll(" ").trim();
+		shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+		shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+		return IN_LIST.matcher(shape).replaceAll("(?...)");
+	}
+
+	/**
+	 * @param sql
+	 *            Consulta.
+	 * @return Estadísticas de la forma de la consulta, null si no se ha
+	 *         ejecutado.
+	 */
+	public QueryStats getStats(final String sql) {
+		final QueryStats stats = bySql.get(sql);
+		return stats != null ? stats : byShape.get(shape(sql));
+	}
+
+	/**
+	 * @return Estadísticas de todas las formas registradas.
+	 */
+	public Collection<QueryStats> getAllStats() {
+		return new ArrayList<QueryStats>(byShape.values());
+	}
+
+	/**
+	 * @param listener
+	 *            Receptor de cada ejecución.
+	 */
+	public void addListener(final QueryListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener
+	 *            Receptor a retirar.
+	 */
+	public void removeListener(final QueryListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return Si hay que medir las ejecuciones: con las estadísticas activas o
+	 *         con algún listener registrado.
+	 */
+	public boolean isRecording() {
+		return enabled || !listeners.isEmpty();
+	}
+
+	/**
+	 * Publica el registro y todas las formas, presentes y futuras, en el
+	 * MBeanServer de la plataforma.
+	 */
+	public synchronized void registerMBeans() {
+		if (server != null) {
+			return;
+		}
+		final MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+		register(platform, this, objectName("type=QueryMetrics"));
+		server = platform;
+		for (final QueryStats stats : byShape.values()) {
+			register(platform, stats, statsName(stats.getShape()));
+		}
+	}
+
+	/**
+	 * Retira de JMX el registro y todas las formas.
+	 */
+	public synchronized void unregisterMBeans() {
+		final MBeanServer current = server;
+		if (current == null) {
+			return;
+		}
+		server = null;
+		try {
+			for (final ObjectName name : current.queryNames(objectName("*"), null)) {
+				current.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void register(final MBeanServer server, final Object bean, final ObjectName name) {
+		try {
+			if (!server.isRegistered(name)) {
+				server.registerMBean(bean, name);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static ObjectName statsName(final String shape) {
+		return objectName("type=QueryStats,shape=" + ObjectName.quote(shape));
+	}
+
+	private static ObjectName objectName(final String properties) {
+		try {
+			return new ObjectName(DOMAIN + ":" + properties);
+		} catch (JMException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public int getShapeCount() {
+		return byShape.size();
+	}
+
+	@Override
+	public long getTotalExecutions() {
+		long total = 0;
+		for (final QueryStats stats : byShape.values()) {
+			total += stats.getExecutions();
+		}
+		return total;
+	}
+
+	@Override
+	public long getTotalErrors() {
+		long total = 0;
+		for (final QueryStats stats : byShape.values()) {
+			total += stats.getErrors();
+		}
+		return total;
+	}
+
+	/**
+	 * Pone a cero las estadísticas de todas las formas, sin olvidarlas.
+	 */
+	@Override
+	public void reset() {
+		for (final QueryStats stats : byShape.values()) {
+			stats.reset();
+		}
+	}
+
+	/**
+	 * @return the maxShapes
+	 */
+	public int getMaxShapes() {
+		return maxShapes;
+	}
+
+	/**
+	 * @param maxShapes
+	 *            Número máximo de formas distintas. Las siguientes se acumulan
+	 *            en {@link #OVERFLOW_SHAPE} para acotar la memoria si se
+	 *            generan consultas con literales.
+	 */
+	public void setMaxShapes(int maxShapes) {
+		if (maxShapes <= 0) {
+			throw new IllegalArgumentException("Max shapes must be 1 or more");
+		}
+		this.maxShapes = maxShapes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "QueryMetrics [enabled=" + enabled + ", shapes=" + getShapeCount() + ", executions="
+				+ getTotalExecutions() + ", errors=" + getTotalErrors() + "]";
+	}
+
+}
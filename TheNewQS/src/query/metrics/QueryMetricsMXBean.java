@@ -0,0 +1,23 @@
+package query.metrics;
+
+/**
+ * Vista JMX del registro de métricas.
+ *
+ * @author fferezsa
+ *
+ */
+public interface QueryMetricsMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	int getShapeCount();
+
+	long getTotalExecutions();
+
+	long getTotalErrors();
+
+	void reset();
+
+}
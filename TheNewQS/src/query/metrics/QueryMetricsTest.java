@@ -0,0 +1,81 @@
+package query.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.CompiledQuery;
+
+/**
+ * Estadísticas de {@link QueryMetrics} y avisos de {@link NPlusOneDetector}
+ * con ejecuciones reales sobre H2 en memoria.
+ */
+public class QueryMetricsTest {
+
+	private Connection connection;
+	private boolean enabled;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:metrics");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table metrics_t (id int primary key, name varchar(20))");
+			statement.execute("insert into metrics_t values (1, 'a'), (2, 'b'), (3, 'c')");
+		}
+		enabled = QueryMetrics.getDefault().isEnabled();
+		QueryMetrics.getDefault().setEnabled(true);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		QueryMetrics.getDefault().setEnabled(enabled);
+		connection.close();
+	}
+
+	@Test
+	public void executionsAreRecordedByShape() throws SQLException {
+		final CompiledQuery<String> query = new CompiledQuery<String>(String.class,
+				"select name from metrics_t where id <= ?");
+		query.select(connection, 2);
+		query.select(connection, 3);
+		final QueryStats stats = QueryMetrics.getDefault().getStats("select name from metrics_t where id <= 1");
+		assertEquals("select name from metrics_t where id <= ?", stats.getShape());
+		assertEquals(2, stats.getExecutions());
+		assertEquals(5, stats.getRows());
+		assertEquals(0, stats.getErrors());
+	}
+
+	@Test
+	public void nPlusOneIsReportedPerScope() throws SQLException {
+		final NPlusOneDetector detector = new NPlusOneDetector(2);
+		final CompiledQuery<String> query = new CompiledQuery<String>(String.class,
+				"select name from metrics_t where id = ?");
+		QueryMetrics.getDefault().addListener(detector);
+		try {
+			try (NPlusOneDetector.Scope scope = detector.begin()) {
+				for (int id = 1; id <= 3; id++) {
+					query.selectFirst(connection, id);
+				}
+				assertEquals(1, scope.getViolations().size());
+				assertEquals(3, scope.getViolations().get(0).getCount());
+				assertTrue(scope.getViolations().get(0).getShape().endsWith("where id = ?"));
+			}
+			try (NPlusOneDetector.Scope scope = detector.begin()) {
+				query.selectFirst(connection, 1);
+				query.selectFirst(connection, 2);
+				assertTrue(scope.getViolations().isEmpty());
+			}
+		} finally {
+			QueryMetrics.getDefault().removeListener(detector);
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package query.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estadísticas acumuladas de todas las ejecuciones de una misma forma de
+ * consulta.
+ *
+ * @see QueryMetrics#shape(String)
+ * @author fferezsa
+ *
+ */
+public final class QueryStats implements QueryStatsMXBean {
+
+	private final String shape;
+	private final LatencyHistogram prepare = new LatencyHistogram();
+	private final LatencyHistogram execute = new LatencyHistogram();
+	private final LatencyHistogram mapping = new LatencyHistogram();
+	private final LongAdder executions = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder rows = new LongAdder();
+
+	QueryStats(final String shape) {
+		this.shape = shape;
+	}
+
+	void record(final long prepareNanos, final long executeNanos, final long mappingNanos, final long rowCount,
+			final boolean failed) {
+		executions.increment();
+		prepare.record(prepareNanos);
+		execute.record(executeNanos);
+		mapping.record(mappingNanos);
+		if (rowCount > 0) {
+			rows.add(rowCount);
+		}
+		if (failed) {
+			errors.increment();
+		}
+	}
+
+	@Override
+	public String getShape() {
+		return shape;
+	}
+
+	@Override
+	public long getExecutions() {
+		return executions.sum();
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public long getRows() {
+		return rows.sum();
+	}
+
+	@Override
+	public long getMeanPrepareMicros() {
+		return LatencyHistogram.micros(prepare.getMean());
+	}
+
+	@Override
+	public long getMeanExecuteMicros() {
+		return LatencyHistogram.micros(execute.getMean());
+	}
+
+	@Override
+	public long getMeanMappingMicros() {
+		return LatencyHistogram.micros(mapping.getMean());
+	}
+
+	@Override
+	public long getP50ExecuteMicros() {
+		return LatencyHistogram.micros(execute.getPercentile(50));
+	}
+
+	@Override
+	public long getP95ExecuteMicros() {
+		return LatencyHistogram.micros(execute.getPercentile(95));
+	}
+
+	@Override
+	public long getP99ExecuteMicros() {
+		return LatencyHistogram.micros(execute.getPercentile(99));
+	}
+
+	@Override
+	public long getMaxExecuteMicros() {
+		return LatencyHistogram.micros(execute.getMax());
+	}
+
+	@Override
+	public long getP99MappingMicros() {
+		return LatencyHistogram.micros(mapping.getPercentile(99));
+	}
+
+	/**
+	 * @return Tiempos de obtención de la sentencia.
+	 */
+	public LatencyHistogram getPrepare() {
+		return prepare;
+	}
+
+	/**
+	 * @return Tiempos de binding y ejecución.
+	 */
+	public LatencyHistogram getExecute() {
+		return execute;
+	}
+
+	/**
+	 * @return Tiempos de recorrido y traducción del resultado.
+	 */
+	public LatencyHistogram getMapping() {
+		return mapping;
+	}
+
+	@Override
+	public void reset() {
+		prepare.reset();
+		execute.reset();
+		mapping.reset();
+		executions.reset();
+		errors.reset();
+		rows.reset();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "QueryStats [shape=" + shape + ", executions=" + getExecutions() + ", errors=" + getErrors()
+				+ ", rows=" + getRows() + ", prepare=" + prepare + ", execute=" + execute + ", mapping=" + mapping
+				+ "]";
+	}
+
+}
@@ -0,0 +1,38 @@
+package query.metrics;
+
+/**
+ * Vista JMX de las estadísticas de una forma de consulta. Los tiempos se
+ * expresan en microsegundos.
+ *
+ * @author fferezsa
+ *
+ */
+public interface QueryStatsMXBean {
+
+	String getShape();
+
+	long getExecutions();
+
+	long getErrors();
+
+	long getRows();
+
+	long getMeanPrepareMicros();
+
+	long getMeanExecuteMicros();
+
+	long getMeanMappingMicros();
+
+	long getP50ExecuteMicros();
+
+	long getP95ExecuteMicros();
+
+	long getP99ExecuteMicros();
+
+	long getMaxExecuteMicros();
+
+	long getP99MappingMicros();
+
+	void reset();
+
+}
@@ -0,0 +1,79 @@
+package query.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registra en el log <code>query.slow</code> las ejecuciones cuyo tiempo
+ * total supera un umbral, junto con sus parámetros, y las que terminan con
+ * error. Se activa añadiéndolo a {@link QueryMetrics#addListener}; las
+ * ejecuciones rápidas solo cuestan una comparación.
+ *
+ * @author fferezsa
+ *
+ */
+public class SlowQueryLog implements QueryListener {
+
+	private static final Logger LOGGER = Logger.getLogger("query.slow");
+
+	private final long thresholdNanos;
+	private final Logger logger;
+
+	/**
+	 * @param thresholdMillis
+	 *            Tiempo total a partir del cual se registra una ejecución.
+	 */
+	public SlowQueryLog(final long thresholdMillis) {
+		this(thresholdMillis, LOGGER);
+	}
+
+	/**
+	 * @param thresholdMillis
+	 *            Tiempo total a partir del cual se registra una ejecución.
+	 * @param logger
+	 *            Log en el que escribir.
+	 */
+	public SlowQueryLog(final long thresholdMillis, final Logger logger) {
+		if (thresholdMillis < 0) {
+			throw new IllegalArgumentException("Threshold must be 0 or more");
+		}
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.logger = logger;
+	}
+
+	@Override
+	public void onQuery(final String sql, final Object[] params, final long prepareNanos, final long executeNanos,
+			final long mappingNanos, final long rows, final Exception error) {
+		final long total = prepareNanos + executeNanos + mappingNanos;
+		if (error != null) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, format("Failed query", sql, params, prepareNanos, executeNanos,
+						mappingNanos, rows), error);
+			}
+		} else if (total >= thresholdNanos && logger.isLoggable(Level.WARNING)) {
+			logger.warning(format("Slow query", sql, params, prepareNanos, executeNanos, mappingNanos, rows));
+		}
+	}
+
+	private static String format(final String title, final String sql, final Object[] params,
+			final long prepareNanos, final long executeNanos, final long mappingNanos, final long rows) {
+		return title + " [" + millis(prepareNanos + executeNanos + mappingNanos) + " ms, prepare="
+				+ millis(prepareNanos) + " ms, execute=" + millis(executeNanos) + " ms, mapping="
+				+ millis(mappingNanos) + " ms, rows=" + rows + "]: " + sql + " params="
+				+ Arrays.deepToString(params);
+	}
+
+	private static String millis(final long nanos) {
+		return String.format("%.3f", nanos / 1e6);
+	}
+
+	/**
+	 * @return Umbral en milisegundos.
+	 */
+	public long getThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+}
@@ -0,0 +1,591 @@
+package query.pool;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import query.cache.StatementCache;
+
+/**
+ * Pool de conexiones ligero que se expone como {@link DataSource}.
+ *
+ * <p>
+ * Cada {@link #getConnection()} presta una conexión que vuelve al pool al
+ * invocar {@link Connection#close()}; si quedara una transacción abierta se
+ * deshace y se restaura el autocommit. Nunca hay más de <b>maxSize</b>
+ * conexiones físicas abiertas y al crear el pool se abren <b>minSize</b>.
+ *
+ * <p>
+ * Las conexiones que llevan en reposo más de
+ * {@link #getValidationIntervalMillis()} se validan con
+ * {@link Connection#isValid(int)} antes de prestarse. Si no hay ninguna libre
+ * se espera como máximo {@link #getAcquireTimeoutMillis()}.
+ *
+ * <p>
+ * Cada préstamo entrega un objeto nuevo: una vez cerrado, volver a cerrarlo no
+ * tiene efecto y cualquier otro uso falla, aunque la conexión física ya se
+ * haya prestado a otro. {@link StatementCache} identifica la conexión por
+ * {@link Connection#unwrap(Class)}, que devuelve la física, de modo que las
+ * sentencias se reutilizan entre préstamos. Las sentencias también se
+ * envuelven para que {@link Statement#getConnection()} devuelva el objeto del
+ * préstamo en curso y no la conexión física. Las cachés registradas con
+ * {@link #addStatementCache(StatementCache)} descartan las sentencias de cada
+ * conexión física que se cierra, y las conexiones descartadas se reponen
+ * hasta <b>minSize</b>.
+ *
+ * @author fferezsa
+ *
+ */
+public class ConnectionPool implements DataSource, Closeable {
+
+	private final DataSource source;
+	private final String url;
+	private final Properties properties;
+	private final int minSize;
+	private final int maxSize;
+	private final Semaphore permits;
+	private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	private final List<StatementCache> statementCaches = new CopyOnWriteArrayList<StatementCache>();
+	private long acquireTimeoutMillis = 30000;
+	private long validationIntervalMillis = 5000;
+	private int validationTimeoutSeconds = 5;
+	private volatile boolean closed;
+	private PrintWriter logWriter;
+
+	private final AtomicInteger total = new AtomicInteger();
+	private final AtomicLong borrowed = new AtomicLong();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong destroyed = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	/**
+	 * Crea un pool que abre las conexiones con {@link DriverManager}.
+	 *
+	 * @param url
+	 *            Url JDBC de la BBDD.
+	 * @param properties
+	 *            Propiedades de conexión, como user y password.
+	 * @param minSize
+	 *            Conexiones que se abren al crear el pool.
+	 * @param maxSize
+	 *            Máximo de conexiones abiertas a la vez.
+	 * @throws SQLException
+	 *             Si no se pueden abrir las conexiones iniciales.
+	 */
+	public ConnectionPool(final String url, final Properties properties, final int minSize, final int maxSize)
+			throws SQLException {
+		this(null, url, properties, minSize, maxSize);
+	}
+
+	/**
+	 * Crea un pool que obtiene las conexiones físicas de otro
+	 * {@link DataSource} sin pool.
+	 *
+	 * @param source
+	 *            Origen de las conexiones físicas.
+	 * @param minSize
+	 *            Conexiones que se abren al crear el pool.
+	 * @param maxSize
+	 *            Máximo de conexiones abiertas a la vez.
+	 * @throws SQLException
+	 *             Si no se pueden abrir las conexiones iniciales.
+	 */
+	public ConnectionPool(final DataSource source, final int minSize, final int maxSize) throws SQLException {
+		this(source, null, null, minSize, maxSize);
+	}
+
+	private ConnectionPool(final DataSource source, final String url, final Properties properties, final int minSize,
+			final int maxSize) throws SQLException {
+		if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+			throw new IllegalArgumentException("Pool size must be 0 <= min <= max and max must be 1 or more");
+		}
+		this.source = source;
+		this.url = url;
+		this.properties = properties;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.permits = new Semaphore(maxSize, true);
+		try {
+			for (int i = 0; i < minSize; i++) {
+				idle.offerLast(create());
+			}
+		} catch (SQLException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Presta una conexión del pool, abriendo una nueva si no hay ninguna libre
+	 * y no se ha alcanzado el máximo.
+	 *
+	 * @return Conexión que vuelve al pool al cerrarla.
+	 * @throws SQLTransientConnectionException
+	 *             Si no queda ninguna libre tras esperar el tiempo máximo.
+	 * @throws SQLException
+	 *             Si el pool está cerrado o no se puede abrir la conexión.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		checkOpen();
+		final long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				throw new SQLTransientConnectionException(
+						String.format("Timeout after %d ms waiting for a connection: %s", acquireTimeoutMillis, this));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted waiting for a connection", e);
+		}
+		waitNanos.addAndGet(System.nanoTime() - start);
+		try {
+			PooledConnection pooled;
+			while ((pooled = idle.pollFirst()) != null) {
+				if (validate(pooled)) {
+					break;
+				}
+			}
+			if (pooled == null) {
+				pooled = create();
+			}
+			final Loan loan = new Loan(pooled);
+			pooled.loan = loan;
+			borrowed.incrementAndGet();
+			return loan.proxy;
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Cierra las conexiones en reposo. Las que estén prestadas se cerrarán al
+	 * devolverse.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			destroy(pooled);
+		}
+	}
+
+	/**
+	 * Registra una caché de sentencias usada con las conexiones del pool para
+	 * que se descarten sus sentencias cuando se cierre la conexión física.
+	 *
+	 * @param cache
+	 *            Caché de sentencias.
+	 */
+	public void addStatementCache(final StatementCache cache) {
+		if (!statementCaches.contains(cache)) {
+			statementCaches.add(cache);
+		}
+	}
+
+	private boolean validate(final PooledConnection pooled) {
+		if (System.currentTimeMillis() - pooled.lastUsed < validationIntervalMillis) {
+			return true;
+		}
+		boolean valid;
+		try {
+			valid = pooled.physical.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			valid = false;
+		}
+		if (!valid) {
+			validationFailures.incrementAndGet();
+			destroy(pooled);
+		}
+		return valid;
+	}
+
+	private PooledConnection create() throws SQLException {
+		final Connection physical = source != null ? source.getConnection()
+				: DriverManager.getConnection(url, properties);
+		total.incrementAndGet();
+		created.incrementAndGet();
+		return new PooledConnection(physical);
+	}
+
+	private void destroy(final PooledConnection pooled) {
+		total.decrementAndGet();
+		destroyed.incrementAndGet();
+		for (final StatementCache cache : statementCaches) {
+			cache.invalidate(pooled.physical);
+		}
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		replenish();
+	}
+
+	/**
+	 * Vuelve a abrir conexiones en reposo hasta tener <b>minSize</b> tras
+	 * descartar alguna.
+	 */
+	private synchronized void replenish() {
+		while (!closed && total.get() < minSize) {
+			try {
+				idle.offerLast(create());
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	private void release(final PooledConnection pooled) {
+		pooled.loan = null;
+		pooled.lastUsed = System.currentTimeMillis();
+		try {
+			if (closed || pooled.physical.isClosed()) {
+				destroy(pooled);
+				return;
+			}
+			if (pooled.physical.getAutoCommit() != pooled.autoCommit) {
+				pooled.physical.rollback();
+				pooled.physical.setAutoCommit(pooled.autoCommit);
+			}
+			idle.offerFirst(pooled);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			destroy(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void checkOpen() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+	}
+
+	/**
+	 * @return Conexiones físicas abiertas, prestadas o en reposo.
+	 */
+	public int getTotal() {
+		return total.get();
+	}
+
+	/**
+	 * @return Conexiones en reposo.
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * @return Conexiones prestadas en este momento.
+	 */
+	public int getActive() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/**
+	 * @return Número de hilos esperando una conexión.
+	 */
+	public int getWaiting() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * @return Número total de préstamos.
+	 */
+	public long getBorrowed() {
+		return borrowed.get();
+	}
+
+	/**
+	 * @return Número de conexiones físicas abiertas.
+	 */
+	public long getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * @return Número de conexiones físicas cerradas.
+	 */
+	public long getDestroyed() {
+		return destroyed.get();
+	}
+
+	/**
+	 * @return Número de peticiones que han agotado el tiempo de espera.
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return Número de conexiones descartadas por no superar la validación.
+	 */
+	public long getValidationFailures() {
+		return validationFailures.get();
+	}
+
+	/**
+	 * @return Tiempo medio de espera por una conexión, en microsegundos.
+	 */
+	public long getAverageWaitMicros() {
+		final long count = borrowed.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / count);
+	}
+
+	/**
+	 * @return the minSize
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * @return the maxSize
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the acquireTimeoutMillis
+	 */
+	public long getAcquireTimeoutMillis() {
+		return acquireTimeoutMillis;
+	}
+
+	/**
+	 * @param acquireTimeoutMillis
+	 *            Tiempo máximo de espera por una conexión libre.
+	 */
+	public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+		if (acquireTimeoutMillis < 0) {
+			throw new IllegalArgumentException("Acquire timeout must be 0 or more");
+		}
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+	}
+
+	/**
+	 * @return the validationIntervalMillis
+	 */
+	public long getValidationIntervalMillis() {
+		return validationIntervalMillis;
+	}
+
+	/**
+	 * @param validationIntervalMillis
+	 *            Tiempo en reposo a partir del cual una conexión se valida
+	 *            antes de prestarse. Con 0 se valida siempre.
+	 */
+	public void setValidationIntervalMillis(long validationIntervalMillis) {
+		this.validationIntervalMillis = validationIntervalMillis;
+	}
+
+	/**
+	 * @return the validationTimeoutSeconds
+	 */
+	public int getValidationTimeoutSeconds() {
+		return validationTimeoutSeconds;
+	}
+
+	/**
+	 * @param validationTimeoutSeconds
+	 *            the validationTimeoutSeconds to set
+	 */
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Pooled connections share the pool credentials");
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return logWriter;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		this.logWriter = out;
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return Logger.getLogger(ConnectionPool.class.getPackage().getName());
+	}
+
+	@Override
+	public <W> W unwrap(Class<W> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException(String.format("Not a wrapper for: %s", iface));
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ConnectionPool [minSize=" + minSize + ", maxSize=" + maxSize + ", total=" + getTotal() + ", active="
+				+ getActive() + ", idle=" + getIdle() + ", waiting=" + getWaiting() + ", borrowed=" + borrowed
+				+ ", created=" + created + ", destroyed=" + destroyed + ", timeouts=" + timeouts
+				+ ", validationFailures=" + validationFailures + "]";
+	}
+
+	/**
+	 * Conexión física del pool junto con su préstamo en curso, si lo hay.
+	 */
+	private static final class PooledConnection {
+
+		private final Connection physical;
+		private final boolean autoCommit;
+		private volatile Loan loan;
+		private volatile long lastUsed;
+
+		private PooledConnection(final Connection physical) throws SQLException {
+			this.physical = physical;
+			this.autoCommit = physical.getAutoCommit();
+			this.lastUsed = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Proxy que se entrega en un préstamo. Deja de funcionar al cerrarlo, de
+	 * modo que una referencia antigua no puede devolver ni usar la conexión
+	 * física mientras la tiene otro.
+	 */
+	private final class Loan implements InvocationHandler {
+
+		private final PooledConnection pooled;
+		private final Connection proxy;
+		private final AtomicBoolean active = new AtomicBoolean(true);
+
+		private Loan(final PooledConnection pooled) {
+			this.pooled = pooled;
+			this.proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+			final String name = method.getName();
+			if ("close".equals(name)) {
+				if (active.compareAndSet(true, false)) {
+					release(pooled);
+				}
+				return null;
+			} else if ("isClosed".equals(name)) {
+				return !active.get() || pooled.physical.isClosed();
+			} else if ("equals".equals(name)) {
+				return target == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(target);
+			} else if ("toString".equals(name)) {
+				return "Pooled[" + pooled.physical + "]";
+			} else if (!active.get()) {
+				throw new SQLException("Connection has been returned to the pool");
+			}
+			final Object result;
+			try {
+				result = method.invoke(pooled.physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+			if (result instanceof Statement && method.getReturnType().isInterface()) {
+				return new PooledStatement(this, (Statement) result, method.getReturnType()).proxy;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Sentencia de una conexión del pool cuyo {@link Statement#getConnection()}
+	 * devuelve el proxy del préstamo en curso, ya que {@link StatementCache}
+	 * la reutiliza en préstamos posteriores.
+	 */
+	private static final class PooledStatement implements InvocationHandler {
+
+		private final Loan loan;
+		private final Statement physical;
+		private final Object proxy;
+
+		private PooledStatement(final Loan loan, final Statement physical, final Class<?> type) {
+			this.loan = loan;
+			this.physical = physical;
+			this.proxy = Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[] { type }, this);
+		}
+
+		@Override
+		public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+			final String name = method.getName();
+			if ("getConnection".equals(name)) {
+				final Loan current = loan.pooled.loan;
+				return current != null ? current.proxy : loan.proxy;
+			} else if ("equals".equals(name)) {
+				return target == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(target);
+			} else if ("toString".equals(name)) {
+				return "Pooled[" + physical + "]";
+			}
+			try {
+				return method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package query.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import query.cache.StatementCache;
+
+/**
+ * Préstamos de {@link ConnectionPool} sobre H2 en memoria.
+ */
+public class ConnectionPoolTest {
+
+	private ConnectionPool pool;
+
+	@Before
+	public void setUp() throws SQLException {
+		pool = new ConnectionPool("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1", new Properties(), 0, 1);
+	}
+
+	@After
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Test
+	public void physicalConnectionIsReused() throws SQLException {
+		for (int i = 0; i < 5; i++) {
+			try (Connection connection = pool.getConnection()) {
+				connection.createStatement().execute("select 1");
+			}
+		}
+		assertEquals(1, pool.getCreated());
+		assertEquals(5, pool.getBorrowed());
+		assertEquals(0, pool.getActive());
+		assertEquals(1, pool.getIdle());
+	}
+
+	@Test
+	public void staleHandleCannotTouchTheNextLoan() throws SQLException {
+		final Connection first = pool.getConnection();
+		first.close();
+		final Connection second = pool.getConnection();
+		assertNotSame(first, second);
+
+		first.close();
+		assertEquals(1, pool.getActive());
+		assertTrue(first.isClosed());
+		try {
+			first.createStatement();
+			fail("A returned connection must not be usable");
+		} catch (SQLException e) {
+			// esperado
+		}
+		second.createStatement().execute("select 1");
+		second.close();
+		assertEquals(0, pool.getActive());
+	}
+
+	@Test
+	public void statementCacheHitsAcrossLoans() throws SQLException {
+		final StatementCache cache = new StatementCache(4);
+		pool.addStatementCache(cache);
+		PreparedStatement statement;
+		try (Connection connection = pool.getConnection()) {
+			statement = cache.acquire(connection, "select 1");
+			cache.release(connection, "select 1", statement);
+		}
+		try (Connection connection = pool.getConnection()) {
+			assertSame(statement, cache.acquire(connection, "select 1"));
+			assertSame(connection, statement.getConnection());
+		}
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+}
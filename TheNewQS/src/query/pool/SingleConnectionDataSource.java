@@ -0,0 +1,116 @@
+package query.pool;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Expone una única conexión ya abierta como {@link DataSource}, para que el
+ * código escrito contra DataSource pueda usarse con una conexión
+ * proporcionada por el llamante. Cerrar las conexiones obtenidas no cierra la
+ * conexión original.
+ *
+ * @author fferezsa
+ *
+ */
+public class SingleConnectionDataSource implements DataSource {
+
+	private final Connection connection;
+	private final Connection proxy;
+	private PrintWriter logWriter;
+
+	/**
+	 * @param connection
+	 *            Conexión que se entregará en cada {@link #getConnection()}.
+	 */
+	public SingleConnectionDataSource(final Connection connection) {
+		this.connection = connection;
+		this.proxy = (Connection) Proxy.newProxyInstance(SingleConnectionDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+						final String name = method.getName();
+						if ("close".equals(name)) {
+							return null;
+						} else if ("equals".equals(name)) {
+							return target == args[0];
+						} else if ("hashCode".equals(name)) {
+							return System.identityHashCode(target);
+						}
+						try {
+							return method.invoke(SingleConnectionDataSource.this.connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	/**
+	 * @return La conexión original envuelta para ignorar close().
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		return proxy;
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("The connection is already open");
+	}
+
+	/**
+	 * @return La conexión original.
+	 */
+	public Connection getTargetConnection() {
+		return connection;
+	}
+
+	@Override
+	public PrintWriter getLogWriter() throws SQLException {
+		return logWriter;
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		this.logWriter = out;
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		// La conexión ya está abierta.
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return Logger.getLogger(SingleConnectionDataSource.class.getPackage().getName());
+	}
+
+	@Override
+	public <W> W unwrap(Class<W> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException(String.format("Not a wrapper for: %s", iface));
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+}
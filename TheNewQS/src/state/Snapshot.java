@@ -0,0 +1,280 @@
+package state;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import dao.base.EntityMetadata;
+
+/**
+ * Fichero de {@link SnapshotStore} proyectado en memoria. Abrirlo solo lee la
+ * cabecera y, si se pide, comprueba el checksum; los registros se localizan
+ * por el índice de posiciones y sus valores se decodifican al pedirlos, de
+ * modo que leer un registro suelto no obliga a recorrer el fichero.
+ *
+ * <p>
+ * Las lecturas no modifican el buffer, por lo que varios hilos pueden leer a
+ * la vez siempre que cada uno use su propio {@link SnapshotRecord}.
+ *
+ * @author fferezsa
+ *
+ */
+public final class Snapshot implements AutoCloseable {
+
+	private final Path file;
+	private final String[] names;
+	private final SnapshotType[] types;
+	private final int size;
+	private final int indexOffset;
+	private volatile ByteBuffer buffer;
+
+	private Snapshot(final Path file, final ByteBuffer buffer) throws IOException {
+		this.file = file;
+		final int footer = buffer.capacity() - SnapshotWriter.FOOTER_BYTES;
+		if (footer < 6 || buffer.getInt(0) != SnapshotWriter.MAGIC
+				|| buffer.getInt(footer + 16) != SnapshotWriter.MAGIC) {
+			throw new IOException("Not a snapshot file: " + file);
+		}
+		this.indexOffset = (int) buffer.getLong(footer);
+		this.size = buffer.getInt(footer + 8);
+		final int count = buffer.getShort(4) & 0xFFFF;
+		this.names = new String[count];
+		this.types = new SnapshotType[count];
+		int position = 6;
+		for (int i = 0; i < count; i++) {
+			types[i] = SnapshotType.forCode(buffer.get(position++));
+			final int length = readVarint(buffer, position);
+			position += varintSize(length);
+			names[i] = decode(buffer, position, length);
+			position += length;
+		}
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Proyecta <b>file</b> en memoria.
+	 */
+	static Snapshot open(final Path file, final boolean verify) throws IOException {
+		final ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot larger than 2 GB: " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		final Snapshot snapshot = new Snapshot(file, buffer);
+		if (verify) {
+			snapshot.verify();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Recalcula el checksum del fichero.
+	 *
+	 * @throws IOException
+	 *             Si no coincide con el guardado.
+	 */
+	public void verify() throws IOException {
+		final ByteBuffer content = buffer().duplicate();
+		final int footer = content.capacity() - SnapshotWriter.FOOTER_BYTES;
+		final int expected = content.getInt(footer + 12);
+		content.position(0).limit(footer);
+		final CRC32 crc = new CRC32();
+		crc.update(content);
+		if ((int) crc.getValue() != expected) {
+			throw new IOException("Snapshot checksum mismatch: " + file);
+		}
+	}
+
+	/**
+	 * @return Número de registros.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getColumnCount() {
+		return names.length;
+	}
+
+	/**
+	 * @param column
+	 *            Columna, desde 1.
+	 */
+	public String getColumnName(final int column) {
+		return names[column - 1];
+	}
+
+	/**
+	 * @param column
+	 *            Columna, desde 1.
+	 */
+	public SnapshotType getColumnType(final int column) {
+		return types[column - 1];
+	}
+
+	/**
+	 * @return Posición de la columna, desde 1, sin distinguir mayúsculas.
+	 * @throws IllegalArgumentException
+	 *             Si no existe.
+	 */
+	public int findColumn(final String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equalsIgnoreCase(name)) {
+				return i + 1;
+			}
+		}
+		throw new IllegalArgumentException("No column named " + name);
+	}
+
+	/**
+	 * @return Vista reutilizable situada antes del primer registro.
+	 */
+	public SnapshotRecord view() {
+		return new SnapshotRecord(this);
+	}
+
+	/**
+	 * @param row
+	 *            Registro, desde 0.
+	 * @return Vista situada en el registro.
+	 */
+	public SnapshotRecord record(final int row) {
+		return view().setRow(row);
+	}
+
+	/**
+	 * Reconstruye la entidad del registro <b>row</b>, emparejando las columnas
+	 * de <b>metadata</b> con las del fichero por nombre.
+	 *
+	 * @param row
+	 *            Registro, desde 0.
+	 * @param metadata
+	 *            Descripción de la entidad.
+	 * @return Entidad.
+	 */
+	public <T> T get(final int row, final EntityMetadata<T> metadata) {
+		return read(record(row), metadata, columnsOf(metadata));
+	}
+
+	/**
+	 * Reconstruye todas las entidades del fichero.
+	 *
+	 * @see #get(int, EntityMetadata)
+	 * @param metadata
+	 *            Descripción de la entidad.
+	 * @return Entidades, en el orden en que se guardaron.
+	 */
+	public <T> List<T> toList(final EntityMetadata<T> metadata) {
+		final int[] columns = columnsOf(metadata);
+		final List<T> result = new ArrayList<T>(size);
+		final SnapshotRecord record = view();
+		while (record.next()) {
+			result.add(read(record, metadata, columns));
+		}
+		return result;
+	}
+
+	private int[] columnsOf(final EntityMetadata<?> metadata) {
+		final List<String> columnNames = metadata.getColumnNames();
+		final int[] columns = new int[columnNames.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = findColumn(columnNames.get(i));
+		}
+		return columns;
+	}
+
+	private static <T> T read(final SnapshotRecord record, final EntityMetadata<T> metadata, final int[] columns) {
+		final T bean = metadata.newInstance();
+		for (int i = 0; i < columns.length; i++) {
+			metadata.setValue(bean, i, SnapshotType.toClass(record.getObject(columns[i]), metadata.getType(i)));
+		}
+		return bean;
+	}
+
+	/**
+	 * @return Bytes del fichero.
+	 */
+	public long getFileBytes() {
+		return buffer().capacity();
+	}
+
+	/**
+	 * Suelta la proyección. La memoria se libera cuando el recolector descarta
+	 * el buffer, ya que Java 8 no permite liberarla explícitamente.
+	 */
+	@Override
+	public void close() {
+		buffer = null;
+	}
+
+	ByteBuffer buffer() {
+		final ByteBuffer current = buffer;
+		if (current == null) {
+			throw new IllegalStateException("Snapshot is closed: " + file);
+		}
+		return current;
+	}
+
+	SnapshotType type(final int index) {
+		return types[index];
+	}
+
+	/**
+	 * @return Posición del primer byte del registro.
+	 */
+	int start(final int row) {
+		return buffer().getInt(indexOffset + (row << 2));
+	}
+
+	static int readVarint(final ByteBuffer buffer, int position) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(position++);
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	static int varintSize(final int value) {
+		int size = 1;
+		for (int rest = value >>> 7; rest != 0; rest >>>= 7) {
+			size++;
+		}
+		return size;
+	}
+
+	static byte[] bytes(final ByteBuffer buffer, final int position, final int length) {
+		final ByteBuffer source = buffer.duplicate();
+		source.position(position);
+		final byte[] bytes = new byte[length];
+		source.get(bytes);
+		return bytes;
+	}
+
+	static String decode(final ByteBuffer buffer, final int position, final int length) {
+		return new String(bytes(buffer, position, length), StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Snapshot [file=" + file + ", size=" + size + ", columns=" + names.length + ", open="
+				+ (buffer != null) + "]";
+	}
+
+}
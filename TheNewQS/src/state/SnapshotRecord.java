@@ -0,0 +1,299 @@
+package state;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Vista sobre un registro de un {@link Snapshot} que se desplaza sin crear
+ * objetos. Al pedir el primer valor de un registro se localizan las
+ * posiciones de sus columnas, saltando los valores sin decodificarlos; cada
+ * valor se decodifica solo cuando se pide. Las columnas se numeran desde 1 y
+ * los nulos devuelven 0, false o null como en JDBC.
+ *
+ * @author fferezsa
+ *
+ */
+public final class SnapshotRecord {
+
+	private final Snapshot snapshot;
+	private final int[] positions;
+	private final int nullBytes;
+	private int row = -1;
+	private int located = -1;
+
+	SnapshotRecord(final Snapshot snapshot) {
+		this.snapshot = snapshot;
+		this.positions = new int[snapshot.getColumnCount()];
+		this.nullBytes = (positions.length + 7) >> 3;
+	}
+
+	/**
+	 * Avanza al siguiente registro.
+	 *
+	 * @return Si existe.
+	 */
+	public boolean next() {
+		if (row + 1 >= snapshot.size()) {
+			row = snapshot.size();
+			return false;
+		}
+		row++;
+		return true;
+	}
+
+	/**
+	 * @return Registro actual, desde 0.
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * Sitúa la vista en un registro concreto.
+	 *
+	 * @param row
+	 *            Registro, desde 0.
+	 * @return Esta misma vista.
+	 */
+	public SnapshotRecord setRow(final int row) {
+		if (row < 0 || row >= snapshot.size()) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + snapshot.size());
+		}
+		this.row = row;
+		return this;
+	}
+
+	/**
+	 * @return Posición del valor de la columna, -1 si es nulo.
+	 */
+	private int position(final int column) {
+		if (located != row) {
+			locate();
+		}
+		return positions[column - 1];
+	}
+
+	private void locate() {
+		if (row < 0 || row >= snapshot.size()) {
+			throw new IllegalStateException("No current row");
+		}
+		final ByteBuffer buffer = snapshot.buffer();
+		final int start = snapshot.start(row);
+		int position = start + nullBytes;
+		for (int i = 0; i < positions.length; i++) {
+			if ((buffer.get(start + (i >> 3)) & (1 << (i & 7))) != 0) {
+				positions[i] = -1;
+				continue;
+			}
+			positions[i] = position;
+			final int width = snapshot.type(i).width;
+			if (width > 0) {
+				position += width;
+			} else {
+				final int length = Snapshot.readVarint(buffer, position);
+				position += Snapshot.varintSize(length) + length;
+			}
+		}
+		located = row;
+	}
+
+	public boolean isNull(final int column) {
+		return position(column) < 0;
+	}
+
+	public long getLong(final int column) {
+		final int position = position(column);
+		if (position < 0) {
+			return 0;
+		}
+		switch (snapshot.type(column - 1)) {
+		case LONG:
+		case DATE:
+		case TIME:
+		case TIMESTAMP:
+		case DATETIME:
+			return snapshot.buffer().getLong(position);
+		case INT:
+			return snapshot.buffer().getInt(position);
+		case DOUBLE:
+			return (long) snapshot.buffer().getDouble(position);
+		default:
+			throw unsupported(column, "long");
+		}
+	}
+
+	public long getLong(final String column) {
+		return getLong(snapshot.findColumn(column));
+	}
+
+	public int getInt(final int column) {
+		return (int) getLong(column);
+	}
+
+	public int getInt(final String column) {
+		return getInt(snapshot.findColumn(column));
+	}
+
+	public double getDouble(final int column) {
+		final int position = position(column);
+		if (position < 0) {
+			return 0;
+		}
+		switch (snapshot.type(column - 1)) {
+		case DOUBLE:
+			return snapshot.buffer().getDouble(position);
+		case DECIMAL:
+			return getBigDecimal(column).doubleValue();
+		default:
+			return getLong(column);
+		}
+	}
+
+	public double getDouble(final String column) {
+		return getDouble(snapshot.findColumn(column));
+	}
+
+	public boolean getBoolean(final int column) {
+		final int position = position(column);
+		if (position < 0) {
+			return false;
+		}
+		if (snapshot.type(column - 1) != SnapshotType.BOOLEAN) {
+			throw unsupported(column, "boolean");
+		}
+		return snapshot.buffer().get(position) != 0;
+	}
+
+	public boolean getBoolean(final String column) {
+		return getBoolean(snapshot.findColumn(column));
+	}
+
+	public BigDecimal getBigDecimal(final int column) {
+		final int position = position(column);
+		if (position < 0) {
+			return null;
+		}
+		switch (snapshot.type(column - 1)) {
+		case DECIMAL:
+			return new BigDecimal(text(position));
+		case DOUBLE:
+			return BigDecimal.valueOf(getDouble(column));
+		default:
+			return BigDecimal.valueOf(getLong(column));
+		}
+	}
+
+	public BigDecimal getBigDecimal(final String column) {
+		return getBigDecimal(snapshot.findColumn(column));
+	}
+
+	public String getString(final int column) {
+		final int position = position(column);
+		if (position < 0) {
+			return null;
+		}
+		switch (snapshot.type(column - 1)) {
+		case STRING:
+		case DECIMAL:
+			return text(position);
+		default:
+			return String.valueOf(getObject(column));
+		}
+	}
+
+	public String getString(final String column) {
+		return getString(snapshot.findColumn(column));
+	}
+
+	public byte[] getBytes(final int column) {
+		final int position = position(column);
+		if (position < 0) {
+			return null;
+		}
+		if (snapshot.type(column - 1) != SnapshotType.BYTES) {
+			throw unsupported(column, "bytes");
+		}
+		final ByteBuffer buffer = snapshot.buffer();
+		final int length = Snapshot.readVarint(buffer, position);
+		return Snapshot.bytes(buffer, position + Snapshot.varintSize(length), length);
+	}
+
+	public byte[] getBytes(final String column) {
+		return getBytes(snapshot.findColumn(column));
+	}
+
+	/**
+	 * @return Valor de la columna con la clase con la que se guardó.
+	 */
+	public Object getObject(final int column) {
+		final int position = position(column);
+		if (position < 0) {
+			return null;
+		}
+		final ByteBuffer buffer = snapshot.buffer();
+		switch (snapshot.type(column - 1)) {
+		case LONG:
+			return Long.valueOf(buffer.getLong(position));
+		case INT:
+			return Integer.valueOf(buffer.getInt(position));
+		case DOUBLE:
+			return Double.valueOf(buffer.getDouble(position));
+		case DECIMAL:
+			return getBigDecimal(column);
+		case DATE:
+			return new java.sql.Date(buffer.getLong(position));
+		case TIME:
+			return new Time(buffer.getLong(position));
+		case TIMESTAMP:
+			final Timestamp timestamp = new Timestamp(buffer.getLong(position));
+			timestamp.setNanos(buffer.getInt(position + 8));
+			return timestamp;
+		case DATETIME:
+			return new Date(buffer.getLong(position));
+		case BOOLEAN:
+			return Boolean.valueOf(buffer.get(position) != 0);
+		case BYTES:
+			return getBytes(column);
+		default:
+			return text(position);
+		}
+	}
+
+	public Object getObject(final String column) {
+		return getObject(snapshot.findColumn(column));
+	}
+
+	private String text(final int position) {
+		final ByteBuffer buffer = snapshot.buffer();
+		final int length = Snapshot.readVarint(buffer, position);
+		return Snapshot.decode(buffer, position + Snapshot.varintSize(length), length);
+	}
+
+	private UnsupportedOperationException unsupported(final int column, final String kind) {
+		return new UnsupportedOperationException(String.format("Column %s of type %s cannot be read as %s",
+				snapshot.getColumnName(column), snapshot.getColumnType(column), kind));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("SnapshotRecord [row=").append(row);
+		if (row >= 0 && row < snapshot.size()) {
+			for (int column = 1; column <= snapshot.getColumnCount(); column++) {
+				final Object value = getObject(column);
+				sb.append(", ").append(snapshot.getColumnName(column)).append('=')
+						.append(value instanceof byte[] ? Arrays.toString((byte[]) value) : value);
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+}
@@ -0,0 +1,278 @@
+package state;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import dao.base.EntityMetadata;
+
+/**
+ * Guarda resultados de consultas y entidades en ficheros binarios que se
+ * vuelven a cargar proyectándolos en memoria, sin deserializar nada hasta que
+ * se lee. Sustituye a {@link StateStorage}.
+ *
+ * <p>
+ * Formato, big-endian:
+ *
+ * <pre>
+ * cabecera:  "QSS1", nº de columnas (short) y por columna tipo (byte) y nombre (varint + UTF-8)
+ * registros: mapa de nulos (1 bit por columna) y valores no nulos
+ * índice:    posición de cada registro (int)
+ * pie:       posición del índice (long), nº de registros (int), CRC32 de todo lo anterior (int) y "QSS1"
+ * </pre>
+ *
+ * Los valores ocupan lo indicado por {@link SnapshotType#getWidth()}; los de
+ * longitud variable llevan delante su longitud en varint. Los ficheros están
+ * limitados a 2 GB, el máximo que puede proyectarse de una vez.
+ *
+ * @author fferezsa
+ *
+ */
+public final class SnapshotStore {
+
+	private SnapshotStore() {
+	}
+
+	/**
+	 * Guarda las filas restantes de <b>rs</b>, con los tipos de columna de sus
+	 * metadatos. No cierra el {@link ResultSet}.
+	 *
+	 * @param file
+	 *            Fichero de destino, que se sustituye al terminar.
+	 * @param rs
+	 *            Resultado a guardar.
+	 * @return Número de registros.
+	 * @throws SQLException
+	 *             Si falla la lectura del resultado.
+	 * @throws IOException
+	 *             Si falla la escritura.
+	 */
+	public static int write(final Path file, final ResultSet rs) throws SQLException, IOException {
+		final ResultSetMetaData meta = rs.getMetaData();
+		final String[] names = new String[meta.getColumnCount()];
+		final SnapshotType[] types = new SnapshotType[names.length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = meta.getColumnLabel(i + 1);
+			types[i] = SnapshotType.forSqlType(meta.getColumnType(i + 1), meta.isSigned(i + 1));
+		}
+		try (SnapshotWriter writer = new SnapshotWriter(file, names, types)) {
+			final SnapshotWriter.RowEncoder<SQLException> encoder = out -> {
+				for (int i = 0; i < types.length; i++) {
+					encode(out, i, types[i], rs);
+				}
+			};
+			while (rs.next()) {
+				writer.append(encoder);
+			}
+			return writer.finish();
+		}
+	}
+
+	/**
+	 * Guarda <b>beans</b> con las columnas de <b>metadata</b>, cada una con el
+	 * tipo declarado de su propiedad. Short y Byte se guardan como INT, Float
+	 * como DOUBLE, BigInteger como DECIMAL, Character y los enumerados (por su
+	 * nombre) como texto y los tipos de java.time como sus equivalentes de
+	 * java.sql; {@link Snapshot#toList(EntityMetadata)} los devuelve a su tipo
+	 * declarado.
+	 *
+	 * @param file
+	 *            Fichero de destino, que se sustituye al terminar.
+	 * @param metadata
+	 *            Descripción de la entidad.
+	 * @param beans
+	 *            Entidades a guardar.
+	 * @return Número de registros.
+	 * @throws IOException
+	 *             Si falla la escritura.
+	 * @throws IllegalArgumentException
+	 *             Si una columna es de un tipo que no puede guardarse.
+	 */
+	public static <T> int write(final Path file, final EntityMetadata<T> metadata,
+			final Collection<? extends T> beans) throws IOException {
+		final List<String> columnNames = metadata.getColumnNames();
+		final String[] names = columnNames.toArray(new String[columnNames.size()]);
+		final SnapshotType[] types = new SnapshotType[names.length];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = SnapshotType.forClass(metadata.getType(i));
+			if (types[i] == null) {
+				throw new IllegalArgumentException(String.format("Unsupported snapshot type %s for column %s",
+						metadata.getType(i).getName(), names[i]));
+			}
+		}
+		try (SnapshotWriter writer = new SnapshotWriter(file, names, types)) {
+			for (final T bean : beans) {
+				writer.append(out -> {
+					for (int i = 0; i < types.length; i++) {
+						encode(out, i, types[i], metadata.getValue(bean, i));
+					}
+				});
+			}
+			return writer.finish();
+		}
+	}
+
+	/**
+	 * Abre un fichero comprobando su checksum.
+	 *
+	 * @see #open(Path, boolean)
+	 */
+	public static Snapshot open(final Path file) throws IOException {
+		return open(file, true);
+	}
+
+	/**
+	 * Proyecta un fichero en memoria. Sin la comprobación del checksum abrirlo
+	 * cuesta lo mismo sea cual sea su tamaño; con ella se lee completo una vez.
+	 *
+	 * @param file
+	 *            Fichero generado con alguno de los métodos write.
+	 * @param verify
+	 *            Si se comprueba el checksum.
+	 * @return Fichero abierto.
+	 * @throws IOException
+	 *             Si no puede leerse, no es un fichero de snapshot o el
+	 *             checksum no coincide.
+	 */
+	public static Snapshot open(final Path file, final boolean verify) throws IOException {
+		return Snapshot.open(file, verify);
+	}
+
+	private static void encode(final SnapshotWriter out, final int index, final SnapshotType type, final ResultSet rs)
+			throws SQLException {
+		final int column = index + 1;
+		switch (type) {
+		case LONG:
+			final long longValue = rs.getLong(column);
+			if (rs.wasNull()) {
+				out.setNull(index);
+			} else {
+				out.putLong(longValue);
+			}
+			break;
+		case INT:
+			final int intValue = rs.getInt(column);
+			if (rs.wasNull()) {
+				out.setNull(index);
+			} else {
+				out.putInt(intValue);
+			}
+			break;
+		case DOUBLE:
+			final double doubleValue = rs.getDouble(column);
+			if (rs.wasNull()) {
+				out.setNull(index);
+			} else {
+				out.putDouble(doubleValue);
+			}
+			break;
+		case BOOLEAN:
+			final boolean booleanValue = rs.getBoolean(column);
+			if (rs.wasNull()) {
+				out.setNull(index);
+			} else {
+				out.putBoolean(booleanValue);
+			}
+			break;
+		case DATE:
+		case TIME:
+			final Date date = type == SnapshotType.DATE ? rs.getDate(column) : rs.getTime(column);
+			if (date == null) {
+				out.setNull(index);
+			} else {
+				out.putLong(date.getTime());
+			}
+			break;
+		case TIMESTAMP:
+			final Timestamp timestamp = rs.getTimestamp(column);
+			if (timestamp == null) {
+				out.setNull(index);
+			} else {
+				out.putTimestamp(timestamp.getTime(), timestamp.getNanos());
+			}
+			break;
+		case DECIMAL:
+			final BigDecimal decimal = rs.getBigDecimal(column);
+			if (decimal == null) {
+				out.setNull(index);
+			} else {
+				out.putDecimal(decimal);
+			}
+			break;
+		case BYTES:
+			final byte[] bytes = rs.getBytes(column);
+			if (bytes == null) {
+				out.setNull(index);
+			} else {
+				out.putBytes(bytes);
+			}
+			break;
+		default:
+			final String text = rs.getString(column);
+			if (text == null) {
+				out.setNull(index);
+			} else {
+				out.putString(text);
+			}
+		}
+	}
+
+	private static void encode(final SnapshotWriter out, final int index, final SnapshotType type,
+			final Object value) {
+		if (value == null) {
+			out.setNull(index);
+			return;
+		}
+		switch (type) {
+		case LONG:
+			out.putLong(((Number) value).longValue());
+			break;
+		case INT:
+			out.putInt(((Number) value).intValue());
+			break;
+		case DOUBLE:
+			out.putDouble(((Number) value).doubleValue());
+			break;
+		case BOOLEAN:
+			out.putBoolean(((Boolean) value).booleanValue());
+			break;
+		case DATE:
+			out.putLong(value instanceof LocalDate ? java.sql.Date.valueOf((LocalDate) value).getTime()
+					: ((Date) value).getTime());
+			break;
+		case TIME:
+			out.putLong(value instanceof LocalTime ? Time.valueOf((LocalTime) value).getTime()
+					: ((Date) value).getTime());
+			break;
+		case DATETIME:
+			out.putLong(((Date) value).getTime());
+			break;
+		case TIMESTAMP:
+			final Timestamp timestamp = value instanceof LocalDateTime ? Timestamp.valueOf((LocalDateTime) value)
+					: (Timestamp) value;
+			out.putTimestamp(timestamp.getTime(), timestamp.getNanos());
+			break;
+		case DECIMAL:
+			out.putDecimal(value instanceof BigInteger ? new BigDecimal((BigInteger) value) : (BigDecimal) value);
+			break;
+		case BYTES:
+			out.putBytes((byte[]) value);
+			break;
+		default:
+			out.putString(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+		}
+	}
+
+}
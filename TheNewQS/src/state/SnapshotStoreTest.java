@@ -0,0 +1,82 @@
+package state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Ida y vuelta de un resultado de H2 por {@link SnapshotStore}.
+ */
+public class SnapshotStoreTest {
+
+	private Connection connection;
+	private Path file;
+
+	@Before
+	public void setUp() throws Exception {
+		connection = DriverManager.getConnection("jdbc:h2:mem:snapshot");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("create table t (id bigint primary key, name varchar(20), amount decimal(10, 2),"
+					+ " active boolean)");
+			statement.execute("insert into t values (1, 'a', 10.50, true), (2, null, null, false)");
+		}
+		file = Files.createTempFile("snapshot", ".qss");
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("select * from t order by id")) {
+			assertEquals(2, SnapshotStore.write(file, rs));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+		connection.close();
+	}
+
+	@Test
+	public void valuesRoundTrip() throws IOException {
+		try (Snapshot snapshot = SnapshotStore.open(file)) {
+			assertEquals(2, snapshot.size());
+			assertEquals(4, snapshot.getColumnCount());
+			final SnapshotRecord first = snapshot.record(0);
+			assertEquals(1L, first.getLong("ID"));
+			assertEquals("a", first.getString("NAME"));
+			assertEquals(new BigDecimal("10.50"), first.getBigDecimal("AMOUNT"));
+			assertTrue(first.getBoolean("ACTIVE"));
+			final SnapshotRecord second = snapshot.record(1);
+			assertTrue(second.isNull(snapshot.findColumn("name")));
+			assertTrue(second.isNull(snapshot.findColumn("amount")));
+		}
+	}
+
+	@Test
+	public void corruptedFileIsRejected() throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			final long middle = raf.length() / 2;
+			raf.seek(middle);
+			final int value = raf.read();
+			raf.seek(middle);
+			raf.write(value ^ 0xFF);
+		}
+		try (Snapshot snapshot = SnapshotStore.open(file)) {
+			fail("A corrupted snapshot must not open: " + snapshot);
+		} catch (IOException e) {
+			// esperado
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package state;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Date;
+
+/**
+ * Tipos de columna de un fichero de {@link SnapshotStore}. Los códigos de 1 a
+ * 10 coinciden con los de {@link query.export.ResultExporter}.
+ *
+ * @author fferezsa
+ *
+ */
+public enum SnapshotType {
+
+	LONG(1, 8), INT(2, 4), DOUBLE(3, 8), DECIMAL(4, -1), DATE(5, 8), TIME(6, 8),
+	/**
+	 * Milisegundos (long) y nanosegundos (int), para no perder precisión.
+	 */
+	TIMESTAMP(7, 12), STRING(8, -1), BOOLEAN(9, 1), BYTES(10, -1),
+	/**
+	 * {@link java.util.Date} que no es de ninguno de los tipos de java.sql.
+	 */
+	DATETIME(11, 8);
+
+	private static final SnapshotType[] BY_CODE = new SnapshotType[12];
+
+	static {
+		for (final SnapshotType type : values()) {
+			BY_CODE[type.code] = type;
+		}
+	}
+
+	final byte code;
+	final int width;
+
+	private SnapshotType(final int code, final int width) {
+		this.code = (byte) code;
+		this.width = width;
+	}
+
+	/**
+	 * @return Bytes que ocupa cada valor, -1 si se guarda con su longitud
+	 *         delante.
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	static SnapshotType forCode(final byte code) {
+		final SnapshotType type = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+		if (type == null) {
+			throw new IllegalArgumentException("Unknown snapshot column type: " + code);
+		}
+		return type;
+	}
+
+	/**
+	 * Tipo con el que se guarda una columna de un {@link java.sql.ResultSet}.
+	 */
+	static SnapshotType forSqlType(final int sqlType, final boolean signed) {
+		switch (sqlType) {
+		case Types.BIGINT:
+			return LONG;
+		case Types.INTEGER:
+			return signed ? INT : LONG;
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return INT;
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return BOOLEAN;
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+			return DOUBLE;
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return DECIMAL;
+		case Types.DATE:
+			return DATE;
+		case Types.TIME:
+			return TIME;
+		case Types.TIMESTAMP:
+			return TIMESTAMP;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			return BYTES;
+		default:
+			return STRING;
+		}
+	}
+
+	/**
+	 * Tipo con el que se guarda una propiedad de una entidad declarada como
+	 * <b>clazz</b>, o null si no tiene ninguno.
+	 */
+	static SnapshotType forClass(final Class<?> clazz) {
+		if (clazz == Long.class || clazz == long.class) {
+			return LONG;
+		} else if (clazz == Integer.class || clazz == int.class || clazz == Short.class || clazz == short.class
+				|| clazz == Byte.class || clazz == byte.class) {
+			return INT;
+		} else if (clazz == Double.class || clazz == double.class || clazz == Float.class || clazz == float.class) {
+			return DOUBLE;
+		} else if (clazz == BigDecimal.class || clazz == BigInteger.class) {
+			return DECIMAL;
+		} else if (clazz == String.class || clazz == Character.class || clazz == char.class || clazz.isEnum()) {
+			return STRING;
+		} else if (clazz == Boolean.class || clazz == boolean.class) {
+			return BOOLEAN;
+		} else if (clazz == byte[].class) {
+			return BYTES;
+		} else if (clazz == java.sql.Date.class || clazz == LocalDate.class) {
+			return DATE;
+		} else if (clazz == Time.class || clazz == LocalTime.class) {
+			return TIME;
+		} else if (clazz == Timestamp.class || clazz == LocalDateTime.class) {
+			return TIMESTAMP;
+		} else if (clazz == Date.class) {
+			return DATETIME;
+		}
+		return null;
+	}
+
+	/**
+	 * Convierte un valor leído con {@link SnapshotRecord#getObject(int)} a la
+	 * clase <b>clazz</b> con la que se declaró la propiedad.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Object toClass(final Object value, final Class<?> clazz) {
+		if (value == null || clazz.isInstance(value)) {
+			return value;
+		} else if (clazz == Short.class || clazz == short.class) {
+			return Short.valueOf(((Number) value).shortValue());
+		} else if (clazz == Byte.class || clazz == byte.class) {
+			return Byte.valueOf(((Number) value).byteValue());
+		} else if (clazz == Float.class || clazz == float.class) {
+			return Float.valueOf(((Number) value).floatValue());
+		} else if (clazz == BigInteger.class) {
+			return ((BigDecimal) value).toBigInteger();
+		} else if (clazz == Character.class || clazz == char.class) {
+			final String text = (String) value;
+			return text.isEmpty() ? null : Character.valueOf(text.charAt(0));
+		} else if (clazz.isEnum()) {
+			return Enum.valueOf((Class) clazz, (String) value);
+		} else if (clazz == LocalDate.class) {
+			return ((java.sql.Date) value).toLocalDate();
+		} else if (clazz == LocalTime.class) {
+			return ((Time) value).toLocalTime();
+		} else if (clazz == LocalDateTime.class) {
+			return ((Timestamp) value).toLocalDateTime();
+		}
+		// Primitivos: el valor ya es su envoltorio
+		return value;
+	}
+
+}
@@ -0,0 +1,213 @@
+package state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Escribe un fichero de {@link SnapshotStore} a través de un buffer directo
+ * reutilizable. El fichero se genera con otro nombre y sustituye al destino
+ * solo al terminar, de modo que nunca queda a medias.
+ *
+ * @author fferezsa
+ *
+ */
+final class SnapshotWriter implements Closeable {
+
+	static final int MAGIC = 0x51535331; // QSS1
+	static final int FOOTER_BYTES = 20;
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final Path file;
+	private final Path temporary;
+	private final FileChannel channel;
+	private final CRC32 crc = new CRC32();
+	private final int nullBytes;
+	private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long flushed;
+	private int[] offsets = new int[1024];
+	private int rows;
+	private int nulls;
+	private boolean finished;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             Si hay más columnas de las que caben en la cabecera.
+	 */
+	SnapshotWriter(final Path file, final String[] names, final SnapshotType[] types) throws IOException {
+		if (types.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many snapshot columns: " + types.length);
+		}
+		this.file = file;
+		this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.nullBytes = (types.length + 7) >> 3;
+		// Aún no se ha vaciado nada: si la cabecera no cabe se repite entera
+		while (true) {
+			try {
+				out.putInt(MAGIC).putShort((short) types.length);
+				for (int i = 0; i < types.length; i++) {
+					out.put(types[i].code);
+					putBytes(names[i].getBytes(StandardCharsets.UTF_8));
+				}
+				break;
+			} catch (BufferOverflowException e) {
+				out = ByteBuffer.allocateDirect(out.capacity() * 2);
+			}
+		}
+	}
+
+	/**
+	 * Añade un registro. Si no cabe en el buffer se vacía éste y se vuelve a
+	 * codificar, duplicando el buffer si tampoco cabe en uno vacío.
+	 */
+	<E extends Exception> void append(final RowEncoder<E> encoder) throws IOException, E {
+		if (rows == offsets.length) {
+			offsets = Arrays.copyOf(offsets, rows * 2);
+		}
+		final int start = out.position();
+		try {
+			encode(encoder);
+		} catch (BufferOverflowException e) {
+			out.position(start);
+			flush();
+			while (true) {
+				try {
+					encode(encoder);
+					break;
+				} catch (BufferOverflowException retry) {
+					out = ByteBuffer.allocateDirect(out.capacity() * 2);
+				}
+			}
+		}
+		rows++;
+	}
+
+	private <E extends Exception> void encode(final RowEncoder<E> encoder) throws IOException, E {
+		final long offset = flushed + out.position();
+		if (offset > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot larger than 2 GB: " + file);
+		}
+		offsets[rows] = (int) offset;
+		nulls = out.position();
+		for (int i = 0; i < nullBytes; i++) {
+			out.put((byte) 0);
+		}
+		encoder.encode(this);
+	}
+
+	/**
+	 * Escribe el índice y el pie, y sustituye el fichero de destino.
+	 *
+	 * @return Número de registros.
+	 */
+	int finish() throws IOException {
+		final long indexOffset = flushed + out.position();
+		for (int i = 0; i < rows; i++) {
+			if (out.remaining() < 4) {
+				flush();
+			}
+			out.putInt(offsets[i]);
+		}
+		flush();
+		out.putLong(indexOffset).putInt(rows).putInt((int) crc.getValue()).putInt(MAGIC);
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		channel.force(false);
+		channel.close();
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		finished = true;
+		return rows;
+	}
+
+	private void flush() throws IOException {
+		out.flip();
+		crc.update(out.duplicate());
+		while (out.hasRemaining()) {
+			flushed += channel.write(out);
+		}
+		out.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!finished) {
+			channel.close();
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Marca como nula la columna <b>column</b>, desde 0, del registro actual.
+	 */
+	void setNull(final int column) {
+		final int index = nulls + (column >> 3);
+		out.put(index, (byte) (out.get(index) | (1 << (column & 7))));
+	}
+
+	void putLong(final long value) {
+		out.putLong(value);
+	}
+
+	void putInt(final int value) {
+		out.putInt(value);
+	}
+
+	void putDouble(final double value) {
+		out.putDouble(value);
+	}
+
+	void putBoolean(final boolean value) {
+		out.put((byte) (value ? 1 : 0));
+	}
+
+	void putTimestamp(final long millis, final int nanos) {
+		out.putLong(millis).putInt(nanos);
+	}
+
+	void putDecimal(final BigDecimal value) {
+		putString(value.toString());
+	}
+
+	void putString(final String value) {
+		putBytes(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	void putBytes(final byte[] value) {
+		int length = value.length;
+		while ((length & ~0x7F) != 0) {
+			out.put((byte) ((length & 0x7F) | 0x80));
+			length >>>= 7;
+		}
+		out.put((byte) length);
+		out.put(value);
+	}
+
+	/**
+	 * Codificación de los valores de un registro, en orden de columna y
+	 * omitiendo los nulos.
+	 *
+	 * @param <E>
+	 *            Excepción que puede lanzar al obtener los valores, por ejemplo
+	 *            {@link java.sql.SQLException} al leerlos de un resultado.
+	 */
+	interface RowEncoder<E extends Exception> {
+
+		void encode(SnapshotWriter writer) throws E;
+	}
+
+}
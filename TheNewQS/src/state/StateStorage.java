@@ -6,6 +6,12 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
+/**
+ * Serialización de objetos a ficheros <code>&lt;millis&gt;.data</code>.
+ *
+ * @deprecated Lento, ocupa mucho y obliga a leer el fichero entero. Usar
+ *             {@link SnapshotStore}.
+ */
 @Deprecated
 public class StateStorage {
 
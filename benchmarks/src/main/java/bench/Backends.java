@@ -0,0 +1,57 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Conexiones contra las que se lanzan las mediciones.
+ *
+ * <ul>
+ * <li><b>stub</b>: {@link StubDriver}, mide solo el coste de la librería.</li>
+ * <li><b>h2</b>: H2 en memoria con la tabla ALIANZA cargada, añade el coste
+ * de un driver y un motor reales sin red.</li>
+ * </ul>
+ *
+ * @author fferezsa
+ *
+ */
+public final class Backends {
+
+	public static final String STUB = "stub";
+	public static final String H2 = "h2";
+
+	private Backends() {
+	}
+
+	/**
+	 * @param backend
+	 *            {@link #STUB} o {@link #H2}.
+	 * @param rows
+	 *            Filas de la tabla ALIANZA, o de cada resultado con
+	 *            {@link #STUB}.
+	 * @return Conexión abierta.
+	 * @throws SQLException
+	 *             Si no se puede crear la BBDD.
+	 */
+	public static Connection open(final String backend, final int rows) throws SQLException {
+		if (STUB.equals(backend)) {
+			StubDriver.register();
+			return DriverManager.getConnection(StubDriver.url(rows));
+		} else if (H2.equals(backend)) {
+			final Connection connection = DriverManager.getConnection("jdbc:h2:mem:bench" + rows
+					+ ";DB_CLOSE_DELAY=-1");
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE IF NOT EXISTS ALIANZA (ID BIGINT PRIMARY KEY,"
+						+ " NOMBRE VARCHAR(64), FECHA_INSERCION DATE)");
+				statement.execute("DELETE FROM ALIANZA");
+				statement.execute("INSERT INTO ALIANZA SELECT X, 'alianza' || X, DATE '2017-07-14'"
+						+ " FROM SYSTEM_RANGE(1, " + rows + ")");
+			}
+			return connection;
+		}
+		throw new IllegalArgumentException(String.format("Unknown backend: %s", backend));
+	}
+
+}
@@ -0,0 +1,86 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dto.Alianza;
+import query.bind.BinderCache;
+
+/**
+ * Coste de añadir los parámetros de una fila de ALIANZA a la sentencia, sobre
+ * el {@link StubDriver}.
+ *
+ * @author fferezsa
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BindingBenchmark {
+
+	private static final String INSERT = "INSERT INTO ALIANZA(ID, NOMBRE, FECHA_INSERCION) VALUES (?, ?, ?)";
+
+	private Connection connection;
+	private PreparedStatement statement;
+	private ExposedQuery<Alianza> parametrized;
+	private BinderCache binderCache;
+	private Object[] params;
+	private Alianza alianza;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		connection = Backends.open(Backends.STUB, 1);
+		statement = connection.prepareStatement(INSERT);
+		final Date date = new Date(1_500_000_000_000L);
+		params = new Object[] { 1L, "alianza1", date };
+		parametrized = new ExposedQuery<Alianza>(Alianza.class, connection, INSERT, params);
+		binderCache = new BinderCache();
+		alianza = new Alianza();
+		alianza.setId(1L);
+		alianza.setNombre("alianza1");
+		alianza.setFechaInsercion(date);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public PreparedStatement addParametersToStatement() throws SQLException {
+		parametrized.bind(statement);
+		return statement;
+	}
+
+	@Benchmark
+	public PreparedStatement binderCache() throws SQLException {
+		binderCache.bind(statement, params);
+		return statement;
+	}
+
+	@Benchmark
+	public PreparedStatement persistable() throws SQLException {
+		alianza.addParametersToStatement(statement);
+		return statement;
+	}
+
+}
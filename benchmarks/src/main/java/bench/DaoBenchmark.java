@@ -0,0 +1,92 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dao.base.DaoException;
+import dao.impl.AlianzaDao;
+import dto.Alianza;
+import query.cache.StatementCache;
+
+/**
+ * Operaciones CRUD de {@link AlianzaDao} sobre una única conexión, con y sin
+ * caché de sentencias.
+ *
+ * @author fferezsa
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DaoBenchmark {
+
+	private static final int ROWS = 100;
+
+	@Param({ Backends.STUB, Backends.H2 })
+	public String backend;
+
+	@Param({ "false", "true" })
+	public boolean statementCache;
+
+	private Connection connection;
+	private AlianzaDao dao;
+	private Alianza existing;
+	private Alianza fresh;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		connection = Backends.open(backend, ROWS);
+		dao = new AlianzaDao(connection);
+		if (statementCache) {
+			dao.setStatementCache(new StatementCache(16));
+		}
+		existing = new Alianza();
+		existing.setId(ROWS / 2L);
+		existing.setNombre("alianza");
+		existing.setFechaInsercion(new Date(1_500_000_000_000L));
+		fresh = new Alianza();
+		fresh.setId(ROWS + 1L);
+		fresh.setNombre("nueva");
+		fresh.setFechaInsercion(new Date(1_500_000_000_000L));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public Alianza findById() throws DaoException {
+		return dao.findById(existing);
+	}
+
+	@Benchmark
+	public int update() throws DaoException {
+		return dao.update(existing);
+	}
+
+	@Benchmark
+	public int insertAndDelete() throws DaoException {
+		return dao.insert(fresh) + dao.delete(fresh);
+	}
+
+}
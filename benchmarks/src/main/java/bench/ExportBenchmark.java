@@ -0,0 +1,100 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dto.Alianza;
+import query.ParametrizedQuery;
+import query.cache.StatementCache;
+import query.export.ExportFormat;
+import query.export.ResultExporter;
+
+/**
+ * {@link ParametrizedQuery#export(Path, ResultExporter)} frente a traducir
+ * las filas y escribirlas como texto con un {@link BufferedWriter}.
+ *
+ * @author fferezsa
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+
+	private static final String QUERY = "SELECT * FROM ALIANZA ali WHERE ID <= ?";
+
+	@Param({ Backends.STUB, Backends.H2 })
+	public String backend;
+
+	@Param({ "1000", "10000" })
+	public int rows;
+
+	private Connection connection;
+	private ParametrizedQuery<Alianza> query;
+	private ResultExporter csv;
+	private ResultExporter binary;
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException, IOException {
+		connection = Backends.open(backend, rows);
+		query = ParametrizedQuery.forMapper(connection, QUERY, Alianza.MAPPER, Long.valueOf(rows));
+		query.setStatementCache(new StatementCache(16));
+		csv = new ResultExporter(ExportFormat.CSV);
+		binary = new ResultExporter(ExportFormat.BINARY);
+		file = Files.createTempFile("export", ".bench");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException, IOException {
+		connection.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long writerCsv() throws SQLException, IOException {
+		long count = 0;
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (Alianza alianza : query.select()) {
+				writer.write(alianza.getId() + "," + alianza.getNombre() + "," + alianza.getFechaInsercion() + "\n");
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public long exportCsv() throws SQLException, IOException {
+		return query.export(file, csv);
+	}
+
+	@Benchmark
+	public long exportBinary() throws SQLException, IOException {
+		return query.export(file, binary);
+	}
+
+}
@@ -0,0 +1,33 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import query.ParametrizedQuery;
+
+/**
+ * Expone los puntos de extensión protegidos de {@link ParametrizedQuery} para
+ * medirlos por separado.
+ *
+ * @author fferezsa
+ *
+ * @param <T>
+ *            Tipo parametrizado.
+ */
+final class ExposedQuery<T> extends ParametrizedQuery<T> {
+
+	ExposedQuery(final Class<T> clazz, final Connection connection, final String query, final Object... params) {
+		super(clazz, connection, query, params);
+	}
+
+	T map(final ResultSet rs) throws SQLException {
+		return mapper(rs);
+	}
+
+	void bind(final PreparedStatement statement) throws SQLException {
+		addParametersToStatement(statement);
+	}
+
+}
@@ -0,0 +1,101 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dto.Alianza;
+import query.mapper.BeanMapper;
+import query.mapper.RowMapper;
+
+/**
+ * Coste por fila de cada forma de traducir el ResultSet, sobre el
+ * {@link StubDriver} para aislarlo del driver.
+ *
+ * @author fferezsa
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MappingBenchmark {
+
+	private static final int ROWS = 1000;
+
+	private Connection connection;
+	private PreparedStatement statement;
+	private ExposedQuery<Alianza> bean;
+	private ExposedQuery<Long> scalar;
+	private RowMapper<Alianza> beanMapper;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		connection = Backends.open(Backends.STUB, ROWS);
+		statement = connection.prepareStatement("SELECT * FROM ALIANZA");
+		bean = new ExposedQuery<Alianza>(Alianza.class, connection, "SELECT * FROM ALIANZA");
+		scalar = new ExposedQuery<Long>(Long.class, connection, "SELECT ID FROM ALIANZA");
+		beanMapper = BeanMapper.forClass(Alianza.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void alianzaMapper(final Blackhole blackhole) throws SQLException {
+		final ResultSet rs = statement.executeQuery();
+		while (rs.next()) {
+			blackhole.consume(Alianza.mapper(rs));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void beanMapper(final Blackhole blackhole) throws SQLException {
+		final ResultSet rs = statement.executeQuery();
+		while (rs.next()) {
+			blackhole.consume(beanMapper.map(rs));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void parametrizedMapperDispatch(final Blackhole blackhole) throws SQLException {
+		final ResultSet rs = statement.executeQuery();
+		while (rs.next()) {
+			blackhole.consume(bean.map(rs));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void parametrizedScalarDispatch(final Blackhole blackhole) throws SQLException {
+		final ResultSet rs = statement.executeQuery();
+		while (rs.next()) {
+			blackhole.consume(scalar.map(rs));
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dto.Alianza;
+import query.CompiledQuery;
+import query.ParametrizedQuery;
+import query.cache.StatementCache;
+import query.columnar.ColumnarResult;
+
+/**
+ * {@link ParametrizedQuery#select()} completo: preparación, binding,
+ * ejecución y materialización del resultado con cada forma de traducción.
+ *
+ * @author fferezsa
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectBenchmark {
+
+	private static final String QUERY = "SELECT * FROM ALIANZA ali WHERE ID <= ?";
+	private static final String IDS = "SELECT ID FROM ALIANZA ali WHERE ID <= ?";
+
+	@Param({ Backends.STUB, Backends.H2 })
+	public String backend;
+
+	@Param({ "1", "100", "1000" })
+	public int rows;
+
+	private Connection connection;
+	private ParametrizedQuery<Alianza> overridden;
+	private ParametrizedQuery<Alianza> functional;
+	private ParametrizedQuery<Alianza> beanMapper;
+	private ParametrizedQuery<Alianza> cached;
+	private ParametrizedQuery<Long> ids;
+	private ParametrizedQuery<Alianza> columnar;
+	private CompiledQuery<Alianza> compiled;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		connection = Backends.open(backend, rows);
+		final Long max = Long.valueOf(rows);
+		overridden = new ParametrizedQuery<Alianza>(Alianza.class, connection, QUERY, max) {
+
+			@Override
+			protected Alianza mapper(ResultSet rs) throws SQLException {
+				return Alianza.mapper(rs);
+			}
+		};
+		functional = ParametrizedQuery.forMapper(connection, QUERY, Alianza.MAPPER, max);
+		beanMapper = new ParametrizedQuery<Alianza>(Alianza.class, connection, QUERY, max);
+		cached = new ParametrizedQuery<Alianza>(Alianza.class, connection, QUERY, max);
+		cached.setStatementCache(new StatementCache(16));
+		ids = new ParametrizedQuery<Long>(Long.class, connection, IDS, max);
+		ids.setStatementCache(new StatementCache(16));
+		columnar = ParametrizedQuery.forMapper(connection, QUERY, Alianza.MAPPER, max);
+		columnar.setStatementCache(new StatementCache(16));
+		compiled = new CompiledQuery<Alianza>(QUERY, Alianza.MAPPER).withStatementCache(new StatementCache(16));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Benchmark
+	public List<Alianza> overriddenMapper() throws SQLException {
+		return overridden.select();
+	}
+
+	@Benchmark
+	public List<Alianza> functionalMapper() throws SQLException {
+		return functional.select();
+	}
+
+	@Benchmark
+	public List<Alianza> beanMapper() throws SQLException {
+		return beanMapper.select();
+	}
+
+	@Benchmark
+	public List<Alianza> beanMapperStatementCache() throws SQLException {
+		return cached.select();
+	}
+
+	@Benchmark
+	public long[] selectLongs() throws SQLException {
+		return ids.selectLongs();
+	}
+
+	@Benchmark
+	public ColumnarResult selectColumnar() throws SQLException {
+		return columnar.selectColumnar();
+	}
+
+	@Benchmark
+	public List<Alianza> compiledQuery() throws SQLException {
+		return compiled.select(connection, Long.valueOf(rows));
+	}
+
+}
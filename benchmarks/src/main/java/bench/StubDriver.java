@@ -0,0 +1,230 @@
+package bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.h2.tools.SimpleResultSet;
+
+/**
+ * Driver JDBC que no accede a ninguna BBDD. Toda consulta devuelve las mismas
+ * filas de ALIANZA precalculadas en un {@link SimpleResultSet} y toda
+ * modificación afecta a una fila, de modo que las mediciones con él recogen
+ * solo el coste de la librería.
+ *
+ * <p>
+ * La URL tiene la forma <code>jdbc:stub:N</code>, siendo N el número de filas
+ * de cada resultado.
+ *
+ * @author fferezsa
+ *
+ */
+public final class StubDriver implements Driver {
+
+	public static final String PREFIX = "jdbc:stub:";
+
+	private static final String[] COLUMNS = { "ID", "NOMBRE", "FECHA_INSERCION" };
+	private static final int[] TYPES = { Types.BIGINT, Types.VARCHAR, Types.DATE };
+
+	static {
+		try {
+			DriverManager.registerDriver(new StubDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Garantiza que el driver está registrado.
+	 */
+	public static void register() {
+		// La carga de la clase registra el driver.
+	}
+
+	/**
+	 * @param rows
+	 *            Filas de cada resultado.
+	 * @return URL para {@link DriverManager#getConnection(String)}.
+	 */
+	public static String url(final int rows) {
+		return PREFIX + rows;
+	}
+
+	@Override
+	public Connection connect(final String url, final Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		return newConnection(rows(Integer.parseInt(url.substring(PREFIX.length()))));
+	}
+
+	@Override
+	public boolean acceptsURL(final String url) throws SQLException {
+		return url != null && url.startsWith(PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) throws SQLException {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	/**
+	 * @param count
+	 *            Número de filas.
+	 * @return Filas de ALIANZA en el orden de {@link #COLUMNS}.
+	 */
+	static Object[][] rows(final int count) {
+		final java.sql.Date date = new java.sql.Date(1_500_000_000_000L);
+		final Object[][] rows = new Object[count][];
+		for (int i = 0; i < count; i++) {
+			rows[i] = new Object[] { Long.valueOf(i + 1), "alianza" + (i + 1), date };
+		}
+		return rows;
+	}
+
+	/**
+	 * @param rows
+	 *            Filas de cada resultado.
+	 * @return Conexión simulada.
+	 */
+	static Connection newConnection(final Object[][] rows) {
+		return proxy(Connection.class, new InvocationHandler() {
+
+			private boolean closed;
+			private boolean autoCommit = true;
+
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+				switch (method.getName()) {
+				case "prepareStatement":
+					return newStatement(rows);
+				case "close":
+					closed = true;
+					return null;
+				case "isClosed":
+					return closed;
+				case "isValid":
+					return !closed;
+				case "getAutoCommit":
+					return autoCommit;
+				case "setAutoCommit":
+					autoCommit = (Boolean) args[0];
+					return null;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return defaultValue(method);
+				}
+			}
+		});
+	}
+
+	private static PreparedStatement newStatement(final Object[][] rows) {
+		return proxy(PreparedStatement.class, new InvocationHandler() {
+
+			private boolean closed;
+			private int batched;
+
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+				switch (method.getName()) {
+				case "executeQuery":
+					return newResultSet(rows);
+				case "executeUpdate":
+					return 1;
+				case "addBatch":
+					batched++;
+					return null;
+				case "executeBatch":
+					final int[] counts = new int[batched];
+					java.util.Arrays.fill(counts, 1);
+					batched = 0;
+					return counts;
+				case "clearBatch":
+					batched = 0;
+					return null;
+				case "close":
+					closed = true;
+					return null;
+				case "isClosed":
+					return closed;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return defaultValue(method);
+				}
+			}
+		});
+	}
+
+	private static ResultSet newResultSet(final Object[][] rows) {
+		final SimpleResultSet resultSet = new SimpleResultSet();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			resultSet.addColumn(COLUMNS[i], TYPES[i], 0, 0);
+		}
+		for (final Object[] row : rows) {
+			resultSet.addRow(row);
+		}
+		return resultSet;
+	}
+
+	private static Object defaultValue(final Method method) {
+		final Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0d;
+		} else if (type == float.class) {
+			return 0f;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		}
+		return null;
+	}
+
+	private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+}